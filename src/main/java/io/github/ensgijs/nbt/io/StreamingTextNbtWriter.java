@@ -0,0 +1,404 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.tag.ByteArrayTag;
+import io.github.ensgijs.nbt.tag.ByteTag;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.DoubleTag;
+import io.github.ensgijs.nbt.tag.EndTag;
+import io.github.ensgijs.nbt.tag.FloatTag;
+import io.github.ensgijs.nbt.tag.IntArrayTag;
+import io.github.ensgijs.nbt.tag.IntTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import io.github.ensgijs.nbt.tag.LongArrayTag;
+import io.github.ensgijs.nbt.tag.LongTag;
+import io.github.ensgijs.nbt.tag.ShortTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+import io.github.ensgijs.nbt.tag.Tag;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes text NBT (SNBT) directly to a {@link Writer} without first building the whole text in memory.
+ * <p>Produces exactly the same text as {@link TextNbtHelpers#toTextNbt(NamedTag, boolean, boolean)}, including
+ * pretty printing, but in a single pass. Escape buffers, indentation strings and compound entry sort buffers
+ * are allocated once and reused, so one instance can write any number of tags with very little garbage.
+ * Instances are not thread safe - use one per thread.</p>
+ * <p>When sorting is disabled compound entries are written in insertion order. For tags read from binary nbt
+ * that is file order, which is stable for unchanged data, so unsorted output is still suitable for diffing
+ * and avoids the sort entirely.</p>
+ * <pre>{@code
+ * StreamingTextNbtWriter snbt = new StreamingTextNbtWriter(true, true);
+ * try (Writer out = Files.newBufferedWriter(path)) {
+ *     snbt.write(tag, out);
+ * }
+ * }</pre>
+ */
+public final class StreamingTextNbtWriter implements MaxDepthIO {
+	private static final int INDENT_WIDTH = 2;
+
+	private final boolean prettyPrint;
+	private final boolean sortCompoundTagEntries;
+	private final int maxDepth;
+
+	private Writer writer;
+	private char[] escapeBuffer = new char[128];
+	/** indents[i] is a newline followed by i levels of indentation */
+	private String[] indents = new String[0];
+	/** reusable compound entry sort buffers, one per nesting level */
+	private final List<SortEntry[]> sortBuffers = new ArrayList<>();
+
+	private static final class SortEntry {
+		String name;
+		String lowerName;
+		boolean isInteger;
+		long integerValue;
+		Tag<?> tag;
+
+		void set(String name, Tag<?> tag) {
+			this.name = name;
+			this.tag = tag;
+			this.lowerName = name.toLowerCase(Locale.ENGLISH);
+			this.isInteger = false;
+			if (isIntegerString(lowerName)) {
+				try {
+					integerValue = Long.parseLong(lowerName);
+					isInteger = true;
+				} catch (NumberFormatException ignore) {
+					// too big, compare as text
+				}
+			}
+		}
+
+		/** Same ordering as {@link NamedTag#compare(NamedTag, NamedTag)} */
+		static int compare(SortEntry a, SortEntry b) {
+			if (a.isInteger && b.isInteger) {
+				return Long.compare(a.integerValue, b.integerValue);
+			}
+			int result = a.lowerName.compareTo(b.lowerName);
+			return result != 0 ? result : a.name.compareTo(b.name);
+		}
+
+		private static boolean isIntegerString(String s) {
+			int i = 0;
+			if (!s.isEmpty() && (s.charAt(0) == '+' || s.charAt(0) == '-')) i++;
+			if (i >= s.length()) return false;
+			for (; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c < '0' || c > '9') return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * @param prettyPrint when true output is indented, one value per line, the same as
+	 *                    {@link io.github.ensgijs.nbt.util.JsonPrettyPrinter} would format it.
+	 * @param sortCompoundTagEntries when true compound entries are written in {@link NamedTag#compare} order,
+	 *                               otherwise in insertion order.
+	 */
+	public StreamingTextNbtWriter(boolean prettyPrint, boolean sortCompoundTagEntries) {
+		this(prettyPrint, sortCompoundTagEntries, Tag.DEFAULT_MAX_DEPTH);
+	}
+
+	public StreamingTextNbtWriter(boolean prettyPrint, boolean sortCompoundTagEntries, int maxDepth) {
+		this.prettyPrint = prettyPrint;
+		this.sortCompoundTagEntries = sortCompoundTagEntries;
+		this.maxDepth = maxDepth;
+	}
+
+	public boolean isPrettyPrint() {
+		return prettyPrint;
+	}
+
+	public boolean isSortCompoundTagEntries() {
+		return sortCompoundTagEntries;
+	}
+
+	/** Writes the tag, the writer is not flushed or closed. */
+	public void write(Tag<?> tag, Writer writer) throws IOException {
+		this.writer = writer;
+		try {
+			writeTag(tag, 0, maxDepth);
+		} finally {
+			this.writer = null;
+		}
+	}
+
+	/** Writes the named tag, the writer is not flushed or closed. */
+	public void write(NamedTag tag, Writer writer) throws IOException {
+		this.writer = writer;
+		try {
+			if (tag.getName() != null) {
+				writeName(tag.getName());
+				writeColon();
+			}
+			writeTag(tag.getTag(), 0, maxDepth);
+		} finally {
+			this.writer = null;
+		}
+	}
+
+	/**
+	 * Writes the tag as UTF-8 to the given stream, buffering as needed. The stream is flushed but not closed.
+	 */
+	public void write(Tag<?> tag, OutputStream out) throws IOException {
+		Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+		write(tag, w);
+		w.flush();
+	}
+
+	/** @see #write(Tag, OutputStream) */
+	public void write(NamedTag tag, OutputStream out) throws IOException {
+		Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+		write(tag, w);
+		w.flush();
+	}
+
+	private void writeTag(Tag<?> tag, int level, int maxDepth) throws IOException {
+		switch (tag.getID()) {
+		case EndTag.ID:
+			//do nothing
+			break;
+		case ByteTag.ID:
+			writer.write(Byte.toString(((ByteTag) tag).asByte()));
+			writer.write('b');
+			break;
+		case ShortTag.ID:
+			writer.write(Short.toString(((ShortTag) tag).asShort()));
+			writer.write('s');
+			break;
+		case IntTag.ID:
+			writer.write(Integer.toString(((IntTag) tag).asInt()));
+			break;
+		case LongTag.ID:
+			writer.write(Long.toString(((LongTag) tag).asLong()));
+			writer.write('l');
+			break;
+		case FloatTag.ID:
+			writer.write(Float.toString(((FloatTag) tag).asFloat()));
+			writer.write('f');
+			break;
+		case DoubleTag.ID:
+			writer.write(Double.toString(((DoubleTag) tag).asDouble()));
+			writer.write('d');
+			break;
+		case StringTag.ID:
+			writeString(((StringTag) tag).getValue());
+			break;
+		case ListTag.ID: {
+			ListTag<?> list = (ListTag<?>) tag;
+			writer.write('[');
+			if (list.isEmpty()) {
+				writer.write(']');
+				break;
+			}
+			int childDepth = decrementMaxDepth(maxDepth);
+			for (int i = 0; i < list.size(); i++) {
+				if (i > 0) writer.write(',');
+				newLine(level + 1);
+				writeTag(list.get(i), level + 1, childDepth);
+			}
+			newLine(level);
+			writer.write(']');
+			break;
+		}
+		case CompoundTag.ID:
+			writeCompound((CompoundTag) tag, level, maxDepth);
+			break;
+		case ByteArrayTag.ID: {
+			byte[] values = ((ByteArrayTag) tag).getValue();
+			writeArrayStart('B');
+			for (int i = 0; i < values.length; i++) {
+				writeArraySeparator(i, level);
+				writer.write(Byte.toString(values[i]));
+			}
+			writeArrayEnd(values.length == 0, level);
+			break;
+		}
+		case IntArrayTag.ID: {
+			int[] values = ((IntArrayTag) tag).getValue();
+			writeArrayStart('I');
+			for (int i = 0; i < values.length; i++) {
+				writeArraySeparator(i, level);
+				writer.write(Integer.toString(values[i]));
+			}
+			writeArrayEnd(values.length == 0, level);
+			break;
+		}
+		case LongArrayTag.ID: {
+			long[] values = ((LongArrayTag) tag).getValue();
+			writeArrayStart('L');
+			for (int i = 0; i < values.length; i++) {
+				writeArraySeparator(i, level);
+				writer.write(Long.toString(values[i]));
+			}
+			writeArrayEnd(values.length == 0, level);
+			break;
+		}
+		default:
+			throw new IOException("unknown tag with id \"" + tag.getID() + "\"");
+		}
+	}
+
+	private void writeCompound(CompoundTag tag, int level, int maxDepth) throws IOException {
+		writer.write('{');
+		if (tag.isEmpty()) {
+			writer.write('}');
+			return;
+		}
+		int childDepth = decrementMaxDepth(maxDepth);
+		boolean first = true;
+		if (sortCompoundTagEntries) {
+			int size = tag.size();
+			SortEntry[] entries = sortBuffer(level, size);
+			int n = 0;
+			for (Map.Entry<String, Tag<?>> e : tag.entrySet()) {
+				entries[n++].set(e.getKey(), e.getValue());
+			}
+			Arrays.sort(entries, 0, size, SortEntry::compare);
+			for (int i = 0; i < size; i++) {
+				SortEntry e = entries[i];
+				writeEntry(e.name, e.tag, first, level, childDepth);
+				first = false;
+				// don't pin the tag tree in memory between calls
+				e.tag = null;
+			}
+		} else {
+			for (Map.Entry<String, Tag<?>> e : tag.entrySet()) {
+				writeEntry(e.getKey(), e.getValue(), first, level, childDepth);
+				first = false;
+			}
+		}
+		newLine(level);
+		writer.write('}');
+	}
+
+	private void writeEntry(String name, Tag<?> value, boolean first, int level, int childDepth) throws IOException {
+		if (!first) writer.write(',');
+		newLine(level + 1);
+		writeName(name);
+		writeColon();
+		writeTag(value, level + 1, childDepth);
+	}
+
+	private SortEntry[] sortBuffer(int level, int size) {
+		while (sortBuffers.size() <= level) sortBuffers.add(new SortEntry[0]);
+		SortEntry[] buffer = sortBuffers.get(level);
+		if (buffer.length < size) {
+			int oldLength = buffer.length;
+			buffer = Arrays.copyOf(buffer, Math.max(size, oldLength * 2));
+			for (int i = oldLength; i < buffer.length; i++) {
+				buffer[i] = new SortEntry();
+			}
+			sortBuffers.set(level, buffer);
+		}
+		return buffer;
+	}
+
+	private void writeArrayStart(char type) throws IOException {
+		writer.write('[');
+		writer.write(type);
+		writer.write(';');
+	}
+
+	private void writeArraySeparator(int i, int level) throws IOException {
+		if (i > 0) writer.write(',');
+		newLine(level + 1);
+	}
+
+	private void writeArrayEnd(boolean empty, int level) throws IOException {
+		if (!empty) newLine(level);
+		writer.write(']');
+	}
+
+	private void writeColon() throws IOException {
+		writer.write(':');
+		if (prettyPrint) writer.write(' ');
+	}
+
+	private void newLine(int level) throws IOException {
+		if (!prettyPrint) return;
+		if (level >= indents.length) {
+			String[] grown = Arrays.copyOf(indents, Math.max(level + 1, indents.length * 2));
+			for (int i = indents.length; i < grown.length; i++) {
+				char[] chars = new char[1 + i * INDENT_WIDTH];
+				Arrays.fill(chars, ' ');
+				chars[0] = '\n';
+				grown[i] = new String(chars);
+			}
+			indents = grown;
+		}
+		writer.write(indents[level]);
+	}
+
+	private char[] escapeBuffer(int minLength) {
+		if (escapeBuffer.length < minLength) {
+			escapeBuffer = new char[Math.max(minLength, escapeBuffer.length * 2)];
+		}
+		return escapeBuffer;
+	}
+
+	/** Same output as {@link NamedTag#escapeName(String)} */
+	private void writeName(String name) throws IOException {
+		boolean needsQuotes = name.isEmpty();
+		for (int i = 0; i < name.length() && !needsQuotes; i++) {
+			char c = name.charAt(i);
+			needsQuotes = !((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+					|| c == '_' || c == '+' || c == '-');
+		}
+		if (!needsQuotes) {
+			writer.write(name);
+			return;
+		}
+		char[] buf = escapeBuffer(name.length() * 2 + 2);
+		int n = 0;
+		buf[n++] = '"';
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c == '\\' || c == '"') buf[n++] = '\\';
+			buf[n++] = c;
+		}
+		buf[n++] = '"';
+		writer.write(buf, 0, n);
+	}
+
+	/** Same output as {@link StringTag#escapeString(String, boolean)} with lenient=true */
+	private void writeString(String s) throws IOException {
+		boolean needsQuotes = s.isEmpty();
+		for (int i = 0; i < s.length() && !needsQuotes; i++) {
+			char c = s.charAt(i);
+			needsQuotes = !((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_'
+					|| (i > 0 && ((c >= '0' && c <= '9') || c == '-')));
+		}
+		if (!needsQuotes) {
+			writer.write(s);
+			return;
+		}
+		char[] buf = escapeBuffer(s.length() * 2 + 2);
+		int n = 0;
+		buf[n++] = '"';
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '\\': buf[n++] = '\\'; buf[n++] = '\\'; break;
+				case '\n': buf[n++] = '\\'; buf[n++] = 'n'; break;
+				case '\t': buf[n++] = '\\'; buf[n++] = 't'; break;
+				case '\r': buf[n++] = '\\'; buf[n++] = 'r'; break;
+				case '"': buf[n++] = '\\'; buf[n++] = '"'; break;
+				default: buf[n++] = c;
+			}
+		}
+		buf[n++] = '"';
+		writer.write(buf, 0, n);
+	}
+}
@@ -5,8 +5,6 @@ import io.github.ensgijs.nbt.util.ArgValidator;
 import io.github.ensgijs.nbt.util.JsonPrettyPrinter;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Locale;
@@ -82,26 +80,43 @@ public final class TextNbtHelpers {
 
 
 	private static Path writeTextNbtFile0(Path filePath, Object tag, boolean prettyPrint, boolean sortCompoundTagEntries) throws IOException {
+		return writeTextNbtFile0(filePath, tag, new StreamingTextNbtWriter(prettyPrint, sortCompoundTagEntries));
+	}
+
+	private static Path writeTextNbtFile0(Path filePath, Object tag, StreamingTextNbtWriter snbtWriter) throws IOException {
 		if (!filePath.getParent().toFile().exists()) {
 			ArgValidator.check(filePath.getParent().toFile().mkdirs(),
 					"Failed to create parent directory for " + filePath.toAbsolutePath());
 		}
-		byte[] data;
-		if (tag instanceof NamedTag) {
-			data = toTextNbt((NamedTag) tag, prettyPrint, sortCompoundTagEntries).getBytes(StandardCharsets.UTF_8);
-		} else {
-			data = toTextNbt((Tag<?>) tag, prettyPrint, sortCompoundTagEntries).getBytes(StandardCharsets.UTF_8);
-		}
-		if (!filePath.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(".gz")) {
-			Files.write(filePath, data);
-		} else {
-			try (GZIPOutputStream gzOut = new GZIPOutputStream(new FileOutputStream(filePath.toFile()))) {
-				gzOut.write(data);
+		OutputStream out = new FileOutputStream(filePath.toFile());
+		try {
+			if (filePath.getFileName().toString().toLowerCase(Locale.ENGLISH).endsWith(".gz")) {
+				out = new GZIPOutputStream(out, 64 * 1024);
+			}
+			if (tag instanceof NamedTag) {
+				snbtWriter.write((NamedTag) tag, out);
+			} else {
+				snbtWriter.write((Tag<?>) tag, out);
 			}
+		} finally {
+			out.close();
 		}
 		return filePath;
 	}
 
+	/**
+	 * Writes the tag using the given writer, which may be reused across many calls to avoid reallocating its
+	 * buffers. The text is streamed to the file, it is never held in memory as a whole.
+	 */
+	public static Path writeTextNbtFile(Path filePath, Tag<?> tag, StreamingTextNbtWriter snbtWriter) throws IOException {
+		return writeTextNbtFile0(filePath, tag, snbtWriter);
+	}
+
+	/** @see #writeTextNbtFile(Path, Tag, StreamingTextNbtWriter) */
+	public static Path writeTextNbtFile(Path filePath, NamedTag tag, StreamingTextNbtWriter snbtWriter) throws IOException {
+		return writeTextNbtFile0(filePath, tag, snbtWriter);
+	}
+
 	// <editor-fold desc="write Tag<?> to file">
 	public static Path writeTextNbtFile(Path filePath, Tag<?> tag, boolean prettyPrint, boolean sortCompoundTagEntries) throws IOException {
 		return writeTextNbtFile0(filePath, tag, prettyPrint, sortCompoundTagEntries);
@@ -12,6 +12,7 @@ import io.github.ensgijs.nbt.tag.ListTag;
 import io.github.ensgijs.nbt.mca.entities.Entity;
 import io.github.ensgijs.nbt.mca.entities.EntityFactory;
 import io.github.ensgijs.nbt.mca.entities.EntityUtil;
+import io.github.ensgijs.nbt.mca.entities.EntityView;
 import io.github.ensgijs.nbt.mca.util.RegionBoundingRectangle;
 import io.github.ensgijs.nbt.util.ArgValidator;
 import io.github.ensgijs.nbt.mca.util.ChunkBoundingRectangle;
@@ -34,6 +35,10 @@ public abstract class EntitiesChunkBase<ET extends Entity> extends ChunkBase imp
     // Private to keep child classes clean (and well behaved) - child classes should access this via getEntities()
     // Not populated until getEntities() is called.
     private List<ET> entities;
+    // Not populated until getEntityViews() is called. Only valid while they still line up with the list they
+    // were built from, see viewsInSync.
+    private List<EntityView> entityViews;
+    private List<?> entityViewsSource;
     // Not populated if loaded in RAW mode or if load flags did not include ENTITIES
     protected ListTag<CompoundTag> entitiesTag;
 
@@ -92,7 +97,15 @@ public abstract class EntitiesChunkBase<ET extends Entity> extends ChunkBase imp
             // this state should happen is if there is a bug in the implementers of this class.
             throw new IllegalStateException("Entities nbt tag was not loaded for this chunk");
         }
-        entities = EntityFactory.fromListTag(entitiesTag, dataVersion);
+        if (entityViews != null && viewsInSync(entitiesTag)) {
+            // reuse any entities already upgraded from views so there is only ever one wrapper per entity tag
+            entities = new ArrayList<>(entityViews.size());
+            for (EntityView view : entityViews) {
+                entities.add(view.toEntity());
+            }
+        } else {
+            entities = EntityFactory.fromListTag(entitiesTag, dataVersion);
+        }
     }
 
     /** {@inheritDoc} */
@@ -116,6 +129,64 @@ public abstract class EntitiesChunkBase<ET extends Entity> extends ChunkBase imp
         return entities;
     }
 
+    /**
+     * Gets lightweight views of all entities in this chunk. Building the views does not parse any entity data
+     * making this far cheaper than {@link #getEntities()} when only entity ids, UUIDs or positions are needed.
+     * Individual views can be upgraded to full entities with {@link EntityView#toEntity()} and a later call to
+     * {@link #getEntities()} will reuse those upgraded entities.
+     * <p>The returned list is a snapshot: entities added to or removed from {@link #getEntities()} or
+     * {@link #getEntitiesTag()} afterwards are not reflected in it, call this again to get a current list. The
+     * same list is returned for as long as the entities it was built from are unchanged, and views of entities
+     * which are still present are reused.</p>
+     * <p>Views read through to entity nbt data. If {@link #getEntities()} has already been called the views
+     * read each entity's handle, so changes made to an entity are not visible through its view until
+     * {@link Entity#updateHandle()} is called.</p>
+     * @return Unmodifiable list of views, in the same order as {@link #getEntities()}.
+     * @throws UnsupportedOperationException if loaded in raw mode
+     */
+    public List<EntityView> getEntityViews() {
+        checkRaw();
+        final List<?> source = entities != null ? entities : entitiesTag;
+        if (source == null) {
+            throw new IllegalStateException("Entities nbt tag was not loaded for this chunk");
+        }
+        if (entityViews != null && viewsInSync(source)) return entityViews;
+
+        Map<CompoundTag, EntityView> previous = new IdentityHashMap<>();
+        if (entityViews != null) {
+            for (EntityView view : entityViews) {
+                previous.put(view.getHandle(), view);
+            }
+        }
+        List<EntityView> views = new ArrayList<>(source.size());
+        if (entities != null) {
+            for (ET entity : entities) {
+                EntityView view = previous.get(entity.getHandle());
+                views.add(view != null && view.isEntityCreated() && view.toEntity() == entity
+                        ? view : new EntityView(entity, dataVersion));
+            }
+        } else {
+            for (CompoundTag entityTag : entitiesTag) {
+                EntityView view = previous.get(entityTag);
+                views.add(view != null ? view : new EntityView(entityTag, dataVersion));
+            }
+        }
+        entityViews = Collections.unmodifiableList(views);
+        entityViewsSource = source;
+        return entityViews;
+    }
+
+    /** @return true if the cached views were built from the given list and it still holds the same entities. */
+    private boolean viewsInSync(List<?> source) {
+        if (entityViewsSource != source || entityViews.size() != source.size()) return false;
+        for (int i = 0; i < source.size(); i++) {
+            Object item = source.get(i);
+            CompoundTag handle = item instanceof Entity ? ((Entity) item).getHandle() : (CompoundTag) item;
+            if (entityViews.get(i).getHandle() != handle) return false;
+        }
+        return true;
+    }
+
     /**
      * Gets an indication of if the result of {@link #getEntities()} has been computed, or if calling it
      * will trigger lazy instantiation.
@@ -141,6 +212,7 @@ public abstract class EntitiesChunkBase<ET extends Entity> extends ChunkBase imp
         checkRaw();
         ArgValidator.requireValue(entities);
         this.entities = entities;
+        this.entityViews = null;
     }
 
     /**
@@ -185,6 +257,7 @@ public abstract class EntitiesChunkBase<ET extends Entity> extends ChunkBase imp
         }
         // respect lazy loading and cause the next call to getEntities() to rebuild the wrapped entities
         entities = null;
+        entityViews = null;
     }
 
     /**
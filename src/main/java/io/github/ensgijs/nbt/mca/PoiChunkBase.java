@@ -22,6 +22,10 @@ import java.util.stream.Stream;
 public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implements Collection<T> {
     // private to preserve the ability to change how records are stored to optimize lookups later
     private List<T> records;
+    // Lookup indexes over records, lazily built on first use and null while not built. Index lists preserve
+    // the relative order of records. See packPos and reindex.
+    private Map<Long, List<T>> recordsByPos;
+    private Map<String, List<T>> recordsByType;
 
     // Valid: True (1) when created by the game, however, if the decoding of POI NBT (from the region file) data fails,
     // and the game then save the region file again, it might save false (0). This key is internally set to true when
@@ -32,6 +36,8 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
     @Override
     protected void initMembers() {
         records = null;
+        recordsByPos = null;
+        recordsByType = null;
         poiSectionValidity = new HashMap<>();
     }
 
@@ -52,6 +58,7 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
     protected void initReferences(long loadFlags) {
         if ((loadFlags & LoadFlags.POI_RECORDS) != 0) {
             records = new ArrayList<>();
+            invalidateIndex();
             CompoundTag sectionsTag = data.getCompoundTag("Sections");
             if (sectionsTag == null) {
                 throw new IllegalArgumentException("Sections tag not found!");
@@ -101,6 +108,7 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
         this.chunkX = newChunkX;
         this.chunkZ = newChunkZ;
         if (fixPoiLocations(moveChunkFlags)) {
+            invalidateIndex();
             if ((moveChunkFlags & MoveChunkFlags.AUTOMATICALLY_UPDATE_HANDLE) > 0) {
                 updateHandle();
             }
@@ -125,6 +133,7 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
                     changed = true;
                 }
             }
+            if (changed) invalidateIndex();
         } else {  // fix raw data
             if (data == null) {
                 throw new UnsupportedOperationException(
@@ -161,12 +170,120 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
      */
     protected abstract T createPoiRecord(CompoundTag recordTag);
 
+    /**
+     * Packs a block xyz into a single long for use as a hash key. Uses 26 bits each for x and z and 12 bits for y,
+     * which covers the maximum world border and the full range accepted by {@link PoiRecord#setY(int)}.
+     * Coordinates outside of that range may collide, so lookups must still confirm with {@link PoiRecord#matches}.
+     */
+    static long packPos(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * Forces the position and type lookup indexes to be rebuilt on next use. The indexes are maintained
+     * automatically, including when a held record is changed through its setters. Only needed if a
+     * {@link PoiRecord} subclass changes its xyz or type fields directly.
+     */
+    public void reindex() {
+        invalidateIndex();
+    }
+
+    /**
+     * Drops the lookup indexes and releases the records they held, so changes to those records no longer
+     * notify this chunk. Called by {@link PoiRecord} setters when an indexed record's xyz or type changes.
+     */
+    void invalidateIndex() {
+        if (recordsByType == null) return;
+        for (List<T> list : recordsByType.values()) {
+            for (T record : list) {
+                if (record.indexedBy == this) record.indexedBy = null;
+            }
+        }
+        recordsByPos = null;
+        recordsByType = null;
+    }
+
+    private void ensureIndexed() {
+        if (recordsByPos != null) return;
+        recordsByPos = new HashMap<>(Math.max(16, records.size() * 2));
+        recordsByType = new HashMap<>();
+        for (T record : records) {
+            indexRecord(record);
+        }
+    }
+
+    /**
+     * A record held by the indexes of another chunk too takes that chunk's indexes down with it, so every record
+     * in a built index is always owned by that index and notifies it of changes.
+     */
+    private void indexRecord(T record) {
+        if (record.indexedBy != this) {
+            if (record.indexedBy != null) record.indexedBy.invalidateIndex();
+            record.indexedBy = this;
+        }
+        recordsByPos.computeIfAbsent(packPos(record.getX(), record.getY(), record.getZ()), k -> new ArrayList<>(1))
+                .add(record);
+        recordsByType.computeIfAbsent(record.getType(), k -> new ArrayList<>()).add(record);
+    }
+
+    /** Removes the record, by reference, from the indexes if built. Drops the indexes if they were stale. */
+    private void unindexRecord(T record) {
+        if (recordsByPos == null) return;
+        if (!removeByIdentity(recordsByPos, packPos(record.getX(), record.getY(), record.getZ()), record)
+                || !removeByIdentity(recordsByType, record.getType(), record)) {
+            invalidateIndex();
+        }
+    }
+
+    private static <K, V> boolean removeByIdentity(Map<K, List<V>> index, K key, V value) {
+        List<V> list = index.get(key);
+        if (list == null) return false;
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == value) {
+                list.remove(i);
+                if (list.isEmpty()) index.remove(key);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return indexed records at the given xyz, never null. May include records which no longer match. */
+    private List<T> indexedAt(int x, int y, int z) {
+        ensureIndexed();
+        return recordsByPos.getOrDefault(packPos(x, y, z), Collections.emptyList());
+    }
+
+    /** @return indexed records of the given type, never null. May include records which no longer match. */
+    private List<T> indexedOfType(String poiType) {
+        ensureIndexed();
+        return recordsByType.getOrDefault(poiType, Collections.emptyList());
+    }
+
+    /**
+     * Removes the given records, by reference, from both the records list and the indexes.
+     * @return true if any record was removed
+     */
+    private boolean removeRecords(Collection<T> toRemove) {
+        if (toRemove.isEmpty()) return false;
+        Set<T> identitySet = Collections.newSetFromMap(new IdentityHashMap<>());
+        identitySet.addAll(toRemove);
+        boolean changed = records.removeIf(identitySet::contains);
+        for (T record : identitySet) {
+            unindexRecord(record);
+            if (record.indexedBy == this) record.indexedBy = null;
+        }
+        return changed;
+    }
+
     @Override
     public boolean add(T record) {
         if (record == null) {
             throw new IllegalArgumentException("record must not be null");
         }
-        return records.add(record);
+        records.add(record);
+        if (recordsByPos != null) indexRecord(record);
+        return true;
     }
 
     /**
@@ -177,7 +294,10 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
      * @return poi record if found, otherwise null
      */
     public T getFirst(final int x, final int y, final int z) {
-        return records.stream().filter(r -> r.matches(x, y, z)).findFirst().orElse(null);
+        for (T record : indexedAt(x, y, z)) {
+            if (record.matches(x, y, z)) return record;
+        }
+        return null;
     }
 
     /**
@@ -201,7 +321,11 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
      * @return new list of poi records at the given xyz
      */
     public List<T> getAll(final int x, final int y, final int z) {
-        return records.stream().filter(r -> r.matches(x, y, z)).collect(Collectors.toList());
+        List<T> list = new ArrayList<>(1);
+        for (T record : indexedAt(x, y, z)) {
+            if (record.matches(x, y, z)) list.add(record);
+        }
+        return list;
     }
 
     /**
@@ -210,7 +334,10 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
      * @return new list of poi records matching the given poi type
      */
     public List<T> getAll(final String poiType) {
-        List<T> list = records.stream().filter(r -> r.matches(poiType)).collect(Collectors.toList());
+        List<T> list = new ArrayList<>();
+        for (T record : indexedOfType(poiType)) {
+            if (record.matches(poiType)) list.add(record);
+        }
         return list;
     }
 
@@ -222,12 +349,20 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
     @Override
     public boolean remove(Object record) {
         if (!(record instanceof PoiRecord)) return false;
-        return records.removeIf(r -> r == record || r.equals(record));
+        List<T> toRemove = new ArrayList<>();
+        for (T r : records) {
+            if (r == record || r.equals(record)) toRemove.add(r);
+        }
+        return removeRecords(toRemove);
     }
 
     @Override
     public boolean removeAll(Collection<?> c) {
-        return records.removeAll(c);
+        if (records.removeAll(c)) {
+            invalidateIndex();
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -238,7 +373,7 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
      * @return True if any records were removed
      */
     public boolean removeAll(final int x, final int y, final int z) {
-        return records.removeIf(r -> r.matches(x, y, z));
+        return removeRecords(getAll(x, y, z));
     }
 
     /**
@@ -250,7 +385,7 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
         if (poiType == null || poiType.isEmpty()) {
             return false;
         }
-        return records.removeIf(r -> r.matches(poiType));
+        return removeRecords(getAll(poiType));
     }
 
     /**
@@ -261,15 +396,11 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
      * @return Removed PoiRecord or null if no such record
      */
     public T removeFirst(final int x, final int y, final int z) {
-        Iterator<T> iter = records.iterator();
-        while (iter.hasNext()) {
-            T record = iter.next();
-            if (record.matches(x, y, z)) {
-                iter.remove();
-                return record;
-            }
+        T record = getFirst(x, y, z);
+        if (record != null) {
+            removeRecords(Collections.singletonList(record));
         }
-        return null;
+        return record;
     }
 
     @Override
@@ -282,7 +413,7 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
         boolean changed = false;
         for (T r : c) {
             if (r != null) {
-                records.add(r);
+                add(r);
                 changed = true;
             }
         }
@@ -291,7 +422,11 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
 
     @Override
     public boolean retainAll(Collection<?> c) {
-        return records.retainAll(c);
+        if (records.retainAll(c)) {
+            invalidateIndex();
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -303,6 +438,7 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
     @Override
     public void clear() {
         records.clear();
+        invalidateIndex();
         poiSectionValidity.clear();
     }
 
@@ -323,12 +459,30 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
 
     @Override
     public Iterator<T> iterator() {
-        return records.iterator();
+        final Iterator<T> iter = records.iterator();
+        return new Iterator<T>() {
+            T current;
+
+            @Override
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return current = iter.next();
+            }
+
+            @Override
+            public void remove() {
+                iter.remove();
+                unindexRecord(current);
+            }
+        };
     }
 
     /**
-     * Provides an iterator over poi records with the given type. This is a convenience function and does not provide
-     * any real optimization v.s. iterating over all elements.
+     * Provides an iterator over poi records with the given type.
      * @param poiType poi type, if null or empty an empty iterator is returned
      * @return Never null, but may be empty. Does not support {@link Iterator#remove()}
      */
@@ -336,7 +490,7 @@ public abstract class PoiChunkBase<T extends PoiRecord> extends ChunkBase implem
         if (poiType == null || poiType.isEmpty()) {
             return Collections.emptyIterator();
         }
-        return records.stream().filter(r -> r.matches(poiType)).iterator();
+        return Collections.unmodifiableList(getAll(poiType)).iterator();
     }
 
     public Stream<T> stream() {
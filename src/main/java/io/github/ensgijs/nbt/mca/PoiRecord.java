@@ -82,6 +82,9 @@ public class PoiRecord implements TagWrapper<CompoundTag>, Comparable<PoiRecord>
     protected int x;
     protected int y;
     protected int z;
+    // The chunk whose lookup indexes currently hold this record, notified by the xyz and type setters.
+    // See PoiChunkBase#indexRecord
+    PoiChunkBase<?> indexedBy;
 
     public PoiRecord() { }
 
@@ -213,6 +216,7 @@ public class PoiRecord implements TagWrapper<CompoundTag>, Comparable<PoiRecord>
     /** Type of the point, for example: minecraft:home, minecraft:meeting, minecraft:butcher, minecraft:nether_portal */
     public PoiRecord setType(String type) {
         this.type = validateType(type);
+        keyChanged();
         return this;
     }
 
@@ -224,6 +228,7 @@ public class PoiRecord implements TagWrapper<CompoundTag>, Comparable<PoiRecord>
     /** world x location */
     public PoiRecord setX(int x) {
         this.x = x;
+        keyChanged();
         return this;
     }
 
@@ -238,6 +243,7 @@ public class PoiRecord implements TagWrapper<CompoundTag>, Comparable<PoiRecord>
      */
     public PoiRecord setY(int y) {
         this.y = validateY(y);
+        keyChanged();
         return this;
     }
 
@@ -249,6 +255,7 @@ public class PoiRecord implements TagWrapper<CompoundTag>, Comparable<PoiRecord>
     /** world z location */
     public PoiRecord setZ(int z) {
         this.z = z;
+        keyChanged();
         return this;
     }
 
@@ -263,9 +270,15 @@ public class PoiRecord implements TagWrapper<CompoundTag>, Comparable<PoiRecord>
         this.x = x;
         this.y = y;
         this.z = z;
+        keyChanged();
         return this;
     }
 
+    /** Lets the chunk indexing this record know its lookup keys, xyz or type, changed. */
+    private void keyChanged() {
+        if (indexedBy != null) indexedBy.invalidateIndex();
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(type, x, y, z);
@@ -5,9 +5,11 @@ import io.github.ensgijs.nbt.mca.util.*;
 import io.github.ensgijs.nbt.tag.*;
 import io.github.ensgijs.nbt.mca.io.MoveChunkFlags;
 import io.github.ensgijs.nbt.query.NbtPath;
+import io.github.ensgijs.nbt.query.NbtPathBatch;
 import io.github.ensgijs.nbt.util.ArgValidator;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static io.github.ensgijs.nbt.mca.DataVersion.*;
 import static io.github.ensgijs.nbt.mca.io.LoadFlags.*;
@@ -191,6 +193,38 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 	public static final VersionAware<NbtPath> BLENDING_DATA_PATH = new VersionAware<NbtPath>()
 			.register(JAVA_1_18_21W43A.id(), NbtPath.of("blending_data"));
 
+	/**
+	 * Paths which {@link #initReferences(long)} reads for every chunk regardless of load flags. They are evaluated
+	 * together, as one {@link NbtPathBatch} per data version, so that shared prefixes (such as "Level") are only
+	 * walked once per chunk.
+	 */
+	private static final VersionAwareGroup<NbtPath> HEADER_PATHS = VersionAwareGroup.of(
+			INHABITED_TIME_TICKS_PATH, LAST_UPDATE_TICK_PATH, STATUS_PATH, IS_LIGHT_ON_PATH, TERRAIN_POPULATED_PATH,
+			UPGRADE_DATA_PATH, X_POS_PATH, Z_POS_PATH, Y_POS_PATH);
+	// indexes into the values returned for HEADER_PATHS - must match the order above
+	private static final int HEADER_INHABITED_TIME_TICKS = 0;
+	private static final int HEADER_LAST_UPDATE_TICK = 1;
+	private static final int HEADER_STATUS = 2;
+	private static final int HEADER_IS_LIGHT_ON = 3;
+	private static final int HEADER_TERRAIN_POPULATED = 4;
+	private static final int HEADER_UPGRADE_DATA = 5;
+	private static final int HEADER_X_POS = 6;
+	private static final int HEADER_Z_POS = 7;
+	private static final int HEADER_Y_POS = 8;
+	private record HeaderBatch(List<NbtPath> paths, NbtPathBatch batch) {}
+	private static final Map<Integer, HeaderBatch> HEADER_PATH_BATCHES = new ConcurrentHashMap<>();
+
+	private static NbtPathBatch headerPathBatch(int dataVersion) {
+		List<NbtPath> paths = HEADER_PATHS.resolve(dataVersion);
+		HeaderBatch header = HEADER_PATH_BATCHES.get(dataVersion);
+		// the resolved list is only replaced when a path is (re)registered
+		if (header == null || header.paths != paths) {
+			header = new HeaderBatch(paths, new NbtPathBatch(paths));
+			HEADER_PATH_BATCHES.put(dataVersion, header);
+		}
+		return header.batch;
+	}
+
 
 	protected TerrainChunkBase(int dataVersion) {
 		super(dataVersion);
@@ -222,8 +256,9 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 			}
 		}
 
-		inhabitedTimeTicks = getTagValue(INHABITED_TIME_TICKS_PATH, LongTag::asLong, 0L);
-		lastUpdateTick = getTagValue(LAST_UPDATE_TICK_PATH, LongTag::asLong, 0L);
+		final Object[] header = headerPathBatch(dataVersion).getAll(data);
+		inhabitedTimeTicks = header[HEADER_INHABITED_TIME_TICKS] != null ? ((LongTag) header[HEADER_INHABITED_TIME_TICKS]).asLong() : 0L;
+		lastUpdateTick = header[HEADER_LAST_UPDATE_TICK] != null ? ((LongTag) header[HEADER_LAST_UPDATE_TICK]).asLong() : 0L;
 		if (dataVersion < JAVA_1_18_21W37A.id() && (loadFlags & BIOMES) != 0) {
 			if (dataVersion >= DataVersion.JAVA_1_13_18W06A.id()) {
 				legacyBiomes = getTagValue(LEGACY_BIOMES_PATH, IntArrayTag::getValue);
@@ -269,12 +304,12 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 			postProcessing = getTag(POST_PROCESSING_PATH);
 		}
 
-		status = getTagValue(STATUS_PATH, StringTag::getValue);
-		isLightOn = getTagValue(IS_LIGHT_ON_PATH, ByteTag::asBoolean);
-		isTerrainPopulated = getTagValue(TERRAIN_POPULATED_PATH, ByteTag::asBoolean);
+		status = header[HEADER_STATUS] != null ? ((StringTag) header[HEADER_STATUS]).getValue() : null;
+		isLightOn = header[HEADER_IS_LIGHT_ON] != null ? ((ByteTag) header[HEADER_IS_LIGHT_ON]).asBoolean() : null;
+		isTerrainPopulated = header[HEADER_TERRAIN_POPULATED] != null ? ((ByteTag) header[HEADER_TERRAIN_POPULATED]).asBoolean() : null;
 
 		// TODO: add load flag for this
-		upgradeData = getTag(UPGRADE_DATA_PATH);
+		upgradeData = (CompoundTag) header[HEADER_UPGRADE_DATA];
 
 		if ((loadFlags & STRUCTURES) != 0) {
 			structures = getTag(STRUCTURES_PATH);
@@ -282,14 +317,14 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 		}
 
 		// chunkXZ may be pre-populated with a solid guess so don't overwrite that guess if we don't have values.
-		if (X_POS_PATH.get(dataVersion).exists(data)) {
-			chunkX = getTagValue(X_POS_PATH, t -> ((NumberTag<?>)t).asInt());
+		if (header[HEADER_X_POS] != null) {
+			chunkX = ((NumberTag<?>) header[HEADER_X_POS]).asInt();
 		}
-		if (Z_POS_PATH.get(dataVersion).exists(data)) {
-			chunkZ = getTagValue(Z_POS_PATH, t -> ((NumberTag<?>)t).asInt());
+		if (header[HEADER_Z_POS] != null) {
+			chunkZ = ((NumberTag<?>) header[HEADER_Z_POS]).asInt();
 		}
 
-		yPos = getTagValue(Y_POS_PATH, t -> ((NumberTag<?>)t).asInt(), DEFAULT_WORLD_BOTTOM_Y_POS.get(dataVersion));
+		yPos = header[HEADER_Y_POS] != null ? ((NumberTag<?>) header[HEADER_Y_POS]).asInt() : DEFAULT_WORLD_BOTTOM_Y_POS.get(dataVersion);
 
 		boolean loadSections = ((loadFlags & (BLOCK_LIGHTS|BLOCK_STATES|SKY_LIGHT)) != 0)
 				|| (dataVersion >= JAVA_1_18_21W37A.id() && ((loadFlags & BIOMES) != 0));
@@ -603,6 +638,17 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 				.build(hm);
 	}
 
+	/**
+	 * Recomputes this chunk's heightmaps from its block data using the default {@link HeightmapCalculator}.
+	 * Only heightmaps already present are updated, if there are none the standard full chunk set is created.
+	 * @since {@link DataVersion#JAVA_1_13_18W06A}
+	 * @see HeightmapCalculator
+	 */
+	public void recomputeHeightMaps() {
+		checkRaw();
+		new HeightmapCalculator().recompute(this);
+	}
+
 	public IntArrayTag getLegacyHeightMap() {
 		return legacyHeightMap;
 	}
@@ -624,7 +670,7 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 		checkRaw();
 		if (dataVersion < JAVA_1_18_21W37A.id())
 			throw new VersionLacksSupportException(dataVersion, JAVA_1_18_21W37A, null, "3D palette biomes");
-		var section = getSection(y / 16);
+		var section = getSection(y >> 4);
 		if (section == null) return null;
 		return section.getBiomes().get((x & 0xF) / 4, (y & 0xF) / 4, (z & 0xF) / 4);
 	}
@@ -642,7 +688,7 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 		checkRaw();
 		if (dataVersion < JAVA_1_18_21W37A.id())
 			throw new VersionLacksSupportException(dataVersion, JAVA_1_18_21W37A, null, "3D palette biomes");
-		var section = getSection(y / 16);
+		var section = getSection(y >> 4);
 		if (section == null) return null;
 		return section.getBiomes().getByRef((x & 0xF) / 4, (y & 0xF) / 4, (z & 0xF) / 4);
 	}
@@ -659,7 +705,7 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 		checkRaw();
 		if (dataVersion < JAVA_1_18_21W37A.id())
 			throw new VersionLacksSupportException(dataVersion, JAVA_1_18_21W37A, null, "3D palette biomes");
-		var section = getSection(y / 16);
+		var section = getSection(y >> 4);
 		if (section != null) {
 			section.getBiomes().set((x & 0xF) / 4, (y & 0xF) / 4, (z & 0xF) / 4, tag);
 			return true;
@@ -681,7 +727,7 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 		checkRaw();
 		if (dataVersion < JAVA_1_13_17W47A.id())
 			throw new VersionLacksSupportException(dataVersion, JAVA_1_13_17W47A, null, "block palettes");
-		var section = getSection(y / 16);
+		var section = getSection(y >> 4);
 		if (section == null) return null;
 		var bs = section.getBlockStates();
 		return bs != null ? bs.get(x & 0xF, y & 0xF, z & 0xF) : null;
@@ -701,12 +747,25 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 		checkRaw();
 		if (dataVersion < JAVA_1_13_17W47A.id())
 			throw new VersionLacksSupportException(dataVersion, JAVA_1_13_17W47A, null, "block palettes");
-		var section = getSection(y / 16);
+		var section = getSection(y >> 4);
 		if (section == null) return null;
 		var bs = section.getBlockStates();
 		return bs != null ? bs.getByRef(x & 0xF, y & 0xF, z & 0xF) : null;
 	}
 
+	/**
+	 * Creates a cursor over every block of this chunk, in ascending y order. Prefer this over repeated calls to
+	 * {@link #getBlockAt(int, int, int)} for full chunk scans, it allocates nothing per block.
+	 * @since {@link DataVersion#JAVA_1_13_17W47A}
+	 * @see TerrainChunkBlockStateCursor
+	 */
+	public BlockStateIterator blockStateIterator() {
+		checkRaw();
+		if (dataVersion < JAVA_1_13_17W47A.id())
+			throw new VersionLacksSupportException(dataVersion, JAVA_1_13_17W47A, null, "block palettes");
+		return new TerrainChunkBlockStateCursor(this);
+	}
+
 	/** nullable */
 	public String getBlockNameAt(int x, int y, int z) {
 		CompoundTag blockTag = getBlockAtByRef(x, y, z);
@@ -727,7 +786,7 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 		if (dataVersion < JAVA_1_13_17W47A.id())
 			throw new VersionLacksSupportException(dataVersion, JAVA_1_13_17W47A, null, "block palettes");
 		ArgValidator.check(tag.containsKey("Name", StringTag.class), "block palette tag must contain a 'Name' StringTag");
-		var section = getSection(y / 16);
+		var section = getSection(y >> 4);
 		if (section != null) {
 			section.getBlockStates().set(x & 0xF, y & 0xF, z & 0xF, tag);
 			return true;
@@ -735,6 +794,18 @@ public abstract class TerrainChunkBase<T extends TerrainSectionBase> extends Sec
 		return false;
 	}
 
+	/**
+	 * Creates a batched edit session for this chunk. Prefer this over repeated calls to
+	 * {@link #setBlockAt(int, int, int, CompoundTag)} for large edits, each touched section is repacked only once
+	 * when the session is committed.
+	 * @since {@link DataVersion#JAVA_1_13_17W47A}
+	 * @see BlockEditSession
+	 */
+	public BlockEditSession editSession() {
+		checkRaw();
+		return new BlockEditSession(this);
+	}
+
 	/**
 	 * @return The carving masks of this chunk.
 	 */
@@ -8,6 +8,8 @@ import io.github.ensgijs.nbt.util.ArgValidator;
 import io.github.ensgijs.nbt.util.IdentityHelper;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -40,19 +42,100 @@ public final class EntityFactory {
     //      supplied. In fact the Creator Selection phase described previously could simply be one such Comparator
     //      and the registered default creator can simply "always" be in the running.
 
+    /** Caches are not grown past this many entries, ids found in real world data number in the low hundreds. */
+    private static final int MAX_ID_CACHE_SIZE = 4096;
+
+    /** Raw id, exactly as found in nbt, to its normalized form. Independent of the factory configuration. */
+    private static final Map<String, String> NORMALIZED_ID_CACHE = new ConcurrentHashMap<>();
+
     /**
-     * This map controls the factory creation behavior, keys are entity ID's (such as "PIG").
-     * ID names in this map should not contain the "minecraft:" prefix and should be all UPPER CASE.
-     * @see #normalizeId(String)
+     * Immutable snapshot of the factory configuration. Every configuration change builds a new snapshot and
+     * publishes it with a single volatile write, so {@link #create(CompoundTag, int)} never locks and never
+     * observes a half applied change - making it safe to use while parsing regions concurrently.
      */
-    private static final Map<String, EntityCreator<?>> ENTITY_CREATORS_BY_ID = new HashMap<>();
-    private static EntityCreator<?> DEFAULT_ENTITY_CREATOR = new DefaultEntityCreator();
+    private static volatile Registry registry = new Registry(Map.of(), Map.of(), new DefaultEntityCreator());
+
+    private record Resolution(String idNorm, String idPreferredNorm, EntityCreator<?> creator) {}
+
+    private static final class Registry {
+        /**
+         * Controls the factory creation behavior, keys are entity ID's (such as "PIG").
+         * ID names in this map do not contain the "minecraft:" prefix and are all UPPER CASE.
+         * @see #normalizeId(String)
+         */
+        final Map<String, EntityCreator<?>> creatorsById;
+        /** Mapping table to translate "old id" names to new ones to simplify creator registration. */
+        final Map<String, String> idRemap;
+        final EntityCreator<?> defaultCreator;
+        /** Raw id, exactly as found in nbt, to its fully resolved creation info. Lives and dies with this snapshot. */
+        final Map<String, Resolution> resolved = new ConcurrentHashMap<>();
+
+        Registry(Map<String, EntityCreator<?>> creatorsById, Map<String, String> idRemap, EntityCreator<?> defaultCreator) {
+            this.creatorsById = Map.copyOf(creatorsById);
+            this.idRemap = Map.copyOf(idRemap);
+            this.defaultCreator = defaultCreator;
+        }
+
+        Resolution resolve(String idRaw) {
+            Resolution resolution = resolved.get(idRaw);
+            if (resolution == null) {
+                String idNorm = normalizeId(idRaw);
+                resolution = new Resolution(
+                        idNorm,
+                        idRemap.getOrDefault(idNorm, idNorm),
+                        creatorsById.getOrDefault(idNorm, defaultCreator));
+                if (resolved.size() < MAX_ID_CACHE_SIZE) resolved.put(idRaw, resolution);
+            }
+            return resolution;
+        }
+    }
+
+    /** Mutable working copy of a {@link Registry} used while applying a configuration change. */
+    private static final class RegistryBuilder {
+        final Map<String, EntityCreator<?>> creatorsById;
+        final Map<String, String> idRemap;
+        EntityCreator<?> defaultCreator;
 
-    /** Provides a mapping table to translate "old id" names to new ones to simplify creator registration. */
-    private static final Map<String, String> ID_REMAP;
+        RegistryBuilder(Registry from) {
+            creatorsById = new HashMap<>(from.creatorsById);
+            idRemap = new HashMap<>(from.idRemap);
+            defaultCreator = from.defaultCreator;
+        }
+
+        void clearEntityIdRemap() {
+            // contract of supporting functions ensure that no key is also a value in this map, therefore
+            // it is not possible that we remove an explicit "value" mapping.
+            creatorsById.keySet().removeAll(idRemap.keySet());
+            idRemap.clear();
+        }
+
+        void registerIdRemap(String oldId, String preferredId) {
+            String oldIdNorm = normalizeId(oldId);
+            String newIdNorm = normalizeId(preferredId);
+            ArgValidator.check(!idRemap.containsKey(newIdNorm) && !idRemap.containsValue(oldIdNorm),
+                    String.format("Chaining of mappings not supported. While adding %s -> %s", oldIdNorm, newIdNorm));
+            idRemap.put(oldIdNorm, newIdNorm);
+            if (creatorsById.containsKey(newIdNorm)) {
+                creatorsById.putIfAbsent(oldIdNorm, creatorsById.get(newIdNorm));
+            }
+        }
+
+        Registry build() {
+            return new Registry(creatorsById, idRemap, defaultCreator);
+        }
+    }
+
+    /**
+     * Applies a configuration change to a copy of the current registry and publishes the result. If the change
+     * throws the current registry is left untouched.
+     */
+    private static synchronized void update(Consumer<RegistryBuilder> change) {
+        RegistryBuilder builder = new RegistryBuilder(registry);
+        change.accept(builder);
+        registry = builder.build();
+    }
 
     static {
-        ID_REMAP = new HashMap<>();
         resetEntityIdRemap();
     }
 
@@ -64,10 +147,7 @@ public final class EntityFactory {
      * @see #registerIdRemap(String, String)
      */
     public static void clearEntityIdRemap() {
-        // contract of supporting functions ensure that no key is also a value in this map, therefore
-        // it is not possible that we remove an explicit "value" mapping.
-        ENTITY_CREATORS_BY_ID.keySet().removeAll(ID_REMAP.keySet());
-        ID_REMAP.clear();
+        update(RegistryBuilder::clearEntityIdRemap);
     }
 
     /**
@@ -76,61 +156,56 @@ public final class EntityFactory {
      * @see #registerIdRemap(String, String)
      */
     public static void resetEntityIdRemap() {
-        clearEntityIdRemap();
-        // sources:
-        // https://technical-minecraft.fandom.com/wiki/Entity
-        // https://minecraft.fandom.com/wiki/Java_Edition_data_values#Entities
-        registerIdRemap("ArmorStand", "armor_stand");
-        registerIdRemap("CaveSpider", "cave_spider");
-        registerIdRemap("Dragon", "ender_dragon");
-        registerIdRemap("EnderCrystal", "end_crystal");
-        registerIdRemap("ender_crystal", "end_crystal");
-        registerIdRemap("EnderEye", "eye_of_ender");
-        registerIdRemap("EnderPearl", "ender_pearl");
-        registerIdRemap("ExpBottle", "experience_bottle");
-        registerIdRemap("FallingBlock", "falling_block");
-        registerIdRemap("FireworkRocket", "firework_rocket");
-        registerIdRemap("GiantZombie", "giant");
-        registerIdRemap("IronGolem", "iron_golem");
-        registerIdRemap("ItemFrame", "item_frame");
-        registerIdRemap("LargeFireball", "fireball");
-        registerIdRemap("LeashKnot", "leash_knot");
-        registerIdRemap("LightningBolt", "lightning_bolt");
-        registerIdRemap("MagmaCube", "magma_cube");
-        // TODO: find old name for command_block_minecart - not that anyone is likely to notice
-        registerIdRemap("MinecartChest", "chest_minecart");
-        registerIdRemap("MinecartEmpty", "minecart");
-        registerIdRemap("MinecartFurnace", "furnace_minecart");
-        registerIdRemap("MinecartHopper", "hopper_minecart");
-        registerIdRemap("MinecartMobSpawner", "spawner_minecart");
-        registerIdRemap("MinecartTNT", "tnt_minecart");
-        registerIdRemap("PigZombie", "zombified_piglin");
-        registerIdRemap("zombie_pigman", "zombified_piglin");
-        registerIdRemap("SmallFireball", "small_fireball");
-        registerIdRemap("Snowman", "snow_golem");
-        registerIdRemap("TNTPrimed", "tnt");
-        registerIdRemap("WitherSkull", "wither_skull");
-        registerIdRemap("XPOrb", "experience_orb");
+        update(b -> {
+            b.clearEntityIdRemap();
+            // sources:
+            // https://technical-minecraft.fandom.com/wiki/Entity
+            // https://minecraft.fandom.com/wiki/Java_Edition_data_values#Entities
+            b.registerIdRemap("ArmorStand", "armor_stand");
+            b.registerIdRemap("CaveSpider", "cave_spider");
+            b.registerIdRemap("Dragon", "ender_dragon");
+            b.registerIdRemap("EnderCrystal", "end_crystal");
+            b.registerIdRemap("ender_crystal", "end_crystal");
+            b.registerIdRemap("EnderEye", "eye_of_ender");
+            b.registerIdRemap("EnderPearl", "ender_pearl");
+            b.registerIdRemap("ExpBottle", "experience_bottle");
+            b.registerIdRemap("FallingBlock", "falling_block");
+            b.registerIdRemap("FireworkRocket", "firework_rocket");
+            b.registerIdRemap("GiantZombie", "giant");
+            b.registerIdRemap("IronGolem", "iron_golem");
+            b.registerIdRemap("ItemFrame", "item_frame");
+            b.registerIdRemap("LargeFireball", "fireball");
+            b.registerIdRemap("LeashKnot", "leash_knot");
+            b.registerIdRemap("LightningBolt", "lightning_bolt");
+            b.registerIdRemap("MagmaCube", "magma_cube");
+            // TODO: find old name for command_block_minecart - not that anyone is likely to notice
+            b.registerIdRemap("MinecartChest", "chest_minecart");
+            b.registerIdRemap("MinecartEmpty", "minecart");
+            b.registerIdRemap("MinecartFurnace", "furnace_minecart");
+            b.registerIdRemap("MinecartHopper", "hopper_minecart");
+            b.registerIdRemap("MinecartMobSpawner", "spawner_minecart");
+            b.registerIdRemap("MinecartTNT", "tnt_minecart");
+            b.registerIdRemap("PigZombie", "zombified_piglin");
+            b.registerIdRemap("zombie_pigman", "zombified_piglin");
+            b.registerIdRemap("SmallFireball", "small_fireball");
+            b.registerIdRemap("Snowman", "snow_golem");
+            b.registerIdRemap("TNTPrimed", "tnt");
+            b.registerIdRemap("WitherSkull", "wither_skull");
+            b.registerIdRemap("XPOrb", "experience_orb");
+        });
     }
 
     /**
      * Registers a mapping from an old id name to a new one.
      * Chaining of mappings is not supported and is guarded against.
-     * Maintains ENTITY_CREATORS_BY_ID map to ensure any creator registered for the preferredId is fired when the oldId
+     * Maintains the creators by id map to ensure any creator registered for the preferredId is fired when the oldId
      * is encountered IFF there is not already a creator registered for the oldId.
      * <p>Note that creators are ALWAYS passed the preferredId even if the data source used an old id.</p>
      * @param oldId ID found in entity nbt data for versions of minecraft prior to, or even later than, the preferred version.
      * @param preferredId Preferred ID found in the entity nbt data for the most current supported minecraft version.
      */
     public static void registerIdRemap(String oldId, String preferredId) {
-        String oldIdNorm = normalizeId(oldId);
-        String newIdNorm = normalizeId(preferredId);
-        ArgValidator.check(!ID_REMAP.containsKey(newIdNorm) && !ID_REMAP.containsValue(oldIdNorm),
-                String.format("Chaining of mappings not supported. While adding %s -> %s", oldIdNorm, newIdNorm));
-        ID_REMAP.put(oldIdNorm, newIdNorm);
-        if (ENTITY_CREATORS_BY_ID.containsKey(newIdNorm)) {
-            ENTITY_CREATORS_BY_ID.putIfAbsent(oldIdNorm, ENTITY_CREATORS_BY_ID.get(newIdNorm));
-        }
+        update(b -> b.registerIdRemap(oldId, preferredId));
     }
 
     /**
@@ -140,8 +215,11 @@ public final class EntityFactory {
      * @return not null; list of old id's (in normalized form) that are mapped to the given currentID
      */
     public static List<String> reverseIdRemap(String currentId) {
-        final String idNorm = normalizeId(currentId);
-        return ID_REMAP.entrySet().stream()
+        return reverseIdRemap(registry.idRemap, normalizeId(currentId));
+    }
+
+    private static List<String> reverseIdRemap(Map<String, String> idRemap, String idNorm) {
+        return idRemap.entrySet().stream()
                 .filter(e -> idNorm.equals(e.getValue()))
                 .map(Map.Entry::getKey)
                 .collect(Collectors.toList());
@@ -153,21 +231,21 @@ public final class EntityFactory {
      */
     public static void setDefaultEntityCreator(EntityCreator<?> creator) {
         if (creator == null) throw new IllegalArgumentException();
-        DEFAULT_ENTITY_CREATOR = creator;
+        update(b -> b.defaultCreator = creator);
     }
 
     /** Gets the current default entity creator instance. */
     public static EntityCreator<?> getDefaultEntityCreator() {
-        return DEFAULT_ENTITY_CREATOR;
+        return registry.defaultCreator;
     }
 
     /**
      * Gets the set of NORMALIZED id's which have creators registered.
      * @see #normalizeId(String)
-     * @return Key set from underlying map, modifications to this map will affect the set of registered creators.
+     * @return Unmodifiable snapshot of the registered id's, it does not reflect later registrations.
      */
     public static Set<String> getRegisteredCreatorIdKeys() {
-        return ENTITY_CREATORS_BY_ID.keySet();
+        return registry.creatorsById.keySet();
     }
 
     /**
@@ -176,7 +254,7 @@ public final class EntityFactory {
      * @return Registered creator or null if there is none (does not fall back to the default creator).
      */
     public static EntityCreator<?> getCreatorById(String id) {
-        return ENTITY_CREATORS_BY_ID.get(id);
+        return registry.creatorsById.get(id);
     }
 
     /**
@@ -184,13 +262,16 @@ public final class EntityFactory {
      * Does NOT reset the entity id remap - call {@link #resetEntityIdRemap()} to do that.
      */
     public static void clearCreators() {
-        ENTITY_CREATORS_BY_ID.clear();
-        DEFAULT_ENTITY_CREATOR = new DefaultEntityCreator();
+        update(b -> {
+            b.creatorsById.clear();
+            b.defaultCreator = new DefaultEntityCreator();
+        });
     }
 
     /**
      * Checks that the given id has a value then normalizes it by removing any "minecraft:"
      * prefix and making them ALL CAPS for ease of use with custom enum lookups by name.
+     * Results are cached so repeated calls with the same id do not allocate.
      *
      * <p>This function DOES NOT perform any name remapping for id's from old versions.
      * If that is what you are looking for, use {@link #normalizeAndRemapId(String)} instead.</p>
@@ -202,10 +283,14 @@ public final class EntityFactory {
      */
     public static String normalizeId(String id) {
         ArgValidator.requireValue(id);
-        id = id.toUpperCase();
-        if (id.startsWith("MINECRAFT:")) id = id.substring(10);
-        ArgValidator.requireNotEmpty(id);
-        return id;
+        String idNorm = NORMALIZED_ID_CACHE.get(id);
+        if (idNorm == null) {
+            idNorm = id.toUpperCase();
+            if (idNorm.startsWith("MINECRAFT:")) idNorm = idNorm.substring(10);
+            ArgValidator.requireNotEmpty(idNorm);
+            if (NORMALIZED_ID_CACHE.size() < MAX_ID_CACHE_SIZE) NORMALIZED_ID_CACHE.put(id, idNorm);
+        }
+        return idNorm;
     }
 
     /**
@@ -213,8 +298,8 @@ public final class EntityFactory {
      * @return Remapped normalized id if there is one, otherwise same as calling {@link #normalizeId(String)}
      */
     public static String normalizeAndRemapId(String id) {
-        final String idNorm = normalizeId(id);
-        return ID_REMAP.getOrDefault(idNorm, idNorm);
+        ArgValidator.requireValue(id);
+        return registry.resolve(id).idPreferredNorm();
     }
 
     /**
@@ -229,13 +314,15 @@ public final class EntityFactory {
      */
     public static void registerCreator(EntityCreator<?> creator, String... entityId) {
         if (creator == null) throw new IllegalArgumentException("creator must not be null");
-        for (String id : entityId) {
-            String idNorm = normalizeId(id);
-            ENTITY_CREATORS_BY_ID.put(idNorm, creator);
-            for (String legacyId : reverseIdRemap(idNorm)) {
-                ENTITY_CREATORS_BY_ID.putIfAbsent(legacyId, creator);
+        update(b -> {
+            for (String id : entityId) {
+                String idNorm = normalizeId(id);
+                b.creatorsById.put(idNorm, creator);
+                for (String legacyId : reverseIdRemap(b.idRemap, idNorm)) {
+                    b.creatorsById.putIfAbsent(legacyId, creator);
+                }
             }
-        }
+        });
     }
 
     /**
@@ -250,12 +337,14 @@ public final class EntityFactory {
     public static Entity create(CompoundTag tag, int dataVersion) {
         if (tag == null) throw new IllegalArgumentException("tag must not be null");
         String idRaw = tag.getString("id", null);
-        String idNorm = normalizeId(idRaw);
-        String idPreferredNorm = ID_REMAP.getOrDefault(idNorm, idNorm);
-        EntityCreator<?> creator = ENTITY_CREATORS_BY_ID.getOrDefault(idNorm, DEFAULT_ENTITY_CREATOR);
+        ArgValidator.requireValue(idRaw);
+        // single cache lookup, no allocations, once this id has been seen
+        Resolution resolution = registry.resolve(idRaw);
+        String idNorm = resolution.idNorm();
+        EntityCreator<?> creator = resolution.creator();
         Entity entity;
         try {
-            entity = creator.create(idPreferredNorm, tag, dataVersion);
+            entity = creator.create(resolution.idPreferredNorm(), tag, dataVersion);
         } catch (IllegalEntityTagException ex) {
             throw ex;
         } catch (Exception ex) {
@@ -0,0 +1,136 @@
+package io.github.ensgijs.nbt.mca.entities;
+
+import io.github.ensgijs.nbt.mca.EntitiesChunkBase;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import io.github.ensgijs.nbt.tag.NumberTag;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.util.UUID;
+
+/**
+ * Lightweight, read-through, view of an entity's nbt data. Creating a view does not parse anything, the id,
+ * UUID and position getters read directly from the wrapped {@link CompoundTag} every time they are called, so a
+ * view never goes stale when the tag is modified.
+ * <p>Use this instead of a full {@link Entity} when only ids or positions are needed, for example when counting
+ * entities by type. Passengers, and every other field handled by {@link EntityBase}, are not parsed unless
+ * {@link #toEntity()} is called.</p>
+ * @see EntitiesChunkBase#getEntityViews()
+ */
+public class EntityView {
+    private final CompoundTag data;
+    private final int dataVersion;
+    private Entity entity;
+
+    /**
+     * @param data entity nbt data, not null.
+     * @param dataVersion data version of the chunk the entity belongs to.
+     */
+    public EntityView(CompoundTag data, int dataVersion) {
+        this.data = ArgValidator.requireValue(data, "data");
+        this.dataVersion = dataVersion;
+    }
+
+    /**
+     * Creates a view of a full entity, {@link #toEntity()} will return the given entity. The view reads the
+     * entity's handle as of its last {@link Entity#updateHandle()}, which is only called here if the entity has
+     * never been written to its handle.
+     * @param entity entity, not null.
+     * @param dataVersion data version of the chunk the entity belongs to.
+     */
+    public EntityView(Entity entity, int dataVersion) {
+        this(handleOf(ArgValidator.requireValue(entity, "entity")), dataVersion);
+        this.entity = entity;
+    }
+
+    private static CompoundTag handleOf(Entity entity) {
+        CompoundTag handle = entity.getHandle();
+        return handle != null && handle.containsKey("id") ? handle : entity.updateHandle();
+    }
+
+    /** @return A reference to the wrapped entity nbt data. */
+    public CompoundTag getHandle() {
+        return data;
+    }
+
+    public int getDataVersion() {
+        return dataVersion;
+    }
+
+    /** @return The entity's id exactly as stored, such as "minecraft:zombie", or null if missing. */
+    public String getId() {
+        return data.getString("id", null);
+    }
+
+    /**
+     * @return True if this entity's id matches the given id after normalization and remapping.
+     * @see EntityFactory#normalizeAndRemapId(String)
+     */
+    public boolean isId(String id) {
+        String myId = getId();
+        return myId != null && id != null
+                && EntityFactory.normalizeAndRemapId(myId).equals(EntityFactory.normalizeAndRemapId(id));
+    }
+
+    /** @return The entity's UUID or null if missing or ZERO. */
+    public UUID getUuid() {
+        return EntityUtil.getUuid(dataVersion, data);
+    }
+
+    /** @return True if the entity has a valid 3 element "Pos" tag. */
+    public boolean hasPosition() {
+        ListTag<?> pos = data.getListTag("Pos");
+        return pos != null && pos.size() == 3;
+    }
+
+    /** @return Entity x position, or NaN if it has no position. */
+    public double getX() {
+        return getPos(0);
+    }
+
+    /** @return Entity y position, or NaN if it has no position. */
+    public double getY() {
+        return getPos(1);
+    }
+
+    /** @return Entity z position, or NaN if it has no position. */
+    public double getZ() {
+        return getPos(2);
+    }
+
+    private double getPos(int i) {
+        ListTag<?> pos = data.getListTag("Pos");
+        if (pos == null || pos.size() != 3) return Double.NaN;
+        return ((NumberTag<?>) pos.get(i)).asDouble();
+    }
+
+    /** @return True if the entity has at least one passenger. */
+    public boolean hasPassengers() {
+        ListTag<?> passengers = data.getListTag("Passengers");
+        return passengers != null && !passengers.isEmpty();
+    }
+
+    /** @return True if {@link #toEntity()} has been called (or this view was created from an entity). */
+    public boolean isEntityCreated() {
+        return entity != null;
+    }
+
+    /**
+     * Upgrades this view to a full entity, created with {@link EntityFactory#create(CompoundTag, int)} on first
+     * call. The entity shares this view's nbt data, call {@link Entity#updateHandle()} to apply changes made
+     * to the entity back to it.
+     * @return The same entity instance every call.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Entity> T toEntity() {
+        if (entity == null) {
+            entity = EntityFactory.create(data, dataVersion);
+        }
+        return (T) entity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s [%.2f, %.2f, %.2f]", getId(), getUuid(), getX(), getY(), getZ());
+    }
+}
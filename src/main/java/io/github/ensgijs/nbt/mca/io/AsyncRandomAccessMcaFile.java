@@ -0,0 +1,277 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.SilentIOException;
+import io.github.ensgijs.nbt.mca.ChunkBase;
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Asynchronous wrapper around a {@link RandomAccessMcaFile} which splits chunk reads and writes into an IO stage
+ * and a CPU stage so that decompression and nbt parsing / serialization never block file access.
+ * <ul>
+ *     <li>IO stage - reading or writing the raw, compressed, chunk bytes and maintaining the file header. Runs on
+ *     the IO executor while holding the wrapped {@link RandomAccessMcaFile}'s monitor, so an IO executor may
+ *     safely be shared across many files. IO steps of one file run one at a time in call order, whatever the
+ *     executor, so a write is on disk before a later read, write or flush of the same file runs.</li>
+ *     <li>CPU stage - decompression + nbt parsing ({@link ChunkBase#deserialize}) or nbt serialization +
+ *     compression. Runs on the CPU executor and touches no file state, so many chunks of the same file may be
+ *     processed concurrently.</li>
+ * </ul>
+ * <p>Example, read every chunk in a region while overlapping disk access with parsing:</p>
+ * <pre>{@code
+ * ExecutorService io = Executors.newFixedThreadPool(2);
+ * try (var amf = new AsyncRandomAccessMcaFile<>(
+ *         new RandomAccessMcaFile<>(TerrainChunk.class, file, "r"), io, ForkJoinPool.commonPool())) {
+ *     List<TerrainChunk> chunks = amf.readAllAsync().join();
+ * }
+ * }</pre>
+ * <p>All futures complete exceptionally with a {@link SilentIOException} (wrapped in a
+ * {@link CompletionException}) if an {@link IOException} occurs.</p>
+ * <p>Chunks passed to {@link #writeAsync(ChunkBase)} must not be modified until the returned future completes.</p>
+ */
+public class AsyncRandomAccessMcaFile<T extends ChunkBase> implements Closeable {
+    private final RandomAccessMcaFile<T> ramf;
+    private final Executor ioExecutor;
+    private final Executor cpuExecutor;
+    private final ExecutorService ownedIoExecutor;
+    /** IO step of the most recent call, each IO step is chained onto its predecessor. Guarded by this. */
+    private CompletableFuture<?> ioTail = CompletableFuture.completedFuture(null);
+
+    /**
+     * @param ramf file to wrap, this instance takes ownership of it and closes it when closed.
+     * @param ioExecutor executor which performs file access.
+     * @param cpuExecutor executor which performs chunk (de)serialization.
+     */
+    public AsyncRandomAccessMcaFile(RandomAccessMcaFile<T> ramf, Executor ioExecutor, Executor cpuExecutor) {
+        this.ramf = ArgValidator.requireValue(ramf, "ramf");
+        this.ioExecutor = ArgValidator.requireValue(ioExecutor, "ioExecutor");
+        this.cpuExecutor = ArgValidator.requireValue(cpuExecutor, "cpuExecutor");
+        this.ownedIoExecutor = null;
+    }
+
+    /**
+     * Creates an instance which owns a dedicated single thread IO executor, shut down when this instance is
+     * closed, and uses the {@link ForkJoinPool#commonPool()} for chunk (de)serialization.
+     * @param ramf file to wrap, this instance takes ownership of it and closes it when closed.
+     */
+    public AsyncRandomAccessMcaFile(RandomAccessMcaFile<T> ramf) {
+        this.ramf = ArgValidator.requireValue(ramf, "ramf");
+        this.ownedIoExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "mca-io " + ramf.getRegionXZ());
+            t.setDaemon(true);
+            return t;
+        });
+        this.ioExecutor = ownedIoExecutor;
+        this.cpuExecutor = ForkJoinPool.commonPool();
+    }
+
+    /**
+     * @return the wrapped file. Callers must synchronize on it if it is used directly while async operations
+     * are outstanding.
+     */
+    public RandomAccessMcaFile<T> getFile() {
+        return ramf;
+    }
+
+    public IntPointXZ getRegionXZ() {
+        return ramf.getRegionXZ();
+    }
+
+    /** Reads the specified chunk, if it exists, using the load flags of the wrapped file. */
+    public CompletableFuture<T> readAsync(int chunkIndex) {
+        return readAsync(chunkIndex, ramf.getLoadFlags());
+    }
+
+    /**
+     * Reads the specified chunk if it exists.
+     * @return Future which completes with the chunk, or null if it does not exist.
+     */
+    public CompletableFuture<T> readAsync(int chunkIndex, long loadFlags) {
+        return readRawWithTimestampAsync(chunkIndex)
+                .thenApplyAsync(raw -> raw != null ? deserialize(chunkIndex, raw, loadFlags) : null, cpuExecutor);
+    }
+
+    /**
+     * Reads the raw, still compressed, data of the specified chunk if it exists.
+     * @return Future which completes with the data as described by {@link RandomAccessMcaFile#readRaw(int)}.
+     */
+    public CompletableFuture<byte[]> readRawAsync(int chunkIndex) {
+        return io(() -> ramf.readRaw(chunkIndex));
+    }
+
+    /**
+     * Reads all chunks which exist in the file. Raw reads are issued in chunk index order and each chunk is
+     * parsed as soon as its bytes are available.
+     * @return Future which completes with the chunks in chunk index order.
+     */
+    public CompletableFuture<List<T>> readAllAsync(long loadFlags) {
+        return io(() -> {
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < 1024; i++) {
+                if (ramf.hasChunk(i)) indexes.add(i);
+            }
+            return indexes;
+        }).thenCompose(indexes -> {
+            List<CompletableFuture<T>> futures = new ArrayList<>(indexes.size());
+            for (int i : indexes) {
+                futures.add(readAsync(i, loadFlags));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+                List<T> chunks = new ArrayList<>(futures.size());
+                for (CompletableFuture<T> f : futures) {
+                    T chunk = f.join();
+                    if (chunk != null) chunks.add(chunk);
+                }
+                return chunks;
+            });
+        });
+    }
+
+    /** @see #readAllAsync(long) */
+    public CompletableFuture<List<T>> readAllAsync() {
+        return readAllAsync(ramf.getLoadFlags());
+    }
+
+    /**
+     * Serializes the given chunk on the CPU executor then writes it on the IO executor. The write takes its place
+     * in the file's IO order when this method is called, not when serialization finishes, so of two writes of the
+     * same chunk the later call always wins. Argument validation and
+     * the chunk last updated timestamp update (see
+     * {@link RandomAccessMcaFile#setAlwaysUpdateChunkLastUpdatedTimestamp(boolean)}) happen immediately on the
+     * calling thread.
+     * @throws IOException if the file is read only.
+     * @throws IllegalArgumentException if the chunk XZ is not set.
+     * @throws IndexOutOfBoundsException if the chunk does not belong to this region.
+     */
+    public CompletableFuture<Void> writeAsync(T chunk) throws IOException {
+        ramf.checkWritable(chunk);
+        if (ramf.isAlwaysUpdateChunkLastUpdatedTimestamp() || chunk.getLastMCAUpdate() <= 0) {
+            chunk.setLastMCAUpdate((int) (System.currentTimeMillis() / 1000));
+        }
+        final int index = chunk.getIndex();
+        final int timestamp = chunk.getLastMCAUpdate();
+        final boolean updateHandle = ramf.isAutoUpdateHandelOnWrite();
+        CompletableFuture<byte[]> serialized = CompletableFuture.supplyAsync(() -> {
+            try {
+                return RandomAccessMcaFile.serializeChunk(chunk, updateHandle, 8192);
+            } catch (IOException ex) {
+                throw new SilentIOException("Failed to serialize chunk " + chunk.getChunkXZ(), ex);
+            }
+        }, cpuExecutor);
+        return ioAfter(serialized, data -> {
+            ramf.writeRaw(index, data, timestamp);
+            return null;
+        });
+    }
+
+    /** Writes already compressed chunk data, see {@link RandomAccessMcaFile#writeRaw(int, byte[], int)}. */
+    public CompletableFuture<Void> writeRawAsync(int chunkIndex, byte[] data, int timestamp) {
+        return io(() -> {
+            ramf.writeRaw(chunkIndex, data, timestamp);
+            return null;
+        });
+    }
+
+    /**
+     * Flushes the file header once the IO of all previous calls, including pending {@link #writeAsync(ChunkBase)}
+     * serializations, has completed.
+     * @see RandomAccessMcaFile#flush()
+     */
+    public CompletableFuture<Void> flushAsync() {
+        return io(() -> {
+            ramf.flush();
+            return null;
+        });
+    }
+
+    /**
+     * Closes the wrapped file on the IO executor. Callers should wait on outstanding write futures first.
+     * @see RandomAccessMcaFile#close()
+     */
+    public CompletableFuture<Void> closeAsync() {
+        CompletableFuture<Void> future = io(() -> {
+            ramf.close();
+            return null;
+        });
+        if (ownedIoExecutor != null) {
+            future = future.whenComplete((v, ex) -> ownedIoExecutor.shutdown());
+        }
+        return future;
+    }
+
+    /**
+     * Closes the wrapped file, blocking until done. Callers should wait on outstanding write futures first.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            closeAsync().join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof SilentIOException && ex.getCause().getCause() instanceof IOException)
+                throw (IOException) ex.getCause().getCause();
+            throw ex;
+        }
+    }
+
+    private T deserialize(int chunkIndex, RawChunk raw, long loadFlags) {
+        T chunk = ramf.createChunkInstance();
+        IntPointXZ chunkXZ = McaFileBase.getRelativeChunkXZ(chunkIndex).add(ramf.getRegionChunkOffsetXZ());
+        try {
+            chunk.deserialize(new ByteArrayInputStream(raw.data), loadFlags, raw.timestamp, chunkXZ.getX(), chunkXZ.getZ());
+        } catch (IOException ex) {
+            throw new SilentIOException("Failed to deserialize chunk " + chunkXZ, ex);
+        }
+        return chunk;
+    }
+
+    private CompletableFuture<RawChunk> readRawWithTimestampAsync(int chunkIndex) {
+        return io(() -> {
+            byte[] data = ramf.readRaw(chunkIndex);
+            return data != null ? new RawChunk(data, ramf.getChunkTimestamp(chunkIndex)) : null;
+        });
+    }
+
+    private <R> CompletableFuture<R> io(IoTask<R> task) {
+        return ioAfter(CompletableFuture.completedFuture(null), ignored -> task.run());
+    }
+
+    /**
+     * Queues an IO step which runs on the IO executor once both the IO step of the previous call and the given
+     * input have completed. A failed step does not hold up the ones queued after it.
+     */
+    private synchronized <D, R> CompletableFuture<R> ioAfter(CompletableFuture<D> input, IoFunction<D, R> task) {
+        CompletableFuture<R> future = ioTail.handle((v, ex) -> null)
+                .thenCompose(ignored -> input)
+                .thenApplyAsync(d -> {
+                    synchronized (ramf) {
+                        try {
+                            return task.apply(d);
+                        } catch (IOException ex) {
+                            throw new SilentIOException(ex);
+                        }
+                    }
+                }, ioExecutor);
+        ioTail = future;
+        return future;
+    }
+
+    @FunctionalInterface
+    private interface IoTask<R> {
+        R run() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface IoFunction<D, R> {
+        R apply(D input) throws IOException;
+    }
+
+    private record RawChunk(byte[] data, int timestamp) {}
+}
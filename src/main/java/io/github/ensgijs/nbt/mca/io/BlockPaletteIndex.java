@@ -0,0 +1,472 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.BinaryNbtHelpers;
+import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.io.NamedTag;
+import io.github.ensgijs.nbt.io.SilentIOException;
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.util.IntPointXYZ;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact index of which blocks exist in each chunk section of each region mca file of a world, built by reading
+ * only section palettes with {@link ChunkPaletteReader}. Answers questions like "which chunks contain a spawner" or
+ * "how much diamond ore is in each section" without loading chunks.
+ * <p>Built with block counts the index holds a per section histogram of block names and is exact. Built without,
+ * the packed block data is never decoded, which is faster, but the index only knows which block names each
+ * section palette lists - which may include blocks no longer present, so results mean "may contain".</p>
+ * <p>Like {@link PoiQueryIndex}, each region entry remembers the length and last modified time of the file it was
+ * built from and {@link #update()} only re-reads chunks whose header timestamp or sector count changed. Regions
+ * are processed in parallel. The index can be persisted with {@link #save(Path)} and reloaded with
+ * {@link #load(Path, Path)}; it is stored as a GZip compressed nbt file.</p>
+ * <pre>{@code
+ * BlockPaletteIndex index = BlockPaletteIndex.build(worldRoot, false);
+ * for (IntPointXZ chunkXZ : index.findChunks("minecraft:spawner")) { ... }
+ * }</pre>
+ */
+public class BlockPaletteIndex {
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path worldRoot;
+    private final boolean countBlocks;
+    // block name dictionary, a name's id is its index in this list
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final Map<IntPointXZ, RegionEntry> regions = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty index. Call {@link #update()} to populate it.
+     * @param worldRoot world root directory - the directory which contains "region".
+     * @param countBlocks true to decode block data and keep exact per section block counts, false to only
+     *                    record palettes.
+     */
+    public BlockPaletteIndex(Path worldRoot, boolean countBlocks) {
+        this.worldRoot = worldRoot;
+        this.countBlocks = countBlocks;
+    }
+
+    /** Creates and populates an index. */
+    public static BlockPaletteIndex build(Path worldRoot, boolean countBlocks) throws IOException {
+        BlockPaletteIndex index = new BlockPaletteIndex(worldRoot, countBlocks);
+        index.update();
+        return index;
+    }
+
+    public Path getWorldRoot() {
+        return worldRoot;
+    }
+
+    /** @return True if this index holds exact block counts, false if it only records section palettes. */
+    public boolean isCountBlocks() {
+        return countBlocks;
+    }
+
+    /** @return Number of regions in this index, including regions which may now be stale. */
+    public int getRegionCount() {
+        return regions.size();
+    }
+
+    /** @return All block names seen while building this index. */
+    public synchronized List<String> getKnownBlockNames() {
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Brings this index up to date with the region files on disk. Regions whose file is unchanged are skipped
+     * entirely, regions whose file was deleted are dropped. Regions are processed in parallel.
+     * @return Number of chunks which were (re)read.
+     */
+    public int update() throws IOException {
+        List<Path> files = McaHeaderScanner.listMcaFiles(worldRoot, "region");
+        Set<IntPointXZ> seen = new HashSet<>();
+        for (Path file : files) {
+            seen.add(McaFileHelpers.regionXZFromFileName(file.getFileName().toString()));
+        }
+        regions.keySet().retainAll(seen);
+        try {
+            return files.parallelStream().mapToInt(file -> {
+                try {
+                    return updateRegion(file);
+                } catch (IOException ex) {
+                    throw new SilentIOException("Failed to index " + file, ex);
+                }
+            }).sum();
+        } catch (SilentIOException ex) {
+            throw (IOException) ex.getCause();
+        }
+    }
+
+    private int updateRegion(Path file) throws IOException {
+        final McaFileHeader header = McaFileHeader.read(file);
+        final IntPointXZ regionXZ = header.getRegionXZ();
+        final RegionEntry old = regions.get(regionXZ);
+        if (old != null && old.fileLength == header.getFileLength() && old.lastModified == header.getLastModified())
+            return 0;
+        final RegionEntry entry = new RegionEntry(header.getFileLength(), header.getLastModified());
+        int chunksRead = 0;
+        if (!header.isEmpty()) {
+            ChunkPaletteReader reader = new ChunkPaletteReader(countBlocks);
+            try (RandomAccessMcaFile<TerrainChunk> ramf = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r")) {
+                for (int i = 0; i < 1024; i++) {
+                    if (!header.hasChunk(i)) continue;
+                    entry.chunkTimestamps[i] = header.getChunkTimestamp(i);
+                    entry.chunkSectorCounts[i] = header.getChunkSectorCount(i);
+                    if (old != null && old.chunks[i] != null
+                            && old.chunkTimestamps[i] == entry.chunkTimestamps[i]
+                            && old.chunkSectorCounts[i] == entry.chunkSectorCounts[i]) {
+                        entry.setChunk(i, old.chunks[i]);
+                        continue;
+                    }
+                    byte[] raw = ramf.readRaw(i);
+                    chunksRead++;
+                    entry.setChunk(i, raw != null ? toChunkEntry(reader.read(raw)) : ChunkEntry.EMPTY);
+                }
+            }
+        }
+        regions.put(regionXZ, entry);
+        return chunksRead;
+    }
+
+    private ChunkEntry toChunkEntry(List<ChunkPaletteReader.Section> sections) {
+        int[] sectionYs = new int[sections.size()];
+        int[][] ids = new int[sections.size()][];
+        int[][] counts = countBlocks ? new int[sections.size()][] : null;
+        for (int s = 0; s < sections.size(); s++) {
+            ChunkPaletteReader.Section section = sections.get(s);
+            sectionYs[s] = section.sectionY();
+            ids[s] = new int[section.blockNames().length];
+            for (int n = 0; n < ids[s].length; n++) {
+                ids[s][n] = nameId(section.blockNames()[n]);
+            }
+            if (counts != null) counts[s] = section.blockCounts();
+        }
+        return new ChunkEntry(sectionYs, ids, counts);
+    }
+
+    private synchronized int nameId(String name) {
+        return nameIds.computeIfAbsent(name, t -> {
+            names.add(t);
+            return names.size() - 1;
+        });
+    }
+
+    private synchronized String name(int id) {
+        return names.get(id);
+    }
+
+    /** @return Bit mask of the given names, names not known to this index have no bit. */
+    private synchronized BitSet nameMask(String... blockNames) {
+        BitSet mask = new BitSet();
+        for (String name : blockNames) {
+            Integer id = nameIds.get(name);
+            if (id != null) mask.set(id);
+        }
+        return mask;
+    }
+
+    /**
+     * @return True if the region, as of when it was indexed, contains any of the given blocks.
+     * False if it does not, or if it is not in this index.
+     */
+    public boolean mayContain(IntPointXZ regionXZ, String... blockNames) {
+        RegionEntry entry = regions.get(regionXZ);
+        return entry != null && entry.regionNames.intersects(nameMask(blockNames));
+    }
+
+    /** @return Absolute XZ of every indexed chunk which contains any of the given blocks, sorted by x then z. */
+    public List<IntPointXZ> findChunks(String... blockNames) {
+        BitSet mask = nameMask(blockNames);
+        List<IntPointXZ> found = new ArrayList<>();
+        if (mask.isEmpty()) return found;
+        for (Map.Entry<IntPointXZ, RegionEntry> e : regions.entrySet()) {
+            RegionEntry entry = e.getValue();
+            if (!entry.regionNames.intersects(mask)) continue;
+            for (int i = 0; i < 1024; i++) {
+                ChunkEntry chunk = entry.chunks[i];
+                if (chunk != null && chunk.chunkNames.intersects(mask)) {
+                    found.add(chunkXZ(e.getKey(), i));
+                }
+            }
+        }
+        found.sort(Comparator.comparingInt(IntPointXZ::getX).thenComparingInt(IntPointXZ::getZ));
+        return found;
+    }
+
+    /**
+     * @return Section coordinates (chunk x, section y, chunk z) of every indexed section which contains any of the
+     * given blocks, sorted by x, then z, then y.
+     */
+    public List<IntPointXYZ> findSections(String... blockNames) {
+        BitSet mask = nameMask(blockNames);
+        List<IntPointXYZ> found = new ArrayList<>();
+        for (IntPointXZ chunkXZ : findChunks(blockNames)) {
+            ChunkEntry chunk = chunkEntry(chunkXZ);
+            for (int s = 0; s < chunk.sectionYs.length; s++) {
+                for (int id : chunk.ids[s]) {
+                    if (mask.get(id)) {
+                        found.add(new IntPointXYZ(chunkXZ.getX(), chunk.sectionYs[s], chunkXZ.getZ()));
+                        break;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /** @return Block names listed by the section, empty if the section is not indexed. */
+    public Set<String> getBlockNames(IntPointXZ chunkXZ, int sectionY) {
+        Set<String> result = new LinkedHashSet<>();
+        ChunkEntry chunk = chunkEntry(chunkXZ);
+        int s = chunk != null ? chunk.indexOfSection(sectionY) : -1;
+        if (s >= 0) {
+            for (int id : chunk.ids[s]) result.add(name(id));
+        }
+        return result;
+    }
+
+    /**
+     * @return Block counts of the section by block name, empty if the section is not indexed.
+     * @throws UnsupportedOperationException if this index was built without block counts.
+     */
+    public Map<String, Integer> getSectionHistogram(IntPointXZ chunkXZ, int sectionY) {
+        requireCounts();
+        Map<String, Integer> result = new LinkedHashMap<>();
+        ChunkEntry chunk = chunkEntry(chunkXZ);
+        int s = chunk != null ? chunk.indexOfSection(sectionY) : -1;
+        if (s >= 0) {
+            for (int n = 0; n < chunk.ids[s].length; n++) {
+                result.merge(name(chunk.ids[s][n]), chunk.counts[s][n], Integer::sum);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Block counts of the whole chunk by block name, empty if the chunk is not indexed.
+     * @throws UnsupportedOperationException if this index was built without block counts.
+     */
+    public Map<String, Long> getChunkHistogram(IntPointXZ chunkXZ) {
+        requireCounts();
+        Map<String, Long> result = new HashMap<>();
+        ChunkEntry chunk = chunkEntry(chunkXZ);
+        if (chunk != null) chunk.addCounts(this, result);
+        return result;
+    }
+
+    /**
+     * @return Block counts of all indexed chunks by block name.
+     * @throws UnsupportedOperationException if this index was built without block counts.
+     */
+    public Map<String, Long> getTotals() {
+        requireCounts();
+        Map<String, Long> result = new HashMap<>();
+        for (RegionEntry entry : regions.values()) {
+            for (ChunkEntry chunk : entry.chunks) {
+                if (chunk != null) chunk.addCounts(this, result);
+            }
+        }
+        return result;
+    }
+
+    private void requireCounts() {
+        if (!countBlocks) throw new UnsupportedOperationException("index was built without block counts");
+    }
+
+    private ChunkEntry chunkEntry(IntPointXZ chunkXZ) {
+        RegionEntry entry = regions.get(chunkXZ.transformChunkToRegion());
+        return entry != null ? entry.chunks[McaFileBase.getChunkIndex(chunkXZ.getX(), chunkXZ.getZ())] : null;
+    }
+
+    private static IntPointXZ chunkXZ(IntPointXZ regionXZ, int chunkIndex) {
+        return new IntPointXZ(regionXZ.getX() * 32 + (chunkIndex & 0x1F), regionXZ.getZ() * 32 + (chunkIndex >> 5));
+    }
+
+    /** Writes this index to the given file as GZip compressed nbt. */
+    public void save(Path indexFile) throws IOException {
+        CompoundTag root = new CompoundTag();
+        root.putInt("Version", FORMAT_VERSION);
+        root.putBoolean("CountBlocks", countBlocks);
+        synchronized (this) {
+            root.putStringsAsTagList("Names", names);
+        }
+        ListTag<CompoundTag> regionsTag = new ListTag<>(CompoundTag.class, regions.size());
+        for (Map.Entry<IntPointXZ, RegionEntry> e : regions.entrySet()) {
+            regionsTag.add(e.getValue().toTag(e.getKey(), countBlocks));
+        }
+        root.put("Regions", regionsTag);
+        BinaryNbtHelpers.write(new NamedTag("BlockPaletteIndex", root), indexFile, CompressionType.GZIP);
+    }
+
+    /**
+     * Reads an index written by {@link #save(Path)}. Call {@link #update()} to bring it up to date if the world
+     * may have changed since it was saved.
+     * @param indexFile index file to read.
+     * @param worldRoot world root directory the index describes.
+     */
+    public static BlockPaletteIndex load(Path indexFile, Path worldRoot) throws IOException {
+        NamedTag named = BinaryNbtHelpers.read(indexFile, CompressionType.GZIP);
+        if (!(named.getTag() instanceof CompoundTag root) || root.getInt("Version") != FORMAT_VERSION)
+            throw new IOException("Not a block palette index or unsupported version: " + indexFile);
+        BlockPaletteIndex index = new BlockPaletteIndex(worldRoot, root.getBoolean("CountBlocks"));
+        ListTag<StringTag> namesTag = root.getListTagAutoCast("Names");
+        for (StringTag t : namesTag) {
+            index.nameId(t.getValue());
+        }
+        ListTag<CompoundTag> regionsTag = root.getListTagAutoCast("Regions");
+        for (CompoundTag regionTag : regionsTag) {
+            index.regions.put(
+                    new IntPointXZ(regionTag.getInt("x"), regionTag.getInt("z")),
+                    RegionEntry.fromTag(regionTag));
+        }
+        return index;
+    }
+
+    static final class ChunkEntry {
+        static final ChunkEntry EMPTY = new ChunkEntry(new int[0], new int[0][], null);
+
+        final int[] sectionYs;
+        // per section block name ids, and matching block counts when counting
+        final int[][] ids;
+        final int[][] counts;
+        // union of all ids
+        final BitSet chunkNames = new BitSet();
+
+        ChunkEntry(int[] sectionYs, int[][] ids, int[][] counts) {
+            this.sectionYs = sectionYs;
+            this.ids = ids;
+            this.counts = counts;
+            for (int[] sectionIds : ids) {
+                for (int id : sectionIds) chunkNames.set(id);
+            }
+        }
+
+        int indexOfSection(int sectionY) {
+            for (int s = 0; s < sectionYs.length; s++) {
+                if (sectionYs[s] == sectionY) return s;
+            }
+            return -1;
+        }
+
+        void addCounts(BlockPaletteIndex index, Map<String, Long> into) {
+            for (int s = 0; s < ids.length; s++) {
+                for (int n = 0; n < ids[s].length; n++) {
+                    into.merge(index.name(ids[s][n]), (long) counts[s][n], Long::sum);
+                }
+            }
+        }
+    }
+
+    static final class RegionEntry {
+        final long fileLength;
+        final long lastModified;
+        final int[] chunkTimestamps = new int[1024];
+        final int[] chunkSectorCounts = new int[1024];
+        // null for chunks which do not exist
+        final ChunkEntry[] chunks = new ChunkEntry[1024];
+        // union of all chunkNames
+        final BitSet regionNames = new BitSet();
+
+        RegionEntry(long fileLength, long lastModified) {
+            this.fileLength = fileLength;
+            this.lastModified = lastModified;
+        }
+
+        void setChunk(int chunkIndex, ChunkEntry chunk) {
+            chunks[chunkIndex] = chunk;
+            regionNames.or(chunk.chunkNames);
+        }
+
+        /**
+         * Sections of all chunks are flattened into parallel int arrays: per chunk section counts, per section
+         * y and name counts, then the name ids (and block counts) of all sections back to back.
+         */
+        CompoundTag toTag(IntPointXZ regionXZ, boolean countBlocks) {
+            int chunkCount = 0;
+            int sectionCount = 0;
+            int idCount = 0;
+            for (ChunkEntry chunk : chunks) {
+                if (chunk == null) continue;
+                chunkCount++;
+                sectionCount += chunk.sectionYs.length;
+                for (int[] sectionIds : chunk.ids) idCount += sectionIds.length;
+            }
+            int[] indexes = new int[chunkCount];
+            int[] timestamps = new int[chunkCount];
+            int[] sectorCounts = new int[chunkCount];
+            int[] sectionsPerChunk = new int[chunkCount];
+            int[] sectionYs = new int[sectionCount];
+            int[] idsPerSection = new int[sectionCount];
+            int[] ids = new int[idCount];
+            int[] counts = countBlocks ? new int[idCount] : null;
+            int c = 0, s = 0, n = 0;
+            for (int i = 0; i < 1024; i++) {
+                ChunkEntry chunk = chunks[i];
+                if (chunk == null) continue;
+                indexes[c] = i;
+                timestamps[c] = chunkTimestamps[i];
+                sectorCounts[c] = chunkSectorCounts[i];
+                sectionsPerChunk[c++] = chunk.sectionYs.length;
+                for (int k = 0; k < chunk.sectionYs.length; k++) {
+                    sectionYs[s] = chunk.sectionYs[k];
+                    idsPerSection[s++] = chunk.ids[k].length;
+                    System.arraycopy(chunk.ids[k], 0, ids, n, chunk.ids[k].length);
+                    if (counts != null) System.arraycopy(chunk.counts[k], 0, counts, n, chunk.ids[k].length);
+                    n += chunk.ids[k].length;
+                }
+            }
+            CompoundTag tag = new CompoundTag();
+            tag.putInt("x", regionXZ.getX());
+            tag.putInt("z", regionXZ.getZ());
+            tag.putLong("FileLength", fileLength);
+            tag.putLong("LastModified", lastModified);
+            tag.putIntArray("Chunks", indexes);
+            tag.putIntArray("Timestamps", timestamps);
+            tag.putIntArray("Sectors", sectorCounts);
+            tag.putIntArray("SectionCounts", sectionsPerChunk);
+            tag.putIntArray("SectionY", sectionYs);
+            tag.putIntArray("NameCounts", idsPerSection);
+            tag.putIntArray("Names", ids);
+            if (counts != null) tag.putIntArray("BlockCounts", counts);
+            return tag;
+        }
+
+        static RegionEntry fromTag(CompoundTag tag) {
+            RegionEntry entry = new RegionEntry(tag.getLong("FileLength"), tag.getLong("LastModified"));
+            int[] indexes = tag.getIntArray("Chunks");
+            int[] timestamps = tag.getIntArray("Timestamps");
+            int[] sectorCounts = tag.getIntArray("Sectors");
+            int[] sectionsPerChunk = tag.getIntArray("SectionCounts");
+            int[] sectionYs = tag.getIntArray("SectionY");
+            int[] idsPerSection = tag.getIntArray("NameCounts");
+            int[] ids = tag.getIntArray("Names");
+            int[] counts = tag.containsKey("BlockCounts") ? tag.getIntArray("BlockCounts") : null;
+            int s = 0, n = 0;
+            for (int c = 0; c < indexes.length; c++) {
+                int i = indexes[c];
+                entry.chunkTimestamps[i] = timestamps[c];
+                entry.chunkSectorCounts[i] = sectorCounts[c];
+                int sections = sectionsPerChunk[c];
+                int[] chunkSectionYs = new int[sections];
+                int[][] chunkIds = new int[sections][];
+                int[][] chunkCounts = counts != null ? new int[sections][] : null;
+                for (int k = 0; k < sections; k++, s++) {
+                    chunkSectionYs[k] = sectionYs[s];
+                    chunkIds[k] = Arrays.copyOfRange(ids, n, n + idsPerSection[s]);
+                    if (chunkCounts != null) chunkCounts[k] = Arrays.copyOfRange(counts, n, n + idsPerSection[s]);
+                    n += idsPerSection[s];
+                }
+                entry.setChunk(i, new ChunkEntry(chunkSectionYs, chunkIds, chunkCounts));
+            }
+            return entry;
+        }
+    }
+}
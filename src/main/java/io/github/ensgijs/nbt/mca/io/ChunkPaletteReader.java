@@ -0,0 +1,307 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.io.MaxDepthReachedException;
+import io.github.ensgijs.nbt.mca.util.LongArrayTagPackedIntegers;
+import io.github.ensgijs.nbt.tag.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads only the block state palettes (and, optionally, the packed block data) of a terrain chunk straight from its
+ * binary nbt, without building any tags. Everything else - heightmaps, light, biomes, block entities, structures,
+ * and block state properties - is skipped over by length.
+ * <p>When blocks are not counted the packed block data is skipped too, so the cost of a chunk is little more than
+ * decompressing it. A palette may list a block which no longer occurs in the section, so without counting the
+ * block names of a section mean "may contain". When counting, sections with a single palette entry are still
+ * answered from the palette alone.</p>
+ * <p>Supports the 1.13 through 1.17 ({@code Level.Sections[].Palette}) and the 1.18+
+ * ({@code sections[].block_states}) layouts. Sections without a palette, such as pre 1.13 sections and light
+ * only sections, are not reported.</p>
+ * <p>Not thread safe, use one instance per thread. Instances reuse their scratch buffers.</p>
+ */
+public class ChunkPaletteReader {
+    private static final int MAX_DEPTH = 512;
+
+    /**
+     * Blocks of one chunk section, merged by block name (block state properties are ignored).
+     * @param sectionY section y.
+     * @param blockNames distinct block names of the section palette.
+     * @param blockCounts number of blocks with the name at the same index, null if blocks were not counted. Names
+     *                    which do not occur in the section are dropped when counting.
+     */
+    public record Section(int sectionY, String[] blockNames, int[] blockCounts) {}
+
+    private final boolean countBlocks;
+    private final byte[] skipBuffer = new byte[8192];
+    private int dataVersion;
+
+    // per section parse state
+    private final List<PendingSection> pending = new ArrayList<>();
+
+    private static final class PendingSection {
+        int y = Integer.MIN_VALUE;
+        String[] paletteNames;
+        long[] data;
+    }
+
+    /**
+     * @param countBlocks if true the packed block data is decoded to count blocks by name. If false it is skipped
+     *                    and only palettes are reported.
+     */
+    public ChunkPaletteReader(boolean countBlocks) {
+        this.countBlocks = countBlocks;
+    }
+
+    public boolean isCountBlocks() {
+        return countBlocks;
+    }
+
+    /**
+     * @param rawChunk compression type id byte followed by the compressed chunk data, as returned by
+     *                 {@link RandomAccessMcaFile#readRaw(int)}.
+     * @return sections which have a block palette, in file order.
+     */
+    public List<Section> read(byte[] rawChunk) throws IOException {
+        CompressionType compressionType = CompressionType.getFromID(rawChunk[0]);
+        if (compressionType == null) {
+            throw new IOException("invalid compression type " + rawChunk[0]);
+        }
+        try (InputStream in = compressionType.decompress(
+                new ByteArrayInputStream(rawChunk, 1, rawChunk.length - 1))) {
+            return read(new DataInputStream(new BufferedInputStream(in, 16384)));
+        }
+    }
+
+    /**
+     * @param in stream positioned at the start of uncompressed big endian chunk nbt data.
+     * @return sections which have a block palette, in file order.
+     */
+    public List<Section> read(DataInputStream in) throws IOException {
+        pending.clear();
+        dataVersion = 0;
+        byte rootType = in.readByte();
+        if (rootType != CompoundTag.ID) throw new IOException("chunk root tag is not a compound");
+        skipString(in);
+        readChunkCompound(in, 1);
+        List<Section> sections = new ArrayList<>(pending.size());
+        for (PendingSection s : pending) {
+            if (s.paletteNames == null || s.paletteNames.length == 0) continue;
+            sections.add(toSection(s));
+        }
+        pending.clear();
+        return sections;
+    }
+
+    private Section toSection(PendingSection s) {
+        String[] names = s.paletteNames;
+        if (!countBlocks) {
+            return new Section(s.y, distinct(names), null);
+        }
+        int[] perIndex = new int[names.length];
+        if (names.length == 1) {
+            perIndex[0] = 4096;
+        } else if (s.data != null && s.data.length > 0) {
+            LongArrayTagPackedIntegers packed = LongArrayTagPackedIntegers.builder()
+                    .length(4096)
+                    .dataVersion(dataVersion)
+                    .minBitsPerValue(4)
+                    .initializeForStoring(names.length - 1)
+                    .build(new LongArrayTag(s.data));
+            for (int i = 0; i < 4096; i++) {
+                int p = packed.get(i);
+                if (p < perIndex.length) perIndex[p]++;
+            }
+        }
+        Map<String, Integer> merged = new LinkedHashMap<>();
+        for (int p = 0; p < names.length; p++) {
+            if (perIndex[p] > 0) merged.merge(names[p], perIndex[p], Integer::sum);
+        }
+        String[] outNames = new String[merged.size()];
+        int[] outCounts = new int[merged.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> e : merged.entrySet()) {
+            outNames[i] = e.getKey();
+            outCounts[i++] = e.getValue();
+        }
+        return new Section(s.y, outNames, outCounts);
+    }
+
+    private static String[] distinct(String[] names) {
+        if (names.length < 2) return names;
+        return new LinkedHashSet<>(Arrays.asList(names)).toArray(new String[0]);
+    }
+
+    private void readChunkCompound(DataInputStream in, int depth) throws IOException {
+        checkDepth(depth);
+        byte id;
+        while ((id = in.readByte()) != EndTag.ID) {
+            String name = in.readUTF();
+            if (id == IntTag.ID && name.equals("DataVersion")) {
+                dataVersion = in.readInt();
+            } else if (id == CompoundTag.ID && name.equals("Level")) {
+                readChunkCompound(in, depth + 1);
+            } else if (id == ListTag.ID && (name.equals("sections") || name.equals("Sections"))) {
+                readSections(in, depth + 1);
+            } else {
+                skip(in, id, depth + 1);
+            }
+        }
+    }
+
+    private void readSections(DataInputStream in, int depth) throws IOException {
+        checkDepth(depth);
+        byte elementType = in.readByte();
+        int length = in.readInt();
+        if (elementType != CompoundTag.ID) {
+            skipListElements(in, elementType, length, depth);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            PendingSection section = new PendingSection();
+            readSection(in, section, depth + 1);
+            pending.add(section);
+        }
+    }
+
+    private void readSection(DataInputStream in, PendingSection section, int depth) throws IOException {
+        checkDepth(depth);
+        byte id;
+        while ((id = in.readByte()) != EndTag.ID) {
+            String name = in.readUTF();
+            if (name.equals("Y") && id == ByteTag.ID) {
+                section.y = in.readByte();
+            } else if (name.equals("Y") && id == IntTag.ID) {
+                section.y = in.readInt();
+            } else if (name.equals("block_states") && id == CompoundTag.ID) {
+                readBlockStates(in, section, depth + 1);
+            } else if (name.equals("Palette") && id == ListTag.ID) {
+                section.paletteNames = readPalette(in, depth + 1);
+            } else if (name.equals("BlockStates") && id == LongArrayTag.ID) {
+                section.data = readOrSkipData(in);
+            } else {
+                skip(in, id, depth + 1);
+            }
+        }
+    }
+
+    private void readBlockStates(DataInputStream in, PendingSection section, int depth) throws IOException {
+        checkDepth(depth);
+        byte id;
+        while ((id = in.readByte()) != EndTag.ID) {
+            String name = in.readUTF();
+            if (name.equals("palette") && id == ListTag.ID) {
+                section.paletteNames = readPalette(in, depth + 1);
+            } else if (name.equals("data") && id == LongArrayTag.ID) {
+                section.data = readOrSkipData(in);
+            } else {
+                skip(in, id, depth + 1);
+            }
+        }
+    }
+
+    private long[] readOrSkipData(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (!countBlocks) {
+            skipFully(in, 8L * length);
+            return null;
+        }
+        long[] data = new long[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = in.readLong();
+        }
+        return data;
+    }
+
+    private String[] readPalette(DataInputStream in, int depth) throws IOException {
+        checkDepth(depth);
+        byte elementType = in.readByte();
+        int length = in.readInt();
+        if (elementType != CompoundTag.ID) {
+            skipListElements(in, elementType, length, depth);
+            return null;
+        }
+        String[] names = new String[Math.max(0, length)];
+        for (int i = 0; i < length; i++) {
+            String blockName = null;
+            byte id;
+            while ((id = in.readByte()) != EndTag.ID) {
+                String name = in.readUTF();
+                if (id == StringTag.ID && name.equals("Name")) {
+                    blockName = in.readUTF();
+                } else {
+                    skip(in, id, depth + 1);
+                }
+            }
+            names[i] = blockName != null ? blockName : "";
+        }
+        return names;
+    }
+
+    private void skip(DataInputStream in, byte id, int depth) throws IOException {
+        switch (id) {
+            case ByteTag.ID -> skipFully(in, 1);
+            case ShortTag.ID -> skipFully(in, 2);
+            case IntTag.ID, FloatTag.ID -> skipFully(in, 4);
+            case LongTag.ID, DoubleTag.ID -> skipFully(in, 8);
+            case ByteArrayTag.ID -> skipFully(in, in.readInt());
+            case StringTag.ID -> skipString(in);
+            case IntArrayTag.ID -> skipFully(in, 4L * in.readInt());
+            case LongArrayTag.ID -> skipFully(in, 8L * in.readInt());
+            case ListTag.ID -> {
+                checkDepth(depth);
+                byte elementType = in.readByte();
+                skipListElements(in, elementType, in.readInt(), depth);
+            }
+            case CompoundTag.ID -> {
+                checkDepth(depth);
+                byte entryId;
+                while ((entryId = in.readByte()) != EndTag.ID) {
+                    skipString(in);
+                    skip(in, entryId, depth + 1);
+                }
+            }
+            default -> throw new IOException("invalid tag id \"" + id + "\"");
+        }
+    }
+
+    private void skipListElements(DataInputStream in, byte elementType, int length, int depth) throws IOException {
+        if (length <= 0) return;
+        switch (elementType) {
+            case ByteTag.ID -> skipFully(in, length);
+            case ShortTag.ID -> skipFully(in, 2L * length);
+            case IntTag.ID, FloatTag.ID -> skipFully(in, 4L * length);
+            case LongTag.ID, DoubleTag.ID -> skipFully(in, 8L * length);
+            default -> {
+                for (int i = 0; i < length; i++) {
+                    skip(in, elementType, depth + 1);
+                }
+            }
+        }
+    }
+
+    private void skipString(DataInputStream in) throws IOException {
+        skipFully(in, in.readUnsignedShort());
+    }
+
+    private void skipFully(DataInputStream in, long n) throws IOException {
+        if (n < 0) throw new IOException("negative length");
+        while (n > 0) {
+            int skipped = in.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // some streams refuse to skip, read through instead
+                int read = in.read(skipBuffer, 0, (int) Math.min(n, skipBuffer.length));
+                if (read < 0) throw new EOFException();
+                skipped = read;
+            }
+            n -= skipped;
+        }
+    }
+
+    private static void checkDepth(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new MaxDepthReachedException("reached maximum depth of NBT structure");
+        }
+    }
+}
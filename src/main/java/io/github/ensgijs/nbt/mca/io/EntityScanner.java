@@ -0,0 +1,166 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.SilentIOException;
+import io.github.ensgijs.nbt.mca.EntitiesChunk;
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.entities.EntityFactory;
+import io.github.ensgijs.nbt.mca.entities.EntityView;
+import io.github.ensgijs.nbt.mca.util.BlockAlignedBoundingRectangle;
+import io.github.ensgijs.nbt.mca.util.ChunkBoundingRectangle;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+import io.github.ensgijs.nbt.mca.util.RegionBoundingRectangle;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Answers "which entities of these types are within this area" across all entities mca files of a world.
+ * <p>Entities are never fully materialized, matching is done on {@link EntityView}s which only read the id
+ * and position out of the entity nbt data. Regions which do not intersect the query bounds are skipped without
+ * being opened and only chunks which intersect the bounds, and which exist according to the file header, are
+ * read. Regions are processed in parallel.</p>
+ * <p>Only top level entities are matched, passengers are reachable through {@link EntityView#toEntity()}.</p>
+ * <pre>{@code
+ * EntityScanner scanner = new EntityScanner(worldRoot);
+ * Map<IntPointXZ, Integer> counts = scanner.countByChunk(null, "minecraft:item");
+ * EntitySpatialIndex zombies = scanner.buildIndex(null, "minecraft:zombie");
+ * List<EntityView> near = zombies.findNear(0, 64, 0, 32);
+ * }</pre>
+ * @see EntitySpatialIndex
+ */
+public class EntityScanner {
+    private final Path worldRoot;
+
+    /**
+     * @param worldRoot world root directory - the directory which contains "entities".
+     */
+    public EntityScanner(Path worldRoot) {
+        this.worldRoot = worldRoot;
+    }
+
+    public Path getWorldRoot() {
+        return worldRoot;
+    }
+
+    /**
+     * Finds entities within the given bounds.
+     * @param bounds XZ bounds to search, null to search the whole world. When given, entities without a
+     *               position are excluded.
+     * @param entityIds entity ids to find, such as "minecraft:zombie", if none are given all ids match.
+     *                  Legacy ids are matched as described by {@link EntityFactory#normalizeAndRemapId(String)}.
+     * @return Stream of matching entities. The stream is parallel and lazily reads regions as it is consumed.
+     * Any {@link IOException} is rethrown as a {@link SilentIOException} from the terminal stream operation.
+     */
+    public Stream<EntityView> scan(BlockAlignedBoundingRectangle bounds, String... entityIds) throws IOException {
+        return scanChunks(bounds, entityIds).flatMap(c -> c.entities().stream());
+    }
+
+    /**
+     * Counts matching entities per chunk, keyed by the chunk the entities are stored in.
+     * Chunks without any matching entities are not included.
+     * @see #scan(BlockAlignedBoundingRectangle, String...)
+     */
+    public Map<IntPointXZ, Integer> countByChunk(BlockAlignedBoundingRectangle bounds, String... entityIds) throws IOException {
+        try {
+            return scanChunks(bounds, entityIds)
+                    .collect(Collectors.toConcurrentMap(ChunkEntities::chunkXZ, c -> c.entities().size(), Integer::sum));
+        } catch (SilentIOException ex) {
+            throw (IOException) ex.getCause();
+        }
+    }
+
+    /**
+     * Scans the world and indexes matching entities, which have a position, for repeated spatial queries.
+     * @see #scan(BlockAlignedBoundingRectangle, String...)
+     */
+    public EntitySpatialIndex buildIndex(BlockAlignedBoundingRectangle bounds, String... entityIds) throws IOException {
+        EntitySpatialIndex index = new EntitySpatialIndex();
+        try {
+            // collect in parallel, add serially - the index is not thread safe
+            scan(bounds, entityIds).collect(Collectors.toList()).forEach(index::add);
+        } catch (SilentIOException ex) {
+            throw (IOException) ex.getCause();
+        }
+        return index;
+    }
+
+    private Stream<ChunkEntities> scanChunks(BlockAlignedBoundingRectangle bounds, String... entityIds) throws IOException {
+        final Set<String> ids = new HashSet<>();
+        for (String id : entityIds) {
+            ids.add(EntityFactory.normalizeAndRemapId(id));
+        }
+        List<Path> files = new ArrayList<>();
+        for (Path file : McaHeaderScanner.listMcaFiles(worldRoot, "entities")) {
+            IntPointXZ regionXZ = McaFileHelpers.regionXZFromFileName(file.getFileName().toString());
+            if (bounds == null || new RegionBoundingRectangle(regionXZ.getX(), regionXZ.getZ()).intersects(bounds)) {
+                files.add(file);
+            }
+        }
+        return files.parallelStream().flatMap(file -> {
+            try {
+                return scanRegion(file, bounds, ids).stream();
+            } catch (IOException ex) {
+                throw new SilentIOException("Failed to scan " + file, ex);
+            }
+        });
+    }
+
+    private static List<ChunkEntities> scanRegion(Path file, BlockAlignedBoundingRectangle bounds, Set<String> ids) throws IOException {
+        final IntPointXZ regionXZ = McaFileHelpers.regionXZFromFileName(file.getFileName().toString());
+        // clip the chunk iteration range to the query bounds
+        final ChunkBoundingRectangle regionChunks = new RegionBoundingRectangle(regionXZ.getX(), regionXZ.getZ()).asChunkBounds();
+        int minChunkX = regionChunks.getMinChunkX();
+        int minChunkZ = regionChunks.getMinChunkZ();
+        int maxChunkX = regionChunks.getMaxChunkX();  // exclusive
+        int maxChunkZ = regionChunks.getMaxChunkZ();  // exclusive
+        if (bounds != null) {
+            minChunkX = Math.max(minChunkX, bounds.getMinBlockX() >> 4);
+            minChunkZ = Math.max(minChunkZ, bounds.getMinBlockZ() >> 4);
+            maxChunkX = Math.min(maxChunkX, ((bounds.getMaxBlockX() - 1) >> 4) + 1);
+            maxChunkZ = Math.min(maxChunkZ, ((bounds.getMaxBlockZ() - 1) >> 4) + 1);
+        }
+
+        final McaFileHeader header = McaFileHeader.read(file);
+        BitSet chunksToRead = new BitSet(1024);
+        for (int cz = minChunkZ; cz < maxChunkZ; cz++) {
+            for (int cx = minChunkX; cx < maxChunkX; cx++) {
+                int i = McaFileBase.getChunkIndex(cx, cz);
+                if (header.hasChunk(i)) chunksToRead.set(i);
+            }
+        }
+        if (chunksToRead.isEmpty())
+            return Collections.emptyList();
+
+        List<ChunkEntities> results = new ArrayList<>();
+        try (RandomAccessMcaFile<EntitiesChunk> ramf = new RandomAccessMcaFile<>(EntitiesChunk.class, file, "r")) {
+            ramf.setLoadFlags(LoadFlags.ENTITIES);
+            for (int i = chunksToRead.nextSetBit(0); i >= 0; i = chunksToRead.nextSetBit(i + 1)) {
+                EntitiesChunk chunk = ramf.read(i);
+                if (chunk == null) continue;
+                List<EntityView> matches = new ArrayList<>();
+                for (EntityView view : chunk.getEntityViews()) {
+                    if (matches(view, bounds, ids)) matches.add(view);
+                }
+                if (!matches.isEmpty()) {
+                    results.add(new ChunkEntities(chunk.getChunkXZ(), matches));
+                }
+            }
+        }
+        return results;
+    }
+
+    private static boolean matches(EntityView view, BlockAlignedBoundingRectangle bounds, Set<String> ids) {
+        if (!ids.isEmpty()) {
+            String id = view.getId();
+            if (id == null || id.isEmpty() || !ids.contains(EntityFactory.normalizeAndRemapId(id)))
+                return false;
+        }
+        // NaN positions fail containsBlock
+        return bounds == null || bounds.containsBlock(view.getX(), view.getZ());
+    }
+
+    private record ChunkEntities(IntPointXZ chunkXZ, List<EntityView> entities) {}
+}
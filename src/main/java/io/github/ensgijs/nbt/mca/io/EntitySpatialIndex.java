@@ -0,0 +1,150 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.mca.entities.EntityView;
+import io.github.ensgijs.nbt.mca.util.BlockAlignedBoundingRectangle;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * In memory XZ grid of entities for repeated spatial queries. Entity positions are read once, when added,
+ * so queries never touch entity nbt data. Cells are square and their width is a power of 2, the default of
+ * 16 blocks lines cells up with chunks.
+ * <p>Not thread safe.</p>
+ * @see EntityScanner#buildIndex(BlockAlignedBoundingRectangle, String...)
+ */
+public class EntitySpatialIndex {
+    private final int cellShift;
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private int size;
+
+    private record Entry(EntityView view, double x, double y, double z) {}
+
+    /** Creates an index with 16 block wide cells. */
+    public EntitySpatialIndex() {
+        this(4);
+    }
+
+    /**
+     * @param cellShift cell width as a power of 2, for example 4 gives 16 block wide cells. Must be in [0, 16].
+     */
+    public EntitySpatialIndex(int cellShift) {
+        ArgValidator.check(cellShift >= 0 && cellShift <= 16, "cellShift must be in [0, 16]");
+        this.cellShift = cellShift;
+    }
+
+    /** @return Cell width in blocks. */
+    public int getCellWidth() {
+        return 1 << cellShift;
+    }
+
+    /** @return Number of entities in this index. */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds the given entity to this index.
+     * @return False if the entity has no position and was not added.
+     */
+    public boolean add(EntityView view) {
+        double x = view.getX();
+        double y = view.getY();
+        double z = view.getZ();
+        if (Double.isNaN(x) || Double.isNaN(y) || Double.isNaN(z)) return false;
+        cells.computeIfAbsent(cellKey(x, z), k -> new ArrayList<>()).add(new Entry(view, x, y, z));
+        size++;
+        return true;
+    }
+
+    /** @return All entities whose XZ position is within the given bounds. */
+    public Stream<EntityView> query(BlockAlignedBoundingRectangle bounds) {
+        return query(bounds, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param bounds XZ bounds.
+     * @param minY minimum Y, inclusive.
+     * @param maxY maximum Y, exclusive.
+     * @return All entities whose position is within the given bounds.
+     */
+    public Stream<EntityView> query(BlockAlignedBoundingRectangle bounds, double minY, double maxY) {
+        return candidates(bounds.getMinBlockX(), bounds.getMinBlockZ(), bounds.getMaxBlockX() - 1, bounds.getMaxBlockZ() - 1)
+                .filter(e -> e.y >= minY && e.y < maxY && bounds.containsBlock(e.x, e.z))
+                .map(Entry::view);
+    }
+
+    /**
+     * @return All entities within {@code radius} blocks of the given point, nearest first.
+     */
+    public List<EntityView> findNear(double x, double y, double z, double radius) {
+        final double r2 = radius * radius;
+        List<Entry> found = new ArrayList<>();
+        candidates((int) Math.floor(x - radius), (int) Math.floor(z - radius),
+                (int) Math.floor(x + radius), (int) Math.floor(z + radius))
+                .filter(e -> distanceSq(e, x, y, z) <= r2)
+                .forEach(found::add);
+        found.sort(Comparator.comparingDouble(e -> distanceSq(e, x, y, z)));
+        List<EntityView> views = new ArrayList<>(found.size());
+        for (Entry e : found) {
+            views.add(e.view);
+        }
+        return views;
+    }
+
+    /**
+     * @return Number of entities per chunk, keyed by the chunk containing each entity's position.
+     */
+    public Map<IntPointXZ, Integer> countByChunk() {
+        Map<IntPointXZ, Integer> counts = new HashMap<>();
+        for (List<Entry> cell : cells.values()) {
+            for (Entry e : cell) {
+                counts.merge(new IntPointXZ((int) Math.floor(e.x) >> 4, (int) Math.floor(e.z) >> 4), 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private static double distanceSq(Entry e, double x, double y, double z) {
+        double dx = e.x - x;
+        double dy = e.y - y;
+        double dz = e.z - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /** Block bounds are inclusive. */
+    private Stream<Entry> candidates(int minBlockX, int minBlockZ, int maxBlockX, int maxBlockZ) {
+        long minCellX = minBlockX >> cellShift;
+        long minCellZ = minBlockZ >> cellShift;
+        long maxCellX = maxBlockX >> cellShift;
+        long maxCellZ = maxBlockZ >> cellShift;
+        // when the query covers more cells than are populated it is cheaper to walk the populated ones
+        if ((maxCellX - minCellX + 1) * (maxCellZ - minCellZ + 1) > cells.size()) {
+            return cells.entrySet().stream()
+                    .filter(c -> {
+                        IntPointXZ cellXZ = IntPointXZ.unpack(c.getKey());
+                        return cellXZ.getX() >= minCellX && cellXZ.getX() <= maxCellX
+                                && cellXZ.getZ() >= minCellZ && cellXZ.getZ() <= maxCellZ;
+                    })
+                    .flatMap(c -> c.getValue().stream());
+        }
+        List<List<Entry>> hits = new ArrayList<>();
+        for (long cz = minCellZ; cz <= maxCellZ; cz++) {
+            for (long cx = minCellX; cx <= maxCellX; cx++) {
+                List<Entry> cell = cells.get(IntPointXZ.pack((int) cx, (int) cz));
+                if (cell != null) hits.add(cell);
+            }
+        }
+        return hits.stream().flatMap(List::stream);
+    }
+
+    private long cellKey(double x, double z) {
+        return IntPointXZ.pack((int) Math.floor(x) >> cellShift, (int) Math.floor(z) >> cellShift);
+    }
+}
@@ -30,6 +30,7 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
     private final List<ChunkMetaInfo> chunkMetaInfos;
     private final Iterator<ChunkMetaInfo> iter;
     private final IntPointXZ regionXZ;
+    private final McaFileStats stats;
     private ChunkMetaInfo current;
 
     /**
@@ -56,7 +57,8 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
                 chunkCreator,
                 McaFileHelpers.regionXZFromFileName(file.getName()),
                 new BufferedInputStream(new FileInputStream(file)),
-                loadFlags
+                loadFlags,
+                file.length()
         );
     }
 
@@ -65,7 +67,8 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
                 chunkCreator,
                 McaFileHelpers.regionXZFromFileName(file.getName()),
                 new BufferedInputStream(new FileInputStream(file)),
-                loadFlags
+                loadFlags,
+                file.length()
         );
     }
 
@@ -90,6 +93,10 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
      * @see McaFileHelpers#regionXZFromFileName(String)
      */
     public McaFileChunkIterator(Supplier<T> chunkCreator, IntPointXZ regionXZ, InputStream stream, long loadFlags) throws IOException {
+        this(chunkCreator, regionXZ, stream, loadFlags, -1);
+    }
+
+    private McaFileChunkIterator(Supplier<T> chunkCreator, IntPointXZ regionXZ, InputStream stream, long loadFlags, long fileLength) throws IOException {
         this.chunkCreator = Objects.requireNonNull(chunkCreator);
         this.regionXZ = regionXZ;
         this.chunkAbsXzOffset = regionXZ.transformRegionToChunk();
@@ -97,6 +104,8 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
         this.loadFlags = loadFlags;
         final int[] offsets = new int[1024];
         final int[] sectors = new int[1024];
+        final int[] sectorTable = new int[1024];
+        final int[] timestamps = new int[1024];
 
         ByteBuffer byteBuffer = ByteBuffer.allocate(4096);
         byteBuffer.order(ByteOrder.BIG_ENDIAN);
@@ -109,6 +118,7 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
         int populatedChunks = 0;
         for (int i = 0; i < 1024; i++) {
             int glob = intBuffer.get(i);
+            sectorTable[i] = glob;
             offsets[i] = glob >>> 8;
             sectors[i] = glob & 0xFF;
             populatedChunks++;
@@ -120,12 +130,24 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
             throw new EOFException();
         }
         for (int i = 0; i < 1024; i++) {
+            timestamps[i] = intBuffer.get(i);
             if (offsets[i] > 0) {
-                chunkMetaInfos.add(new ChunkMetaInfo(i, offsets[i], sectors[i], intBuffer.get(i)));
+                chunkMetaInfos.add(new ChunkMetaInfo(i, offsets[i], sectors[i], timestamps[i]));
             }
         }
         chunkMetaInfos.sort(Comparator.comparingInt(e -> e.offset));
         iter = chunkMetaInfos.iterator();
+        stats = new McaFileStats(regionXZ, sectorTable, timestamps, fileLength);
+    }
+
+    /**
+     * Gets layout and health statistics for the mca file being iterated. Header information is available
+     * immediately, per-chunk compressed sizes and compression types are populated for each chunk as it is
+     * returned by {@link #next()}. Uncompressed sizes are not tracked.
+     * <p>The file length is only known when this iterator was created from a {@link File}.</p>
+     */
+    public McaFileStats getStats() {
+        return stats;
     }
 
     public IntPointXZ chunkAbsXzOffset() {
@@ -146,10 +168,22 @@ public class McaFileChunkIterator<T extends ChunkBase> implements ChunkIterator<
         current = iter.next();
         try {
             in.setSoftEof(0);
-            in.skipTo(4096L * current.offset + 4);  //+4 skip chunk byte count
+            in.skipTo(4096L * current.offset);
             in.setSoftEof(4096L * (current.offset + current.sectors));
+            int byteLength = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = in.read();
+                if (b < 0) throw new EOFException();
+                byteLength = byteLength << 8 | b;
+            }
+            int compressionTypeId = in.read();
+            if (compressionTypeId < 0) throw new EOFException();
+            stats.recordChunkPrefix(current.index, byteLength, compressionTypeId);
+            // deserialize expects to read the compression type byte itself
+            PushbackInputStream chunkIn = new PushbackInputStream(in, 1);
+            chunkIn.unread(compressionTypeId);
             T currentChunk = chunkCreator.get();
-            currentChunk.deserialize(in, loadFlags, current.timestamp, currentAbsoluteX(), currentAbsoluteZ());
+            currentChunk.deserialize(chunkIn, loadFlags, current.timestamp, currentAbsoluteX(), currentAbsoluteZ());
             return currentChunk;
         } catch (IOException ex) {
             throw new RuntimeException("Error processing " + current, ex);
@@ -0,0 +1,196 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable snapshot of the 8KiB header of an mca file - which chunks exist, where they are stored, and when
+ * they were last updated. Reading a header does not touch any chunk data, making this the cheapest way to
+ * answer questions such as "which chunks changed since the last backup".
+ * <p>Files shorter than 8KiB (Minecraft sometimes creates empty region files) produce an empty header.</p>
+ * @see McaHeaderScanner
+ * @see McaFileStats
+ */
+public class McaFileHeader {
+    public static final int HEADER_SIZE_BYTES = 2 * 4096;
+
+    private final String mcaType;
+    private final IntPointXZ regionXZ;
+    private final long fileLength;
+    private final long lastModified;
+    private final int[] chunkSectors;
+    private final int[] chunkTimestamps;
+    private final long[] presenceBits = new long[16];
+    private final int chunkCount;
+
+    /**
+     * @param mcaType mca type such as "region", "poi", "entities" - may be null if unknown.
+     * @param regionXZ region coordinates, may be null if unknown.
+     * @param chunkSectors mca header chunk sector table - values are copied.
+     * @param chunkTimestamps mca header timestamp table - values are copied.
+     * @param fileLength length of the mca file in bytes, or -1 if not known.
+     * @param lastModified file system last modified time of the mca file in epoch millis, or 0 if not known.
+     */
+    public McaFileHeader(String mcaType, IntPointXZ regionXZ, int[] chunkSectors, int[] chunkTimestamps, long fileLength, long lastModified) {
+        if (chunkSectors.length != 1024 || chunkTimestamps.length != 1024)
+            throw new IllegalArgumentException();
+        this.mcaType = mcaType;
+        this.regionXZ = regionXZ;
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.chunkSectors = Arrays.copyOf(chunkSectors, 1024);
+        this.chunkTimestamps = Arrays.copyOf(chunkTimestamps, 1024);
+        int count = 0;
+        for (int i = 0; i < 1024; i++) {
+            if ((chunkSectors[i] & 0xFF) > 0) {
+                presenceBits[i >> 6] |= 1L << (i & 0x3F);
+                count++;
+            } else {
+                this.chunkTimestamps[i] = 0;
+            }
+        }
+        this.chunkCount = count;
+    }
+
+    /**
+     * Reads the header of the given mca file with a single 8KiB read. The mca type is taken from the name of the
+     * directory containing the file and the region XZ from the file name.
+     */
+    public static McaFileHeader read(Path mcaFile) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE_BYTES);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        final long fileLength;
+        final long lastModified;
+        try (FileChannel channel = FileChannel.open(mcaFile, StandardOpenOption.READ)) {
+            fileLength = channel.size();
+            lastModified = mcaFile.toFile().lastModified();
+            if (fileLength >= HEADER_SIZE_BYTES) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0)
+                        throw new EOFException();
+                }
+            }
+        }
+        final int[] sectors = new int[1024];
+        final int[] timestamps = new int[1024];
+        if (fileLength >= HEADER_SIZE_BYTES) {
+            IntBuffer intBuffer = buffer.flip().asIntBuffer();
+            intBuffer.get(sectors);
+            intBuffer.get(timestamps);
+        }
+        Path parent = mcaFile.getParent();
+        return new McaFileHeader(
+                parent != null && parent.getFileName() != null ? parent.getFileName().toString() : null,
+                McaFileHelpers.regionXZFromFileName(mcaFile.getFileName().toString()),
+                sectors, timestamps, fileLength, lastModified);
+    }
+
+    /** @see #read(Path) */
+    public static McaFileHeader read(File mcaFile) throws IOException {
+        return read(mcaFile.toPath());
+    }
+
+    /** @return mca type such as "region", "poi", "entities" - may be null if unknown. */
+    public String getMcaType() {
+        return mcaType;
+    }
+
+    /** @return region XZ, may be null if unknown. */
+    public IntPointXZ getRegionXZ() {
+        return regionXZ;
+    }
+
+    /** @return length of the mca file in bytes, or -1 if not known. */
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    /** @return file system last modified time of the mca file in epoch millis, or 0 if not known. */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /** @return number of chunks which exist. */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public boolean isEmpty() {
+        return chunkCount == 0;
+    }
+
+    /** @return True if the chunk exists. */
+    public boolean hasChunk(int chunkIndex) {
+        return (presenceBits[chunkIndex >> 6] & (1L << (chunkIndex & 0x3F))) != 0;
+    }
+
+    /** @return Chunk timestamp, in epoch seconds, if chunk exists else -1. */
+    public int getChunkTimestamp(int chunkIndex) {
+        return hasChunk(chunkIndex) ? chunkTimestamps[chunkIndex] : -1;
+    }
+
+    /** @return Packed chunk sector location (offset &lt;&lt; 8 | size) as stored in the file header, 0 if the chunk does not exist. */
+    public int getChunkSectors(int chunkIndex) {
+        return chunkSectors[chunkIndex];
+    }
+
+    /** @return Number of 4KiB sectors allocated to the chunk, 0 if the chunk does not exist. */
+    public int getChunkSectorCount(int chunkIndex) {
+        return chunkSectors[chunkIndex] & 0xFF;
+    }
+
+    /** @return a copy of the chunk presence bits, bit N is set iff chunk index N exists. */
+    public BitSet getChunkPresence() {
+        return BitSet.valueOf(presenceBits);
+    }
+
+    /** @return a new BitSet with bit N set iff chunk index N exists and has a timestamp GE the given epoch seconds. */
+    public BitSet getChunksUpdatedSince(int epochSeconds) {
+        BitSet bits = new BitSet(1024);
+        for (int i = 0; i < 1024; i++) {
+            if (hasChunk(i) && chunkTimestamps[i] >= epochSeconds) bits.set(i);
+        }
+        return bits;
+    }
+
+    /** @return a copy of the timestamp table. Entries for chunks which do not exist are 0. */
+    public int[] getChunkTimestamps() {
+        return Arrays.copyOf(chunkTimestamps, 1024);
+    }
+
+    /** @return a copy of the chunk sector table. */
+    public int[] getChunkSectorTable() {
+        return Arrays.copyOf(chunkSectors, 1024);
+    }
+
+    /** @return largest chunk timestamp, or -1 if there are no chunks. */
+    public int getMaxTimestamp() {
+        int max = -1;
+        for (int i = 0; i < 1024; i++) {
+            if (hasChunk(i) && chunkTimestamps[i] > max) max = chunkTimestamps[i];
+        }
+        return max;
+    }
+
+    /** @return header-only {@link McaFileStats} for this file. */
+    public McaFileStats toStats() {
+        return new McaFileStats(regionXZ, chunkSectors, chunkTimestamps, fileLength);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s; chunks %d; file-length %d; max-timestamp %d",
+                mcaType, regionXZ, chunkCount, fileLength, getMaxTimestamp());
+    }
+}
@@ -0,0 +1,370 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+
+import java.util.*;
+
+/**
+ * Structured layout and health information for a single mca file. Useful for deciding which region files
+ * would benefit from being compacted (see {@link RandomAccessMcaFile#optimizeFile()}) or recompressed.
+ *
+ * <p>Sector usage and timestamp information is always available as it is computed from the 8KiB file header alone.
+ * Per-chunk compressed sizes and compression types require reading the 5 byte prefix of each chunk, and
+ * uncompressed sizes require inflating (but not parsing) each chunk - see {@link Detail}. Values which were not
+ * gathered are reported as -1 (or {@code null} / {@link Double#NaN} where noted).</p>
+ *
+ * @see RandomAccessMcaFile#computeStats(Detail)
+ * @see McaFileChunkIterator#getStats()
+ */
+public class McaFileStats {
+
+    /** Controls how much of the mca file is read when computing stats. Each level includes the previous ones. */
+    public enum Detail {
+        /** Only the 8KiB file header is read. */
+        HEADER_ONLY,
+        /** Also reads the byte length and compression type (5 bytes) stored at the start of each chunk. */
+        CHUNK_PREFIXES,
+        /** Also inflates each chunk to measure its uncompressed size. The nbt data is not parsed. */
+        UNCOMPRESSED_SIZES
+    }
+
+    private final IntPointXZ regionXZ;
+    private final long fileLength;
+    private final int[] chunkSectors;
+    private final int[] chunkTimestamps;
+    private final int[] compressedSizes = new int[1024];
+    private final int[] uncompressedSizes = new int[1024];
+    private final byte[] compressionTypeIds = new byte[1024];
+
+    private final int chunkCount;
+    private final int eofSector;
+    private final int usedSectors;
+    private final int freeSectors;
+    private final int overlappingSectors;
+    private final int largestFreeRun;
+    private final int chunksPastEof;
+    private int invalidChunkPrefixes;
+
+    /**
+     * @param regionXZ region coordinates, may be null if unknown.
+     * @param chunkSectors mca header chunk sector table - values are copied.
+     * @param chunkTimestamps mca header timestamp table - values are copied.
+     * @param fileLength length of the mca file in bytes, or -1 if not known.
+     */
+    McaFileStats(IntPointXZ regionXZ, int[] chunkSectors, int[] chunkTimestamps, long fileLength) {
+        if (chunkSectors.length != 1024 || chunkTimestamps.length != 1024)
+            throw new IllegalArgumentException();
+        this.regionXZ = regionXZ;
+        this.fileLength = fileLength;
+        this.chunkSectors = Arrays.copyOf(chunkSectors, 1024);
+        this.chunkTimestamps = Arrays.copyOf(chunkTimestamps, 1024);
+        Arrays.fill(compressedSizes, -1);
+        Arrays.fill(uncompressedSizes, -1);
+        Arrays.fill(compressionTypeIds, (byte) -1);
+
+        final BitSet used = new BitSet();
+        final BitSet overlapping = new BitSet();
+        final long fileSectors = fileLength >= 0 ? (fileLength + 4095) / 4096 : Long.MAX_VALUE;
+        int count = 0;
+        int eof = 2;
+        int pastEof = 0;
+        for (int i = 0; i < 1024; i++) {
+            final int start = chunkSectors[i] >>> 8;
+            final int size = chunkSectors[i] & 0xFF;
+            if (size == 0) continue;
+            count++;
+            final int end = start + size;
+            if (end > eof) eof = end;
+            if (end > fileSectors) pastEof++;
+            for (int s = start; s < end; s++) {
+                if (used.get(s)) overlapping.set(s);
+                else used.set(s);
+            }
+        }
+        // sectors 0 and 1 hold the header - chunks claiming them are always overlapping
+        overlapping.or(used.get(0, 2));
+        used.clear(0, 2);
+
+        int free = 0;
+        int run = 0;
+        int largestRun = 0;
+        for (int s = 2; s < eof; s++) {
+            if (used.get(s)) {
+                run = 0;
+            } else {
+                free++;
+                if (++run > largestRun) largestRun = run;
+            }
+        }
+
+        this.chunkCount = count;
+        this.eofSector = eof;
+        this.usedSectors = used.cardinality();
+        this.freeSectors = free;
+        this.overlappingSectors = overlapping.cardinality();
+        this.largestFreeRun = largestRun;
+        this.chunksPastEof = pastEof;
+    }
+
+    /**
+     * Records the chunk prefix information for the given chunk.
+     * @param byteLength byte length value as stored in the chunk prefix (includes the compression type byte).
+     * @param compressionTypeId compression type id byte.
+     */
+    void recordChunkPrefix(int chunkIndex, int byteLength, int compressionTypeId) {
+        if (byteLength <= 1 || byteLength > (chunkSectors[chunkIndex] & 0xFF) * 4096 - 4) {
+            invalidChunkPrefixes++;
+            return;
+        }
+        compressedSizes[chunkIndex] = byteLength - 1;
+        compressionTypeIds[chunkIndex] = (byte) compressionTypeId;
+    }
+
+    void recordUncompressedSize(int chunkIndex, int uncompressedSize) {
+        uncompressedSizes[chunkIndex] = uncompressedSize;
+    }
+
+    void recordInvalidChunkPrefix() {
+        invalidChunkPrefixes++;
+    }
+
+    /** @return region XZ, may be null if unknown. */
+    public IntPointXZ getRegionXZ() {
+        return regionXZ;
+    }
+
+    /** @return length of the mca file in bytes, or -1 if not known. */
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    /** @return number of chunks present according to the file header. */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /** @return the first sector past the end of the last chunk, this is the minimum file size in sectors. */
+    public int getEofSector() {
+        return eofSector;
+    }
+
+    /** @return number of sectors, excluding the 2 header sectors, which are referenced by at least one chunk. */
+    public int getUsedSectors() {
+        return usedSectors;
+    }
+
+    /** @return number of unreferenced sectors between the header and {@link #getEofSector()}. */
+    public int getFreeSectors() {
+        return freeSectors;
+    }
+
+    /**
+     * @return number of sectors referenced by more than one chunk (or claimed by a chunk but part of the header).
+     * Any non-zero value indicates a corrupt mca file.
+     */
+    public int getOverlappingSectors() {
+        return overlappingSectors;
+    }
+
+    /** @return size, in sectors, of the largest contiguous run of free sectors. */
+    public int getLargestFreeRun() {
+        return largestFreeRun;
+    }
+
+    /** @return number of chunks whose sectors extend past the end of the file. Always 0 if the file length is unknown. */
+    public int getChunksPastEof() {
+        return chunksPastEof;
+    }
+
+    /** @return number of chunks whose prefix byte length was invalid. Only populated when chunk prefixes were read. */
+    public int getInvalidChunkPrefixes() {
+        return invalidChunkPrefixes;
+    }
+
+    /** @return bytes past {@link #getEofSector()}, or -1 if the file length is unknown. */
+    public long getTrailingBytes() {
+        return fileLength >= 0 ? Math.max(0, fileLength - eofSector * 4096L) : -1;
+    }
+
+    /**
+     * @return bytes which {@link RandomAccessMcaFile#optimizeFile()} would reclaim - free sectors plus
+     * {@link #getTrailingBytes()} (if known).
+     */
+    public long getWastedBytes() {
+        return freeSectors * 4096L + Math.max(0, getTrailingBytes());
+    }
+
+    /** @return fraction of the chunk data area (everything past the header) which is unused, 0 for an empty file. */
+    public double getFragmentationRatio() {
+        long dataBytes = Math.max(fileLength, eofSector * 4096L) - 2 * 4096L;
+        if (dataBytes <= 0) return 0;
+        return (double) getWastedBytes() / dataBytes;
+    }
+
+    /** @return true if the chunk exists according to the file header. */
+    public boolean hasChunk(int chunkIndex) {
+        return (chunkSectors[chunkIndex] & 0xFF) > 0;
+    }
+
+    /** @return number of sectors allocated to the chunk, 0 if the chunk does not exist. */
+    public int getSectorCount(int chunkIndex) {
+        return chunkSectors[chunkIndex] & 0xFF;
+    }
+
+    /** @return chunk timestamp, in epoch seconds, or -1 if the chunk does not exist. */
+    public int getTimestamp(int chunkIndex) {
+        return hasChunk(chunkIndex) ? chunkTimestamps[chunkIndex] : -1;
+    }
+
+    /** @return size of the compressed chunk data, excluding the 5 byte prefix, or -1 if unknown. */
+    public int getCompressedSize(int chunkIndex) {
+        return compressedSizes[chunkIndex];
+    }
+
+    /** @return size of the uncompressed chunk nbt data, or -1 if unknown. */
+    public int getUncompressedSize(int chunkIndex) {
+        return uncompressedSizes[chunkIndex];
+    }
+
+    /** @return compression type used by the chunk, or null if unknown (or not a known compression type). */
+    public CompressionType getCompressionType(int chunkIndex) {
+        return compressionTypeIds[chunkIndex] >= 0 ? CompressionType.getFromID(compressionTypeIds[chunkIndex]) : null;
+    }
+
+    /** @return uncompressed size / compressed size, or {@link Double#NaN} if either is unknown. */
+    public double getCompressionRatio(int chunkIndex) {
+        if (compressedSizes[chunkIndex] <= 0 || uncompressedSizes[chunkIndex] < 0) return Double.NaN;
+        return (double) uncompressedSizes[chunkIndex] / compressedSizes[chunkIndex];
+    }
+
+    /** @return sum of all known compressed chunk sizes. */
+    public long getTotalCompressedBytes() {
+        long sum = 0;
+        for (int size : compressedSizes) {
+            if (size > 0) sum += size;
+        }
+        return sum;
+    }
+
+    /** @return sum of all known uncompressed chunk sizes. */
+    public long getTotalUncompressedBytes() {
+        long sum = 0;
+        for (int size : uncompressedSizes) {
+            if (size > 0) sum += size;
+        }
+        return sum;
+    }
+
+    /**
+     * @return total uncompressed size / total compressed size considering only chunks for which both values are
+     * known, or {@link Double#NaN} if there are no such chunks.
+     */
+    public double getCompressionRatio() {
+        long compressed = 0;
+        long uncompressed = 0;
+        for (int i = 0; i < 1024; i++) {
+            if (compressedSizes[i] > 0 && uncompressedSizes[i] >= 0) {
+                compressed += compressedSizes[i];
+                uncompressed += uncompressedSizes[i];
+            }
+        }
+        return compressed > 0 ? (double) uncompressed / compressed : Double.NaN;
+    }
+
+    /**
+     * @return bytes allocated to chunks (by sector) but not used by their compressed data. Only counts chunks whose
+     * compressed size is known.
+     */
+    public long getSectorSlackBytes() {
+        long slack = 0;
+        for (int i = 0; i < 1024; i++) {
+            if (compressedSizes[i] >= 0) {
+                slack += (chunkSectors[i] & 0xFF) * 4096L - compressedSizes[i] - 5;
+            }
+        }
+        return slack;
+    }
+
+    /**
+     * @return count of chunks by compression type. Chunks whose compression type is unknown (or which use a
+     * compression type id this library does not recognize) are not counted.
+     */
+    public Map<CompressionType, Integer> getCompressionTypeHistogram() {
+        Map<CompressionType, Integer> histogram = new EnumMap<>(CompressionType.class);
+        for (int i = 0; i < 1024; i++) {
+            CompressionType ct = getCompressionType(i);
+            if (ct != null) histogram.merge(ct, 1, Integer::sum);
+        }
+        return histogram;
+    }
+
+    /** @return smallest chunk timestamp, or -1 if there are no chunks. */
+    public int getMinTimestamp() {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < 1024; i++) {
+            if (hasChunk(i) && chunkTimestamps[i] < min) min = chunkTimestamps[i];
+        }
+        return chunkCount > 0 ? min : -1;
+    }
+
+    /** @return largest chunk timestamp, or -1 if there are no chunks. */
+    public int getMaxTimestamp() {
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < 1024; i++) {
+            if (hasChunk(i) && chunkTimestamps[i] > max) max = chunkTimestamps[i];
+        }
+        return chunkCount > 0 ? max : -1;
+    }
+
+    /** @return number of chunks with a timestamp GE the given epoch seconds. */
+    public int countChunksUpdatedSince(int epochSeconds) {
+        int count = 0;
+        for (int i = 0; i < 1024; i++) {
+            if (hasChunk(i) && chunkTimestamps[i] >= epochSeconds) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Buckets chunk timestamps.
+     * @param bucketSeconds width of each bucket, in seconds. For example 86400 to bucket by day (UTC).
+     * @return sorted map of bucket start (epoch seconds) to chunk count. Empty buckets are omitted.
+     */
+    public SortedMap<Integer, Integer> getTimestampHistogram(int bucketSeconds) {
+        if (bucketSeconds <= 0) throw new IllegalArgumentException("bucketSeconds must be GT 0");
+        SortedMap<Integer, Integer> histogram = new TreeMap<>();
+        for (int i = 0; i < 1024; i++) {
+            if (hasChunk(i)) {
+                histogram.merge(Math.floorDiv(chunkTimestamps[i], bucketSeconds) * bucketSeconds, 1, Integer::sum);
+            }
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "region %s; chunks %d; file-length %d; sectors[eof %d; used %d; free %d; overlapping %d; " +
+                        "largest-free-run %d]; wasted-bytes %d; fragmentation %.3f; chunks-past-eof %d; " +
+                        "invalid-chunk-prefixes %d; compression %s; compressed-bytes %d; uncompressed-bytes %d; " +
+                        "timestamps[%d..%d]",
+                regionXZ,
+                chunkCount,
+                fileLength,
+                eofSector,
+                usedSectors,
+                freeSectors,
+                overlappingSectors,
+                largestFreeRun,
+                getWastedBytes(),
+                getFragmentationRatio(),
+                chunksPastEof,
+                invalidChunkPrefixes,
+                getCompressionTypeHistogram(),
+                getTotalCompressedBytes(),
+                getTotalUncompressedBytes(),
+                getMinTimestamp(),
+                getMaxTimestamp());
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.SilentIOException;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bulk, header-only, scanning of whole world directories. Only the first 8KiB of each mca file is read (see
+ * {@link McaFileHeader}), no chunk data is touched, and files are read in parallel.
+ *
+ * <p>Example, find all region files with chunks which have changed since the last backup:</p>
+ * <pre>{@code
+ * Map<String, Map<IntPointXZ, McaFileHeader>> index = McaHeaderScanner.scan(worldRoot);
+ * index.get("region").values().stream()
+ *         .filter(h -> !h.getChunksUpdatedSince(lastBackupEpochSeconds).isEmpty())
+ *         .forEach(...);
+ * }</pre>
+ */
+public final class McaHeaderScanner {
+    private McaHeaderScanner() {}
+
+    /** The mca types (directory names) scanned when none are specified. */
+    public static final List<String> DEFAULT_MCA_TYPES = List.of("region", "poi", "entities");
+
+    /**
+     * Lists the mca files in the given mca type directories of a world.
+     * @param worldRoot world root directory - the directory which contains "region", "poi", etc.
+     * @param mcaTypes mca type directory names to list, if none are given {@link #DEFAULT_MCA_TYPES} is used.
+     *                 Directories which do not exist are skipped.
+     * @return mca files, sorted by path.
+     */
+    public static List<Path> listMcaFiles(Path worldRoot, String... mcaTypes) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String mcaType : mcaTypes.length > 0 ? Arrays.asList(mcaTypes) : DEFAULT_MCA_TYPES) {
+            Path dir = worldRoot.resolve(mcaType);
+            if (!Files.isDirectory(dir)) continue;
+            try (Stream<Path> listing = Files.list(dir)) {
+                listing.filter(p -> McaFileHelpers.isValidMcaFileName(p.getFileName().toString()))
+                        .filter(Files::isRegularFile)
+                        .forEach(files::add);
+            }
+        }
+        files.sort(Comparator.naturalOrder());
+        return files;
+    }
+
+    /**
+     * Reads the headers of all mca files in the given mca type directories of a world, in parallel.
+     * <p>The returned stream is parallel and lazily reads headers as it is consumed. Any {@link IOException}
+     * encountered while reading a header is rethrown as a {@link SilentIOException} from the terminal stream
+     * operation.</p>
+     * @param worldRoot world root directory - the directory which contains "region", "poi", etc.
+     * @param mcaTypes mca type directory names to scan, if none are given {@link #DEFAULT_MCA_TYPES} is used.
+     * @see #listMcaFiles(Path, String...)
+     */
+    public static Stream<McaFileHeader> stream(Path worldRoot, String... mcaTypes) throws IOException {
+        return listMcaFiles(worldRoot, mcaTypes).parallelStream().map(McaHeaderScanner::readHeaderSilently);
+    }
+
+    /**
+     * Reads the headers of all mca files in the given mca type directories of a world, in parallel.
+     * @param worldRoot world root directory - the directory which contains "region", "poi", etc.
+     * @param mcaTypes mca type directory names to scan, if none are given {@link #DEFAULT_MCA_TYPES} is used.
+     * @return Map of mca type to a map of region XZ to header. Only mca types which had at least one mca file
+     * are present in the result.
+     */
+    public static Map<String, Map<IntPointXZ, McaFileHeader>> scan(Path worldRoot, String... mcaTypes) throws IOException {
+        List<McaFileHeader> headers;
+        try {
+            headers = stream(worldRoot, mcaTypes).collect(Collectors.toList());
+        } catch (SilentIOException ex) {
+            throw (IOException) ex.getCause();
+        }
+        Map<String, Map<IntPointXZ, McaFileHeader>> index = new HashMap<>();
+        for (McaFileHeader header : headers) {
+            index.computeIfAbsent(header.getMcaType(), k -> new HashMap<>()).put(header.getRegionXZ(), header);
+        }
+        return index;
+    }
+
+    private static McaFileHeader readHeaderSilently(Path mcaFile) {
+        try {
+            return McaFileHeader.read(mcaFile);
+        } catch (IOException ex) {
+            throw new SilentIOException("Failed to read header of " + mcaFile, ex);
+        }
+    }
+}
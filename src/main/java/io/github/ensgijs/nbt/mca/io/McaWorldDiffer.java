@@ -0,0 +1,187 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.BinaryNbtDeserializer;
+import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.io.NamedTag;
+import io.github.ensgijs.nbt.io.SilentIOException;
+import io.github.ensgijs.nbt.mca.ChunkBase;
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Finds the chunks which differ between two copies (snapshots) of a world, doing as little work as possible.
+ * Each chunk goes through up to three increasingly expensive stages, only moving to the next stage if the
+ * current one could not rule out a change:
+ * <ol>
+ *     <li>Compare mca file header timestamps and sector counts (see {@link McaFileHeader}). No chunk data is read.
+ *     If both are identical the chunk is considered unchanged.</li>
+ *     <li>Compare the raw, compressed, chunk payloads byte for byte. If identical the chunk is reported as
+ *     {@link ChangeType#TOUCHED}.</li>
+ *     <li>Decompress and parse both chunks and compare the resulting nbt. If identical the chunk is reported as
+ *     {@link ChangeType#REENCODED}, otherwise {@link ChangeType#MODIFIED}. This stage can be disabled with
+ *     {@link #setCompareNbt(boolean)}.</li>
+ * </ol>
+ * Regions are processed in parallel and results are streamed as each region completes.
+ */
+public class McaWorldDiffer {
+
+    public enum ChangeType {
+        /** Chunk exists in B but not A. */
+        ADDED,
+        /** Chunk exists in A but not B. */
+        REMOVED,
+        /** Chunk nbt data differs. */
+        MODIFIED,
+        /** Compressed payloads differ but the chunk nbt data is identical. */
+        REENCODED,
+        /** Header timestamp or sector count changed but the compressed payload is identical. */
+        TOUCHED
+    }
+
+    /**
+     * @param mcaType mca type such as "region", "poi", "entities".
+     * @param regionXZ region coordinates.
+     * @param chunkIndex chunk index within the region.
+     * @param timestampA header timestamp in world A, -1 if the chunk does not exist in A.
+     * @param timestampB header timestamp in world B, -1 if the chunk does not exist in B.
+     */
+    public record ChunkChange(String mcaType, IntPointXZ regionXZ, int chunkIndex, ChangeType type,
+                              int timestampA, int timestampB) {
+        /** @return absolute chunk XZ of the changed chunk. */
+        public IntPointXZ chunkXZ() {
+            return regionXZ.transformRegionToChunk().add(McaFileBase.getRelativeChunkXZ(chunkIndex));
+        }
+    }
+
+    private boolean compareNbt = true;
+    private boolean reportTouched = true;
+
+    /**
+     * When set (the default) chunks whose compressed payloads differ are decompressed and parsed to determine if
+     * the nbt data actually changed. When unset such chunks are always reported as {@link ChangeType#MODIFIED}.
+     */
+    public McaWorldDiffer setCompareNbt(boolean compareNbt) {
+        this.compareNbt = compareNbt;
+        return this;
+    }
+
+    public boolean isCompareNbt() {
+        return compareNbt;
+    }
+
+    /**
+     * When set (the default) chunks which are {@link ChangeType#TOUCHED} or {@link ChangeType#REENCODED}
+     * are included in the results. When unset only chunks whose data actually changed are reported.
+     */
+    public McaWorldDiffer setReportTouched(boolean reportTouched) {
+        this.reportTouched = reportTouched;
+        return this;
+    }
+
+    public boolean isReportTouched() {
+        return reportTouched;
+    }
+
+    /**
+     * Diffs all mca files of the given types between two world directories. Region files which exist in only one
+     * of the worlds report all of their chunks as added or removed.
+     * <p>The returned stream is parallel and lazily performs the diff as it is consumed. Any {@link IOException}
+     * is rethrown as a {@link SilentIOException} from the terminal stream operation.</p>
+     * @param worldA world root directory of the "before" snapshot.
+     * @param worldB world root directory of the "after" snapshot.
+     * @param mcaTypes mca type directory names to diff, if none are given
+     *                 {@link McaHeaderScanner#DEFAULT_MCA_TYPES} is used.
+     */
+    public Stream<ChunkChange> diff(Path worldA, Path worldB, String... mcaTypes) throws IOException {
+        // relative paths, such as "region/r.0.0.mca", present in either world
+        SortedSet<Path> relativePaths = new TreeSet<>();
+        for (Path p : McaHeaderScanner.listMcaFiles(worldA, mcaTypes)) {
+            relativePaths.add(worldA.relativize(p));
+        }
+        for (Path p : McaHeaderScanner.listMcaFiles(worldB, mcaTypes)) {
+            relativePaths.add(worldB.relativize(p));
+        }
+        return new ArrayList<>(relativePaths).parallelStream().flatMap(relativePath -> {
+            try {
+                return diffRegion(worldA.resolve(relativePath), worldB.resolve(relativePath)).stream();
+            } catch (IOException ex) {
+                throw new SilentIOException("Failed to diff " + relativePath, ex);
+            }
+        });
+    }
+
+    /**
+     * Diffs a single mca file.
+     * @param mcaFileA mca file from the "before" snapshot, need not exist.
+     * @param mcaFileB mca file from the "after" snapshot, need not exist.
+     * @return changes, in chunk index order.
+     */
+    public List<ChunkChange> diffRegion(Path mcaFileA, Path mcaFileB) throws IOException {
+        final McaFileHeader headerA = readHeaderIfExists(mcaFileA);
+        final McaFileHeader headerB = readHeaderIfExists(mcaFileB);
+        final McaFileHeader known = headerB != null ? headerB : headerA;
+        if (known == null) return Collections.emptyList();
+        final String mcaType = known.getMcaType();
+        final IntPointXZ regionXZ = known.getRegionXZ();
+
+        List<ChunkChange> changes = new ArrayList<>();
+        BitSet needsPayloadCompare = new BitSet(1024);
+        for (int i = 0; i < 1024; i++) {
+            final boolean inA = headerA != null && headerA.hasChunk(i);
+            final boolean inB = headerB != null && headerB.hasChunk(i);
+            final int timestampA = inA ? headerA.getChunkTimestamp(i) : -1;
+            final int timestampB = inB ? headerB.getChunkTimestamp(i) : -1;
+            if (inA && !inB) {
+                changes.add(new ChunkChange(mcaType, regionXZ, i, ChangeType.REMOVED, timestampA, -1));
+            } else if (!inA && inB) {
+                changes.add(new ChunkChange(mcaType, regionXZ, i, ChangeType.ADDED, -1, timestampB));
+            } else if (inA && (timestampA != timestampB
+                    || headerA.getChunkSectorCount(i) != headerB.getChunkSectorCount(i))) {
+                needsPayloadCompare.set(i);
+            }
+        }
+
+        if (!needsPayloadCompare.isEmpty()) {
+            try (RandomAccessMcaFile<ChunkBase> ramfA = new RandomAccessMcaFile<>(ChunkBase.class, mcaFileA, "r");
+                 RandomAccessMcaFile<ChunkBase> ramfB = new RandomAccessMcaFile<>(ChunkBase.class, mcaFileB, "r")) {
+                for (int i = needsPayloadCompare.nextSetBit(0); i >= 0; i = needsPayloadCompare.nextSetBit(i + 1)) {
+                    ChangeType type = comparePayloads(ramfA.readRaw(i), ramfB.readRaw(i));
+                    if (reportTouched || type == ChangeType.MODIFIED) {
+                        changes.add(new ChunkChange(mcaType, regionXZ, i, type,
+                                headerA.getChunkTimestamp(i), headerB.getChunkTimestamp(i)));
+                    }
+                }
+            }
+            changes.sort(Comparator.comparingInt(ChunkChange::chunkIndex));
+        }
+        return changes;
+    }
+
+    private ChangeType comparePayloads(byte[] rawA, byte[] rawB) throws IOException {
+        if (Arrays.equals(rawA, rawB)) return ChangeType.TOUCHED;
+        if (!compareNbt) return ChangeType.MODIFIED;
+        NamedTag tagA = parseRaw(rawA);
+        NamedTag tagB = parseRaw(rawB);
+        return tagA != null && tagB != null && Objects.equals(tagA.getTag(), tagB.getTag())
+                ? ChangeType.REENCODED
+                : ChangeType.MODIFIED;
+    }
+
+    /** @return parsed tag, or null if the compression type is not supported. */
+    private static NamedTag parseRaw(byte[] raw) throws IOException {
+        CompressionType compressionType = CompressionType.getFromID(raw[0]);
+        if (compressionType == null) return null;
+        return new BinaryNbtDeserializer(compressionType).fromStream(new ByteArrayInputStream(raw, 1, raw.length - 1));
+    }
+
+    private static McaFileHeader readHeaderIfExists(Path mcaFile) throws IOException {
+        return Files.isRegularFile(mcaFile) ? McaFileHeader.read(mcaFile) : null;
+    }
+}
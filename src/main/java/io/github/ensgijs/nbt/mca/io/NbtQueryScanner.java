@@ -0,0 +1,97 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.SilentIOException;
+import io.github.ensgijs.nbt.mca.ChunkBase;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+import io.github.ensgijs.nbt.query.NbtQuery;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Runs an {@link NbtQuery} against every chunk of an mca file or of a whole world.
+ * <p>Chunks are read with {@link LoadFlags#RAW} so no chunk wrapper state is built, the query runs directly
+ * against the chunk nbt data. Matches are streamed lazily, a chunk is only read once the matches of the
+ * previous chunk have been consumed.</p>
+ * <pre>{@code
+ * NbtQuery zombies = NbtQuery.of("Entities[?id==\"minecraft:zombie\"]");
+ * new NbtQueryScanner(worldRoot).stream(zombies, "entities")
+ *         .forEach(m -> System.out.println(m.chunkXZ() + " " + m.value()));
+ * }</pre>
+ */
+public class NbtQueryScanner {
+    private final Path worldRoot;
+
+    /** A single query result. */
+    public record Match(IntPointXZ chunkXZ, Object value) {}
+
+    /**
+     * @param worldRoot world root directory - the directory which contains "region", "poi", etc.
+     */
+    public NbtQueryScanner(Path worldRoot) {
+        this.worldRoot = worldRoot;
+    }
+
+    public Path getWorldRoot() {
+        return worldRoot;
+    }
+
+    /**
+     * Runs the query against every chunk of every mca file of the given types. Files are processed in parallel,
+     * chunks within a file are processed in file order.
+     * @param query query to run against each chunk's nbt data.
+     * @param mcaTypes mca types (sub directories) to scan, such as "region" or "entities". If none are given
+     *                 "region", "poi" and "entities" are scanned. Types must have a creator registered in
+     *                 {@link McaFileChunkIterator#DEFAULT_CHUNK_CREATORS}.
+     * @return Parallel stream of matches. Any error reading a file is rethrown as a {@link SilentIOException}
+     * from the terminal stream operation.
+     */
+    public Stream<Match> stream(NbtQuery query, String... mcaTypes) throws IOException {
+        return McaHeaderScanner.listMcaFiles(worldRoot, mcaTypes).parallelStream().flatMap(file -> {
+            try {
+                return stream(query, McaFileChunkIterator.iterate(file.toFile(), LoadFlags.RAW));
+            } catch (IOException ex) {
+                throw new SilentIOException("Failed to scan " + file, ex);
+            }
+        });
+    }
+
+    /**
+     * Runs the query against every chunk the given iterator produces. The iterator is closed when the returned
+     * stream is closed, which stream operations such as {@code flatMap} do automatically.
+     * @param query query to run against each chunk's nbt data.
+     * @param chunks iterator to consume - consider creating it with {@link LoadFlags#RAW}.
+     * @return Sequential stream of matches in file order.
+     */
+    public static <T extends ChunkBase> Stream<Match> stream(NbtQuery query, McaFileChunkIterator<T> chunks) {
+        Iterator<Stream<Match>> perChunk = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public Stream<Match> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                T chunk = chunks.next();
+                final IntPointXZ chunkXZ = chunks.currentAbsoluteXZ();
+                return query.stream(chunk.getHandle()).map(v -> new Match(chunkXZ, v));
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(perChunk, Spliterator.ORDERED), false)
+                .flatMap(s -> s)
+                .onClose(() -> {
+                    try {
+                        chunks.close();
+                    } catch (IOException ex) {
+                        throw new SilentIOException(ex);
+                    }
+                });
+    }
+}
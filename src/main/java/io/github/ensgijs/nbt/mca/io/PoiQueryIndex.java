@@ -0,0 +1,295 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.BinaryNbtHelpers;
+import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.io.NamedTag;
+import io.github.ensgijs.nbt.io.SilentIOException;
+import io.github.ensgijs.nbt.mca.PoiChunk;
+import io.github.ensgijs.nbt.mca.PoiRecord;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact index recording which poi types exist in each chunk of each poi mca file of a world. Used by
+ * {@link PoiQueryService} to skip regions and chunks which cannot contain any of the requested poi types without
+ * reading them.
+ * <p>Each region entry remembers the length and last modified time of the file it was built from and is only
+ * trusted while both still match, so a stale index never causes results to be missed - it only makes queries
+ * slower until {@link #update()} is called. Updating is incremental, only chunks whose header timestamp or
+ * sector count changed are re-read.</p>
+ * <p>The index can be persisted with {@link #save(Path)} and reloaded with {@link #load(Path, Path)}; it is
+ * stored as a GZip compressed nbt file.</p>
+ */
+public class PoiQueryIndex {
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path worldRoot;
+    // poi type dictionary, a type's id is its index in this list
+    private final List<String> types = new ArrayList<>();
+    private final Map<String, Integer> typeIds = new HashMap<>();
+    private final Map<IntPointXZ, RegionEntry> regions = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty index. Call {@link #update()} to populate it.
+     * @param worldRoot world root directory - the directory which contains "poi".
+     */
+    public PoiQueryIndex(Path worldRoot) {
+        this.worldRoot = worldRoot;
+    }
+
+    /** Creates and populates an index. */
+    public static PoiQueryIndex build(Path worldRoot) throws IOException {
+        PoiQueryIndex index = new PoiQueryIndex(worldRoot);
+        index.update();
+        return index;
+    }
+
+    public Path getWorldRoot() {
+        return worldRoot;
+    }
+
+    /** @return Number of regions in this index, including regions which may now be stale. */
+    public int getRegionCount() {
+        return regions.size();
+    }
+
+    /** @return All poi types seen while building this index. */
+    public synchronized List<String> getKnownPoiTypes() {
+        return new ArrayList<>(types);
+    }
+
+    /**
+     * Brings this index up to date with the poi files on disk. Regions whose file is unchanged are skipped
+     * entirely, regions whose file was deleted are dropped. Regions are processed in parallel.
+     * @return Number of chunks which were (re)read.
+     */
+    public int update() throws IOException {
+        List<Path> files = McaHeaderScanner.listMcaFiles(worldRoot, "poi");
+        Set<IntPointXZ> seen = new HashSet<>();
+        for (Path file : files) {
+            seen.add(McaFileHelpers.regionXZFromFileName(file.getFileName().toString()));
+        }
+        regions.keySet().retainAll(seen);
+        try {
+            return files.parallelStream().mapToInt(file -> {
+                try {
+                    return updateRegion(file);
+                } catch (IOException ex) {
+                    throw new SilentIOException("Failed to index " + file, ex);
+                }
+            }).sum();
+        } catch (SilentIOException ex) {
+            throw (IOException) ex.getCause();
+        }
+    }
+
+    private int updateRegion(Path file) throws IOException {
+        final McaFileHeader header = McaFileHeader.read(file);
+        final IntPointXZ regionXZ = header.getRegionXZ();
+        final RegionEntry old = regions.get(regionXZ);
+        if (old != null && old.fileLength == header.getFileLength() && old.lastModified == header.getLastModified())
+            return 0;
+        final RegionEntry entry = new RegionEntry(header.getFileLength(), header.getLastModified());
+        int chunksRead = 0;
+        if (!header.isEmpty()) {
+            try (RandomAccessMcaFile<PoiChunk> ramf = new RandomAccessMcaFile<>(PoiChunk.class, file, "r")) {
+                ramf.setLoadFlags(LoadFlags.POI_RECORDS);
+                for (int i = 0; i < 1024; i++) {
+                    if (!header.hasChunk(i)) continue;
+                    entry.chunkTimestamps[i] = header.getChunkTimestamp(i);
+                    entry.chunkSectorCounts[i] = header.getChunkSectorCount(i);
+                    if (old != null && old.chunkTypes[i] != null
+                            && old.chunkTimestamps[i] == entry.chunkTimestamps[i]
+                            && old.chunkSectorCounts[i] == entry.chunkSectorCounts[i]) {
+                        entry.setChunkTypes(i, old.chunkTypes[i]);
+                        continue;
+                    }
+                    PoiChunk chunk = ramf.read(i);
+                    chunksRead++;
+                    BitSet chunkTypes = new BitSet();
+                    if (chunk != null) {
+                        for (PoiRecord record : chunk) {
+                            chunkTypes.set(typeId(record.getType()));
+                        }
+                    }
+                    entry.setChunkTypes(i, chunkTypes);
+                }
+            }
+        }
+        regions.put(regionXZ, entry);
+        return chunksRead;
+    }
+
+    private synchronized int typeId(String type) {
+        return typeIds.computeIfAbsent(type, t -> {
+            types.add(t);
+            return types.size() - 1;
+        });
+    }
+
+    /**
+     * @param poiTypes poi types, if empty the returned mask is null.
+     * @return Bit mask of the given types, types not known to this index have no bit. Null if no types are given
+     * meaning "all types".
+     */
+    synchronized BitSet typeMask(Collection<String> poiTypes) {
+        if (poiTypes.isEmpty()) return null;
+        BitSet mask = new BitSet();
+        for (String type : poiTypes) {
+            Integer id = typeIds.get(type);
+            if (id != null) mask.set(id);
+        }
+        return mask;
+    }
+
+    /**
+     * @return The region entry only if it is current for the given file, else null.
+     */
+    RegionEntry getCurrentEntry(IntPointXZ regionXZ, Path file) throws IOException {
+        RegionEntry entry = regions.get(regionXZ);
+        if (entry == null) return null;
+        if (entry.fileLength != Files.size(file) || entry.lastModified != file.toFile().lastModified())
+            return null;
+        return entry;
+    }
+
+    /**
+     * @return True if the region, as of when it was indexed, contains any poi of the given types.
+     * False if it does not, or if it is not in this index.
+     */
+    public boolean mayContain(IntPointXZ regionXZ, String... poiTypes) {
+        RegionEntry entry = regions.get(regionXZ);
+        return entry != null && entry.mayContain(typeMask(Arrays.asList(poiTypes)));
+    }
+
+    /** Writes this index to the given file as GZip compressed nbt. */
+    public void save(Path indexFile) throws IOException {
+        CompoundTag root = new CompoundTag();
+        root.putInt("Version", FORMAT_VERSION);
+        synchronized (this) {
+            root.putStringsAsTagList("Types", types);
+        }
+        ListTag<CompoundTag> regionsTag = new ListTag<>(CompoundTag.class, regions.size());
+        for (Map.Entry<IntPointXZ, RegionEntry> e : regions.entrySet()) {
+            regionsTag.add(e.getValue().toTag(e.getKey()));
+        }
+        root.put("Regions", regionsTag);
+        BinaryNbtHelpers.write(new NamedTag("PoiQueryIndex", root), indexFile, CompressionType.GZIP);
+    }
+
+    /**
+     * Reads an index written by {@link #save(Path)}. Call {@link #update()} to bring it up to date if the world
+     * may have changed since it was saved.
+     * @param indexFile index file to read.
+     * @param worldRoot world root directory the index describes.
+     */
+    public static PoiQueryIndex load(Path indexFile, Path worldRoot) throws IOException {
+        NamedTag named = BinaryNbtHelpers.read(indexFile, CompressionType.GZIP);
+        if (!(named.getTag() instanceof CompoundTag root) || root.getInt("Version") != FORMAT_VERSION)
+            throw new IOException("Not a poi query index or unsupported version: " + indexFile);
+        PoiQueryIndex index = new PoiQueryIndex(worldRoot);
+        ListTag<StringTag> typesTag = root.getListTagAutoCast("Types");
+        for (StringTag t : typesTag) {
+            index.typeId(t.getValue());
+        }
+        ListTag<CompoundTag> regionsTag = root.getListTagAutoCast("Regions");
+        for (CompoundTag regionTag : regionsTag) {
+            index.regions.put(
+                    new IntPointXZ(regionTag.getInt("x"), regionTag.getInt("z")),
+                    RegionEntry.fromTag(regionTag));
+        }
+        return index;
+    }
+
+    static final class RegionEntry {
+        final long fileLength;
+        final long lastModified;
+        final int[] chunkTimestamps = new int[1024];
+        final int[] chunkSectorCounts = new int[1024];
+        // null for chunks which do not exist
+        final BitSet[] chunkTypes = new BitSet[1024];
+        // union of all chunkTypes
+        final BitSet regionTypes = new BitSet();
+
+        RegionEntry(long fileLength, long lastModified) {
+            this.fileLength = fileLength;
+            this.lastModified = lastModified;
+        }
+
+        void setChunkTypes(int chunkIndex, BitSet types) {
+            chunkTypes[chunkIndex] = types;
+            regionTypes.or(types);
+        }
+
+        /** @param typeMask null means any type. */
+        boolean mayContain(BitSet typeMask) {
+            return typeMask == null ? !regionTypes.isEmpty() : regionTypes.intersects(typeMask);
+        }
+
+        /** @param typeMask null means any type. */
+        boolean mayContain(int chunkIndex, BitSet typeMask) {
+            BitSet types = chunkTypes[chunkIndex];
+            if (types == null) return false;
+            return typeMask == null ? !types.isEmpty() : types.intersects(typeMask);
+        }
+
+        CompoundTag toTag(IntPointXZ regionXZ) {
+            int count = 0;
+            for (BitSet b : chunkTypes) {
+                if (b != null) count++;
+            }
+            int[] indexes = new int[count];
+            int[] timestamps = new int[count];
+            int[] sectorCounts = new int[count];
+            // one long per chunk covers the first 64 poi types, vanilla has around 20
+            int wordsPerChunk = Math.max(1, (regionTypes.length() + 63) >> 6);
+            long[] masks = new long[count * wordsPerChunk];
+            int n = 0;
+            for (int i = 0; i < 1024; i++) {
+                if (chunkTypes[i] == null) continue;
+                indexes[n] = i;
+                timestamps[n] = chunkTimestamps[i];
+                sectorCounts[n] = chunkSectorCounts[i];
+                long[] words = chunkTypes[i].toLongArray();
+                System.arraycopy(words, 0, masks, n * wordsPerChunk, words.length);
+                n++;
+            }
+            CompoundTag tag = new CompoundTag();
+            tag.putInt("x", regionXZ.getX());
+            tag.putInt("z", regionXZ.getZ());
+            tag.putLong("FileLength", fileLength);
+            tag.putLong("LastModified", lastModified);
+            tag.putIntArray("Chunks", indexes);
+            tag.putIntArray("Timestamps", timestamps);
+            tag.putIntArray("Sectors", sectorCounts);
+            tag.putInt("WordsPerChunk", wordsPerChunk);
+            tag.putLongArray("Types", masks);
+            return tag;
+        }
+
+        static RegionEntry fromTag(CompoundTag tag) {
+            RegionEntry entry = new RegionEntry(tag.getLong("FileLength"), tag.getLong("LastModified"));
+            int[] indexes = tag.getIntArray("Chunks");
+            int[] timestamps = tag.getIntArray("Timestamps");
+            int[] sectorCounts = tag.getIntArray("Sectors");
+            int wordsPerChunk = tag.getInt("WordsPerChunk");
+            long[] masks = tag.getLongArray("Types");
+            for (int n = 0; n < indexes.length; n++) {
+                int i = indexes[n];
+                entry.chunkTimestamps[i] = timestamps[n];
+                entry.chunkSectorCounts[i] = sectorCounts[n];
+                entry.setChunkTypes(i, BitSet.valueOf(
+                        Arrays.copyOfRange(masks, n * wordsPerChunk, (n + 1) * wordsPerChunk)));
+            }
+            return entry;
+        }
+    }
+}
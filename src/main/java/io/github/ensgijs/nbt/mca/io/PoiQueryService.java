@@ -0,0 +1,166 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.SilentIOException;
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.PoiChunk;
+import io.github.ensgijs.nbt.mca.PoiRecord;
+import io.github.ensgijs.nbt.mca.util.BlockAlignedBoundingRectangle;
+import io.github.ensgijs.nbt.mca.util.ChunkBoundingRectangle;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+import io.github.ensgijs.nbt.mca.util.RegionBoundingRectangle;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Answers "which poi records of these types are within this area" across all poi mca files of a world.
+ * <p>Work is pruned at every level before any chunk is parsed:</p>
+ * <ol>
+ *     <li>Regions which do not intersect the query bounds are skipped without being opened.</li>
+ *     <li>If an {@link PoiQueryIndex} is set, and is current for the region, regions and chunks which contain
+ *     none of the requested poi types are skipped.</li>
+ *     <li>Only chunks which intersect the query bounds, and which exist according to the file header, are read
+ *     and they are read with only {@link LoadFlags#POI_RECORDS}.</li>
+ * </ol>
+ * <p>Regions are processed in parallel.</p>
+ * <pre>{@code
+ * PoiQueryService poi = new PoiQueryService(worldRoot)
+ *         .setIndex(PoiQueryIndex.build(worldRoot));
+ * long beds = poi.query(new ChunkBoundingRectangle(0, 0, 64), "minecraft:home").count();
+ * }</pre>
+ */
+public class PoiQueryService {
+    private final Path worldRoot;
+    private PoiQueryIndex index;
+
+    /**
+     * @param worldRoot world root directory - the directory which contains "poi".
+     */
+    public PoiQueryService(Path worldRoot) {
+        this.worldRoot = worldRoot;
+    }
+
+    public Path getWorldRoot() {
+        return worldRoot;
+    }
+
+    public PoiQueryIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Sets the index used to skip regions and chunks which do not contain the requested poi types.
+     * The index is only used for regions whose file is unchanged since the index was last updated.
+     * @param index index to use, may be null.
+     */
+    public PoiQueryService setIndex(PoiQueryIndex index) {
+        this.index = index;
+        return this;
+    }
+
+    /**
+     * Finds poi records within the given bounds.
+     * @param bounds XZ bounds to search, null to search the whole world.
+     * @param poiTypes poi types to find, such as "minecraft:home", if none are given all types match. Repeated types
+     *                 are only matched once.
+     * @return Stream of matching records. The stream is parallel and lazily reads regions as it is consumed.
+     * Any {@link IOException} is rethrown as a {@link SilentIOException} from the terminal stream operation.
+     */
+    public Stream<PoiRecord> query(BlockAlignedBoundingRectangle bounds, String... poiTypes) throws IOException {
+        return query(bounds, Integer.MIN_VALUE, Integer.MAX_VALUE, poiTypes);
+    }
+
+    /**
+     * Finds poi records within the given bounds.
+     * @param bounds XZ bounds to search, null to search the whole world.
+     * @param minY minimum block Y, inclusive.
+     * @param maxY maximum block Y, inclusive.
+     * @param poiTypes poi types to find, such as "minecraft:home", if none are given all types match. Repeated types
+     *                 are only matched once.
+     * @return Stream of matching records. The stream is parallel and lazily reads regions as it is consumed.
+     * Any {@link IOException} is rethrown as a {@link SilentIOException} from the terminal stream operation.
+     */
+    public Stream<PoiRecord> query(BlockAlignedBoundingRectangle bounds, int minY, int maxY, String... poiTypes) throws IOException {
+        // repeated types would otherwise collect the same records once per repeat
+        final List<String> types = new ArrayList<>(new LinkedHashSet<>(Arrays.asList(poiTypes)));
+        final PoiQueryIndex index = this.index;
+        final BitSet typeMask = index != null ? index.typeMask(types) : null;
+        List<Path> files = new ArrayList<>();
+        for (Path file : McaHeaderScanner.listMcaFiles(worldRoot, "poi")) {
+            IntPointXZ regionXZ = McaFileHelpers.regionXZFromFileName(file.getFileName().toString());
+            if (bounds == null || new RegionBoundingRectangle(regionXZ.getX(), regionXZ.getZ()).intersects(bounds)) {
+                files.add(file);
+            }
+        }
+        return files.parallelStream().flatMap(file -> {
+            try {
+                return queryRegion(file, bounds, minY, maxY, types, index, typeMask).stream();
+            } catch (IOException ex) {
+                throw new SilentIOException("Failed to query " + file, ex);
+            }
+        });
+    }
+
+    private static List<PoiRecord> queryRegion(Path file, BlockAlignedBoundingRectangle bounds, int minY, int maxY,
+                                               List<String> types, PoiQueryIndex index, BitSet typeMask) throws IOException {
+        final IntPointXZ regionXZ = McaFileHelpers.regionXZFromFileName(file.getFileName().toString());
+        final PoiQueryIndex.RegionEntry entry = index != null ? index.getCurrentEntry(regionXZ, file) : null;
+        if (entry != null && !entry.mayContain(typeMask))
+            return Collections.emptyList();
+
+        // clip the chunk iteration range to the query bounds
+        final ChunkBoundingRectangle regionChunks = new RegionBoundingRectangle(regionXZ.getX(), regionXZ.getZ()).asChunkBounds();
+        int minChunkX = regionChunks.getMinChunkX();
+        int minChunkZ = regionChunks.getMinChunkZ();
+        int maxChunkX = regionChunks.getMaxChunkX();  // exclusive
+        int maxChunkZ = regionChunks.getMaxChunkZ();  // exclusive
+        if (bounds != null) {
+            minChunkX = Math.max(minChunkX, bounds.getMinBlockX() >> 4);
+            minChunkZ = Math.max(minChunkZ, bounds.getMinBlockZ() >> 4);
+            maxChunkX = Math.min(maxChunkX, ((bounds.getMaxBlockX() - 1) >> 4) + 1);
+            maxChunkZ = Math.min(maxChunkZ, ((bounds.getMaxBlockZ() - 1) >> 4) + 1);
+        }
+
+        final McaFileHeader header = McaFileHeader.read(file);
+        BitSet chunksToRead = new BitSet(1024);
+        for (int cz = minChunkZ; cz < maxChunkZ; cz++) {
+            for (int cx = minChunkX; cx < maxChunkX; cx++) {
+                int i = McaFileBase.getChunkIndex(cx, cz);
+                if (header.hasChunk(i) && (entry == null || entry.mayContain(i, typeMask))) {
+                    chunksToRead.set(i);
+                }
+            }
+        }
+        if (chunksToRead.isEmpty())
+            return Collections.emptyList();
+
+        List<PoiRecord> results = new ArrayList<>();
+        try (RandomAccessMcaFile<PoiChunk> ramf = new RandomAccessMcaFile<>(PoiChunk.class, file, "r")) {
+            ramf.setLoadFlags(LoadFlags.POI_RECORDS);
+            for (int i = chunksToRead.nextSetBit(0); i >= 0; i = chunksToRead.nextSetBit(i + 1)) {
+                PoiChunk chunk = ramf.read(i);
+                if (chunk == null) continue;
+                if (types.isEmpty()) {
+                    collect(chunk, bounds, minY, maxY, results);
+                } else {
+                    for (String type : types) {
+                        collect(chunk.getAll(type), bounds, minY, maxY, results);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private static void collect(Iterable<PoiRecord> records, BlockAlignedBoundingRectangle bounds, int minY, int maxY,
+                                List<PoiRecord> results) {
+        for (PoiRecord record : records) {
+            if (record.getY() >= minY && record.getY() <= maxY
+                    && (bounds == null || bounds.containsBlock(record.getX(), record.getZ()))) {
+                results.add(record);
+            }
+        }
+    }
+}
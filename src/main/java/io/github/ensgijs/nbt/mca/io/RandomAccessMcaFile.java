@@ -63,8 +63,7 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
     protected boolean autoUpdateHandelOnWrite = true;
     protected boolean alwaysUpdateChunkLastUpdatedTimestamp = true;
     // TODO: use this flag to short-circuit file write operations if they are not necessary.
-    //   Currently this flag is only ever set, never cleared.
-    protected boolean isDirty = false;  // set true if any chunks were written or removed
+    protected boolean isDirty = false;  // set true if any chunks were written or removed, cleared by flush
     protected final boolean isReadOnly;
 
     private final Stopwatch fileInitializationStopwatch = Stopwatch.createUnstarted();
@@ -134,6 +133,11 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
         return isReadOnly;
     }
 
+    /** @return true if any chunks have been written or removed since this file was opened or last {@link #flush() flushed}. */
+    public boolean isDirty() {
+        return isDirty;
+    }
+
     /**
      * @return XZ coords of the region, in region coordinates.
      */
@@ -217,6 +221,7 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
     /**
      * @return A diagnostic information string.
      * @see #chunkSectorTableToString()
+     * @see #computeStats(McaFileStats.Detail)
      */
     @Override
     public String toString() {
@@ -299,6 +304,47 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
         return sb.toString();
     }
 
+    /**
+     * Computes structured layout and health statistics for this mca file.
+     * <p>Reflects the current in-memory state of the file header, including any writes or removals which have not
+     * yet been flushed.</p>
+     * @param detail how much of the file to read, {@link McaFileStats.Detail#HEADER_ONLY} reads no chunk data.
+     * @see #chunkSectorTableToString()
+     */
+    public McaFileStats computeStats(McaFileStats.Detail detail) throws IOException {
+        ArgValidator.requireValue(detail, "detail");
+        ensureFileInitialized();
+        final long fileLength = raf.length();
+        McaFileStats stats = new McaFileStats(regionXZ, chunkSectors, chunkTimestamps, fileLength);
+        if (detail == McaFileStats.Detail.HEADER_ONLY)
+            return stats;
+        byte[] buffer = null;
+        for (int i = 0; i < 1024; i++) {
+            final int sectorOffset = chunkSectors[i] >>> 8;
+            final int sectorSize = chunkSectors[i] & 0xFF;
+            if (sectorSize == 0 || sectorOffset < 2 || (sectorOffset + sectorSize) * 4096L > fileLength)
+                continue;
+            raf.seek(sectorOffset * 4096L);
+            final int byteLength = raf.readInt();
+            final int compressionTypeId = raf.read();
+            stats.recordChunkPrefix(i, byteLength, compressionTypeId);
+            if (detail == McaFileStats.Detail.UNCOMPRESSED_SIZES && stats.getCompressedSize(i) > 0) {
+                CompressionType compressionType = stats.getCompressionType(i);
+                if (compressionType == null) continue;
+                final int compressedSize = stats.getCompressedSize(i);
+                if (buffer == null || buffer.length < compressedSize)
+                    buffer = new byte[Math.max(compressedSize, 4096 * 4)];
+                raf.readFully(buffer, 0, compressedSize);
+                try (InputStream in = compressionType.decompress(new ByteArrayInputStream(buffer, 0, compressedSize))) {
+                    stats.recordUncompressedSize(i, (int) in.transferTo(OutputStream.nullOutputStream()));
+                } catch (IOException ex) {
+                    stats.recordInvalidChunkPrefix();
+                }
+            }
+        }
+        return stats;
+    }
+
     /**
      * Forces initialization of chunk data. This class lazily loads the mca file header tables, touching the
      * instance triggers this loading and is a no-op if already loaded. This method is useful mostly for debugging
@@ -378,6 +424,7 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
             intBuffer.put(chunkTimestamps);
             raf.write(byteBuffer.array());
         }
+        isDirty = false;
     }
 
     /**
@@ -403,6 +450,60 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
         return bytesRemoved;
     }
 
+    /**
+     * Performs a bounded slice of the work done by {@link #optimizeFile()}. Use this instead of
+     * {@link #optimizeFile()} or {@link #setAutoOptimizeOnClose(boolean)} when a long-lived handle cannot
+     * afford a stop-the-world compaction; call it periodically, between other reads and writes, until it
+     * returns true.
+     * <p>Each call moves at least one chunk (if there are any free sectors) and stops once
+     * {@code maxSectorsToMove} or more sectors have been moved. Chunks are always moved towards the start of the
+     * file so interleaving writes with incremental optimization calls is safe, though new writes may introduce new
+     * free sectors. The file is truncated once all free sectors have been eliminated.</p>
+     * <p>As with all other writes the file header is only written on {@link #flush()} and {@link #close()}.</p>
+     * @param maxSectorsToMove soft limit on the number of 4KiB sectors to relocate during this call.
+     * @return True if the file is now fully compacted (there are no free sectors), false if more work remains.
+     * @see #getWastedBytes()
+     * @see #getFragmentationRatio()
+     */
+    public boolean optimizeFileIncrementally(int maxSectorsToMove) throws IOException {
+        ArgValidator.check(maxSectorsToMove > 0, "maxSectorsToMove must be GT 0");
+        ensureFileInitialized();
+        if (isReadOnly)
+            throw new IOException("File was opened in read-only mode.");
+        try (Stopwatch.LapToken lap = fileOptimizationStopwatch.startLap()) {
+            if (sectorManager.optimizeFileIncrementally(raf, chunkSectors, maxSectorsToMove) > 0)
+                isDirty = true;
+        }
+        return sectorManager.freeSectors.isEmpty();
+    }
+
+    /**
+     * Gets the number of bytes which {@link #optimizeFile()} would remove from the file if it were called now.
+     * Computed from the file header alone, no chunk data is read.
+     * <p>This includes free sectors between chunks as well as any bytes past the end of the last chunk.</p>
+     */
+    public long getWastedBytes() throws IOException {
+        ensureFileInitialized();
+        long wasted = sectorManager.freeSectorCount() * 4096L;
+        long eof = sectorManager.appendAtSector * 4096L;
+        long length = raf.length();
+        if (length > eof) wasted += length - eof;
+        return wasted;
+    }
+
+    /**
+     * Gets the fraction of the chunk data area of the file (everything after the 8KiB header) which is unused.
+     * Computed from the file header alone, no chunk data is read.
+     * @return A value in the range [0..1] where 0 means fully compacted. An empty file returns 0.
+     * @see #getWastedBytes()
+     */
+    public double getFragmentationRatio() throws IOException {
+        ensureFileInitialized();
+        long dataBytes = Math.max(raf.length(), sectorManager.appendAtSector * 4096L) - 2 * 4096L;
+        if (dataBytes <= 0) return 0;
+        return (double) getWastedBytes() / dataBytes;
+    }
+
     /**
      * Marks the specified chunk for removal and makes its file sectors available for saving other chunks into.
      * <p>Does not actually erase the chunk data in the mca file during this call - this is a very lightweight call.</p>
@@ -559,14 +660,7 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
                         sectorSize, sectorSize * 4096, chunkIndex, sectorOffset * 4096L, chunkByteSize));
             }
 
-            T chunk;
-            try {
-                chunk = chunkClass.getDeclaredConstructor().newInstance();
-            } catch (ReflectiveOperationException ex) {
-                // TODO should wrap with a custom chunk creation exception...
-                // given that this error is something exclusively under the control of the library user I'm OK(ish) with this hacky wrap and throw
-                throw new RuntimeException(ex);
-            }
+            T chunk = createChunkInstance();
             IntPointXZ chunkXZ = McaRegionFile.getRelativeChunkXZ(chunkIndex).add(regionChunkOffsetXZ);
             chunksRead ++;
             chunk.deserialize(raf, loadFlags, chunkTimestamps[chunkIndex], chunkXZ.getX(), chunkXZ.getZ());
@@ -574,6 +668,48 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
         }
     }
 
+    /** Creates a new, empty, instance of the chunk class this file operates upon. */
+    T createChunkInstance() {
+        try {
+            return chunkClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            // TODO should wrap with a custom chunk creation exception...
+            // given that this error is something exclusively under the control of the library user I'm OK(ish) with this hacky wrap and throw
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Reads the raw, still compressed, data of the specified chunk if it exists. No decompression or nbt parsing
+     * is performed.
+     * @return The compression type id byte followed by the compressed chunk data (the chunk byte length prefix is
+     * not included, it's simply the length of the returned array), or null if the chunk does not exist.
+     * @see CompressionType#getFromID(byte)
+     */
+    public byte[] readRaw(int chunkIndex) throws IOException {
+        if (chunkIndex < 0 || chunkIndex >= 1024)
+            throw new IndexOutOfBoundsException();
+        ensureFileInitialized();
+        try (var lap = totalReadStopwatch.startLap()) {
+            int sectorOffset = chunkSectors[chunkIndex] >>> 8;
+            int sectorSize = chunkSectors[chunkIndex] & 0xFF;
+            if (sectorSize == 0) return null;
+            if (raf.length() < (sectorOffset + sectorSize) * 4096L) {
+                throw new EOFException();
+            }
+            raf.seek(sectorOffset * 4096L);
+            int chunkByteSize = raf.readInt();
+            if (chunkByteSize > (sectorSize * 4096) - 4 || chunkByteSize < 1) {
+                throw new CorruptMcaFileException(String.format(
+                        "MCA file header sector size %d (%d bytes) for chunk %04d (at 0x%X) cannot hold %d bytes!",
+                        sectorSize, sectorSize * 4096, chunkIndex, sectorOffset * 4096L, chunkByteSize));
+            }
+            byte[] data = new byte[chunkByteSize];
+            raf.readFully(data);
+            return data;
+        }
+    }
+
     /**
      * Reads the specified chunk if it exists.
      * @return The chunk if it exists, else null.
@@ -628,6 +764,45 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
      * @see #removeChunk
      */
     public void write(T chunk) throws IOException {
+        checkWritable(chunk);
+        ensureFileInitialized();
+        if (isAlwaysUpdateChunkLastUpdatedTimestamp() || chunk.getLastMCAUpdate() <= 0) {
+            chunk.setLastMCAUpdate((int) (System.currentTimeMillis() / 1000));
+        }
+        try (Stopwatch.LapToken lap1 = totalWriteStopwatch.startLap()) {
+            final int oldSectorSize = chunkSectors[chunk.getIndex()] & 0xFF;
+            byte[] data;
+            try (Stopwatch.LapToken lap2 = chunkSerializationStopwatch.startLap()) {
+                data = serializeChunk(chunk, isAutoUpdateHandelOnWrite(), Math.min(2, oldSectorSize) * 4096);
+            }
+            writeRawInternal(chunk.getIndex(), data, chunk.getLastMCAUpdate());
+        }
+    }
+
+    /**
+     * Writes already serialized and compressed chunk data, as produced by {@link #readRaw(int)}, to the file
+     * without any decompression or nbt parsing. Useful for copying chunks between files and for callers which
+     * perform chunk serialization themselves, such as {@link AsyncRandomAccessMcaFile}.
+     * @param chunkIndex chunk index within this region.
+     * @param data the compression type id byte followed by the compressed chunk data.
+     * @param timestamp chunk last updated timestamp, in epoch seconds, to record in the file header.
+     */
+    public void writeRaw(int chunkIndex, byte[] data, int timestamp) throws IOException {
+        if (chunkIndex < 0 || chunkIndex >= 1024)
+            throw new IndexOutOfBoundsException();
+        ArgValidator.check(data != null && data.length > 0, "data must not be empty");
+        if (isReadOnly)
+            throw new IOException("File was opened in read-only mode.");
+        ensureFileInitialized();
+        try (Stopwatch.LapToken lap = totalWriteStopwatch.startLap()) {
+            writeRawInternal(chunkIndex, data, timestamp);
+        }
+    }
+
+    /**
+     * Validates that the given chunk may be written to this file.
+     */
+    void checkWritable(T chunk) throws IOException {
         ArgValidator.requireValue(chunk);
         if (isReadOnly)
             throw new IOException("File was opened in read-only mode.");
@@ -640,58 +815,57 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
                     chunk.getChunkXZ(),
                     regionXZ,
                     regionBounds.asChunkBounds()));
-        ensureFileInitialized();
-        isDirty = true;
-        if (isAlwaysUpdateChunkLastUpdatedTimestamp() || chunk.getLastMCAUpdate() <= 0) {
-            chunk.setLastMCAUpdate((int) (System.currentTimeMillis() / 1000));
-        }
+    }
 
-        try (Stopwatch.LapToken lap1 = totalWriteStopwatch.startLap()) {
-            final int index = chunk.getIndex();
-            final int oldSectorOffset = chunkSectors[index] >>> 8;
-            final int oldSectorSize = chunkSectors[index] & 0xFF;
-            ByteArrayOutputStream baos;
-            SectorManager.SectorBlock writeToSector;
-            int totalBytes;
-            final int newSectorSize;
-            chunksWritten ++;
+    /**
+     * Serializes and ZLIB compresses the given chunk. Does not touch any file state and is safe to call
+     * concurrently for different chunks.
+     * @return the compression type id byte followed by the compressed chunk data.
+     */
+    static byte[] serializeChunk(ChunkBase chunk, boolean updateHandle, int initialCapacity) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(initialCapacity, 32));
+        baos.write(CompressionType.ZLIB.getID());
+        new BinaryNbtSerializer(CompressionType.ZLIB).toStream(
+                new NamedTag(null, updateHandle ? chunk.updateHandle() : chunk.getHandle()), baos);
+        return baos.toByteArray();
+    }
 
-            try (Stopwatch.LapToken lap2 = chunkSerializationStopwatch.startLap()) {
-                baos = new ByteArrayOutputStream(Math.min(2, oldSectorSize) * 4096);
-                new BinaryNbtSerializer(CompressionType.ZLIB).toStream(
-                        new NamedTag(null, isAutoUpdateHandelOnWrite() ? chunk.updateHandle() : chunk.getHandle()), baos);
-            }
-            // Note 'totalBytes' is count 4 larger than the value written at the chunk sector offset because it includes the byte size data too
-            totalBytes = baos.size() + 4 /*size*/ + 1 /*compression sig*/;
-            newSectorSize = (totalBytes >> 12) + (totalBytes % 4096 == 0 ? 0 : 1);
-            if (newSectorSize > 255) throw new IOException("Chunk " + chunk.getChunkXZ() + " to large! 1MB maximum");
-
-            if (oldSectorSize == 0) {  // chunk has never been written to file
-                writeToSector = sectorManager.allocate(newSectorSize);
-            } else if (newSectorSize == oldSectorSize) {  // new chunk data fits in the old slot like a glove
-                writeToSector = new SectorManager.SectorBlock(oldSectorOffset, newSectorSize);
-            } else if (newSectorSize < oldSectorSize) {  // new chunk data still fits but there's extra room now
-                writeToSector = new SectorManager.SectorBlock(oldSectorOffset, newSectorSize);
-                sectorManager.release(oldSectorOffset + newSectorSize, oldSectorSize - newSectorSize);
-            } else {  // new chunk data is too large to fit in the old slot so alloc a new one
-                writeToSector = sectorManager.allocate(newSectorSize);
-                sectorManager.release(oldSectorOffset, oldSectorSize);
-            }
-            writeToSector.seekTo(raf);
-            raf.writeInt(totalBytes - 4);  // don't count the int we are writing here in the byte size
-            raf.write(CompressionType.ZLIB.getID());
-            raf.write(baos.toByteArray());
-            chunkSectors[index] = writeToSector.pack();
-            chunkTimestamps[index] = chunk.getLastMCAUpdate();
-
-            long roundedEos = writeToSector.end() * 4096L;
-            while (roundedEos > raf.getFilePointer()) {
-                int gap = (int) Math.min(roundedEos - raf.getFilePointer(), ZERO_FILL_BUFFER.length);
-                raf.write(ZERO_FILL_BUFFER, 0, gap);
-            }
-            if (raf.getFilePointer() % 4096 != 0)
-                throw new IllegalStateException();
+    private void writeRawInternal(int index, byte[] data, int timestamp) throws IOException {
+        isDirty = true;
+        final int oldSectorOffset = chunkSectors[index] >>> 8;
+        final int oldSectorSize = chunkSectors[index] & 0xFF;
+        SectorManager.SectorBlock writeToSector;
+        chunksWritten ++;
+        // Note 'totalBytes' is count 4 larger than the value written at the chunk sector offset because it includes the byte size data too
+        final int totalBytes = data.length + 4 /*size*/;
+        final int newSectorSize = (totalBytes >> 12) + (totalBytes % 4096 == 0 ? 0 : 1);
+        if (newSectorSize > 255)
+            throw new IOException("Chunk " + McaFileBase.getRelativeChunkXZ(index).add(regionChunkOffsetXZ) + " to large! 1MB maximum");
+
+        if (oldSectorSize == 0) {  // chunk has never been written to file
+            writeToSector = sectorManager.allocate(newSectorSize);
+        } else if (newSectorSize == oldSectorSize) {  // new chunk data fits in the old slot like a glove
+            writeToSector = new SectorManager.SectorBlock(oldSectorOffset, newSectorSize);
+        } else if (newSectorSize < oldSectorSize) {  // new chunk data still fits but there's extra room now
+            writeToSector = new SectorManager.SectorBlock(oldSectorOffset, newSectorSize);
+            sectorManager.release(oldSectorOffset + newSectorSize, oldSectorSize - newSectorSize);
+        } else {  // new chunk data is too large to fit in the old slot so alloc a new one
+            writeToSector = sectorManager.allocate(newSectorSize);
+            sectorManager.release(oldSectorOffset, oldSectorSize);
+        }
+        writeToSector.seekTo(raf);
+        raf.writeInt(totalBytes - 4);  // don't count the int we are writing here in the byte size
+        raf.write(data);
+        chunkSectors[index] = writeToSector.pack();
+        chunkTimestamps[index] = timestamp;
+
+        long roundedEos = writeToSector.end() * 4096L;
+        while (roundedEos > raf.getFilePointer()) {
+            int gap = (int) Math.min(roundedEos - raf.getFilePointer(), ZERO_FILL_BUFFER.length);
+            raf.write(ZERO_FILL_BUFFER, 0, gap);
         }
+        if (raf.getFilePointer() % 4096 != 0)
+            throw new IllegalStateException();
     }
 
     /**
@@ -933,6 +1107,61 @@ public class RandomAccessMcaFile<T extends ChunkBase> implements Closeable, Iter
             return truncate(raf);
         }
 
+        /**
+         * Performs a bounded amount of the work done by {@link #optimizeFile(RandomAccessFile, int[])}. Each step
+         * slides the chunk which immediately follows the first free sector block down into that free block, the
+         * vacated sectors are then merged with whatever free space follows them. Repeating this until there are
+         * no free sectors left produces the exact same layout as {@link #optimizeFile(RandomAccessFile, int[])}.
+         * <p>At least one chunk is moved per call (if any free sectors exist) even if that chunk is larger than
+         * {@code maxSectorsToMove}, which follows from the limit being at least 1. Once no free sectors remain the
+         * file is truncated.</p>
+         * @param maxSectorsToMove soft limit on the number of sectors to relocate during this call, must be GT 0.
+         * @return Number of sectors which were moved.
+         */
+        int optimizeFileIncrementally(RandomAccessFile raf, int[] chunkSectors, int maxSectorsToMove) throws IOException {
+            assert maxSectorsToMove > 0;
+            int sectorsMoved = 0;
+            byte[] buffer = null;
+            while (!freeSectors.isEmpty() && sectorsMoved < maxSectorsToMove) {
+                final SectorBlock free = freeSectors.getFirst();
+                int chunkIndex = -1;
+                for (int i = 0; i < 1024; i++) {
+                    if ((chunkSectors[i] & 0xFF) > 0 && chunkSectors[i] >> 8 == free.end()) {
+                        chunkIndex = i;
+                        break;
+                    }
+                }
+                if (chunkIndex < 0)
+                    throw new CorruptMcaFileException("No chunk data follows free sectors " + free);
+                SectorBlock sb = SectorBlock.unpack(chunkSectors[chunkIndex]);
+                int sectorSizeBytes = sb.size * 4096;
+                if (buffer == null || buffer.length < sectorSizeBytes)
+                    buffer = new byte[sectorSizeBytes];
+                sb.seekTo(raf);
+                raf.readFully(buffer, 0, sectorSizeBytes);
+                sb.start = free.start;
+                sb.seekTo(raf);
+                raf.write(buffer, 0, sectorSizeBytes);
+                chunkSectors[chunkIndex] = sb.pack();
+                freeSectors.removeFirst();
+                release(sb.end(), free.size);
+                sectorsMoved += sb.size;
+            }
+            if (freeSectors.isEmpty() && raf.length() > appendAtSector * 4096L) {
+                truncate(raf);
+            }
+            return sectorsMoved;
+        }
+
+        /** @return Total number of free sectors which lie between chunk data sectors. */
+        int freeSectorCount() {
+            int sum = 0;
+            for (SectorBlock sb : freeSectors) {
+                sum += sb.size;
+            }
+            return sum;
+        }
+
         /** @return Number of unused bytes that were removed from the file. The file is now this much smaller. */
         int truncate(RandomAccessFile raf) throws IOException {
             final long oldLength = raf.length();
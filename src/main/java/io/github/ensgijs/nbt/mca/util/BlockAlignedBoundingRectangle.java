@@ -114,6 +114,12 @@ public class BlockAlignedBoundingRectangle {
         return minXd <= blockX && blockX < maxXd && minZd <= blockZ && blockZ < maxZd;
     }
 
+    /** @return True if this rectangle and the given one share at least one block. */
+    public boolean intersects(BlockAlignedBoundingRectangle other) {
+        return minBlockX < other.maxBlockX && other.minBlockX < maxBlockX
+                && minBlockZ < other.maxBlockZ && other.minBlockZ < maxBlockZ;
+    }
+
     /**
      * Constrains the given 3d bounding cuboid to this rectangle. Note the given bounds (min and max) are both inclusive.
      * @return If all corners are outside this rectangle, or if the given bounds are not valid, false is returned.
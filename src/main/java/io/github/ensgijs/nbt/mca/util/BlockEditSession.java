@@ -0,0 +1,251 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.DataVersion;
+import io.github.ensgijs.nbt.mca.TerrainChunkBase;
+import io.github.ensgijs.nbt.mca.TerrainSectionBase;
+import io.github.ensgijs.nbt.mca.VersionLacksSupportException;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.util.*;
+
+import static io.github.ensgijs.nbt.mca.DataVersion.JAVA_1_13_17W47A;
+
+/**
+ * Collects block edits for one terrain chunk and applies them in a single pass per section.
+ * <p>Every call to {@link TerrainChunkBase#setBlockAt(int, int, int, CompoundTag)} goes straight to the section's
+ * {@link PalettizedCuboid}, which may grow the palette and repack the block data each time a new block state shows
+ * up. An edit session instead records edits as palette ids in a primitive scratch buffer per touched section. On
+ * {@link #commit()} each touched section is decoded once, merged with its edits, given a palette holding only the
+ * block states still in use and repacked once at the final bit width.</p>
+ * <p>Edits are not visible through the chunk until committed, and later edits of the same block win. Block state
+ * tags are cloned the first time the session sees them, so callers may reuse and modify their tags afterwards.</p>
+ * <pre>{@code
+ * BlockEditSession session = chunk.editSession();
+ * session.fill(x1, y1, z1, stone, x2, y2, z2);
+ * session.set(x, y, z, glowstone);
+ * session.commit();
+ * }</pre>
+ * <p>Not thread safe.</p>
+ * @see TerrainChunkBase#editSession()
+ * @since {@link DataVersion#JAVA_1_13_17W47A}
+ */
+public class BlockEditSession {
+    private static final int UNCHANGED = -1;
+    private static final int SECTION_VOLUME = 4096;
+
+    private final TerrainChunkBase<? extends TerrainSectionBase> chunk;
+    /** section y to pending session palette ids, {@link #UNCHANGED} where no edit was made */
+    private final Map<Integer, int[]> pending = new TreeMap<>();
+    private final List<CompoundTag> states = new ArrayList<>();
+    private final Map<CompoundTag, Integer> stateIds = new HashMap<>();
+    private int editCount;
+
+    /**
+     * Prefer {@link TerrainChunkBase#editSession()}.
+     * @throws VersionLacksSupportException if the chunk predates block palettes.
+     */
+    public BlockEditSession(TerrainChunkBase<? extends TerrainSectionBase> chunk) {
+        ArgValidator.requireValue(chunk, "chunk");
+        if (chunk.getDataVersion() < JAVA_1_13_17W47A.id())
+            throw new VersionLacksSupportException(chunk.getDataVersion(), JAVA_1_13_17W47A, null, "block palettes");
+        this.chunk = chunk;
+    }
+
+    public TerrainChunkBase<? extends TerrainSectionBase> getChunk() {
+        return chunk;
+    }
+
+    /** @return number of block edits recorded since the last commit or discard, repeated edits count each time. */
+    public int getEditCount() {
+        return editCount;
+    }
+
+    /** @return true if there are edits which have not been committed. */
+    public boolean isDirty() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Records that the block at the given world block position should be set to the given state.
+     * <p>Never throws IndexOutOfBoundsException. X and Z are always wrapped into the chunk.</p>
+     * @param tag block palette tag, must contain a 'Name' StringTag
+     * @return true if the section exists and has block states, false if the edit was ignored
+     *   (same as {@link TerrainChunkBase#setBlockAt(int, int, int, CompoundTag)}).
+     */
+    public boolean set(int x, int y, int z, CompoundTag tag) {
+        int[] buffer = bufferFor(y >> 4);
+        if (buffer == null) return false;
+        buffer[(y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF)] = idOf(tag);
+        editCount++;
+        return true;
+    }
+
+    /**
+     * Records that the block at the given world block position should be set to the state previously registered
+     * with {@link #stateId(CompoundTag)}. Lets callers which already work in palette ids, such as copies between
+     * sections, skip hashing the block state tag for every block.
+     * <p>Never throws IndexOutOfBoundsException. X and Z are always wrapped into the chunk.</p>
+     * @param stateId id returned by {@link #stateId(CompoundTag)} since the last commit or discard.
+     * @return true if the section exists and has block states, false if the edit was ignored.
+     */
+    public boolean setStateId(int x, int y, int z, int stateId) {
+        if (stateId < 0 || stateId >= states.size())
+            throw new IllegalArgumentException("unknown state id " + stateId);
+        int[] buffer = bufferFor(y >> 4);
+        if (buffer == null) return false;
+        buffer[(y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF)] = stateId;
+        editCount++;
+        return true;
+    }
+
+    /**
+     * Registers a block state with this session, equal states share an id. Ids are only valid until the next
+     * {@link #commit()} or {@link #discard()}.
+     * @param tag block palette tag, must contain a 'Name' StringTag
+     * @return session id of the state, for use with {@link #setStateId(int, int, int, int)}.
+     */
+    public int stateId(CompoundTag tag) {
+        return idOf(tag);
+    }
+
+    /**
+     * Records that every block within the given inclusive world block bounds should be set to the given state.
+     * X and Z are clamped to this chunk, y is clamped to the chunk's sections. Sections which do not exist or have
+     * no block states are skipped.
+     * @param tag block palette tag, must contain a 'Name' StringTag
+     * @return number of blocks recorded.
+     */
+    public int fill(int x1, int y1, int z1, CompoundTag tag, int x2, int y2, int z2) {
+        final int chunkX = chunk.getChunkX() << 4;
+        final int chunkZ = chunk.getChunkZ() << 4;
+        final int minX = Math.max(Math.min(x1, x2), chunkX) - chunkX;
+        final int maxX = Math.min(Math.max(x1, x2), chunkX + 15) - chunkX;
+        final int minZ = Math.max(Math.min(z1, z2), chunkZ) - chunkZ;
+        final int maxZ = Math.min(Math.max(z1, z2), chunkZ + 15) - chunkZ;
+        final int minY = Math.max(Math.min(y1, y2), chunk.getWorldMinBlockY());
+        final int maxY = Math.min(Math.max(y1, y2), chunk.getWorldMaxBlockY());
+        if (minX > maxX || minZ > maxZ || minY > maxY) return 0;
+        final int id = idOf(tag);
+        int count = 0;
+        for (int sy = minY >> 4; sy <= maxY >> 4; sy++) {
+            int[] buffer = bufferFor(sy);
+            if (buffer == null) continue;
+            final int fromY = Math.max(minY, sy << 4) & 0xF;
+            final int toY = Math.min(maxY, (sy << 4) | 0xF) & 0xF;
+            if (minX == 0 && maxX == 15 && minZ == 0 && maxZ == 15) {
+                Arrays.fill(buffer, fromY << 8, (toY + 1) << 8, id);
+                count += (toY - fromY + 1) << 8;
+                continue;
+            }
+            for (int y = fromY; y <= toY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    final int rowStart = y << 8 | z << 4;
+                    Arrays.fill(buffer, rowStart + minX, rowStart + maxX + 1, id);
+                }
+            }
+            count += (toY - fromY + 1) * (maxZ - minZ + 1) * (maxX - minX + 1);
+        }
+        editCount += count;
+        return count;
+    }
+
+    /**
+     * Applies all recorded edits to the chunk. Each touched section is decoded once, its palette is rebuilt to
+     * contain only the block states in use (in order of first use by block index) and its block data is repacked
+     * once. Untouched sections are left exactly as they were.
+     * <p>If a touched section was removed from the chunk, or lost its block states, since the edit was recorded
+     * the edits to it are dropped.</p>
+     * @return number of sections which were rewritten.
+     */
+    public int commit() {
+        int rewritten = 0;
+        int[] values = new int[SECTION_VOLUME];
+        for (Map.Entry<Integer, int[]> e : pending.entrySet()) {
+            TerrainSectionBase section = chunk.getSection(e.getKey());
+            PalettizedCuboid<CompoundTag> blockStates = section != null ? section.getBlockStates() : null;
+            if (blockStates == null || blockStates.size() != SECTION_VOLUME) continue;
+            apply(blockStates, e.getValue(), values);
+            rewritten++;
+        }
+        discard();
+        return rewritten;
+    }
+
+    /** Drops all recorded edits without touching the chunk. */
+    public void discard() {
+        pending.clear();
+        states.clear();
+        stateIds.clear();
+        editCount = 0;
+    }
+
+    private void apply(PalettizedCuboid<CompoundTag> blockStates, int[] edits, int[] values) {
+        final List<CompoundTag> oldPalette = new ArrayList<>(blockStates.palette);
+        blockStates.packedData.toArray(values);
+        // old palette ids and session ids are both mapped lazily, new ids follow first use in block index order
+        final int[] oldRemap = new int[oldPalette.size()];
+        final int[] sessionRemap = new int[states.size()];
+        Arrays.fill(oldRemap, UNCHANGED);
+        Arrays.fill(sessionRemap, UNCHANGED);
+        final List<CompoundTag> newPalette = new ArrayList<>();
+        final Map<CompoundTag, Integer> newIds = new HashMap<>();
+        for (int i = 0; i < SECTION_VOLUME; i++) {
+            final int edit = edits[i];
+            int id;
+            if (edit == UNCHANGED) {
+                final int old = values[i];
+                if ((id = oldRemap[old]) == UNCHANGED) {
+                    id = oldRemap[old] = idIn(newPalette, newIds, oldPalette.get(old), false);
+                }
+            } else if ((id = sessionRemap[edit]) == UNCHANGED) {
+                // session states are shared by all sections, each section gets its own copy
+                id = sessionRemap[edit] = idIn(newPalette, newIds, states.get(edit), true);
+            }
+            values[i] = id;
+        }
+
+        blockStates.paletteModCount++;
+        blockStates.palette.clear();
+        for (CompoundTag state : newPalette) {
+            blockStates.palette.add(state);
+        }
+        blockStates.packedData.setFromArray(values);
+    }
+
+    private static int idIn(List<CompoundTag> newPalette, Map<CompoundTag, Integer> newIds, CompoundTag state,
+                            boolean copy) {
+        Integer id = newIds.get(state);
+        if (id == null) {
+            id = newPalette.size();
+            newPalette.add(copy ? state.clone() : state);
+            newIds.put(state, id);
+        }
+        return id;
+    }
+
+    private int idOf(CompoundTag tag) {
+        ArgValidator.requireValue(tag, "tag");
+        ArgValidator.check(tag.containsKey("Name", StringTag.class), "block palette tag must contain a 'Name' StringTag");
+        Integer id = stateIds.get(tag);
+        if (id == null) {
+            CompoundTag copy = tag.clone();
+            id = states.size();
+            states.add(copy);
+            stateIds.put(copy, id);
+        }
+        return id;
+    }
+
+    private int[] bufferFor(int sectionY) {
+        int[] buffer = pending.get(sectionY);
+        if (buffer != null) return buffer;
+        TerrainSectionBase section = chunk.getSection(sectionY);
+        if (section == null || section.getBlockStates() == null) return null;
+        buffer = new int[SECTION_VOLUME];
+        Arrays.fill(buffer, UNCHANGED);
+        pending.put(sectionY, buffer);
+        return buffer;
+    }
+}
@@ -5,9 +5,11 @@ import io.github.ensgijs.nbt.tag.CompoundTag;
 
 import java.util.Iterator;
 
-// TODO: use or remove
 /**
  * Enhanced iterable/iterator for iterating over {@link TerrainSection} block data.
+ * <p>Block state tags are yielded by reference, see {@link #setBlockStateAtCurrent(CompoundTag)}. All position
+ * and palette accessors refer to the block last returned by {@link #next()}.</p>
+ * @see TerrainChunkBlockStateCursor
  */
 public interface BlockStateIterator extends Iterable<CompoundTag>, Iterator<CompoundTag> {
     /**
@@ -34,4 +36,16 @@ public interface BlockStateIterator extends Iterable<CompoundTag>, Iterator<Comp
     int currentY();
     /** current block world level y */
     int currentBlockY();
+    /** current block world level x */
+    int currentBlockX();
+    /** current block world level z */
+    int currentBlockZ();
+    /** current section y */
+    int currentSectionY();
+    /** index of the current block state within the current section's palette */
+    int currentPaletteIndex();
+    /** name of the current block state, such as "minecraft:stone" */
+    String currentBlockName();
+    /** current block state, by reference */
+    CompoundTag current();
 }
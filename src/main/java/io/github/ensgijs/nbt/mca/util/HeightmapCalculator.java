@@ -0,0 +1,330 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.TerrainChunkBase;
+import io.github.ensgijs.nbt.mca.TerrainSectionBase;
+import io.github.ensgijs.nbt.mca.VersionLacksSupportException;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.LongArrayTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.github.ensgijs.nbt.mca.DataVersion.JAVA_1_13_18W06A;
+
+/**
+ * Rebuilds terrain chunk heightmaps from block data, for example after bulk edits made with
+ * {@link TerrainChunkBase#setBlockAt(int, int, int, CompoundTag)}.
+ * <p>Sections are scanned from the top down and every block state palette entry is classified once per section
+ * (see {@link BlockClassifier}), the per block work is then a palette index lookup and a bit test. Sections whose
+ * palette can't satisfy any heightmap still being computed (such as all air sections) are skipped without looking
+ * at their blocks, and scanning stops as soon as every requested column has been resolved.</p>
+ * <p>Pass a column mask to {@link #recompute(TerrainChunkBase, Collection, BitSet)} to only update the columns
+ * which were edited.</p>
+ * <p>Minecraft decides what blocks motion from its block registry, which this library does not have. The
+ * {@link #DEFAULT_CLASSIFIER} is a name based approximation which covers vanilla blocks well, supply your own
+ * {@link BlockClassifier} if exact results for modded or unusual blocks matter.</p>
+ * <p>Instances reuse scratch buffers and are not thread safe, use one per thread.</p>
+ */
+public class HeightmapCalculator {
+    /** Block is not any kind of air. */
+    public static final int NON_AIR = 1;
+    /** Block has collision, Minecraft's "blocks motion". */
+    public static final int BLOCKS_MOTION = 2;
+    /** Block is, or contains, a fluid - including waterlogged blocks. */
+    public static final int FLUID = 4;
+    /** Block is a leaves block. */
+    public static final int LEAVES = 8;
+
+    /** Heightmap types and the block classifications which end each of their column scans. */
+    public enum Type {
+        WORLD_SURFACE_WG(NON_AIR, 0),
+        WORLD_SURFACE(NON_AIR, 0),
+        OCEAN_FLOOR_WG(BLOCKS_MOTION, 0),
+        OCEAN_FLOOR(BLOCKS_MOTION, 0),
+        MOTION_BLOCKING(BLOCKS_MOTION | FLUID, 0),
+        MOTION_BLOCKING_NO_LEAVES(BLOCKS_MOTION | FLUID, LEAVES);
+
+        private final int anyOf;
+        private final int noneOf;
+
+        Type(int anyOf, int noneOf) {
+            this.anyOf = anyOf;
+            this.noneOf = noneOf;
+        }
+
+        /** @return True if a block with the given classification flags ends a column scan for this type. */
+        public boolean matches(int flags) {
+            return (flags & anyOf) != 0 && (flags & noneOf) == 0;
+        }
+
+        /** @return The type with the given heightmap name, or null. */
+        public static Type fromName(String name) {
+            for (Type t : values()) {
+                if (t.name().equals(name)) return t;
+            }
+            return null;
+        }
+    }
+
+    /** The heightmaps Minecraft keeps for fully generated chunks. */
+    public static final List<Type> FULL_CHUNK_TYPES = List.of(
+            Type.MOTION_BLOCKING, Type.MOTION_BLOCKING_NO_LEAVES, Type.OCEAN_FLOOR, Type.WORLD_SURFACE);
+
+    /** Classifies a block state palette entry into a combination of {@link #NON_AIR}, {@link #BLOCKS_MOTION}, etc. */
+    @FunctionalInterface
+    public interface BlockClassifier {
+        int classify(CompoundTag blockState);
+    }
+
+    private static final Set<String> AIR = Set.of("minecraft:air", "minecraft:cave_air", "minecraft:void_air");
+    private static final Set<String> ALWAYS_FLUID = Set.of(
+            "minecraft:water", "minecraft:lava", "minecraft:bubble_column", "minecraft:kelp", "minecraft:kelp_plant",
+            "minecraft:seagrass", "minecraft:tall_seagrass");
+    private static final Set<String> NO_COLLISION = Set.of(
+            "minecraft:water", "minecraft:lava", "minecraft:bubble_column", "minecraft:kelp", "minecraft:kelp_plant",
+            "minecraft:seagrass", "minecraft:tall_seagrass", "minecraft:grass", "minecraft:short_grass",
+            "minecraft:tall_grass", "minecraft:fern", "minecraft:large_fern", "minecraft:dead_bush",
+            "minecraft:dandelion", "minecraft:poppy", "minecraft:blue_orchid", "minecraft:allium",
+            "minecraft:azure_bluet", "minecraft:oxeye_daisy", "minecraft:cornflower", "minecraft:lily_of_the_valley",
+            "minecraft:wither_rose", "minecraft:sunflower", "minecraft:lilac", "minecraft:rose_bush",
+            "minecraft:peony", "minecraft:torchflower", "minecraft:torchflower_crop", "minecraft:pitcher_plant",
+            "minecraft:pitcher_crop", "minecraft:pink_petals", "minecraft:brown_mushroom", "minecraft:red_mushroom",
+            "minecraft:crimson_fungus", "minecraft:warped_fungus", "minecraft:crimson_roots", "minecraft:warped_roots",
+            "minecraft:nether_sprouts", "minecraft:hanging_roots", "minecraft:spore_blossom", "minecraft:sugar_cane",
+            "minecraft:vine", "minecraft:glow_lichen", "minecraft:sculk_vein", "minecraft:cobweb", "minecraft:fire",
+            "minecraft:soul_fire", "minecraft:torch", "minecraft:redstone_wire", "minecraft:tripwire",
+            "minecraft:tripwire_hook",
+            "minecraft:lever", "minecraft:wheat", "minecraft:carrots", "minecraft:potatoes", "minecraft:beetroots",
+            "minecraft:melon_stem", "minecraft:pumpkin_stem", "minecraft:attached_melon_stem",
+            "minecraft:attached_pumpkin_stem", "minecraft:sweet_berry_bush", "minecraft:nether_wart",
+            "minecraft:twisting_vines", "minecraft:twisting_vines_plant", "minecraft:weeping_vines",
+            "minecraft:weeping_vines_plant", "minecraft:cave_vines", "minecraft:cave_vines_plant",
+            "minecraft:small_dripleaf", "minecraft:snow", "minecraft:light", "minecraft:structure_void",
+            "minecraft:rail", "minecraft:end_gateway", "minecraft:nether_portal", "minecraft:end_portal");
+    private static final String[] NO_COLLISION_SUFFIXES = {
+            "_sapling", "_tulip", "_torch", "_button", "_pressure_plate", "_sign", "_banner", "_rail",
+            "_coral", "_coral_fan", "_coral_wall_fan", "_propagule"};
+
+    /**
+     * Bound of the per block name classification caches. Vanilla has ~1000 block names, this only guards against
+     * unbounded growth from odd data.
+     */
+    static final int MAX_CACHED_NAMES = 16384;
+    private static final Map<String, Integer> NAME_FLAGS_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Classifies a bare block name, ignoring block state properties, the way {@link #DEFAULT_CLASSIFIER} does.
+     * @return classification flags.
+     */
+    static int classifyBlockName(String name) {
+        Integer nameFlags = NAME_FLAGS_CACHE.get(name);
+        if (nameFlags == null) {
+            nameFlags = classifyName(name);
+            if (NAME_FLAGS_CACHE.size() < MAX_CACHED_NAMES) NAME_FLAGS_CACHE.put(name, nameFlags);
+        }
+        return nameFlags;
+    }
+
+    private static int classifyName(String name) {
+        if (AIR.contains(name)) return 0;
+        int flags = NON_AIR;
+        if (ALWAYS_FLUID.contains(name)) flags |= FLUID;
+        if (name.endsWith("_leaves")) flags |= LEAVES;
+        boolean collides = !NO_COLLISION.contains(name);
+        for (int i = 0; collides && i < NO_COLLISION_SUFFIXES.length; i++) {
+            collides = !name.endsWith(NO_COLLISION_SUFFIXES[i]);
+        }
+        if (collides) flags |= BLOCKS_MOTION;
+        return flags;
+    }
+
+    /**
+     * Name based approximation of vanilla block behavior. Any block which is not known to lack collision is
+     * assumed to block motion, and blocks with the property {@code waterlogged=true} are treated as fluids.
+     */
+    public static final BlockClassifier DEFAULT_CLASSIFIER = blockState -> {
+        int nameFlags = classifyBlockName(blockState.getString("Name"));
+        CompoundTag properties = blockState.getCompoundTag("Properties");
+        if (properties != null) {
+            StringTag waterlogged = properties.getStringTag("waterlogged");
+            if (waterlogged != null && "true".equals(waterlogged.getValue())) {
+                return nameFlags | FLUID;
+            }
+        }
+        return nameFlags;
+    };
+
+    private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+    private final BlockClassifier classifier;
+    private int[] paletteFlags = new int[64];
+    private final int[] columnIndexes = new int[256];
+    private int[][] heights = new int[0][];
+
+    public HeightmapCalculator() {
+        this(DEFAULT_CLASSIFIER);
+    }
+
+    public HeightmapCalculator(BlockClassifier classifier) {
+        this.classifier = ArgValidator.requireValue(classifier, "classifier");
+    }
+
+    public BlockClassifier getClassifier() {
+        return classifier;
+    }
+
+    /**
+     * Recomputes all heightmaps already present in the chunk, or the {@link #FULL_CHUNK_TYPES} if it has none.
+     * Heightmaps with names which are not a known {@link Type} are left untouched.
+     */
+    public void recompute(TerrainChunkBase<?> chunk) {
+        recompute(chunk, typesToRecompute(chunk), null);
+    }
+
+    /**
+     * Recomputes the given heightmap types over the given columns, creating heightmaps which don't yet exist.
+     * @param chunk chunk to update, it must have been loaded with block states.
+     * @param types heightmap types to recompute.
+     * @param columns columns to recompute, bit index is {@code z * 16 + x} with xz relative to the chunk.
+     *                Null to recompute all columns. Other columns keep their current value.
+     * @throws VersionLacksSupportException if the chunk predates block palettes and heightmap tags.
+     */
+    public void recompute(TerrainChunkBase<?> chunk, Collection<Type> types, BitSet columns) {
+        if (chunk.getDataVersion() < JAVA_1_13_18W06A.id()) {
+            throw new VersionLacksSupportException(chunk.getDataVersion(), JAVA_1_13_18W06A, null, "heightmaps");
+        }
+        if (types.isEmpty()) return;
+        Type[] typeArray = types.toArray(new Type[0]);
+        int columnCount = compute(chunk, typeArray, columns);
+        if (columnCount == 0) return;
+
+        CompoundTag heightMaps = chunk.getHeightMaps();
+        if (heightMaps == null) {
+            heightMaps = new CompoundTag();
+            chunk.setHeightMaps(heightMaps);
+        }
+        final int voidY = chunk.getWorldMinBlockY() - 1;
+        for (int t = 0; t < typeArray.length; t++) {
+            String name = typeArray[t].name();
+            if (heightMaps.getLongArrayTag(name) == null) {
+                heightMaps.put(name, new LongArrayTag());
+            }
+            LongArrayTagPackedIntegers packed = chunk.getHeightMap(name);
+            int[] h = heights[t];
+            for (int i = 0; i < columnCount; i++) {
+                int column = columnIndexes[i];
+                packed.set(column, h[column] != UNRESOLVED ? h[column] : voidY);
+            }
+            packed.updateHandle();
+        }
+    }
+
+    /**
+     * Computes heights without modifying the chunk.
+     * @return 256 top block Y values, index {@code z * 16 + x}. Columns with no matching block hold
+     * {@link TerrainChunkBase#getWorldMinBlockY()} - 1.
+     */
+    public int[] computeHeights(TerrainChunkBase<?> chunk, Type type) {
+        compute(chunk, new Type[] {type}, null);
+        int[] result = heights[0].clone();
+        final int voidY = chunk.getWorldMinBlockY() - 1;
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] == UNRESOLVED) result[i] = voidY;
+        }
+        return result;
+    }
+
+    private static Collection<Type> typesToRecompute(TerrainChunkBase<?> chunk) {
+        CompoundTag heightMaps = chunk.getHeightMaps();
+        if (heightMaps == null || heightMaps.isEmpty()) return FULL_CHUNK_TYPES;
+        List<Type> types = new ArrayList<>();
+        for (String name : heightMaps.keySet()) {
+            Type t = Type.fromName(name);
+            if (t != null) types.add(t);
+        }
+        return types;
+    }
+
+    /**
+     * Fills {@link #heights} for the given types, only columns in the given mask are computed.
+     * @return number of columns computed.
+     */
+    private int compute(TerrainChunkBase<?> chunk, Type[] types, BitSet columnMask) {
+        int columnCount = 0;
+        for (int c = 0; c < 256; c++) {
+            if (columnMask == null || columnMask.get(c)) columnIndexes[columnCount++] = c;
+        }
+        if (heights.length < types.length) {
+            int[][] grown = Arrays.copyOf(heights, types.length);
+            for (int t = heights.length; t < grown.length; t++) grown[t] = new int[256];
+            heights = grown;
+        }
+        final int[] remaining = new int[types.length];
+        for (int t = 0; t < types.length; t++) {
+            Arrays.fill(heights[t], UNRESOLVED);
+            remaining[t] = columnCount;
+        }
+        int totalRemaining = columnCount * types.length;
+        if (totalRemaining == 0 || !chunk.hasSections()) return columnCount;
+        final boolean[] paletteCanMatch = new boolean[types.length];
+
+        for (int sectionY = chunk.getMaxSectionY(); sectionY >= chunk.getMinSectionY() && totalRemaining > 0; sectionY--) {
+            TerrainSectionBase section = chunk.getSection(sectionY);
+            if (section == null) continue;
+            PalettizedCuboid<CompoundTag> blockStates = section.getBlockStates();
+            if (blockStates == null) continue;
+
+            // classify each palette entry once
+            final int paletteSize = blockStates.palette.size();
+            if (paletteFlags.length < paletteSize) paletteFlags = new int[Math.max(paletteSize, paletteFlags.length * 2)];
+            boolean anyCanMatch = false;
+            Arrays.fill(paletteCanMatch, false);
+            for (int p = 0; p < paletteSize; p++) {
+                int flags = classifier.classify(blockStates.palette.get(p));
+                paletteFlags[p] = flags;
+                for (int t = 0; t < types.length; t++) {
+                    if (remaining[t] > 0 && types[t].matches(flags)) {
+                        paletteCanMatch[t] = true;
+                        anyCanMatch = true;
+                    }
+                }
+            }
+            if (!anyCanMatch) continue;  // e.g. all air
+
+            final int sectionTopY = sectionY * 16 + 15;
+            if (paletteSize == 1) {
+                // uniform section, every unresolved column matches at the top of the section
+                for (int t = 0; t < types.length; t++) {
+                    if (!paletteCanMatch[t]) continue;
+                    int[] h = heights[t];
+                    for (int i = 0; i < columnCount; i++) {
+                        if (h[columnIndexes[i]] == UNRESOLVED) h[columnIndexes[i]] = sectionTopY;
+                    }
+                    totalRemaining -= remaining[t];
+                    remaining[t] = 0;
+                }
+                continue;
+            }
+
+            final LongArrayTagPackedIntegers packedData = blockStates.packedData;
+            for (int y = 15; y >= 0 && totalRemaining > 0; y--) {
+                final int yBase = y << 8;
+                for (int i = 0; i < columnCount; i++) {
+                    final int column = columnIndexes[i];
+                    final int flags = paletteFlags[packedData.get(yBase | column)];
+                    if (flags == 0) continue;
+                    for (int t = 0; t < types.length; t++) {
+                        if (paletteCanMatch[t] && heights[t][column] == UNRESOLVED && types[t].matches(flags)) {
+                            heights[t][column] = sectionY * 16 + y;
+                            remaining[t]--;
+                            totalRemaining--;
+                        }
+                    }
+                }
+            }
+        }
+        return columnCount;
+    }
+}
@@ -0,0 +1,706 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.TerrainChunkBase;
+import io.github.ensgijs.nbt.mca.TerrainSectionBase;
+import io.github.ensgijs.nbt.mca.VersionLacksSupportException;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.StringTag;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.ensgijs.nbt.mca.DataVersion.JAVA_1_13_17W47A;
+import static io.github.ensgijs.nbt.mca.DataVersion.JAVA_1_14_19W02A;
+
+/**
+ * Recomputes the {@code BlockLight} and {@code SkyLight} nibble arrays of terrain chunks offline, so edited chunks
+ * can be saved fully lit instead of clearing {@code isLightOn} and leaving the game to relight them on load.
+ * <p>Light is propagated breadth first over the nibble arrays with primitive queues. Every chunk is first lit on
+ * its own, in parallel. Then border exchange rounds run until no chunk edge changes: each round, every chunk
+ * with a neighbor whose edge changed pulls that neighbor's edge light in and propagates it, again in parallel.
+ * Chunks only ever write their own light arrays, neighbors are read through per round edge snapshots.</p>
+ * <p>All given chunks are relit from scratch. Chunks passed as border chunks are never modified, their existing
+ * light shines into the relit chunks so there is no seam where the relit area meets untouched terrain. Light
+ * from outside of the given chunks and border chunks is not considered.</p>
+ * <p>The {@link #DEFAULT_CLASSIFIER} builds on the name based block classification of {@link HeightmapCalculator}
+ * and shares its limits, supply your own {@link LightClassifier} where they matter.</p>
+ * <pre>{@code
+ * LightCalculator calculator = new LightCalculator().setThreads(8);
+ * calculator.relight(editedChunks, untouchedNeighborChunks);
+ * }</pre>
+ * @see HeightmapCalculator
+ */
+public class LightCalculator {
+    /**
+     * Classifies a block state palette entry, returning its packed light properties.
+     * @see #lightProperties(int, int)
+     */
+    @FunctionalInterface
+    public interface LightClassifier {
+        int classify(CompoundTag blockState);
+    }
+
+    /**
+     * @param emission light level emitted by the block, 0-15.
+     * @param opacity light lost passing into the block, 0-15 where 15 blocks light completely. Light always loses
+     *                at least one level per block moved, opacity 0 and 1 only differ for sky light traveling
+     *                straight down.
+     * @return packed light properties as returned by a {@link LightClassifier}.
+     */
+    public static int lightProperties(int emission, int opacity) {
+        return (Math.max(0, Math.min(15, emission)) << 4) | Math.max(0, Math.min(15, opacity));
+    }
+
+    /** @return emission level of packed light properties. */
+    public static int emission(int lightProperties) {
+        return (lightProperties >> 4) & 0xF;
+    }
+
+    /** @return opacity of packed light properties. */
+    public static int opacity(int lightProperties) {
+        return lightProperties & 0xF;
+    }
+
+    private static final Map<String, Integer> EMISSION = new HashMap<>();
+    static {
+        for (String name : List.of("glowstone", "sea_lantern", "lava", "fire", "lantern", "jack_o_lantern", "beacon",
+                "shroomlight", "conduit", "end_portal", "end_gateway", "ochre_froglight", "verdant_froglight",
+                "pearlescent_froglight", "redstone_lamp", "campfire", "copper_bulb", "exposed_copper_bulb",
+                "waxed_copper_bulb", "waxed_exposed_copper_bulb"))
+            EMISSION.put("minecraft:" + name, 15);
+        for (String name : List.of("torch", "wall_torch", "end_rod", "cave_vines", "cave_vines_plant"))
+            EMISSION.put("minecraft:" + name, 14);
+        for (String name : List.of("furnace", "blast_furnace", "smoker"))
+            EMISSION.put("minecraft:" + name, 13);
+        for (String name : List.of("weathered_copper_bulb", "waxed_weathered_copper_bulb"))
+            EMISSION.put("minecraft:" + name, 8);
+        for (String name : List.of("oxidized_copper_bulb", "waxed_oxidized_copper_bulb"))
+            EMISSION.put("minecraft:" + name, 4);
+        EMISSION.put("minecraft:nether_portal", 11);
+        for (String name : List.of("soul_fire", "soul_torch", "soul_wall_torch", "soul_lantern", "soul_campfire",
+                "crying_obsidian"))
+            EMISSION.put("minecraft:" + name, 10);
+        EMISSION.put("minecraft:redstone_ore", 9);
+        EMISSION.put("minecraft:deepslate_redstone_ore", 9);
+        for (String name : List.of("redstone_torch", "redstone_wall_torch", "glow_lichen", "enchanting_table",
+                "ender_chest", "sculk_catalyst"))
+            EMISSION.put("minecraft:" + name, 7);
+        EMISSION.put("minecraft:sea_pickle", 6);
+        EMISSION.put("minecraft:amethyst_cluster", 5);
+        EMISSION.put("minecraft:large_amethyst_bud", 4);
+        EMISSION.put("minecraft:magma_block", 3);
+        EMISSION.put("minecraft:candle_cake", 3);
+        EMISSION.put("minecraft:medium_amethyst_bud", 2);
+        for (String name : List.of("small_amethyst_bud", "brewing_stand", "brown_mushroom", "dragon_egg",
+                "end_portal_frame", "sculk_sensor", "calibrated_sculk_sensor"))
+            EMISSION.put("minecraft:" + name, 1);
+    }
+
+    private static final Set<String> TRANSLUCENT_NAMES = Set.of(
+            "minecraft:ladder", "minecraft:scaffolding", "minecraft:barrier", "minecraft:beacon", "minecraft:chain",
+            "minecraft:lantern", "minecraft:soul_lantern", "minecraft:iron_bars", "minecraft:cactus",
+            "minecraft:bamboo", "minecraft:cake", "minecraft:conduit", "minecraft:bell", "minecraft:hopper",
+            "minecraft:lectern", "minecraft:enchanting_table", "minecraft:brewing_stand", "minecraft:end_rod",
+            "minecraft:lightning_rod", "minecraft:daylight_detector", "minecraft:spawner", "minecraft:composter",
+            "minecraft:campfire", "minecraft:soul_campfire", "minecraft:stonecutter", "minecraft:grindstone",
+            "minecraft:cauldron", "minecraft:water_cauldron", "minecraft:lava_cauldron",
+            "minecraft:powder_snow_cauldron", "minecraft:dragon_egg", "minecraft:pointed_dripstone",
+            "minecraft:big_dripleaf", "minecraft:big_dripleaf_stem", "minecraft:azalea", "minecraft:flowering_azalea",
+            "minecraft:sea_pickle", "minecraft:turtle_egg", "minecraft:sniffer_egg", "minecraft:chorus_plant",
+            "minecraft:chorus_flower", "minecraft:decorated_pot", "minecraft:flower_pot", "minecraft:piston_head",
+            "minecraft:moving_piston", "minecraft:end_portal_frame", "minecraft:chest", "minecraft:trapped_chest",
+            "minecraft:ender_chest", "minecraft:anvil", "minecraft:chipped_anvil", "minecraft:damaged_anvil",
+            "minecraft:candle_cake", "minecraft:amethyst_cluster", "minecraft:large_amethyst_bud",
+            "minecraft:medium_amethyst_bud", "minecraft:small_amethyst_bud", "minecraft:mangrove_roots",
+            "minecraft:frogspawn", "minecraft:repeater", "minecraft:comparator", "minecraft:lily_pad",
+            "minecraft:snow", "minecraft:farmland", "minecraft:dirt_path", "minecraft:honey_block",
+            "minecraft:slime_block", "minecraft:sculk_sensor", "minecraft:calibrated_sculk_sensor",
+            "minecraft:sculk_shrieker");
+    private static final String[] TRANSLUCENT_SUFFIXES = {
+            "_slab", "_stairs", "_fence", "_fence_gate", "_wall", "_door", "_trapdoor", "_pane", "_carpet", "_bed",
+            "_candle", "candle", "_head", "_skull", "_shulker_box", "_leaves"};
+    /** Blocks which let light through, but reduce it like water does. */
+    private static final Set<String> DIMMING_NAMES = Set.of(
+            "minecraft:water", "minecraft:bubble_column", "minecraft:ice", "minecraft:frosted_ice",
+            "minecraft:cobweb", "minecraft:slime_block", "minecraft:honey_block");
+
+    private static final Map<String, Integer> NAME_PROPERTIES_CACHE = new ConcurrentHashMap<>();
+
+    private static int classifyName(String name) {
+        // classify the bare name, block state properties are applied on top of the cached result
+        int flags = HeightmapCalculator.classifyBlockName(name);
+        int opacity;
+        if ((flags & HeightmapCalculator.NON_AIR) == 0) {
+            opacity = 0;
+        } else if (DIMMING_NAMES.contains(name) || (flags & (HeightmapCalculator.LEAVES | HeightmapCalculator.FLUID)) != 0) {
+            opacity = 1;
+        } else if ((flags & HeightmapCalculator.BLOCKS_MOTION) == 0) {
+            opacity = 0;
+        } else if (name.contains("glass") && !name.equals("minecraft:tinted_glass")) {
+            opacity = 0;
+        } else if (TRANSLUCENT_NAMES.contains(name)) {
+            opacity = 0;
+        } else {
+            opacity = 15;
+            for (String suffix : TRANSLUCENT_SUFFIXES) {
+                if (name.endsWith(suffix)) {
+                    opacity = 0;
+                    break;
+                }
+            }
+        }
+        return lightProperties(EMISSION.getOrDefault(name, 0), opacity);
+    }
+
+    private static int intProperty(CompoundTag properties, String key, int defaultValue) {
+        StringTag tag = properties.getStringTag(key);
+        if (tag == null) return defaultValue;
+        try {
+            return Integer.parseInt(tag.getValue());
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    private static boolean booleanProperty(CompoundTag properties, String key) {
+        StringTag tag = properties.getStringTag(key);
+        return tag != null && "true".equals(tag.getValue());
+    }
+
+    /**
+     * Name based approximation of vanilla block light behavior. Full blocks are opaque, blocks without collision,
+     * glass, slabs, stairs, fences and similar let light through, water, ice and leaves dim it. Emission honors
+     * the {@code lit}, {@code level}, {@code candles}, {@code pickles}, {@code charges} and {@code berries}
+     * block state properties.
+     */
+    public static final LightClassifier DEFAULT_CLASSIFIER = blockState -> {
+        String name = blockState.getString("Name");
+        Integer cached = NAME_PROPERTIES_CACHE.get(name);
+        if (cached == null) {
+            cached = classifyName(name);
+            if (NAME_PROPERTIES_CACHE.size() < HeightmapCalculator.MAX_CACHED_NAMES) NAME_PROPERTIES_CACHE.put(name, cached);
+        }
+        CompoundTag properties = blockState.getCompoundTag("Properties");
+        if (properties == null || properties.isEmpty()) return cached;
+        int emission = emission(cached);
+        int opacity = opacity(cached);
+        if (opacity == 0 && booleanProperty(properties, "waterlogged")) opacity = 1;
+        StringTag lit = properties.getStringTag("lit");
+        if (lit != null) {
+            if (!"true".equals(lit.getValue())) {
+                emission = 0;
+            } else if (name.endsWith("candle")) {
+                emission = 3 * intProperty(properties, "candles", 1);
+            }
+        }
+        switch (name) {
+            case "minecraft:light" -> emission = intProperty(properties, "level", 15);
+            case "minecraft:sea_pickle" -> emission = booleanProperty(properties, "waterlogged")
+                    ? 3 * (intProperty(properties, "pickles", 1) + 1) : 0;
+            case "minecraft:respawn_anchor" -> {
+                int charges = intProperty(properties, "charges", 0);
+                emission = charges > 0 ? charges * 4 - 1 : 0;
+            }
+            case "minecraft:cave_vines", "minecraft:cave_vines_plant" ->
+                    emission = booleanProperty(properties, "berries") ? 14 : 0;
+            default -> { }
+        }
+        return lightProperties(emission, opacity);
+    };
+
+    // neighbor directions, d ^ 1 is the opposite direction
+    private static final int WEST = 0;
+    private static final int EAST = 1;
+    private static final int NORTH = 2;
+    private static final int SOUTH = 3;
+    private static final int[] DIR_X = {-1, 1, 0, 0};
+    private static final int[] DIR_Z = {0, 0, -1, 1};
+
+    private final LightClassifier classifier;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean computeBlockLight = true;
+    private boolean computeSkyLight = true;
+
+    public LightCalculator() {
+        this(DEFAULT_CLASSIFIER);
+    }
+
+    public LightCalculator(LightClassifier classifier) {
+        this.classifier = ArgValidator.requireValue(classifier, "classifier");
+    }
+
+    public LightClassifier getClassifier() {
+        return classifier;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Number of worker threads to use, defaults to the number of available processors. */
+    public LightCalculator setThreads(int threads) {
+        ArgValidator.check(threads > 0, "threads must be GT 0");
+        this.threads = threads;
+        return this;
+    }
+
+    public boolean isComputeBlockLight() {
+        return computeBlockLight;
+    }
+
+    /** Whether to recompute block light, default true. When false existing block light is left untouched. */
+    public LightCalculator setComputeBlockLight(boolean computeBlockLight) {
+        this.computeBlockLight = computeBlockLight;
+        return this;
+    }
+
+    public boolean isComputeSkyLight() {
+        return computeSkyLight;
+    }
+
+    /**
+     * Whether to recompute sky light, default true. Set false for dimensions without a sky (the nether), existing
+     * sky light is then left untouched.
+     */
+    public LightCalculator setComputeSkyLight(boolean computeSkyLight) {
+        this.computeSkyLight = computeSkyLight;
+        return this;
+    }
+
+    /**
+     * Relights all chunks of the given mca file.
+     * @return number of border exchange rounds which were run.
+     * @see #relight(Collection, Collection)
+     */
+    public int relight(McaFileBase<? extends TerrainChunkBase<?>> mcaFile) {
+        List<TerrainChunkBase<?>> chunks = new ArrayList<>();
+        for (TerrainChunkBase<?> chunk : mcaFile) {
+            if (chunk != null) chunks.add(chunk);
+        }
+        return relight(chunks, Collections.emptyList());
+    }
+
+    /**
+     * Relights the given chunks, treating everything around them as dark.
+     * @return number of border exchange rounds which were run.
+     * @see #relight(Collection, Collection)
+     */
+    public int relight(Collection<? extends TerrainChunkBase<?>> chunks) {
+        return relight(chunks, Collections.emptyList());
+    }
+
+    /**
+     * Relights the given chunks and sets their {@code isLightOn} flag (for versions which have it). Chunks
+     * without sections, such as chunks loaded raw, are ignored.
+     * @param chunks chunks to relight. Must have been loaded with block states and light data.
+     * @param borderChunks chunks next to, or anywhere around, the relit chunks whose current light shines into the
+     *                     relit chunks. These chunks are not modified. May be empty.
+     * @return number of border exchange rounds which were run.
+     * @throws IllegalArgumentException if two chunks share a location.
+     * @throws VersionLacksSupportException if a chunk predates block palettes.
+     * @throws CancellationException if the calling thread is interrupted.
+     */
+    public int relight(Collection<? extends TerrainChunkBase<?>> chunks,
+                       Collection<? extends TerrainChunkBase<?>> borderChunks) {
+        Map<IntPointXZ, Column> columns = new HashMap<>();
+        List<Column> targets = new ArrayList<>();
+        for (TerrainChunkBase<?> chunk : chunks) {
+            if (chunk.getDataVersion() < JAVA_1_13_17W47A.id()) {
+                throw new VersionLacksSupportException(chunk.getDataVersion(), JAVA_1_13_17W47A, null, "block palettes");
+            }
+            if (!chunk.hasSections()) continue;
+            Column column = new Column(chunk, true);
+            if (columns.put(column.xz, column) != null) {
+                throw new IllegalArgumentException("duplicate chunk at " + column.xz);
+            }
+            targets.add(column);
+        }
+        for (TerrainChunkBase<?> chunk : borderChunks) {
+            if (!chunk.hasSections()) continue;
+            Column column = new Column(chunk, false);
+            if (columns.put(column.xz, column) != null) {
+                throw new IllegalArgumentException("duplicate chunk at " + column.xz);
+            }
+            column.snapshotFaces();
+        }
+        if (targets.isEmpty()) return 0;
+        for (Column column : columns.values()) {
+            for (int d = 0; d < 4; d++) {
+                column.neighbors[d] = columns.get(new IntPointXZ(column.xz.getX() + DIR_X[d], column.xz.getZ() + DIR_Z[d]));
+            }
+        }
+
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService pool = threads > 1 && targets.size() > 1
+                ? Executors.newFixedThreadPool(threads, r -> {
+                    Thread t = new Thread(r, "mca-light-" + threadCounter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                })
+                : null;
+        int rounds = 0;
+        try {
+            forEach(pool, targets, column -> {
+                column.resetLight();
+                workers.get().lightInternal(column);
+                column.snapshotFaces();
+            });
+            for (Column column : columns.values()) {
+                if (!column.writable) column.facesChanged = true;
+            }
+
+            List<Column> active = new ArrayList<>();
+            while (true) {
+                active.clear();
+                for (Column column : targets) {
+                    for (Column neighbor : column.neighbors) {
+                        if (neighbor != null && neighbor.facesChanged) {
+                            active.add(column);
+                            break;
+                        }
+                    }
+                }
+                if (active.isEmpty()) break;
+                rounds++;
+                // incoming edges are read from the snapshots taken before this round, each column only writes
+                // its own light - so columns of one round can't race
+                forEach(pool, active, column -> workers.get().lightFromNeighbors(column));
+                for (Column column : columns.values()) column.facesChanged = false;
+                forEach(pool, active, Column::snapshotFaces);
+            }
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+        for (Column column : targets) {
+            if (column.chunk.getDataVersion() >= JAVA_1_14_19W02A.id()) column.chunk.setLightOn(true);
+        }
+        return rounds;
+    }
+
+    private interface ColumnTask {
+        void run(Column column);
+    }
+
+    private static void forEach(ExecutorService pool, List<Column> columns, ColumnTask task) {
+        if (pool == null) {
+            for (Column column : columns) task.run(column);
+            return;
+        }
+        List<Callable<Void>> calls = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            calls.add(() -> {
+                task.run(column);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(calls)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while computing light");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    static int getNibble(byte[] nibbles, int index) {
+        return (nibbles[index >> 1] >> ((index & 1) << 2)) & 0xF;
+    }
+
+    static void setNibble(byte[] nibbles, int index, int value) {
+        int shift = (index & 1) << 2;
+        nibbles[index >> 1] = (byte) ((nibbles[index >> 1] & ~(0xF << shift)) | (value << shift));
+    }
+
+    /**
+     * Light state of one chunk. Column local block indexes are {@code (blockY - minBlockY) << 8 | z << 4 | x}.
+     */
+    private final class Column {
+        final TerrainChunkBase<?> chunk;
+        final IntPointXZ xz;
+        final boolean writable;
+        final int minSectionY;
+        final int sectionCount;
+        final int minBlockY;
+        final int height;
+        final byte[][] blockLight;
+        final byte[][] skyLight;
+        final Column[] neighbors = new Column[4];
+        // edge light of this column, index (y - minBlockY) * 16 + position along the edge
+        final byte[][] blockFaces = new byte[4][];
+        final byte[][] skyFaces = new byte[4][];
+        boolean facesChanged;
+
+        Column(TerrainChunkBase<?> chunk, boolean writable) {
+            this.chunk = chunk;
+            this.writable = writable;
+            this.xz = new IntPointXZ(chunk.getChunkX(), chunk.getChunkZ());
+            this.minSectionY = chunk.getMinSectionY();
+            this.sectionCount = chunk.getMaxSectionY() - minSectionY + 1;
+            this.minBlockY = minSectionY * 16;
+            this.height = sectionCount * 16;
+            this.blockLight = new byte[sectionCount][];
+            this.skyLight = new byte[sectionCount][];
+            for (int s = 0; s < sectionCount; s++) {
+                TerrainSectionBase section = chunk.getSection(minSectionY + s);
+                if (section != null) {
+                    blockLight[s] = section.getBlockLight();
+                    skyLight[s] = section.getSkyLight();
+                }
+            }
+        }
+
+        /** Replaces the light arrays being computed with zeroed ones, gaps between sections get detached arrays. */
+        void resetLight() {
+            for (int s = 0; s < sectionCount; s++) {
+                TerrainSectionBase section = chunk.getSection(minSectionY + s);
+                if (computeBlockLight) {
+                    blockLight[s] = TerrainSectionBase.createBlockLightBuffer();
+                    if (section != null) section.setBlockLight(blockLight[s]);
+                } else if (blockLight[s] == null) {
+                    blockLight[s] = TerrainSectionBase.createBlockLightBuffer();
+                }
+                if (computeSkyLight) {
+                    skyLight[s] = TerrainSectionBase.createSkyLightBuffer();
+                    if (section != null) section.setSkyLight(skyLight[s]);
+                } else if (skyLight[s] == null) {
+                    skyLight[s] = TerrainSectionBase.createSkyLightBuffer();
+                }
+            }
+        }
+
+        int get(byte[][] light, int index) {
+            byte[] nibbles = light[index >> 12];
+            return nibbles != null ? getNibble(nibbles, index & 0xFFF) : 0;
+        }
+
+        void set(byte[][] light, int index, int value) {
+            setNibble(light[index >> 12], index & 0xFFF, value);
+        }
+
+        void snapshotFaces() {
+            boolean changed = false;
+            for (int d = 0; d < 4; d++) {
+                if (computeBlockLight) changed |= snapshotFace(blockLight, blockFaces, d);
+                if (computeSkyLight) changed |= snapshotFace(skyLight, skyFaces, d);
+            }
+            facesChanged = changed;
+        }
+
+        private boolean snapshotFace(byte[][] light, byte[][] faces, int d) {
+            byte[] face = faces[d];
+            boolean changed = false;
+            if (face == null) {
+                face = faces[d] = new byte[height * 16];
+                changed = true;
+            }
+            for (int y = 0; y < height; y++) {
+                int yBase = y << 8;
+                for (int t = 0; t < 16; t++) {
+                    byte v = (byte) get(light, yBase | faceCell(d, t));
+                    int i = y * 16 + t;
+                    if (face[i] != v) {
+                        face[i] = v;
+                        changed = true;
+                    }
+                }
+            }
+            return changed;
+        }
+    }
+
+    /** @return z << 4 | x of the t-th cell along the edge in direction d. */
+    private static int faceCell(int d, int t) {
+        return switch (d) {
+            case WEST -> t << 4;
+            case EAST -> t << 4 | 15;
+            case NORTH -> t;
+            default -> 15 << 4 | t;
+        };
+    }
+
+    /** Per thread scratch space. */
+    private final class Worker {
+        byte[] opacity = new byte[0];
+        int[] queue = new int[1 << 12];
+        int head;
+        int tail;
+        int[] paletteProperties = new int[64];
+
+        void enqueue(int index) {
+            queue[tail] = index;
+            tail = (tail + 1) & (queue.length - 1);
+            if (tail == head) {
+                int[] grown = new int[queue.length * 2];
+                int n = queue.length - head;
+                System.arraycopy(queue, head, grown, 0, n);
+                System.arraycopy(queue, 0, grown, n, head);
+                head = 0;
+                tail = queue.length;
+                queue = grown;
+            }
+        }
+
+        /**
+         * Fills {@link #opacity} for the column and, if seed is true, sets and enqueues the block light of emitters.
+         */
+        void loadOpacity(Column column, boolean seed) {
+            int size = column.height << 8;
+            if (opacity.length < size) opacity = new byte[size];
+            for (int s = 0; s < column.sectionCount; s++) {
+                TerrainSectionBase section = column.chunk.getSection(column.minSectionY + s);
+                PalettizedCuboid<CompoundTag> blockStates = section != null ? section.getBlockStates() : null;
+                int base = s << 12;
+                if (blockStates == null) {
+                    Arrays.fill(opacity, base, base + 4096, (byte) 0);
+                    continue;
+                }
+                int paletteSize = blockStates.palette.size();
+                if (paletteProperties.length < paletteSize) {
+                    paletteProperties = new int[Math.max(paletteSize, paletteProperties.length * 2)];
+                }
+                boolean anyEmits = false;
+                for (int p = 0; p < paletteSize; p++) {
+                    int properties = classifier.classify(blockStates.palette.get(p));
+                    paletteProperties[p] = properties;
+                    anyEmits |= emission(properties) > 0;
+                }
+                seed &= computeBlockLight;
+                if (paletteSize == 1 && !(seed && anyEmits)) {
+                    Arrays.fill(opacity, base, base + 4096, (byte) opacity(paletteProperties[0]));
+                    continue;
+                }
+                LongArrayTagPackedIntegers packedData = blockStates.packedData;
+                for (int i = 0; i < 4096; i++) {
+                    int properties = paletteProperties[packedData.get(i)];
+                    opacity[base | i] = (byte) opacity(properties);
+                    if (seed && properties > 15) {
+                        int emission = emission(properties);
+                        if (emission > column.get(column.blockLight, base | i)) {
+                            column.set(column.blockLight, base | i, emission);
+                            enqueue(base | i);
+                        }
+                    }
+                }
+            }
+        }
+
+        void lightInternal(Column column) {
+            loadOpacity(column, true);
+            if (computeBlockLight) propagate(column, column.blockLight);
+            if (computeSkyLight) {
+                seedSky(column);
+                propagate(column, column.skyLight);
+            }
+        }
+
+        void lightFromNeighbors(Column column) {
+            loadOpacity(column, false);
+            if (computeBlockLight) {
+                pullEdges(column, column.blockLight, true);
+                propagate(column, column.blockLight);
+            }
+            if (computeSkyLight) {
+                pullEdges(column, column.skyLight, false);
+                propagate(column, column.skyLight);
+            }
+        }
+
+        /** Sky light falls straight down undimmed until it meets a block with opacity, then spreads as usual. */
+        void seedSky(Column column) {
+            final byte[][] sky = column.skyLight;
+            final int top = column.height - 1;
+            for (int c = 0; c < 256; c++) {
+                int level = 15;
+                for (int y = top; y >= 0 && level > 0; y--) {
+                    int index = y << 8 | c;
+                    int op = opacity[index];
+                    if (op != 0 || level != 15) level = Math.max(0, level - Math.max(1, op));
+                    if (level > 0) column.set(sky, index, level);
+                }
+            }
+            // only cells which can light a horizontal neighbor need to spread
+            for (int index = 0, size = column.height << 8; index < size; index++) {
+                int level = column.get(sky, index);
+                if (level <= 1) continue;
+                int x = index & 0xF;
+                int z = (index >> 4) & 0xF;
+                if ((x > 0 && canLight(column, sky, index - 1, level))
+                        || (x < 15 && canLight(column, sky, index + 1, level))
+                        || (z > 0 && canLight(column, sky, index - 16, level))
+                        || (z < 15 && canLight(column, sky, index + 16, level))) {
+                    enqueue(index);
+                }
+            }
+        }
+
+        private boolean canLight(Column column, byte[][] light, int index, int level) {
+            int op = opacity[index];
+            return op < 15 && level - Math.max(1, op) > column.get(light, index);
+        }
+
+        void pullEdges(Column column, byte[][] light, boolean blockLight) {
+            for (int d = 0; d < 4; d++) {
+                Column neighbor = column.neighbors[d];
+                if (neighbor == null || !neighbor.facesChanged) continue;
+                byte[] face = (blockLight ? neighbor.blockFaces : neighbor.skyFaces)[d ^ 1];
+                if (face == null) continue;
+                int yFrom = Math.max(column.minBlockY, neighbor.minBlockY);
+                int yTo = Math.min(column.minBlockY + column.height, neighbor.minBlockY + neighbor.height);
+                for (int y = yFrom; y < yTo; y++) {
+                    int faceBase = (y - neighbor.minBlockY) * 16;
+                    int yBase = (y - column.minBlockY) << 8;
+                    for (int t = 0; t < 16; t++) {
+                        int incoming = face[faceBase + t];
+                        if (incoming <= 1) continue;
+                        int index = yBase | faceCell(d, t);
+                        int op = opacity[index];
+                        if (op >= 15) continue;
+                        int level = incoming - Math.max(1, op);
+                        if (level > column.get(light, index)) {
+                            column.set(light, index, level);
+                            enqueue(index);
+                        }
+                    }
+                }
+            }
+        }
+
+        void propagate(Column column, byte[][] light) {
+            final int maxIndex = column.height << 8;
+            while (head != tail) {
+                int index = queue[head];
+                head = (head + 1) & (queue.length - 1);
+                int level = column.get(light, index);
+                if (level <= 1) continue;
+                int x = index & 0xF;
+                int z = (index >> 4) & 0xF;
+                if (x > 0) spread(column, light, index - 1, level);
+                if (x < 15) spread(column, light, index + 1, level);
+                if (z > 0) spread(column, light, index - 16, level);
+                if (z < 15) spread(column, light, index + 16, level);
+                if (index >= 256) spread(column, light, index - 256, level);
+                if (index + 256 < maxIndex) spread(column, light, index + 256, level);
+            }
+        }
+
+        private void spread(Column column, byte[][] light, int index, int level) {
+            int op = opacity[index];
+            if (op >= 15) return;
+            int newLevel = level - Math.max(1, op);
+            if (newLevel > column.get(light, index)) {
+                column.set(light, index, newLevel);
+                if (newLevel > 1) enqueue(index);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.ensgijs.nbt.mca.util;
 
+import io.github.ensgijs.nbt.io.StreamingTextNbtWriter;
 import io.github.ensgijs.nbt.io.TextNbtHelpers;
 import io.github.ensgijs.nbt.mca.ChunkBase;
 import io.github.ensgijs.nbt.mca.io.LoadFlags;
@@ -31,6 +32,7 @@ public class McaDumper {
                 dir.mkdirs();
             }
             final String dirName = dir.getPath();
+            final StreamingTextNbtWriter snbtWriter = new StreamingTextNbtWriter(/*pretty print*/ true, /*sorted*/ true);
             while (iter.hasNext()) {
                 ChunkBase chunk = iter.next();
                 TextNbtHelpers.writeTextNbtFile(
@@ -40,13 +42,26 @@ public class McaDumper {
                                         chunk.getIndex(),
                                         chunk.getChunkX(),
                                         chunk.getChunkZ())
-                        ), chunk.getHandle(), /*pretty print*/ true, /*sorted*/ true);
+                        ), chunk.getHandle(), snbtWriter);
 
             }
             return dir.toPath();
         }
     }
 
+    /**
+     * Dumps every chunk of every region, poi and entities mca file of a world, in parallel, resuming any previous
+     * dump found in outputRoot. See {@link McaWorldDumper} for more options.
+     * @param worldRoot world root directory - the directory which contains "region", "poi", etc.
+     * @param outputRoot Root directory to dump into, the layout is the same as
+     *                   {@link #dumpChunksAsTextNbt(File, Path)} uses.
+     * @return dump totals.
+     * @throws IOException
+     */
+    public static McaWorldDumper.Summary dumpWorldAsTextNbt(Path worldRoot, Path outputRoot) throws IOException {
+        return new McaWorldDumper(worldRoot, outputRoot).dump();
+    }
+
     /** Writes the given chunk to the specified destinationFile. */
     public static Path dumpChunkAsTextNbtToFile(ChunkBase chunk, File destinationFile) throws IOException {
         Path path = destinationFile.toPath();
@@ -1,6 +1,11 @@
 package io.github.ensgijs.nbt.mca.util;
 
+import io.github.ensgijs.nbt.mca.ChunkBase;
+import io.github.ensgijs.nbt.mca.EntitiesChunk;
+import io.github.ensgijs.nbt.mca.PoiChunk;
 import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.TerrainSection;
+import io.github.ensgijs.nbt.mca.VersionLacksSupportException;
 import io.github.ensgijs.nbt.mca.io.LoadFlags;
 import io.github.ensgijs.nbt.mca.io.McaFileHelpers;
 import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
@@ -15,27 +20,120 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
-import static io.github.ensgijs.nbt.mca.DataVersion.JAVA_1_18_21W37A;
+import static io.github.ensgijs.nbt.mca.DataVersion.*;
 
 /**
  * Abstracts away the interactions with individual chunks and mca files.
+ * <p>Terrain, poi and entities chunks are read from the "region", "poi" and "entities" mca files and share one
+ * chunk cache and one region cache. {@link #getWorldChunks(Collection)} fetches all three kinds of chunk for many
+ * positions at once as {@link WorldChunk} records.</p>
  * <p>Early impl limitations:</p>
  * <ul>
- *     <li>Only operates on {@link TerrainChunk}</li>
- *     <li>'rw' mode does not support creating new mca files or new chunks.</li>
+ *     <li>Block, biome and heightmap accessors, the bulk volume operations and {@link #walker()} only operate on
+ *     {@link TerrainChunk} - poi records and entities are not moved or updated along with the blocks they belong
+ *     to.</li>
+ *     <li>Poi and entities chunks are only available for worlds new enough to have those mca files, before 1.17
+ *     entities are held by the terrain chunk.</li>
+ *     <li>'rw' mode does not support creating new mca files or new chunks, of any kind.</li>
  * </ul>
  */
 public class McaWorld implements Closeable {
     static final int DEFAULT_CHUNK_CACHE_CAPACITY = 1024;
+    static final int DEFAULT_REGION_CACHE_CAPACITY = 64;
     private final boolean isReadonly;
     private final String mode;
     private final String worldRootDir;
 
-    // TODO: use region/poi/entities abstraction chunk type (once one exists)
-    private final Map<IntPointXZ, RandomAccessMcaFile<TerrainChunk>> regionCache = new HashMap<>();
-    private final Map<IntPointXZ, TerrainChunk> chunkCache;
+    static final String REGION = "region";
+    static final String POI = "poi";
+    static final String ENTITIES = "entities";
+
+    /** Flag returned by {@link ChunkAndEntitiesEdit} when the terrain chunk was modified. */
+    static final int TERRAIN_MODIFIED = 0x1;
+    /** Flag returned by {@link ChunkAndEntitiesEdit} when the entities chunk was modified. */
+    static final int ENTITIES_MODIFIED = 0x2;
+
+    // access order = true so this is an LRU, eviction is done by hand as closing a region may throw
+    private final Map<RegionKey, RandomAccessMcaFile<?>> regionCache = new LinkedHashMap<>(16, 0.75F, true);
+    // regions in use by a running bulk operation, never evicted
+    private final Set<RegionKey> pinnedRegions = new HashSet<>();
+    private final Map<IntPointXZ, CachedChunk> chunkCache;
     private long loadFlags = LoadFlags.LOAD_ALL_DATA;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int regionCacheCapacity = DEFAULT_REGION_CACHE_CAPACITY;
+    private long regionCacheHits;
+    private long regionCacheMisses;
+    private long regionCacheEvictions;
+    private long regionCacheFlushes;
+
+    /**
+     * Region cache counters since the world was opened, see {@link #setRegionCacheCapacity(int)}.
+     * @param hits region lookups, of any mca type, answered from the cache, including cached non-existent regions
+     * @param misses region lookups which had to look for the mca file
+     * @param evictions regions dropped to stay within capacity, each open handle is closed when evicted
+     * @param flushes evicted regions which had writes not yet flushed, their header tables were written on close
+     */
+    public record RegionCacheStats(long hits, long misses, long evictions, long flushes) {}
+
+    /**
+     * The terrain, poi and entities chunks at one chunk position, any of which may be null if it does not exist.
+     * Poi files exist since 1.14 and entities files since 1.17, before that entities are held by the terrain chunk.
+     * @see #getWorldChunks(Collection)
+     */
+    public record WorldChunk(IntPointXZ chunkXZ, TerrainChunk terrain, PoiChunk poi, EntitiesChunk entities) {}
+
+    /** Region cache key, the same region XZ is cached once per mca type. */
+    private record RegionKey(String mcaType, IntPointXZ regionXZ) {}
+
+    /**
+     * Chunk cache entry holding every mca type of one chunk position. Each type is read when first asked for,
+     * chunks which do not exist are cached as null.
+     */
+    private static final class CachedChunk {
+        TerrainChunk terrain;
+        PoiChunk poi;
+        EntitiesChunk entities;
+        boolean terrainLoaded;
+        boolean poiLoaded;
+        boolean entitiesLoaded;
+
+        boolean isLoaded(String mcaType) {
+            return switch (mcaType) {
+                case REGION -> terrainLoaded;
+                case POI -> poiLoaded;
+                default -> entitiesLoaded;
+            };
+        }
+
+        void set(String mcaType, ChunkBase chunk) {
+            switch (mcaType) {
+                case REGION -> {
+                    terrain = (TerrainChunk) chunk;
+                    terrainLoaded = true;
+                }
+                case POI -> {
+                    poi = (PoiChunk) chunk;
+                    poiLoaded = true;
+                }
+                default -> {
+                    entities = (EntitiesChunk) chunk;
+                    entitiesLoaded = true;
+                }
+            }
+        }
+
+        ChunkBase get(String mcaType) {
+            return switch (mcaType) {
+                case REGION -> terrain;
+                case POI -> poi;
+                default -> entities;
+            };
+        }
+    }
 
     public McaWorld(String worldRootDir, String mode, int chunkCacheSize) throws FileNotFoundException {
         ArgValidator.check(mode != null && mode.length() >= 1 && mode.charAt(0) == 'r');
@@ -69,8 +167,16 @@ public class McaWorld implements Closeable {
         this(worldRootDir, mode, DEFAULT_CHUNK_CACHE_CAPACITY);
     }
 
+    /**
+     * @return XZ of the regions currently held by the region cache, of any mca type, including ones which do
+     * not exist.
+     */
     public Set<IntPointXZ> touchedRegions() {
-        return Collections.unmodifiableSet(regionCache.keySet());
+        Set<IntPointXZ> regions = new HashSet<>();
+        for (RegionKey key : regionCache.keySet()) {
+            regions.add(key.regionXZ());
+        }
+        return Collections.unmodifiableSet(regions);
     }
 
     /** LoadFlags which are passed to the chunk deserialization method. */
@@ -79,6 +185,37 @@ public class McaWorld implements Closeable {
         this.loadFlags = loadFlags;
     }
 
+    /** Number of worker threads used by bulk volume operations, defaults to the number of available processors. */
+    public void setThreads(int threads) {
+        ArgValidator.check(threads > 0, "threads must be GT 0");
+        this.threads = threads;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    /**
+     * Maximum number of regions kept in the region cache, defaults to {@value #DEFAULT_REGION_CACHE_CAPACITY}.
+     * Least recently used regions are evicted beyond this, closing their file (and flushing their header tables if
+     * they were written to). This bounds the number of open files. Regions which do not exist are cached too.
+     * <p>Lowering the capacity evicts immediately.</p>
+     * @throws IOException an evicted region threw when closing
+     */
+    public void setRegionCacheCapacity(int regionCacheCapacity) throws IOException {
+        ArgValidator.check(regionCacheCapacity > 0, "regionCacheCapacity must be GT 0");
+        this.regionCacheCapacity = regionCacheCapacity;
+        evictRegions();
+    }
+
+    public int regionCacheCapacity() {
+        return regionCacheCapacity;
+    }
+
+    public RegionCacheStats regionCacheStats() {
+        return new RegionCacheStats(regionCacheHits, regionCacheMisses, regionCacheEvictions, regionCacheFlushes);
+    }
+
     public boolean isReadonly() {
         return isReadonly;
     }
@@ -125,20 +262,113 @@ public class McaWorld implements Closeable {
         return getRegion(new IntPointXZ(regionX, regionZ));
     }
 
+    /**
+     * Gets the region from the region cache, opening it if needed. The returned handle is closed if the region is
+     * later evicted, see {@link #setRegionCacheCapacity(int)}.
+     * @return the region, or null if its mca file does not exist or is empty.
+     */
     public RandomAccessMcaFile<TerrainChunk> getRegion(IntPointXZ regionXZ) throws IOException {
-        if (!regionCache.containsKey(regionXZ)) {
+        return getRegion(REGION, TerrainChunk.class, regionXZ);
+    }
+
+    public RandomAccessMcaFile<PoiChunk> getPoiRegion(int regionX, int regionZ) throws IOException {
+        return getPoiRegion(new IntPointXZ(regionX, regionZ));
+    }
+
+    /**
+     * Gets the poi mca file of the region from the region cache, opening it if needed.
+     * @return the poi region, or null if its mca file does not exist or is empty.
+     * @see #getRegion(IntPointXZ)
+     */
+    public RandomAccessMcaFile<PoiChunk> getPoiRegion(IntPointXZ regionXZ) throws IOException {
+        return getRegion(POI, PoiChunk.class, regionXZ);
+    }
+
+    public RandomAccessMcaFile<EntitiesChunk> getEntitiesRegion(int regionX, int regionZ) throws IOException {
+        return getEntitiesRegion(new IntPointXZ(regionX, regionZ));
+    }
+
+    /**
+     * Gets the entities mca file of the region from the region cache, opening it if needed.
+     * @return the entities region, or null if its mca file does not exist or is empty.
+     * @see #getRegion(IntPointXZ)
+     */
+    public RandomAccessMcaFile<EntitiesChunk> getEntitiesRegion(IntPointXZ regionXZ) throws IOException {
+        return getRegion(ENTITIES, EntitiesChunk.class, regionXZ);
+    }
+
+    private static Class<? extends ChunkBase> chunkClassOf(String mcaType) {
+        return switch (mcaType) {
+            case REGION -> TerrainChunk.class;
+            case POI -> PoiChunk.class;
+            default -> EntitiesChunk.class;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends ChunkBase> RandomAccessMcaFile<T> getRegion(String mcaType, Class<T> chunkClass, IntPointXZ regionXZ) throws IOException {
+        final RegionKey key = new RegionKey(mcaType, regionXZ);
+        if (regionCache.containsKey(key)) {
+            regionCacheHits++;
+        } else {
+            regionCacheMisses++;
             String fileName = McaFileHelpers.createNameFromRegionLocation(regionXZ);
-            File mcaFile = Path.of(worldRootDir, "region", fileName).toFile();
-            RandomAccessMcaFile<TerrainChunk> ramf = null;
+            File mcaFile = Path.of(worldRootDir, mcaType, fileName).toFile();
+            RandomAccessMcaFile<T> ramf = null;
             // TODO: mode != "r" - create directory??
             if (mcaFile.exists() && Files.size(mcaFile.toPath()) > 0) {  // TODO: || !mode.equals("r")
-                ramf = new RandomAccessMcaFile<>(TerrainChunk.class, mcaFile, mode);
+                ramf = new RandomAccessMcaFile<>(chunkClass, mcaFile, mode);
                 ramf.setLoadFlags(loadFlags);
             }
-            regionCache.put(regionXZ, ramf);
+            regionCache.put(key, ramf);
+            evictRegions();
+        }
+
+        return (RandomAccessMcaFile<T>) regionCache.get(key);
+    }
+
+    private void evictRegions() throws IOException {
+        Iterator<Map.Entry<RegionKey, RandomAccessMcaFile<?>>> iter = regionCache.entrySet().iterator();
+        while (regionCache.size() > regionCacheCapacity && iter.hasNext()) {
+            Map.Entry<RegionKey, RandomAccessMcaFile<?>> eldest = iter.next();
+            if (pinnedRegions.contains(eldest.getKey())) continue;
+            iter.remove();
+            regionCacheEvictions++;
+            RandomAccessMcaFile<?> ramf = eldest.getValue();
+            if (ramf != null) {
+                if (ramf.isDirty()) regionCacheFlushes++;
+                ramf.close();
+            }
+        }
+    }
+
+    /** @return the open handle of the region, or null if it has not been opened (or does not exist). Never opens it. */
+    @SuppressWarnings("unchecked")
+    RandomAccessMcaFile<TerrainChunk> cachedRegion(IntPointXZ regionXZ) {
+        return (RandomAccessMcaFile<TerrainChunk>) regionCache.get(new RegionKey(REGION, regionXZ));
+    }
+
+    /** Writes the header tables of all open writable regions so that their files on disk are current. */
+    void flushRegions() throws IOException {
+        for (RandomAccessMcaFile<?> ramf : regionCache.values()) {
+            if (ramf != null) ramf.flush();
+        }
+    }
+
+    /** @return the cached terrain chunk, or null if the chunk is not in the chunk cache. Never loads it. */
+    TerrainChunk cachedChunk(IntPointXZ chunkXZ) {
+        synchronized (chunkCache) {
+            CachedChunk cached = chunkCache.get(chunkXZ);
+            return cached != null ? cached.terrain : null;
         }
+    }
 
-        return regionCache.get(regionXZ);
+    /**
+     * @return a walker which visits every chunk of this world region by region using bounded memory and a bounded
+     * number of open files.
+     */
+    public McaWorldWalker walker() {
+        return new McaWorldWalker(this);
     }
 
     public TerrainChunk getChunk(int chunkX, int chunkZ) throws IOException {
@@ -146,18 +376,111 @@ public class McaWorld implements Closeable {
     }
 
     public TerrainChunk getChunk(IntPointXZ chunkXZ) throws IOException {
-        if (chunkCache.containsKey(chunkXZ))  // strategy allows caching of nulls
-            return chunkCache.get(chunkXZ);
+        return (TerrainChunk) getChunk(REGION, chunkXZ);
+    }
+
+    public PoiChunk getPoiChunk(int chunkX, int chunkZ) throws IOException {
+        return getPoiChunk(new IntPointXZ(chunkX, chunkZ));
+    }
 
-        var region = getRegion(chunkXZ.transformChunkToRegion());
+    /** @return the poi chunk, or null if it does not exist. Shares the chunk cache with {@link #getChunk(IntPointXZ)}. */
+    public PoiChunk getPoiChunk(IntPointXZ chunkXZ) throws IOException {
+        return (PoiChunk) getChunk(POI, chunkXZ);
+    }
+
+    public EntitiesChunk getEntitiesChunk(int chunkX, int chunkZ) throws IOException {
+        return getEntitiesChunk(new IntPointXZ(chunkX, chunkZ));
+    }
 
-        TerrainChunk chunk = null;
-        if (region != null) {
-            chunk = region.readAbsolute(chunkXZ);
+    /**
+     * @return the entities chunk, or null if it does not exist - always null before 1.17 where entities are held by
+     * the terrain chunk. Shares the chunk cache with {@link #getChunk(IntPointXZ)}.
+     */
+    public EntitiesChunk getEntitiesChunk(IntPointXZ chunkXZ) throws IOException {
+        return (EntitiesChunk) getChunk(ENTITIES, chunkXZ);
+    }
+
+    private ChunkBase getChunk(String mcaType, IntPointXZ chunkXZ) throws IOException {
+        CachedChunk cached = cacheEntry(chunkXZ);
+        if (!cached.isLoaded(mcaType)) {  // strategy allows caching of nulls
+            var region = getRegion(mcaType, chunkClassOf(mcaType), chunkXZ.transformChunkToRegion());
+            // TODO: mode != "r" - create new chunk
+            cached.set(mcaType, region != null ? region.readAbsolute(chunkXZ) : null);
+        }
+        return cached.get(mcaType);
+    }
+
+    private CachedChunk cacheEntry(IntPointXZ chunkXZ) {
+        synchronized (chunkCache) {
+            return chunkCache.computeIfAbsent(chunkXZ, k -> new CachedChunk());
         }
-        // TODO: mode != "r" - create new chunk
-        chunkCache.put(chunkXZ, chunk);
-        return chunk;
+    }
+
+    public WorldChunk getWorldChunk(int chunkX, int chunkZ) throws IOException {
+        return getWorldChunk(new IntPointXZ(chunkX, chunkZ));
+    }
+
+    /**
+     * Gets the terrain, poi and entities chunks at the position, reading the three mca files in parallel.
+     * @see #getWorldChunks(Collection)
+     */
+    public WorldChunk getWorldChunk(IntPointXZ chunkXZ) throws IOException {
+        return getWorldChunks(List.of(chunkXZ)).get(chunkXZ);
+    }
+
+    /**
+     * Gets the terrain, poi and entities chunks at every given position in one coordinated fetch. Chunks not yet
+     * in the chunk cache are read with one task per mca file (see {@link #setThreads(int)}), each file is opened
+     * once through the shared region cache no matter how many of the positions it holds. Every chunk read is added
+     * to the chunk cache.
+     * @return map of chunk XZ to its chunks, in the iteration order of the given positions.
+     */
+    public Map<IntPointXZ, WorldChunk> getWorldChunks(Collection<IntPointXZ> chunkXZs) throws IOException {
+        ArgValidator.requireValue(chunkXZs, "chunkXZs");
+        final Map<IntPointXZ, CachedChunk> entries = new LinkedHashMap<>();
+        final Map<RegionKey, List<IntPointXZ>> reads = new LinkedHashMap<>();
+        for (IntPointXZ chunkXZ : chunkXZs) {
+            CachedChunk cached = cacheEntry(chunkXZ);
+            entries.put(chunkXZ, cached);
+            for (String mcaType : List.of(REGION, POI, ENTITIES)) {
+                if (!cached.isLoaded(mcaType)) {
+                    reads.computeIfAbsent(new RegionKey(mcaType, chunkXZ.transformChunkToRegion()), k -> new ArrayList<>())
+                            .add(chunkXZ);
+                }
+            }
+        }
+        final List<RegionKey> keys = new ArrayList<>(reads.keySet());
+        for (int from = 0; from < keys.size(); from += regionCacheCapacity) {
+            final List<Callable<Void>> tasks = new ArrayList<>();
+            try {
+                for (RegionKey key : keys.subList(from, Math.min(keys.size(), from + regionCacheCapacity))) {
+                    final RandomAccessMcaFile<?> region = getRegion(key.mcaType(), chunkClassOf(key.mcaType()), key.regionXZ());
+                    pinnedRegions.add(key);
+                    final List<IntPointXZ> regionChunkXZs = reads.get(key);
+                    if (region == null) {
+                        for (IntPointXZ chunkXZ : regionChunkXZs) entries.get(chunkXZ).set(key.mcaType(), null);
+                        continue;
+                    }
+                    tasks.add(() -> {
+                        for (IntPointXZ chunkXZ : regionChunkXZs) {
+                            // each task sets a different mca type of the entries it shares with other tasks
+                            entries.get(chunkXZ).set(key.mcaType(), region.readAbsolute(chunkXZ));
+                        }
+                        return null;
+                    });
+                }
+                runTasks(tasks);
+            } finally {
+                pinnedRegions.clear();
+            }
+            evictRegions();
+        }
+        Map<IntPointXZ, WorldChunk> result = new LinkedHashMap<>();
+        for (Map.Entry<IntPointXZ, CachedChunk> e : entries.entrySet()) {
+            CachedChunk cached = e.getValue();
+            result.put(e.getKey(), new WorldChunk(e.getKey(), cached.terrain, cached.poi, cached.entities));
+        }
+        return result;
     }
 
     /**
@@ -333,4 +656,489 @@ public class McaWorld implements Closeable {
         var chunk = getChunk(x >> 4, z >> 4);
         return chunk != null && chunk.setBlockAt(x, y, z, tag);
     }
+
+    // <editor-fold desc="Bulk Volume Operations" defaultstate="collapsed">
+
+    /**
+     * Sets every block within the given inclusive bounds to the given state.
+     * <p>Work is split by region (regions run in parallel, see {@link #setThreads(int)}) and by chunk section.
+     * Sections entirely within the bounds become a single entry palette without visiting any blocks, partially
+     * covered sections are edited through a {@link BlockEditSession} and repacked once.</p>
+     * <p>Unlike the single block setters, modified chunks are written back to their region file as soon as they
+     * have been edited, so large volumes are not lost to chunk cache eviction. Chunks already in the chunk cache are
+     * edited (and written) in place. Chunks and sections which do not exist are skipped. Heightmaps and light are
+     * not updated, see {@link HeightmapCalculator} and {@link LightCalculator}.</p>
+     * @param xyz1 block position of one corner, inclusive
+     * @param xyz2 block position of the opposite corner, inclusive
+     * @param state block palette tag, must contain a 'Name' StringTag
+     * @return number of chunks modified
+     * @see BlockStateTag
+     */
+    public int fill(IntPointXYZ xyz1, IntPointXYZ xyz2, CompoundTag state) throws IOException {
+        ArgValidator.requireValue(state, "state");
+        ArgValidator.check(state.containsKey("Name", StringTag.class), "block palette tag must contain a 'Name' StringTag");
+        final Box box = new Box(xyz1, xyz2);
+        return editChunks(box, true, chunk -> {
+            requireBlockPalettes(chunk);
+            final Box clip = box.clipTo(chunk);
+            if (clip == null) return false;
+            boolean modified = false;
+            BlockEditSession session = null;
+            for (int sectionY = clip.minY >> 4; sectionY <= clip.maxY >> 4; sectionY++) {
+                TerrainSection section = chunk.getSection(sectionY);
+                if (section == null || section.getBlockStates() == null) continue;
+                final int fromY = Math.max(clip.minY, sectionY << 4);
+                final int toY = Math.min(clip.maxY, sectionY << 4 | 0xF);
+                if (clip.coversChunkXZ() && fromY == sectionY << 4 && toY == (sectionY << 4 | 0xF)) {
+                    section.getBlockStates().fill(state);
+                    modified = true;
+                } else {
+                    if (session == null) session = chunk.editSession();
+                    session.fill(clip.minX, fromY, clip.minZ, state, clip.maxX, toY, clip.maxZ);
+                }
+            }
+            return (session != null && session.commit() > 0) || modified;
+        });
+    }
+
+    /**
+     * Replaces every block equal to {@code from} within the given inclusive bounds with {@code to}.
+     * @return number of chunks modified
+     * @see #replace(IntPointXYZ, IntPointXYZ, Predicate, CompoundTag)
+     */
+    public int replace(IntPointXYZ xyz1, IntPointXYZ xyz2, CompoundTag from, CompoundTag to) throws IOException {
+        ArgValidator.requireValue(from, "from");
+        return replace(xyz1, xyz2, from::equals, to);
+    }
+
+    /**
+     * Replaces every block matching the filter within the given inclusive bounds with {@code to}.
+     * <p>The filter is evaluated once per section palette entry, never per block, and sections in which no
+     * palette entry matches are skipped without visiting their blocks. Sections entirely within the bounds are
+     * replaced at the palette level. See {@link #fill(IntPointXYZ, IntPointXYZ, CompoundTag)} for how work is split
+     * and how modified chunks are written. As with fill, heightmaps and light are left as they were.</p>
+     * @param filter receives palette entries by reference, it must not modify them
+     * @param to block palette tag, must contain a 'Name' StringTag
+     * @return number of chunks modified
+     */
+    public int replace(IntPointXYZ xyz1, IntPointXYZ xyz2, Predicate<CompoundTag> filter, CompoundTag to) throws IOException {
+        ArgValidator.requireValue(filter, "filter");
+        ArgValidator.requireValue(to, "to");
+        ArgValidator.check(to.containsKey("Name", StringTag.class), "block palette tag must contain a 'Name' StringTag");
+        final Box box = new Box(xyz1, xyz2);
+        return editChunks(box, true, chunk -> {
+            requireBlockPalettes(chunk);
+            final Box clip = box.clipTo(chunk);
+            if (clip == null) return false;
+            boolean modified = false;
+            BlockEditSession session = null;
+            for (int sectionY = clip.minY >> 4; sectionY <= clip.maxY >> 4; sectionY++) {
+                TerrainSection section = chunk.getSection(sectionY);
+                if (section == null || section.getBlockStates() == null) continue;
+                final PalettizedCuboid<CompoundTag> blockStates = section.getBlockStates();
+                final int fromY = Math.max(clip.minY, sectionY << 4);
+                final int toY = Math.min(clip.maxY, sectionY << 4 | 0xF);
+                if (clip.coversChunkXZ() && fromY == sectionY << 4 && toY == (sectionY << 4 | 0xF)) {
+                    modified |= blockStates.replaceIf(filter, to);
+                    continue;
+                }
+                final boolean[] matches = new boolean[blockStates.palette.size()];
+                boolean anyMatch = false;
+                for (int i = 0; i < matches.length; i++) {
+                    CompoundTag entry = blockStates.palette.get(i);
+                    if (!entry.equals(to) && filter.test(entry)) {
+                        matches[i] = anyMatch = true;
+                    }
+                }
+                if (!anyMatch) continue;
+                if (session == null) session = chunk.editSession();
+                final int toId = session.stateId(to);
+                for (int y = fromY; y <= toY; y++) {
+                    for (int z = clip.minZ; z <= clip.maxZ; z++) {
+                        for (int x = clip.minX; x <= clip.maxX; x++) {
+                            if (matches[blockStates.packedData.get((y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF))]) {
+                                session.setStateId(x, y, z, toId);
+                            }
+                        }
+                    }
+                }
+            }
+            return (session != null && session.getEditCount() > 0 && session.commit() > 0) || modified;
+        });
+    }
+
+    /**
+     * Copies the blocks within the given inclusive source bounds so that the source corner with the lowest
+     * coordinates lands on {@code destination}. Source and destination may overlap, the source is snapshotted
+     * before anything is written.
+     * <p>Only block states are copied - block entities, entities and biomes are not, nor are the destination's
+     * heightmaps and light updated. Blocks whose source or destination chunk or section does not exist are skipped.
+     * When the offset between source and destination is a multiple of 16 on every axis, destination sections
+     * entirely within the bounds take a copy of the source section's palette and data without visiting any blocks.
+     * See {@link #fill(IntPointXYZ, IntPointXYZ, CompoundTag)} for how work is split and how modified chunks are
+     * written.</p>
+     * @param xyz1 block position of one source corner, inclusive
+     * @param xyz2 block position of the opposite source corner, inclusive
+     * @param destination block position the minimum source corner is copied to
+     * @return number of destination chunks modified
+     */
+    public int copy(IntPointXYZ xyz1, IntPointXYZ xyz2, IntPointXYZ destination) throws IOException {
+        ArgValidator.requireValue(destination, "destination");
+        final Box source = new Box(xyz1, xyz2);
+        final int dx = destination.x - source.minX;
+        final int dy = destination.y - source.minY;
+        final int dz = destination.z - source.minZ;
+        final Box target = source.translate(dx, dy, dz);
+        if (isReadonly) throw new IOException("opened in readonly mode");
+
+        // 1. snapshot the source sections
+        final Map<IntPointXYZ, SectionSnapshot> snapshots = new ConcurrentHashMap<>();
+        editChunks(source, false, chunk -> {
+            requireBlockPalettes(chunk);
+            final Box clip = source.clipTo(chunk);
+            if (clip == null) return false;
+            for (int sectionY = clip.minY >> 4; sectionY <= clip.maxY >> 4; sectionY++) {
+                TerrainSection section = chunk.getSection(sectionY);
+                if (section == null || section.getBlockStates() == null) continue;
+                snapshots.put(new IntPointXYZ(chunk.getChunkX(), sectionY, chunk.getChunkZ()),
+                        new SectionSnapshot(section.getBlockStates(), chunk.getDataVersion()));
+            }
+            return false;
+        });
+        if (snapshots.isEmpty()) return 0;
+
+        // 2. write the destination - section aligned copies take whole sections, otherwise source palette ids are
+        // mapped to session ids once per section pair
+        final boolean sectionAligned = ((dx | dy | dz) & 0xF) == 0;
+        return editChunks(target, true, chunk -> {
+            requireBlockPalettes(chunk);
+            final Box clip = target.clipTo(chunk);
+            if (clip == null) return false;
+            boolean modified = false;
+            BlockEditSession session = null;
+            final Map<SectionSnapshot, int[]> idMaps = new IdentityHashMap<>();
+            IntPointXYZ lastKey = null;
+            SectionSnapshot snapshot = null;
+            int[] idMap = null;
+            for (int sectionY = clip.minY >> 4; sectionY <= clip.maxY >> 4; sectionY++) {
+                final int fromY = Math.max(clip.minY, sectionY << 4);
+                final int toY = Math.min(clip.maxY, sectionY << 4 | 0xF);
+                if (sectionAligned && clip.coversChunkXZ() && fromY == sectionY << 4 && toY == (sectionY << 4 | 0xF)) {
+                    TerrainSection section = chunk.getSection(sectionY);
+                    if (section == null || section.getBlockStates() == null) continue;
+                    SectionSnapshot whole = snapshots.get(new IntPointXYZ(
+                            chunk.getChunkX() - (dx >> 4), sectionY - (dy >> 4), chunk.getChunkZ() - (dz >> 4)));
+                    if (whole == null) continue;
+                    // packed data layouts differ between some versions, let the session translate those
+                    if (whole.dataVersion == chunk.getDataVersion()) {
+                        section.setBlockStates(whole.blockStates);
+                        modified = true;
+                        continue;
+                    }
+                }
+                for (int y = fromY; y <= toY; y++) {
+                    final int sy = y - dy;
+                    for (int z = clip.minZ; z <= clip.maxZ; z++) {
+                        final int sz = z - dz;
+                        for (int x = clip.minX; x <= clip.maxX; x++) {
+                            final int sx = x - dx;
+                            if (lastKey == null || lastKey.x != sx >> 4 || lastKey.y != sy >> 4 || lastKey.z != sz >> 4) {
+                                lastKey = new IntPointXYZ(sx >> 4, sy >> 4, sz >> 4);
+                                snapshot = snapshots.get(lastKey);
+                                idMap = snapshot == null ? null : idMaps.computeIfAbsent(snapshot, s -> {
+                                    int[] m = new int[s.palette.length];
+                                    Arrays.fill(m, -1);
+                                    return m;
+                                });
+                            }
+                            if (snapshot == null) continue;
+                            if (session == null) session = chunk.editSession();
+                            final int paletteIndex = snapshot.data.get((sy & 0xF) << 8 | (sz & 0xF) << 4 | (sx & 0xF));
+                            int id = idMap[paletteIndex];
+                            if (id < 0) {
+                                id = idMap[paletteIndex] = session.stateId(snapshot.palette[paletteIndex]);
+                            }
+                            session.setStateId(x, y, z, id);
+                        }
+                    }
+                }
+            }
+            return (session != null && session.getEditCount() > 0 && session.commit() > 0) || modified;
+        });
+    }
+
+    /**
+     * Sets the biome of every biome cell which holds at least one block within the given inclusive bounds, the
+     * same cells {@link #setBiomeAt(int, int, int, String)} would set for each block. Sections entirely within
+     * the bounds become a single entry biome palette. Chunks of versions whose legacy biome id table does not know
+     * the biome are skipped. See {@link #fill(IntPointXYZ, IntPointXYZ, CompoundTag)} for how work is split and how
+     * modified chunks are written.
+     * @return number of chunks modified
+     */
+    @SuppressWarnings("deprecation")
+    public int setBiome(IntPointXYZ xyz1, IntPointXYZ xyz2, String biome) throws IOException {
+        ArgValidator.requireNotEmpty(biome, "biome");
+        final Box box = new Box(xyz1, xyz2);
+        final StringTag biomeTag = new StringTag(biome);
+        return editChunks(box, true, chunk -> {
+            final int dataVersion = chunk.getDataVersion();
+            if (!LegacyBiomes.versionHasLegacyBiomes(dataVersion)) {
+                final Box clip = box.clipTo(chunk);
+                if (clip == null) return false;
+                boolean modified = false;
+                for (int sectionY = clip.minY >> 4; sectionY <= clip.maxY >> 4; sectionY++) {
+                    TerrainSection section = chunk.getSection(sectionY);
+                    if (section == null || section.getBiomes() == null) continue;
+                    final int fromY = Math.max(clip.minY, sectionY << 4);
+                    final int toY = Math.min(clip.maxY, sectionY << 4 | 0xF);
+                    if (clip.coversChunkXZ() && fromY == sectionY << 4 && toY == (sectionY << 4 | 0xF)) {
+                        section.getBiomes().fill(biomeTag);
+                    } else {
+                        section.getBiomes().set((clip.minX & 0xF) >> 2, (fromY & 0xF) >> 2, (clip.minZ & 0xF) >> 2,
+                                biomeTag,
+                                (clip.maxX & 0xF) >> 2, (toY & 0xF) >> 2, (clip.maxZ & 0xF) >> 2);
+                    }
+                    modified = true;
+                }
+                return modified;
+            }
+            final int id = LegacyBiomes.id(dataVersion, biome);
+            if (id < 0) return false;
+            // legacy biomes always span y 0 to 255
+            final Box clip = box.clipTo(chunk.getChunkX(), chunk.getChunkZ(), 0, 255);
+            if (clip == null) return false;
+            if (dataVersion < JAVA_1_15_19W36A.id()) {
+                for (int z = clip.minZ; z <= clip.maxZ; z++) {
+                    for (int x = clip.minX; x <= clip.maxX; x++) {
+                        chunk.setLegacyBiomeAt(x, z, id);
+                    }
+                }
+            } else {
+                for (int y = clip.minY & ~3; y <= clip.maxY; y += 4) {
+                    for (int z = clip.minZ & ~3; z <= clip.maxZ; z += 4) {
+                        for (int x = clip.minX & ~3; x <= clip.maxX; x += 4) {
+                            chunk.setLegacyBiomeAt(x, y, z, id);
+                        }
+                    }
+                }
+            }
+            return true;
+        });
+    }
+
+    static void requireBlockPalettes(TerrainChunk chunk) {
+        if (chunk.getDataVersion() < JAVA_1_13_17W47A.id())
+            throw new VersionLacksSupportException(chunk.getDataVersion(), JAVA_1_13_17W47A, null, "block palettes");
+    }
+
+    interface ChunkEdit {
+        /** @return true if the chunk was modified */
+        boolean apply(TerrainChunk chunk) throws IOException;
+    }
+
+    /** Edit of a terrain chunk together with its entities chunk. */
+    interface ChunkAndEntitiesEdit {
+        /**
+         * @param entities the chunk's entities chunk, null if it does not exist - always null before 1.17 where
+         *                 entities are held by the terrain chunk.
+         * @return a logical or of {@link #TERRAIN_MODIFIED} and {@link #ENTITIES_MODIFIED}, 0 if nothing was modified
+         */
+        int apply(TerrainChunk chunk, EntitiesChunk entities) throws IOException;
+    }
+
+    /** @see #editChunks(Box, boolean, boolean, ChunkAndEntitiesEdit) */
+    int editChunks(Box box, boolean write, ChunkEdit edit) throws IOException {
+        return editChunks(box, write, false, (chunk, entities) -> edit.apply(chunk) ? TERRAIN_MODIFIED : 0);
+    }
+
+    /**
+     * Visits every existing chunk intersecting the box, one task per region. Regions are opened on the calling
+     * thread (the region cache is not thread safe), each region handle is then used by exactly one task. Regions
+     * are processed in batches no larger than the region cache capacity and are pinned in the cache while their
+     * batch runs, so no handle is evicted, and closed, while its task may still use it.
+     * @param write if true modified chunks are written back to their region file.
+     * @param withEntities if true the entities chunk of each chunk (1.17+) is passed to the edit as well.
+     * @return number of chunk positions at which anything was modified
+     */
+    int editChunks(Box box, boolean write, boolean withEntities, ChunkAndEntitiesEdit edit) throws IOException {
+        if (write && isReadonly) throw new IOException("opened in readonly mode");
+        Map<IntPointXZ, List<IntPointXZ>> chunksByRegion = new LinkedHashMap<>();
+        for (int chunkZ = box.minZ >> 4; chunkZ <= box.maxZ >> 4; chunkZ++) {
+            for (int chunkX = box.minX >> 4; chunkX <= box.maxX >> 4; chunkX++) {
+                IntPointXZ chunkXZ = new IntPointXZ(chunkX, chunkZ);
+                chunksByRegion.computeIfAbsent(chunkXZ.transformChunkToRegion(), k -> new ArrayList<>()).add(chunkXZ);
+            }
+        }
+        List<Map.Entry<IntPointXZ, List<IntPointXZ>>> regions = new ArrayList<>(chunksByRegion.entrySet());
+        final int batchSize = withEntities ? Math.max(1, regionCacheCapacity / 2) : regionCacheCapacity;
+        int modified = 0;
+        for (int from = 0; from < regions.size(); from += batchSize) {
+            try {
+                modified += editRegions(regions.subList(from, Math.min(regions.size(), from + batchSize)), write, withEntities, edit);
+            } finally {
+                pinnedRegions.clear();
+            }
+            evictRegions();
+        }
+        return modified;
+    }
+
+    private int editRegions(List<Map.Entry<IntPointXZ, List<IntPointXZ>>> regions, boolean write, boolean withEntities,
+                            ChunkAndEntitiesEdit edit) throws IOException {
+        List<Callable<Integer>> tasks = new ArrayList<>(regions.size());
+        for (Map.Entry<IntPointXZ, List<IntPointXZ>> e : regions) {
+            final RandomAccessMcaFile<TerrainChunk> region = getRegion(e.getKey());
+            pinnedRegions.add(new RegionKey(REGION, e.getKey()));
+            if (region == null) continue;
+            final RandomAccessMcaFile<EntitiesChunk> entitiesRegion = withEntities ? getEntitiesRegion(e.getKey()) : null;
+            if (withEntities) pinnedRegions.add(new RegionKey(ENTITIES, e.getKey()));
+            final List<IntPointXZ> chunkXZs = e.getValue();
+            tasks.add(() -> {
+                int modified = 0;
+                for (IntPointXZ chunkXZ : chunkXZs) {
+                    TerrainChunk chunk = null;
+                    EntitiesChunk entities = null;
+                    boolean entitiesLoaded = false;
+                    synchronized (chunkCache) {
+                        CachedChunk cached = chunkCache.get(chunkXZ);
+                        if (cached != null) {
+                            if (cached.terrainLoaded && cached.terrain == null) continue;
+                            chunk = cached.terrain;
+                            entities = cached.entities;
+                            entitiesLoaded = cached.entitiesLoaded;
+                        }
+                    }
+                    if (chunk == null) {
+                        // not cached, read it without evicting the working set of the single block accessors
+                        if (!region.hasChunkAbsolute(chunkXZ)) continue;
+                        chunk = region.readAbsolute(chunkXZ);
+                        if (chunk == null) continue;
+                    }
+                    if (!entitiesLoaded && entitiesRegion != null && chunk.getDataVersion() >= JAVA_1_17_20W45A.id()
+                            && entitiesRegion.hasChunkAbsolute(chunkXZ)) {
+                        entities = entitiesRegion.readAbsolute(chunkXZ);
+                    }
+                    final int result = edit.apply(chunk, withEntities ? entities : null);
+                    if (write && (result & TERRAIN_MODIFIED) != 0) region.write(chunk);
+                    if (write && (result & ENTITIES_MODIFIED) != 0 && entities != null) entitiesRegion.write(entities);
+                    if (result != 0) modified++;
+                }
+                return modified;
+            });
+        }
+        int modified = 0;
+        for (int taskModified : runTasks(tasks)) {
+            modified += taskModified;
+        }
+        return modified;
+    }
+
+    /**
+     * Runs the tasks on a pool of {@link #threads()} worker threads, or on the calling thread if there is only one
+     * task or thread.
+     * @return task results, in task order
+     */
+    private <R> List<R> runTasks(List<Callable<R>> tasks) throws IOException {
+        List<R> results = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) return results;
+        if (threads == 1 || tasks.size() == 1) {
+            for (Callable<R> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (IOException | RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new IOException(ex);
+                }
+            }
+            return results;
+        }
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), r -> {
+            Thread t = new Thread(r, "mca-world-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (Future<R> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running chunk tasks", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Copy of a section's block states, must not be modified once taken. */
+    private static final class SectionSnapshot {
+        final PalettizedCuboid<CompoundTag> blockStates;
+        final int dataVersion;
+        final CompoundTag[] palette;
+        final LongArrayTagPackedIntegers data;
+
+        SectionSnapshot(PalettizedCuboid<CompoundTag> blockStates, int dataVersion) {
+            this.blockStates = blockStates.clone();
+            this.dataVersion = dataVersion;
+            this.palette = this.blockStates.palette.toArray(new CompoundTag[0]);
+            this.data = this.blockStates.packedData;
+        }
+    }
+
+    /** Inclusive block aligned box. */
+    static final class Box {
+        final int minX, minY, minZ, maxX, maxY, maxZ;
+
+        Box(IntPointXYZ xyz1, IntPointXYZ xyz2) {
+            this(ArgValidator.requireValue(xyz1, "xyz1").x, xyz1.y, xyz1.z,
+                    ArgValidator.requireValue(xyz2, "xyz2").x, xyz2.y, xyz2.z);
+        }
+
+        Box(int x1, int y1, int z1, int x2, int y2, int z2) {
+            minX = Math.min(x1, x2);
+            minY = Math.min(y1, y2);
+            minZ = Math.min(z1, z2);
+            maxX = Math.max(x1, x2);
+            maxY = Math.max(y1, y2);
+            maxZ = Math.max(z1, z2);
+        }
+
+        Box translate(int dx, int dy, int dz) {
+            return new Box(minX + dx, minY + dy, minZ + dz, maxX + dx, maxY + dy, maxZ + dz);
+        }
+
+        Box clipTo(TerrainChunk chunk) {
+            return clipTo(chunk.getChunkX(), chunk.getChunkZ(), chunk.getWorldMinBlockY(), chunk.getWorldMaxBlockY());
+        }
+
+        /** @return the part of this box within the chunk and y range, or null if there is none. */
+        Box clipTo(int chunkX, int chunkZ, int worldMinY, int worldMaxY) {
+            final int x1 = Math.max(minX, chunkX << 4);
+            final int x2 = Math.min(maxX, chunkX << 4 | 0xF);
+            final int z1 = Math.max(minZ, chunkZ << 4);
+            final int z2 = Math.min(maxZ, chunkZ << 4 | 0xF);
+            final int y1 = Math.max(minY, worldMinY);
+            final int y2 = Math.min(maxY, worldMaxY);
+            if (x1 > x2 || y1 > y2 || z1 > z2) return null;
+            return new Box(x1, y1, z1, x2, y2, z2);
+        }
+
+        boolean contains(int x, int y, int z) {
+            return minX <= x && x <= maxX && minY <= y && y <= maxY && minZ <= z && z <= maxZ;
+        }
+
+        /** Only meaningful for boxes clipped to a chunk. */
+        boolean coversChunkXZ() {
+            return (minX & 0xF) == 0 && (maxX & 0xF) == 0xF && (minZ & 0xF) == 0 && (maxZ & 0xF) == 0xF;
+        }
+    }
+    // </editor-fold>
 }
@@ -0,0 +1,470 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.io.StreamingTextNbtWriter;
+import io.github.ensgijs.nbt.io.TextNbtHelpers;
+import io.github.ensgijs.nbt.mca.ChunkBase;
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
+import io.github.ensgijs.nbt.mca.io.McaFileChunkIterator;
+import io.github.ensgijs.nbt.mca.io.McaFileHelpers;
+import io.github.ensgijs.nbt.mca.io.McaHeaderScanner;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Dumps every chunk of a whole world as text nbt (.snbt) files, one file per chunk, using a pool of worker
+ * threads. The output layout is the same as {@link McaDumper#dumpChunksAsTextNbt(File, Path)} produces:
+ * {@code <output root>/<mca type>/r.X.Z/<chunk index>.X.Z.snbt}.
+ * <p>Raw chunk bytes are read from each mca file by random access (briefly holding a per-file lock), then
+ * decompression, parsing and snbt writing run on the worker threads, so many chunks of the same mca file are
+ * dumped concurrently. The number of queued chunks is bounded so memory use does not grow with world size.</p>
+ * <p>Each output directory also gets a {@value #TIMESTAMPS_FILE_NAME} file recording the mca header timestamp of
+ * every chunk as of the last completed dump. When resuming (the default), chunks whose snbt file exists, is at
+ * least as new as the chunk's last update timestamp, and whose recorded timestamp equals the current one are
+ * skipped - so regions restored from a backup, whose timestamps move backwards, are rewritten. snbt files of
+ * chunks which no longer exist, and the output directories of mca files which no longer exist, are deleted.
+ * Rerunning a dump against the same output root therefore only rewrites what changed, which keeps nightly dumps
+ * cheap.</p>
+ * <pre>{@code
+ * McaWorldDumper.Summary summary = new McaWorldDumper(worldRoot, outputRoot)
+ *         .setThreads(8)
+ *         .setProgressListener((result, done, total) -> System.out.println(done + "/" + total + " " + result))
+ *         .dump();
+ * }</pre>
+ */
+public class McaWorldDumper {
+    private static final Pattern SNBT_FILE_NAME_PATTERN = Pattern.compile("^(\\d{4})\\.-?\\d+\\.-?\\d+\\.snbt$");
+    private static final Pattern OUTPUT_DIR_NAME_PATTERN = Pattern.compile("^r\\.-?\\d+\\.-?\\d+$");
+    /** Name of the file, in each output directory, which records the chunk timestamps the snbt files were made from. */
+    static final String TIMESTAMPS_FILE_NAME = "chunk-timestamps.txt";
+    /** Suffix of the file a chunk is written to before being moved over its snbt file. */
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+
+    private final Path worldRoot;
+    private final Path outputRoot;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String[] mcaTypes = new String[0];
+    private boolean resume = true;
+    private boolean prettyPrint = true;
+    private boolean sortCompoundTagEntries = true;
+    private ProgressListener progressListener;
+
+    /** Outcome of dumping a single mca file. */
+    public record FileResult(Path mcaFile, Path outputDir, int chunksWritten, int chunksSkipped, int staleFilesDeleted) {}
+
+    /** Totals for a whole {@link #dump()}. */
+    public record Summary(int files, int chunksWritten, int chunksSkipped, int staleFilesDeleted) {}
+
+    /** Receives progress notifications, see {@link #setProgressListener(ProgressListener)}. */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * @param result result for the mca file which just finished.
+         * @param filesDone number of files finished so far, including this one.
+         * @param fileCount total number of files being dumped.
+         */
+        void onFileDone(FileResult result, int filesDone, int fileCount);
+    }
+
+    /**
+     * @param worldRoot world root directory - the directory which contains "region", "poi", etc.
+     * @param outputRoot root directory to dump into.
+     */
+    public McaWorldDumper(Path worldRoot, Path outputRoot) {
+        this.worldRoot = ArgValidator.requireValue(worldRoot, "worldRoot");
+        this.outputRoot = ArgValidator.requireValue(outputRoot, "outputRoot");
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Number of worker threads to use, defaults to the number of available processors. */
+    public McaWorldDumper setThreads(int threads) {
+        ArgValidator.check(threads > 0, "threads must be GT 0");
+        this.threads = threads;
+        return this;
+    }
+
+    public String[] getMcaTypes() {
+        return mcaTypes.clone();
+    }
+
+    /**
+     * mca types (sub directories) to dump. If none are given {@link McaHeaderScanner#DEFAULT_MCA_TYPES} are dumped.
+     * Types must have a creator registered in {@link McaFileChunkIterator#DEFAULT_CHUNK_CREATORS}.
+     */
+    public McaWorldDumper setMcaTypes(String... mcaTypes) {
+        for (String mcaType : mcaTypes) {
+            ArgValidator.check(McaFileChunkIterator.DEFAULT_CHUNK_CREATORS.containsKey(mcaType),
+                    "No chunk creator registered for mca type " + mcaType);
+        }
+        this.mcaTypes = mcaTypes.clone();
+        return this;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * When true (the default) up to date snbt files are kept and stale ones are deleted, when false every chunk
+     * is rewritten.
+     */
+    public McaWorldDumper setResume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+
+    public boolean isPrettyPrint() {
+        return prettyPrint;
+    }
+
+    /** Defaults to true. */
+    public McaWorldDumper setPrettyPrint(boolean prettyPrint) {
+        this.prettyPrint = prettyPrint;
+        return this;
+    }
+
+    public boolean isSortCompoundTagEntries() {
+        return sortCompoundTagEntries;
+    }
+
+    /**
+     * Defaults to true. Unsorted output is somewhat faster to write and is still stable for unchanged chunks.
+     * @see StreamingTextNbtWriter
+     */
+    public McaWorldDumper setSortCompoundTagEntries(boolean sortCompoundTagEntries) {
+        this.sortCompoundTagEntries = sortCompoundTagEntries;
+        return this;
+    }
+
+    /**
+     * Sets the listener to call as each mca file finishes. Calls are made in mca file path order, regardless of
+     * the order in which files actually finish, one at a time, from worker threads or the thread calling
+     * {@link #dump()}.
+     */
+    public McaWorldDumper setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Dumps the world, blocking until done.
+     * @return totals for all files.
+     * @throws IOException if any chunk fails to read or write. The dump is stopped at the first error, snbt files
+     * which were already written are kept.
+     */
+    public Summary dump() throws IOException {
+        List<Path> files = McaHeaderScanner.listMcaFiles(worldRoot, mcaTypes);
+        Reporter reporter = new Reporter(files.size());
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        // bounds the queued chunk tasks, and with them the number of open mca files
+        Semaphore permits = new Semaphore(threads * 4);
+        ThreadLocal<StreamingTextNbtWriter> snbtWriters =
+                ThreadLocal.withInitial(() -> new StreamingTextNbtWriter(prettyPrint, sortCompoundTagEntries));
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "mca-dump-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (int i = 0; i < files.size() && error.get() == null; i++) {
+                FileJob job = new FileJob(i, files.get(i), reporter, error);
+                job.plan();
+                for (int chunkIndex : job.chunkIndexes) {
+                    if (error.get() != null) break;
+                    permits.acquire();
+                    job.pending.incrementAndGet();
+                    pool.execute(() -> {
+                        try {
+                            if (error.get() == null) job.dumpChunk(chunkIndex, snbtWriters.get());
+                        } catch (Throwable ex) {
+                            error.compareAndSet(null, ex);
+                        } finally {
+                            permits.release();
+                            job.finishOne();
+                        }
+                    });
+                }
+                // releases the planning guard count, the file completes once its last chunk is done
+                job.finishOne();
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting
+            }
+            if (resume && error.get() == null) {
+                reporter.staleFilesDeleted(deleteOrphanedOutputDirs(files));
+            }
+        } catch (InterruptedException ex) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while dumping " + worldRoot);
+        } finally {
+            pool.shutdownNow();
+        }
+        Throwable ex = error.get();
+        if (ex != null) {
+            if (ex instanceof IOException) throw (IOException) ex;
+            if (ex instanceof RuntimeException) throw (RuntimeException) ex;
+            if (ex instanceof Error) throw (Error) ex;
+            throw new IOException(ex);
+        }
+        return reporter.summary();
+    }
+
+    /**
+     * Deletes the output of mca files which no longer exist - only snbt files and files this dumper writes are
+     * removed, the directory itself only if that leaves it empty.
+     * @return number of snbt files deleted.
+     */
+    private int deleteOrphanedOutputDirs(List<Path> files) throws IOException {
+        Set<Path> mcaFiles = new HashSet<>(files);
+        int deleted = 0;
+        for (String mcaType : mcaTypes.length > 0 ? Arrays.asList(mcaTypes) : McaHeaderScanner.DEFAULT_MCA_TYPES) {
+            File[] outputDirs = outputRoot.resolve(mcaType).toFile().listFiles(
+                    f -> f.isDirectory() && OUTPUT_DIR_NAME_PATTERN.matcher(f.getName()).matches());
+            if (outputDirs == null) continue;
+            for (File outputDir : outputDirs) {
+                if (mcaFiles.contains(worldRoot.resolve(mcaType).resolve(outputDir.getName() + ".mca"))) continue;
+                File[] listing = outputDir.listFiles();
+                if (listing == null) continue;
+                for (File f : listing) {
+                    String name = f.getName();
+                    if (SNBT_FILE_NAME_PATTERN.matcher(name).matches()) {
+                        if (f.delete()) deleted++;
+                    } else if (name.equals(TIMESTAMPS_FILE_NAME) || name.endsWith(".snbt" + TMP_FILE_SUFFIX)
+                            || name.equals(TIMESTAMPS_FILE_NAME + TMP_FILE_SUFFIX)) {
+                        Files.deleteIfExists(f.toPath());
+                    }
+                }
+                String[] remaining = outputDir.list();
+                if (remaining != null && remaining.length == 0) {
+                    Files.deleteIfExists(outputDir.toPath());
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private final class FileJob {
+        final int fileIndex;
+        final Path mcaFile;
+        final Reporter reporter;
+        final AtomicReference<Throwable> error;
+        /** starts at 1, the planning guard, so the file can't complete while chunks are still being submitted */
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicInteger written = new AtomicInteger();
+        final List<Integer> chunkIndexes = new ArrayList<>();
+        File outputDir;
+        Supplier<? extends ChunkBase> chunkCreator;
+        RandomAccessMcaFile<ChunkBase> ramf;
+        int skipped;
+        int deleted;
+
+        FileJob(int fileIndex, Path mcaFile, Reporter reporter, AtomicReference<Throwable> error) {
+            this.fileIndex = fileIndex;
+            this.mcaFile = mcaFile;
+            this.reporter = reporter;
+            this.error = error;
+        }
+
+        /** Decides which chunks need to be written and removes stale output. Runs on the calling thread. */
+        void plan() throws IOException {
+            String mcaType = mcaFile.getParent().getFileName().toString();
+            IntPointXZ regionXZ = McaFileHelpers.regionXZFromFileName(mcaFile.getFileName().toString());
+            chunkCreator = McaFileChunkIterator.DEFAULT_CHUNK_CREATORS.get(mcaType);
+            ArgValidator.check(chunkCreator != null, "No chunk creator registered for mca type " + mcaType);
+            outputDir = outputRoot.resolve(mcaType).resolve(regionXZ.toString("r.%d.%d")).toFile();
+            ramf = new RandomAccessMcaFile<>(ChunkBase.class, mcaFile.toFile(), "r");
+            try {
+                deleteLeftoverTmpFiles();
+                Map<Integer, File> existing = resume ? listExistingSnbtFiles() : Collections.emptyMap();
+                Map<Integer, Integer> recorded = resume ? readTimestamps() : Collections.emptyMap();
+                for (int i = 0; i < 1024; i++) {
+                    if (!ramf.hasChunk(i)) continue;
+                    File existingFile = existing.remove(i);
+                    int timestamp = ramf.getChunkTimestamp(i);
+                    if (existingFile != null && existingFile.lastModified() >= timestamp * 1000L
+                            && Objects.equals(recorded.get(i), timestamp)
+                            && existingFile.getName().equals(snbtFileName(i, regionXZ))) {
+                        skipped++;
+                    } else {
+                        chunkIndexes.add(i);
+                    }
+                }
+                // whatever remains belongs to chunks which no longer exist
+                for (File stale : existing.values()) {
+                    if (stale.delete()) deleted++;
+                }
+                if (!chunkIndexes.isEmpty() && !outputDir.exists()) {
+                    ArgValidator.check(outputDir.mkdirs(), "Failed to create output directory " + outputDir);
+                }
+            } catch (IOException | RuntimeException ex) {
+                ramf.close();
+                throw ex;
+            }
+        }
+
+        /** Removes partially written chunks and timestamps of an interrupted run. */
+        private void deleteLeftoverTmpFiles() throws IOException {
+            File[] listing = outputDir.listFiles((dir, name) -> name.endsWith(".snbt" + TMP_FILE_SUFFIX)
+                    || name.equals(TIMESTAMPS_FILE_NAME + TMP_FILE_SUFFIX));
+            if (listing == null) return;
+            for (File f : listing) {
+                Files.deleteIfExists(f.toPath());
+            }
+        }
+
+        private Map<Integer, File> listExistingSnbtFiles() {
+            Map<Integer, File> existing = new HashMap<>();
+            File[] listing = outputDir.listFiles();
+            if (listing == null) return existing;
+            for (File f : listing) {
+                Matcher m = SNBT_FILE_NAME_PATTERN.matcher(f.getName());
+                if (m.matches() && f.isFile()) {
+                    int chunkIndex = Integer.parseInt(m.group(1));
+                    if (chunkIndex < 1024) existing.put(chunkIndex, f);
+                }
+            }
+            return existing;
+        }
+
+        /** @return chunk index to timestamp, as recorded by the last completed dump - empty if unreadable. */
+        private Map<Integer, Integer> readTimestamps() {
+            Map<Integer, Integer> recorded = new HashMap<>();
+            Path timestampsFile = outputDir.toPath().resolve(TIMESTAMPS_FILE_NAME);
+            if (!Files.isRegularFile(timestampsFile)) return recorded;
+            try {
+                for (String line : Files.readAllLines(timestampsFile)) {
+                    if (line.isBlank()) continue;
+                    String[] parts = line.trim().split(" ");
+                    recorded.put(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+                }
+            } catch (IOException | RuntimeException ex) {
+                // a damaged record only costs rewriting the region
+                recorded.clear();
+            }
+            return recorded;
+        }
+
+        /** Records the timestamps of all chunks, called once every snbt file of this mca file is up to date. */
+        private void writeTimestamps() throws IOException {
+            Path timestampsFile = outputDir.toPath().resolve(TIMESTAMPS_FILE_NAME);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 1024; i++) {
+                if (ramf.hasChunk(i)) {
+                    sb.append(String.format("%04d %d%n", i, ramf.getChunkTimestamp(i)));
+                }
+            }
+            if (sb.length() == 0) {
+                Files.deleteIfExists(timestampsFile);
+                return;
+            }
+            Path tmpFile = timestampsFile.resolveSibling(TIMESTAMPS_FILE_NAME + TMP_FILE_SUFFIX);
+            Files.writeString(tmpFile, sb);
+            Files.move(tmpFile, timestampsFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        private String snbtFileName(int chunkIndex, IntPointXZ regionXZ) {
+            IntPointXZ chunkXZ = McaFileBase.getRelativeChunkXZ(chunkIndex).add(regionXZ.transformRegionToChunk());
+            return String.format("%04d.%d.%d.snbt", chunkIndex, chunkXZ.getX(), chunkXZ.getZ());
+        }
+
+        void dumpChunk(int chunkIndex, StreamingTextNbtWriter snbtWriter) throws IOException {
+            byte[] raw;
+            int timestamp;
+            synchronized (ramf) {
+                raw = ramf.readRaw(chunkIndex);
+                timestamp = ramf.getChunkTimestamp(chunkIndex);
+            }
+            if (raw == null) return;
+            IntPointXZ chunkXZ = McaFileBase.getRelativeChunkXZ(chunkIndex).add(ramf.getRegionXZ().transformRegionToChunk());
+            ChunkBase chunk = chunkCreator.get();
+            chunk.deserialize(new ByteArrayInputStream(raw), LoadFlags.RAW, timestamp, chunkXZ.getX(), chunkXZ.getZ());
+            // write aside then move into place, an interrupted run must not leave a truncated file which looks
+            // up to date to the resume check
+            Path snbtFile = outputDir.toPath().resolve(snbtFileName(chunkIndex, ramf.getRegionXZ()));
+            Path tmpFile = snbtFile.resolveSibling(snbtFile.getFileName() + TMP_FILE_SUFFIX);
+            try {
+                TextNbtHelpers.writeTextNbtFile(tmpFile, chunk.getHandle(), snbtWriter);
+                Files.move(tmpFile, snbtFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException ex) {
+                Files.deleteIfExists(tmpFile);
+                throw ex;
+            }
+            written.incrementAndGet();
+        }
+
+        void finishOne() {
+            if (pending.decrementAndGet() != 0) return;
+            try {
+                synchronized (ramf) {
+                    try {
+                        if (error.get() == null && outputDir.isDirectory()) writeTimestamps();
+                    } finally {
+                        ramf.close();
+                    }
+                }
+            } catch (IOException ex) {
+                error.compareAndSet(null, ex);
+            }
+            if (error.get() == null) {
+                reporter.complete(fileIndex, new FileResult(mcaFile, outputDir.toPath(), written.get(), skipped, deleted));
+            }
+        }
+    }
+
+    /** Hands results to the progress listener in file order. */
+    private final class Reporter {
+        private final FileResult[] results;
+        private int nextToReport;
+        private int chunksWritten;
+        private int chunksSkipped;
+        private int staleFilesDeleted;
+
+        Reporter(int fileCount) {
+            results = new FileResult[fileCount];
+        }
+
+        synchronized void complete(int fileIndex, FileResult result) {
+            results[fileIndex] = result;
+            while (nextToReport < results.length && results[nextToReport] != null) {
+                FileResult r = results[nextToReport];
+                results[nextToReport] = null;
+                nextToReport++;
+                chunksWritten += r.chunksWritten;
+                chunksSkipped += r.chunksSkipped;
+                staleFilesDeleted += r.staleFilesDeleted;
+                if (progressListener != null) {
+                    progressListener.onFileDone(r, nextToReport, results.length);
+                }
+            }
+        }
+
+        synchronized void staleFilesDeleted(int count) {
+            staleFilesDeleted += count;
+        }
+
+        synchronized Summary summary() {
+            return new Summary(nextToReport, chunksWritten, chunksSkipped, staleFilesDeleted);
+        }
+    }
+}
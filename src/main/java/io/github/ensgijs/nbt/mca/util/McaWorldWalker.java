@@ -0,0 +1,317 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.McaFileHeader;
+import io.github.ensgijs.nbt.mca.io.McaFileHelpers;
+import io.github.ensgijs.nbt.mca.io.McaHeaderScanner;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Visits every chunk of a {@link McaWorld} in a cache friendly order - region by region, north to south then west
+ * to east, and within each region in chunk index order - with bounded memory use and a bounded number of open files.
+ * <p>While the chunks of one region are visited a background thread reads the next region's header and all of its
+ * raw (still compressed) chunk payloads in file order, so the visitor rarely waits on disk. Region files are only
+ * open while they are being read. Chunks are deserialized on the calling thread just before they are visited.</p>
+ * <p>Visitors may look at neighbouring chunks through {@link #getChunk(int, int)}. Visited chunks are not retained
+ * once their visit returns; chunks looked up as neighbours are kept in an LRU of at most
+ * {@link #getMaxCachedChunks()} chunks, and region files opened for neighbour lookups and write backs in an LRU of
+ * at most {@link #getMaxOpenFiles()} handles - evicted handles are closed.</p>
+ * <p>When the visitor returns true the visited chunk is written back to its region file, which requires the world
+ * to be opened in "rw" mode. Changes made to any other chunk, such as a neighbour, are not written. Chunks held in
+ * the world's own chunk cache are visited as is, so edits made through the world beforehand are seen. While a walk
+ * is running use {@link #getChunk(int, int)} rather than the world to access other chunks.</p>
+ * <pre>{@code
+ * McaWorldWalker.Summary summary = world.walker()
+ *         .setMaxOpenFiles(32)
+ *         .walk(chunk -> {
+ *             ...
+ *             return modified;
+ *         });
+ * }</pre>
+ */
+public class McaWorldWalker {
+    static final int DEFAULT_MAX_OPEN_FILES = 16;
+    /** One row of chunks across a region - enough to revisit the northern neighbours of the row being walked. */
+    static final int DEFAULT_MAX_CACHED_CHUNKS = 32;
+
+    private final McaWorld world;
+    private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+    private int maxCachedChunks = DEFAULT_MAX_CACHED_CHUNKS;
+    private boolean prefetch = true;
+
+    // walk state, only set while walking
+    private Map<IntPointXZ, TerrainChunk> chunkCache;
+    private TerrainChunk visiting;
+    private LinkedHashMap<IntPointXZ, RandomAccessMcaFile<TerrainChunk>> regionHandles;
+    private RegionPayloads current;
+
+    /** Totals for a whole {@link #walk(ChunkVisitor)}. */
+    public record Summary(int regions, int chunksVisited, int chunksWritten) {}
+
+    @FunctionalInterface
+    public interface ChunkVisitor {
+        /** @return true if the chunk was modified and should be written back to its region file. */
+        boolean visit(TerrainChunk chunk) throws IOException;
+    }
+
+    public McaWorldWalker(McaWorld world) {
+        this.world = ArgValidator.requireValue(world, "world");
+    }
+
+    public int getMaxOpenFiles() {
+        return maxOpenFiles;
+    }
+
+    /**
+     * Maximum number of region files the walker keeps open for neighbour lookups and write backs, defaults to
+     * {@value #DEFAULT_MAX_OPEN_FILES}. The background prefetch holds at most one more file open while reading it.
+     */
+    public McaWorldWalker setMaxOpenFiles(int maxOpenFiles) {
+        ArgValidator.check(maxOpenFiles > 0, "maxOpenFiles must be GT 0");
+        this.maxOpenFiles = maxOpenFiles;
+        return this;
+    }
+
+    public int getMaxCachedChunks() {
+        return maxCachedChunks;
+    }
+
+    /**
+     * Maximum number of deserialized neighbour chunks kept during a walk, defaults to
+     * {@value #DEFAULT_MAX_CACHED_CHUNKS}. Each cached chunk holds everything the world's load flags ask for - with
+     * {@link io.github.ensgijs.nbt.mca.io.LoadFlags#LOAD_ALL_DATA} that is commonly a few hundred KB of heap per chunk,
+     * so size this to the neighbourhood the visitor actually looks at.
+     */
+    public McaWorldWalker setMaxCachedChunks(int maxCachedChunks) {
+        ArgValidator.check(maxCachedChunks > 0, "maxCachedChunks must be GT 0");
+        this.maxCachedChunks = maxCachedChunks;
+        return this;
+    }
+
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
+    /** When true (the default) the next region is read on a background thread while the current one is visited. */
+    public McaWorldWalker setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+        return this;
+    }
+
+    /**
+     * Visits every existing chunk of the world's region files on the calling thread.
+     * @param visitor returns true to have the visited chunk written back to its region file.
+     * @throws IOException read or write error, or the visitor returned true but the world is read only.
+     */
+    public Summary walk(ChunkVisitor visitor) throws IOException {
+        ArgValidator.requireValue(visitor, "visitor");
+        if (chunkCache != null) throw new IllegalStateException("walk is already running");
+        final List<Path> regionFiles = McaHeaderScanner.listMcaFiles(Path.of(world.worldRootDir()), "region");
+        regionFiles.sort(Comparator
+                .comparingInt((Path p) -> McaFileHelpers.regionXZFromFileName(p.getFileName().toString()).getZ())
+                .thenComparingInt(p -> McaFileHelpers.regionXZFromFileName(p.getFileName().toString()).getX()));
+        // the files on disk must be current for the prefetch to see them
+        world.flushRegions();
+
+        final int chunkCacheCapacity = maxCachedChunks;
+        chunkCache = new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<IntPointXZ, TerrainChunk> eldest) {
+                return size() > chunkCacheCapacity;
+            }
+        };
+        regionHandles = new LinkedHashMap<>(16, 0.75F, true);
+        ExecutorService prefetcher = !prefetch ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "mca-world-walker-prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+        Future<RegionPayloads> next = null;
+        int chunksVisited = 0;
+        int chunksWritten = 0;
+        boolean completed = false;
+        try {
+            for (int i = 0; i < regionFiles.size(); i++) {
+                RegionPayloads payloads = next != null ? await(next) : RegionPayloads.read(regionFiles.get(i));
+                next = null;
+                if (prefetcher != null && i + 1 < regionFiles.size()) {
+                    final Path nextFile = regionFiles.get(i + 1);
+                    next = prefetcher.submit(() -> RegionPayloads.read(nextFile));
+                }
+                current = payloads;
+                final IntPointXZ chunkOffsetXZ = payloads.regionXZ.transformRegionToChunk();
+                for (int chunkIndex = 0; chunkIndex < 1024; chunkIndex++) {
+                    if (!payloads.header.hasChunk(chunkIndex)) continue;
+                    // the visited chunk only enters the cache if a later visit looks it up as a neighbour
+                    IntPointXZ chunkXZ = McaFileBase.getRelativeChunkXZ(chunkIndex).add(chunkOffsetXZ);
+                    TerrainChunk chunk = chunkCache.containsKey(chunkXZ) ? chunkCache.get(chunkXZ) : readChunk(chunkXZ);
+                    if (chunk == null) continue;
+                    chunksVisited++;
+                    visiting = chunk;
+                    try {
+                        if (visitor.visit(chunk)) {
+                            if (world.isReadonly()) throw new IOException("opened in readonly mode");
+                            region(payloads.regionXZ, true).write(chunk);
+                            payloads.written.set(chunkIndex);
+                            chunksWritten++;
+                        }
+                    } finally {
+                        visiting = null;
+                    }
+                }
+                current = null;
+            }
+            completed = true;
+        } finally {
+            if (next != null) next.cancel(true);
+            if (prefetcher != null) prefetcher.shutdownNow();
+            IOException closeException = null;
+            for (RandomAccessMcaFile<TerrainChunk> ramf : regionHandles.values()) {
+                try {
+                    if (ramf != null) ramf.close();
+                } catch (IOException ex) {
+                    if (closeException == null) closeException = ex;
+                }
+            }
+            chunkCache = null;
+            visiting = null;
+            regionHandles = null;
+            current = null;
+            if (completed && closeException != null) throw closeException;
+        }
+        return new Summary(regionFiles.size(), chunksVisited, chunksWritten);
+    }
+
+    /** @see #getChunk(IntPointXZ) */
+    public TerrainChunk getChunk(int chunkX, int chunkZ) throws IOException {
+        return getChunk(new IntPointXZ(chunkX, chunkZ));
+    }
+
+    /**
+     * Gets any chunk of the world while a walk is running, typically a neighbour of the visited chunk.
+     * @return the chunk, or null if it does not exist.
+     * @throws IllegalStateException if no walk is running.
+     */
+    public TerrainChunk getChunk(IntPointXZ chunkXZ) throws IOException {
+        if (chunkCache == null) throw new IllegalStateException("only available while walking");
+        if (visiting != null && visiting.getChunkXZ().equals(chunkXZ))
+            return visiting;
+        if (chunkCache.containsKey(chunkXZ))  // strategy allows caching of nulls
+            return chunkCache.get(chunkXZ);
+        TerrainChunk chunk = readChunk(chunkXZ);
+        chunkCache.put(chunkXZ, chunk);
+        return chunk;
+    }
+
+    /** Reads a chunk without caching it, preferring the world's cache then the prefetched payloads. */
+    private TerrainChunk readChunk(IntPointXZ chunkXZ) throws IOException {
+        TerrainChunk chunk = world.cachedChunk(chunkXZ);
+        if (chunk == null) {
+            IntPointXZ regionXZ = chunkXZ.transformChunkToRegion();
+            int chunkIndex = McaFileBase.getChunkIndex(chunkXZ.getX(), chunkXZ.getZ());
+            if (current != null && current.regionXZ.equals(regionXZ) && !current.written.get(chunkIndex)) {
+                chunk = current.deserialize(chunkIndex, world.loadFlags());
+            } else {
+                RandomAccessMcaFile<TerrainChunk> region = region(regionXZ, false);
+                chunk = region != null ? region.readAbsolute(chunkXZ) : null;
+            }
+        }
+        return chunk;
+    }
+
+    /** @return a handle of the region, preferring one the world already has open, or null if it does not exist. */
+    private RandomAccessMcaFile<TerrainChunk> region(IntPointXZ regionXZ, boolean writable) throws IOException {
+        RandomAccessMcaFile<TerrainChunk> region = world.cachedRegion(regionXZ);
+        if (region != null) return region;
+        if (regionHandles.containsKey(regionXZ)) {
+            region = regionHandles.get(regionXZ);
+            if (region == null || !writable || !region.isReadOnly()) return region;
+            // reopen for writing - only regions written to are opened writable so other files are left untouched
+            regionHandles.remove(regionXZ);
+            region.close();
+        }
+        File mcaFile = Path.of(world.worldRootDir(), "region", McaFileHelpers.createNameFromRegionLocation(regionXZ)).toFile();
+        region = null;
+        if (mcaFile.length() > 0) {
+            region = new RandomAccessMcaFile<>(TerrainChunk.class, mcaFile, writable ? world.mode() : "r");
+            region.setLoadFlags(world.loadFlags());
+        }
+        regionHandles.put(regionXZ, region);
+        Iterator<RandomAccessMcaFile<TerrainChunk>> iter = regionHandles.values().iterator();
+        while (regionHandles.size() > maxOpenFiles) {
+            RandomAccessMcaFile<TerrainChunk> eldest = iter.next();
+            iter.remove();
+            if (eldest != null) eldest.close();
+        }
+        return region;
+    }
+
+    private static RegionPayloads await(Future<RegionPayloads> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for region prefetch");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /** Header and raw chunk payloads of one region file. */
+    private static final class RegionPayloads {
+        final IntPointXZ regionXZ;
+        final McaFileHeader header;
+        final byte[][] raw = new byte[1024][];
+        /** chunks written during the walk, their payloads are stale */
+        final BitSet written = new BitSet(1024);
+
+        private RegionPayloads(McaFileHeader header) {
+            this.regionXZ = header.getRegionXZ();
+            this.header = header;
+        }
+
+        /** Reads the header then every chunk payload, in file order. */
+        static RegionPayloads read(Path mcaFile) throws IOException {
+            RegionPayloads payloads = new RegionPayloads(McaFileHeader.read(mcaFile));
+            if (payloads.header.isEmpty()) return payloads;
+            int[] order = payloads.header.getChunkPresence().stream()
+                    .boxed()
+                    .sorted(Comparator.comparingInt(i -> payloads.header.getChunkSectors(i) >>> 8))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            try (RandomAccessMcaFile<TerrainChunk> ramf = new RandomAccessMcaFile<>(TerrainChunk.class, mcaFile, "r")) {
+                for (int chunkIndex : order) {
+                    payloads.raw[chunkIndex] = ramf.readRaw(chunkIndex);
+                }
+            }
+            return payloads;
+        }
+
+        TerrainChunk deserialize(int chunkIndex, long loadFlags) throws IOException {
+            byte[] data = raw[chunkIndex];
+            if (data == null) return null;
+            IntPointXZ chunkXZ = McaFileBase.getRelativeChunkXZ(chunkIndex).add(regionXZ.transformRegionToChunk());
+            TerrainChunk chunk = new TerrainChunk();
+            chunk.deserialize(new ByteArrayInputStream(data), loadFlags, header.getChunkTimestamp(chunkIndex),
+                    chunkXZ.getX(), chunkXZ.getZ());
+            return chunk;
+        }
+    }
+}
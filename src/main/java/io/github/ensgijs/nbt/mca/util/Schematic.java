@@ -0,0 +1,213 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An in memory snapshot of a block volume - block states, block entities and entities - which can be pasted into
+ * any {@link McaWorld}.
+ * <p>Block states are kept as 16x16x16 {@link PalettizedCuboid} tiles aligned to the section grid of the world the
+ * volume was extracted from. Extraction copies whole sections as is where the box covers them, and pasting to a
+ * destination with the same alignment (see {@link #isSectionAligned(IntPointXYZ)}) replaces whole destination
+ * sections with their tile without visiting blocks. Everything else goes through a {@link BlockEditSession} per
+ * destination chunk. Both extraction and pasting run one task per region, see {@link McaWorld#setThreads(int)}.</p>
+ * <p>Blocks of chunks or sections which did not exist in the source are stored as {@link #VOID_BLOCK_NAME} and
+ * are never pasted, just like structure voids in vanilla structure files.</p>
+ * <p>Entities are captured from and pasted into the terrain chunk before
+ * {@link io.github.ensgijs.nbt.mca.DataVersion#JAVA_1_17_20W45A} and the entities mca chunk from then on. Entities
+ * are only pasted into entities chunks which already exist. Pasting does not update heightmaps or light, see
+ * {@link HeightmapCalculator} and {@link LightCalculator}.</p>
+ * <p>For volumes too large to hold in memory use {@link SchematicFile}, which streams columns to and from disk.</p>
+ * <pre>{@code
+ * Schematic castle = Schematic.extract(sourceWorld, XYZ(100, 60, 100), XYZ(163, 120, 163));
+ * castle.paste(targetWorld, XYZ(-500, 70, 2000));
+ * }</pre>
+ */
+public class Schematic {
+    /** Block name of volume cells which are left untouched when pasting. */
+    public static final String VOID_BLOCK_NAME = "minecraft:structure_void";
+
+    final SchematicLayout layout;
+    final SchematicColumn[] columns;
+
+    Schematic(SchematicLayout layout, SchematicColumn[] columns) {
+        this.layout = layout;
+        this.columns = columns;
+    }
+
+    /**
+     * Snapshots the volume within the given inclusive bounds.
+     * @param xyz1 block position of one corner, inclusive
+     * @param xyz2 block position of the opposite corner, inclusive
+     */
+    public static Schematic extract(McaWorld world, IntPointXYZ xyz1, IntPointXYZ xyz2) throws IOException {
+        ArgValidator.requireValue(world, "world");
+        final McaWorld.Box box = new McaWorld.Box(xyz1, xyz2);
+        final SchematicLayout layout = SchematicLayout.of(box);
+        final SchematicColumn[] columns = new SchematicColumn[layout.columnCount()];
+        // each column is written by exactly one task
+        world.editChunks(box, false, true, (chunk, entities) -> {
+            columns[columnIndexOf(box, layout, chunk)] = SchematicColumn.extract(layout, box, chunk, entities);
+            return 0;
+        });
+        return new Schematic(layout, columns);
+    }
+
+    static int columnIndexOf(McaWorld.Box box, SchematicLayout layout, TerrainChunk chunk) {
+        return (chunk.getChunkZ() - (box.minZ >> 4)) * layout.columnsX + (chunk.getChunkX() - (box.minX >> 4));
+    }
+
+    /** Reads a schematic written by {@link #save(Path)} or {@link SchematicFile} fully into memory. */
+    public static Schematic load(Path file) throws IOException {
+        try (SchematicFile schematicFile = SchematicFile.open(file)) {
+            return schematicFile.toSchematic();
+        }
+    }
+
+    /** Writes this schematic in the {@link SchematicFile} format. */
+    public void save(Path file) throws IOException {
+        SchematicFile.write(this, file);
+    }
+
+    public int getSizeX() {
+        return layout.sizeX;
+    }
+
+    public int getSizeY() {
+        return layout.sizeY;
+    }
+
+    public int getSizeZ() {
+        return layout.sizeZ;
+    }
+
+    /**
+     * @return true if pasting at the given destination puts the tiles of this schematic exactly on the sections
+     * of the destination, allowing whole sections to be replaced at once.
+     */
+    public boolean isSectionAligned(IntPointXYZ destination) {
+        return layout.isSectionAligned(destination);
+    }
+
+    /**
+     * @param x volume local x, 0 to size x - 1
+     * @param y volume local y, 0 to size y - 1
+     * @param z volume local z, 0 to size z - 1
+     * @return the block state at the volume local position, by reference, or null if out of bounds.
+     * {@link #VOID_BLOCK_NAME} where the source had no block data.
+     */
+    public CompoundTag getBlockAtByRef(int x, int y, int z) {
+        if (!layout.contains(x, y, z)) return null;
+        SchematicColumn column = columns[layout.columnIndexOf(x, z)];
+        PalettizedCuboid<CompoundTag> tile = column != null ? column.tiles[layout.tileIndexOf(y)] : null;
+        if (tile == null) return SchematicColumn.voidBlock();
+        return tile.getByRef(layout.blockIndexOf(x, y, z));
+    }
+
+    /** @see #getBlockAtByRef(int, int, int) */
+    public String getBlockNameAt(int x, int y, int z) {
+        CompoundTag state = getBlockAtByRef(x, y, z);
+        return state != null ? state.getString("Name") : null;
+    }
+
+    /** @return all block entities, by reference, with x, y and z relative to the volume's min corner. */
+    public List<CompoundTag> getBlockEntities() {
+        List<CompoundTag> blockEntities = new ArrayList<>();
+        for (SchematicColumn column : columns) {
+            if (column != null) blockEntities.addAll(column.blockEntities);
+        }
+        return Collections.unmodifiableList(blockEntities);
+    }
+
+    /** @return all entities, by reference, with positions relative to the volume's min corner. */
+    public List<CompoundTag> getEntities() {
+        List<CompoundTag> entities = new ArrayList<>();
+        for (SchematicColumn column : columns) {
+            if (column != null) entities.addAll(column.entities);
+        }
+        return Collections.unmodifiableList(entities);
+    }
+
+    /**
+     * Pastes this schematic with default {@link PasteOptions}.
+     * @see #paste(McaWorld, IntPointXYZ, PasteOptions)
+     */
+    public int paste(McaWorld world, IntPointXYZ destination) throws IOException {
+        return paste(world, destination, new PasteOptions());
+    }
+
+    /**
+     * Pastes this schematic with its min corner at the given destination. Modified chunks are written back to
+     * their region files as they are finished, chunks and sections which do not exist in the destination are
+     * skipped. Block entities of overwritten blocks are removed.
+     * @return number of chunks modified
+     */
+    public int paste(McaWorld world, IntPointXYZ destination, PasteOptions options) throws IOException {
+        return SchematicPaster.paste(new SchematicPaster.ColumnSource() {
+            @Override
+            public SchematicLayout layout() {
+                return layout;
+            }
+
+            @Override
+            public SchematicColumn column(int columnIndex) {
+                return columns[columnIndex];
+            }
+        }, world, destination, options);
+    }
+
+    /** Controls what {@link #paste(McaWorld, IntPointXYZ, PasteOptions)} writes. */
+    public static class PasteOptions {
+        private boolean pasteAir = true;
+        private boolean pasteBlockEntities = true;
+        private boolean pasteEntities = true;
+        private boolean randomizeEntityUuids = true;
+
+        public boolean isPasteAir() {
+            return pasteAir;
+        }
+
+        /** If false air blocks in the schematic leave the destination untouched, like {@link #VOID_BLOCK_NAME}. Default true. */
+        public PasteOptions setPasteAir(boolean pasteAir) {
+            this.pasteAir = pasteAir;
+            return this;
+        }
+
+        public boolean isPasteBlockEntities() {
+            return pasteBlockEntities;
+        }
+
+        /** Default true. */
+        public PasteOptions setPasteBlockEntities(boolean pasteBlockEntities) {
+            this.pasteBlockEntities = pasteBlockEntities;
+            return this;
+        }
+
+        public boolean isPasteEntities() {
+            return pasteEntities;
+        }
+
+        /** Default true. */
+        public PasteOptions setPasteEntities(boolean pasteEntities) {
+            this.pasteEntities = pasteEntities;
+            return this;
+        }
+
+        public boolean isRandomizeEntityUuids() {
+            return randomizeEntityUuids;
+        }
+
+        /** If true pasted entities get new UUIDs so the same schematic can be pasted many times. Default true. */
+        public PasteOptions setRandomizeEntityUuids(boolean randomizeEntityUuids) {
+            this.randomizeEntityUuids = randomizeEntityUuids;
+            return this;
+        }
+    }
+}
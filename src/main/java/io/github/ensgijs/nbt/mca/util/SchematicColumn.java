@@ -0,0 +1,174 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.EntitiesChunk;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.TerrainSection;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.DoubleTag;
+import io.github.ensgijs.nbt.tag.IntTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One chunk column of a {@link Schematic}: a 16x16 block wide stack of 16x16x16 tiles plus the block entities and
+ * entities within it. Tiles are aligned to the world section grid of the volume's source, a null tile holds only
+ * {@link Schematic#VOID_BLOCK_NAME}. Block entity and entity positions are relative to the volume's min corner.
+ */
+final class SchematicColumn {
+    final int dataVersion;
+    final PalettizedCuboid<CompoundTag>[] tiles;
+    final ListTag<CompoundTag> blockEntities;
+    final ListTag<CompoundTag> entities;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    SchematicColumn(int dataVersion, int tileCount) {
+        this.dataVersion = dataVersion;
+        this.tiles = new PalettizedCuboid[tileCount];
+        this.blockEntities = new ListTag<>(CompoundTag.class);
+        this.entities = new ListTag<>(CompoundTag.class);
+    }
+
+    static CompoundTag voidBlock() {
+        CompoundTag tag = new CompoundTag();
+        tag.putString("Name", Schematic.VOID_BLOCK_NAME);
+        return tag;
+    }
+
+    /**
+     * Snapshots the part of the chunk within the box.
+     * @param entitiesChunk the chunk's entities chunk (1.17+), null if none. Before 1.17 entities are taken from
+     *                      the terrain chunk.
+     * @return null if the chunk does not intersect the box.
+     */
+    static SchematicColumn extract(SchematicLayout layout, McaWorld.Box box, TerrainChunk chunk, EntitiesChunk entitiesChunk) {
+        McaWorld.requireBlockPalettes(chunk);
+        final McaWorld.Box clip = box.clipTo(chunk.getChunkX(), chunk.getChunkZ(), Integer.MIN_VALUE, Integer.MAX_VALUE);
+        if (clip == null) return null;
+        final SchematicColumn column = new SchematicColumn(chunk.getDataVersion(), layout.tilesY);
+        final CompoundTag voidBlock = voidBlock();
+        final int tileBaseY = box.minY >> 4;
+        final int fromSectionY = Math.max(clip.minY >> 4, chunk.getMinSectionY());
+        final int toSectionY = Math.min(clip.maxY >> 4, chunk.getMaxSectionY());
+        for (int sectionY = fromSectionY; sectionY <= toSectionY; sectionY++) {
+            TerrainSection section = chunk.getSection(sectionY);
+            if (section == null || section.getBlockStates() == null) continue;
+            final PalettizedCuboid<CompoundTag> blockStates = section.getBlockStates();
+            final int fromY = Math.max(clip.minY, sectionY << 4);
+            final int toY = Math.min(clip.maxY, sectionY << 4 | 0xF);
+            PalettizedCuboid<CompoundTag> tile;
+            if (clip.coversChunkXZ() && fromY == sectionY << 4 && toY == (sectionY << 4 | 0xF)) {
+                tile = new PalettizedCuboid<>(blockStates);
+            } else {
+                CompoundTag[] values = new CompoundTag[4096];
+                Arrays.fill(values, voidBlock);
+                for (int y = fromY; y <= toY; y++) {
+                    for (int z = clip.minZ; z <= clip.maxZ; z++) {
+                        for (int x = clip.minX; x <= clip.maxX; x++) {
+                            final int i = (y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF);
+                            values[i] = blockStates.getByRef(i);
+                        }
+                    }
+                }
+                tile = new PalettizedCuboid<>(values);
+                tile.setDataVersion(chunk.getDataVersion());
+            }
+            column.tiles[sectionY - tileBaseY] = tile;
+        }
+
+        if (chunk.getTileEntities() != null) {
+            for (CompoundTag tag : chunk.getTileEntities()) {
+                int x = tag.getInt("x");
+                int y = tag.getInt("y");
+                int z = tag.getInt("z");
+                if (clip.contains(x, y, z)) {
+                    CompoundTag copy = tag.clone();
+                    translateBlockEntity(copy, -box.minX, -box.minY, -box.minZ);
+                    column.blockEntities.add(copy);
+                }
+            }
+        }
+        final List<CompoundTag> entities = entitiesChunk != null ? entityTagsOf(entitiesChunk) : chunk.getEntities();
+        if (entities != null) {
+            for (CompoundTag tag : entities) {
+                ListTag<DoubleTag> pos = tag.getListTagAutoCast("Pos");
+                if (pos == null || pos.size() != 3) continue;
+                if (clip.contains((int) Math.floor(pos.get(0).asDouble()), (int) Math.floor(pos.get(1).asDouble()),
+                        (int) Math.floor(pos.get(2).asDouble()))) {
+                    CompoundTag copy = tag.clone();
+                    translateEntity(copy, -box.minX, -box.minY, -box.minZ);
+                    column.entities.add(copy);
+                }
+            }
+        }
+        return column;
+    }
+
+    /** @return the current entity tags of the chunk, null if its entities were not loaded. */
+    private static List<CompoundTag> entityTagsOf(EntitiesChunk entitiesChunk) {
+        if (!entitiesChunk.areWrappedEntitiesGenerated()) return entitiesChunk.getEntitiesTag();
+        List<CompoundTag> tags = new ArrayList<>();
+        for (var entity : entitiesChunk.getEntities()) {
+            tags.add(entity.updateHandle());
+        }
+        return tags;
+    }
+
+    static void translateBlockEntity(CompoundTag tag, int dx, int dy, int dz) {
+        tag.putInt("x", tag.getInt("x") + dx);
+        tag.putInt("y", tag.getInt("y") + dy);
+        tag.putInt("z", tag.getInt("z") + dz);
+    }
+
+    /** Moves the entity and its passengers, including the block position of hanging entities. */
+    static void translateEntity(CompoundTag tag, int dx, int dy, int dz) {
+        ListTag<DoubleTag> pos = tag.getListTagAutoCast("Pos");
+        if (pos != null && pos.size() == 3) {
+            pos.set(0, new DoubleTag(pos.get(0).asDouble() + dx));
+            pos.set(1, new DoubleTag(pos.get(1).asDouble() + dy));
+            pos.set(2, new DoubleTag(pos.get(2).asDouble() + dz));
+        }
+        if (tag.containsKey("TileX", IntTag.class)) {
+            tag.putInt("TileX", tag.getInt("TileX") + dx);
+            tag.putInt("TileY", tag.getInt("TileY") + dy);
+            tag.putInt("TileZ", tag.getInt("TileZ") + dz);
+        }
+        if (tag.containsKey("Passengers")) {
+            for (CompoundTag passenger : tag.getCompoundList("Passengers")) {
+                translateEntity(passenger, dx, dy, dz);
+            }
+        }
+    }
+
+    CompoundTag toCompoundTag() {
+        CompoundTag tag = new CompoundTag();
+        tag.putInt("DataVersion", dataVersion);
+        ListTag<CompoundTag> tilesTag = new ListTag<>(CompoundTag.class);
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] == null) continue;
+            CompoundTag tileTag = new CompoundTag();
+            tileTag.putInt("Y", i);
+            tileTag.put("block_states", tiles[i].toCompoundTag(dataVersion));
+            tilesTag.add(tileTag);
+        }
+        tag.put("tiles", tilesTag);
+        tag.put("block_entities", blockEntities);
+        tag.put("entities", entities);
+        return tag;
+    }
+
+    static SchematicColumn fromCompoundTag(CompoundTag tag, int tileCount) {
+        SchematicColumn column = new SchematicColumn(tag.getInt("DataVersion"), tileCount);
+        for (CompoundTag tileTag : tag.getCompoundList("tiles")) {
+            int y = tileTag.getInt("Y");
+            if (y < 0 || y >= tileCount)
+                throw new IllegalArgumentException("schematic tile y " + y + " out of bounds");
+            column.tiles[y] = PalettizedCuboid.fromCompoundTag(tileTag.getCompoundTag("block_states"), 16, column.dataVersion);
+        }
+        if (tag.containsKey("block_entities")) column.blockEntities.addAll(tag.getCompoundList("block_entities"));
+        if (tag.containsKey("entities")) column.entities.addAll(tag.getCompoundList("entities"));
+        return column;
+    }
+}
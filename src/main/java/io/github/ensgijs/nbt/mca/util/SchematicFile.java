@@ -0,0 +1,257 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.io.BinaryNbtHelpers;
+import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.io.NamedTag;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On disk {@link Schematic} which is read one chunk column at a time, for volumes which do not fit in memory.
+ * <p>File layout, big endian:</p>
+ * <ul>
+ *     <li>8 byte magic {@code MCASCHEM} followed by an int format version</li>
+ *     <li>one record per chunk column which existed in the source: an int byte length followed by the gzip
+ *     compressed nbt of the column (tiles, block entities and entities)</li>
+ *     <li>the footer: an int byte length followed by gzip compressed nbt holding the volume size, its section
+ *     alignment and the file offset of every column record</li>
+ *     <li>a long file offset of the footer</li>
+ * </ul>
+ * <p>{@link #extract(McaWorld, IntPointXYZ, IntPointXYZ, Path)} streams columns to disk as source chunks are
+ * read and {@link #paste(McaWorld, IntPointXYZ, Schematic.PasteOptions)} reads columns on demand, keeping at most
+ * {@link #getColumnCacheCapacity()} decoded columns in memory. Column reads are thread safe.</p>
+ */
+public class SchematicFile implements Closeable {
+    private static final byte[] MAGIC = "MCASCHEM".getBytes(StandardCharsets.US_ASCII);
+    private static final int FORMAT_VERSION = 1;
+    static final int DEFAULT_COLUMN_CACHE_CAPACITY = 256;
+
+    private final RandomAccessFile raf;
+    private final SchematicLayout layout;
+    private final long[] columnOffsets;
+    private final Map<Integer, SchematicColumn> columnCache;
+    private int columnCacheCapacity = DEFAULT_COLUMN_CACHE_CAPACITY;
+
+    private SchematicFile(RandomAccessFile raf) throws IOException {
+        this.raf = raf;
+        byte[] magic = new byte[MAGIC.length];
+        raf.seek(0);
+        raf.readFully(magic);
+        if (!Arrays.equals(MAGIC, magic)) throw new IOException("not a schematic file");
+        int formatVersion = raf.readInt();
+        if (formatVersion != FORMAT_VERSION) throw new IOException("unsupported schematic format version " + formatVersion);
+        raf.seek(raf.length() - 8);
+        CompoundTag footer = readRecord(raf.readLong());
+        int[] size = footer.getIntArray("Size");
+        int[] offset = footer.getIntArray("Offset");
+        if (size == null || size.length != 3 || offset == null || offset.length != 3)
+            throw new IOException("corrupt schematic footer");
+        layout = new SchematicLayout(size[0], size[1], size[2], offset[0], offset[1], offset[2]);
+        columnOffsets = footer.getLongArray("Columns");
+        if (columnOffsets == null || columnOffsets.length != layout.columnCount())
+            throw new IOException("corrupt schematic footer");
+        columnCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, SchematicColumn> eldest) {
+                return size() > columnCacheCapacity;
+            }
+        };
+    }
+
+    /** Opens an existing schematic file for reading. */
+    public static SchematicFile open(Path file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r");
+        try {
+            return new SchematicFile(raf);
+        } catch (IOException | RuntimeException ex) {
+            raf.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Snapshots the volume within the given inclusive bounds straight to disk. Source chunks are read one region
+     * per task and each column is written as soon as it has been extracted, memory use does not depend on the size
+     * of the volume.
+     * @return the written file, opened for reading
+     */
+    public static SchematicFile extract(McaWorld world, IntPointXYZ xyz1, IntPointXYZ xyz2, Path file) throws IOException {
+        ArgValidator.requireValue(world, "world");
+        final McaWorld.Box box = new McaWorld.Box(xyz1, xyz2);
+        final SchematicLayout layout = SchematicLayout.of(box);
+        try (Writer writer = new Writer(file, layout)) {
+            world.editChunks(box, false, true, (chunk, entities) -> {
+                SchematicColumn column = SchematicColumn.extract(layout, box, chunk, entities);
+                if (column != null) writer.append(Schematic.columnIndexOf(box, layout, chunk), column);
+                return 0;
+            });
+            writer.finish();
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(file);
+            throw ex;
+        }
+        return open(file);
+    }
+
+    static void write(Schematic schematic, Path file) throws IOException {
+        try (Writer writer = new Writer(file, schematic.layout)) {
+            for (int i = 0; i < schematic.columns.length; i++) {
+                if (schematic.columns[i] != null) writer.append(i, schematic.columns[i]);
+            }
+            writer.finish();
+        }
+    }
+
+    public int getSizeX() {
+        return layout.sizeX;
+    }
+
+    public int getSizeY() {
+        return layout.sizeY;
+    }
+
+    public int getSizeZ() {
+        return layout.sizeZ;
+    }
+
+    /** @see Schematic#isSectionAligned(IntPointXYZ) */
+    public boolean isSectionAligned(IntPointXYZ destination) {
+        return layout.isSectionAligned(destination);
+    }
+
+    public int getColumnCacheCapacity() {
+        return columnCacheCapacity;
+    }
+
+    /** Maximum number of decoded chunk columns kept in memory, default {@value #DEFAULT_COLUMN_CACHE_CAPACITY}. */
+    public SchematicFile setColumnCacheCapacity(int columnCacheCapacity) {
+        ArgValidator.check(columnCacheCapacity > 0, "columnCacheCapacity must be GT 0");
+        synchronized (columnCache) {
+            this.columnCacheCapacity = columnCacheCapacity;
+        }
+        return this;
+    }
+
+    /** Pastes this schematic with default {@link Schematic.PasteOptions}. */
+    public int paste(McaWorld world, IntPointXYZ destination) throws IOException {
+        return paste(world, destination, new Schematic.PasteOptions());
+    }
+
+    /**
+     * Pastes this schematic with its min corner at the given destination, reading columns on demand.
+     * @return number of chunks modified
+     * @see Schematic#paste(McaWorld, IntPointXYZ, Schematic.PasteOptions)
+     */
+    public int paste(McaWorld world, IntPointXYZ destination, Schematic.PasteOptions options) throws IOException {
+        return SchematicPaster.paste(new SchematicPaster.ColumnSource() {
+            @Override
+            public SchematicLayout layout() {
+                return layout;
+            }
+
+            @Override
+            public SchematicColumn column(int columnIndex) throws IOException {
+                return readColumn(columnIndex);
+            }
+        }, world, destination, options);
+    }
+
+    /** Reads the whole schematic into memory. */
+    public Schematic toSchematic() throws IOException {
+        SchematicColumn[] columns = new SchematicColumn[layout.columnCount()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = readColumn(i);
+        }
+        return new Schematic(layout, columns);
+    }
+
+    SchematicColumn readColumn(int columnIndex) throws IOException {
+        if (columnOffsets[columnIndex] == 0) return null;
+        synchronized (columnCache) {
+            SchematicColumn column = columnCache.get(columnIndex);
+            if (column != null) return column;
+        }
+        // decode outside the lock, two threads may decode the same column - the result is the same
+        SchematicColumn column = SchematicColumn.fromCompoundTag(readRecord(columnOffsets[columnIndex]), layout.tilesY);
+        synchronized (columnCache) {
+            columnCache.put(columnIndex, column);
+        }
+        return column;
+    }
+
+    private CompoundTag readRecord(long offset) throws IOException {
+        byte[] bytes;
+        synchronized (raf) {
+            if (offset < MAGIC.length + 4 || offset > raf.length() - 4) throw new IOException("corrupt schematic record offset " + offset);
+            raf.seek(offset);
+            int length = raf.readInt();
+            if (length <= 0 || offset + 4 + length > raf.length()) throw new IOException("corrupt schematic record length " + length);
+            bytes = new byte[length];
+            raf.readFully(bytes);
+        }
+        NamedTag named = BinaryNbtHelpers.deserializeBytes(bytes, CompressionType.GZIP);
+        if (!(named.getTag() instanceof CompoundTag)) throw new IOException("corrupt schematic record");
+        return (CompoundTag) named.getTag();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (columnCache) {
+            columnCache.clear();
+        }
+        raf.close();
+    }
+
+    /** Appends column records, from any thread, then writes the footer. */
+    private static final class Writer implements Closeable {
+        private final RandomAccessFile raf;
+        private final SchematicLayout layout;
+        private final long[] columnOffsets;
+
+        Writer(Path file, SchematicLayout layout) throws IOException {
+            this.layout = layout;
+            this.columnOffsets = new long[layout.columnCount()];
+            raf = new RandomAccessFile(file.toFile(), "rw");
+            raf.setLength(0);
+            raf.write(MAGIC);
+            raf.writeInt(FORMAT_VERSION);
+        }
+
+        void append(int columnIndex, SchematicColumn column) throws IOException {
+            // serialize outside the lock
+            byte[] bytes = BinaryNbtHelpers.serializeAsBytes(column.toCompoundTag(), CompressionType.GZIP);
+            synchronized (this) {
+                columnOffsets[columnIndex] = raf.getFilePointer();
+                raf.writeInt(bytes.length);
+                raf.write(bytes);
+            }
+        }
+
+        synchronized void finish() throws IOException {
+            CompoundTag footer = new CompoundTag();
+            footer.putIntArray("Size", new int[] {layout.sizeX, layout.sizeY, layout.sizeZ});
+            footer.putIntArray("Offset", new int[] {layout.offsetX, layout.offsetY, layout.offsetZ});
+            footer.putLongArray("Columns", columnOffsets);
+            byte[] bytes = BinaryNbtHelpers.serializeAsBytes(footer, CompressionType.GZIP);
+            long footerOffset = raf.getFilePointer();
+            raf.writeInt(bytes.length);
+            raf.write(bytes);
+            raf.writeLong(footerOffset);
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.github.ensgijs.nbt.mca.util;
+
+/**
+ * Geometry of a {@link Schematic} volume. The volume is stored in 16x16x16 tiles aligned to the world section grid
+ * of the box it was extracted from, so tile edges fall on section edges wherever the paste destination has the
+ * same alignment. Volume local block coordinates run from 0 to size - 1, the {@code offset} is the position of the
+ * volume's min corner within its first tile.
+ */
+final class SchematicLayout {
+    final int sizeX, sizeY, sizeZ;
+    final int offsetX, offsetY, offsetZ;
+    final int columnsX, columnsZ, tilesY;
+
+    SchematicLayout(int sizeX, int sizeY, int sizeZ, int offsetX, int offsetY, int offsetZ) {
+        if (sizeX <= 0 || sizeY <= 0 || sizeZ <= 0)
+            throw new IllegalArgumentException("schematic size must be GT 0");
+        if ((offsetX & ~0xF) != 0 || (offsetY & ~0xF) != 0 || (offsetZ & ~0xF) != 0)
+            throw new IllegalArgumentException("schematic offsets must be in range 0-15");
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.offsetZ = offsetZ;
+        columnsX = (offsetX + sizeX + 15) >> 4;
+        columnsZ = (offsetZ + sizeZ + 15) >> 4;
+        tilesY = (offsetY + sizeY + 15) >> 4;
+    }
+
+    static SchematicLayout of(McaWorld.Box box) {
+        return new SchematicLayout(box.maxX - box.minX + 1, box.maxY - box.minY + 1, box.maxZ - box.minZ + 1,
+                box.minX & 0xF, box.minY & 0xF, box.minZ & 0xF);
+    }
+
+    int columnCount() {
+        return columnsX * columnsZ;
+    }
+
+    /** @return column index of the volume local block xz. */
+    int columnIndexOf(int x, int z) {
+        return ((z + offsetZ) >> 4) * columnsX + ((x + offsetX) >> 4);
+    }
+
+    /** @return tile index, within its column, of the volume local block y. */
+    int tileIndexOf(int y) {
+        return (y + offsetY) >> 4;
+    }
+
+    /** @return index within its tile of the volume local block xyz. */
+    int blockIndexOf(int x, int y, int z) {
+        return ((y + offsetY) & 0xF) << 8 | ((z + offsetZ) & 0xF) << 4 | ((x + offsetX) & 0xF);
+    }
+
+    boolean contains(int x, int y, int z) {
+        return x >= 0 && y >= 0 && z >= 0 && x < sizeX && y < sizeY && z < sizeZ;
+    }
+
+    /** @return true if pasting with the volume's min corner at the given block position keeps tiles on sections. */
+    boolean isSectionAligned(IntPointXYZ destination) {
+        return (destination.x & 0xF) == offsetX && (destination.y & 0xF) == offsetY && (destination.z & 0xF) == offsetZ;
+    }
+}
@@ -0,0 +1,268 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.EntitiesChunk;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.TerrainSection;
+import io.github.ensgijs.nbt.mca.entities.EntityFactory;
+import io.github.ensgijs.nbt.mca.entities.EntityUtil;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.DoubleTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.io.IOException;
+import java.util.*;
+
+import static io.github.ensgijs.nbt.mca.DataVersion.JAVA_1_17_20W45A;
+
+/**
+ * Writes schematic columns into a world, one destination chunk at a time with one task per destination region.
+ * Shared by {@link Schematic} and {@link SchematicFile}.
+ */
+final class SchematicPaster {
+    private static final int UNMAPPED = -1;
+    private static final int SKIP = -2;
+    private static final Set<String> AIR_NAMES = Set.of("minecraft:air", "minecraft:cave_air", "minecraft:void_air");
+
+    /** Random access to the columns of a schematic. Must be safe to call from several threads at once. */
+    interface ColumnSource {
+        SchematicLayout layout();
+
+        /** @return the column at the index, or null if the source chunk did not exist. */
+        SchematicColumn column(int columnIndex) throws IOException;
+    }
+
+    private final ColumnSource source;
+    private final SchematicLayout layout;
+    private final IntPointXYZ destination;
+    private final Schematic.PasteOptions options;
+    private final McaWorld.Box target;
+
+    private SchematicPaster(ColumnSource source, IntPointXYZ destination, Schematic.PasteOptions options) {
+        this.source = source;
+        this.layout = source.layout();
+        this.destination = destination;
+        this.options = options;
+        target = new McaWorld.Box(destination.x, destination.y, destination.z,
+                destination.x + layout.sizeX - 1, destination.y + layout.sizeY - 1, destination.z + layout.sizeZ - 1);
+    }
+
+    static int paste(ColumnSource source, McaWorld world, IntPointXYZ destination, Schematic.PasteOptions options) throws IOException {
+        ArgValidator.requireValue(world, "world");
+        ArgValidator.requireValue(destination, "destination");
+        ArgValidator.requireValue(options, "options");
+        SchematicPaster paster = new SchematicPaster(source, destination, options);
+        return world.editChunks(paster.target, true, options.isPasteEntities(), paster::pasteChunk);
+    }
+
+    static boolean isAir(CompoundTag state) {
+        return AIR_NAMES.contains(state.getString("Name"));
+    }
+
+    private boolean isSkipped(CompoundTag state) {
+        String name = state.getString("Name");
+        return Schematic.VOID_BLOCK_NAME.equals(name) || (!options.isPasteAir() && AIR_NAMES.contains(name));
+    }
+
+    private int[] paletteMapFor(PalettizedCuboid<CompoundTag> tile) {
+        int[] map = new int[tile.palette.size()];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = isSkipped(tile.palette.get(i)) ? SKIP : UNMAPPED;
+        }
+        return map;
+    }
+
+    /** @see McaWorld.ChunkAndEntitiesEdit */
+    private int pasteChunk(TerrainChunk chunk, EntitiesChunk entitiesChunk) throws IOException {
+        McaWorld.requireBlockPalettes(chunk);
+        final McaWorld.Box clip = target.clipTo(chunk);
+        if (clip == null) return 0;
+
+        // the chunk draws from at most 2x2 source columns
+        final int columnX0 = (clip.minX - destination.x + layout.offsetX) >> 4;
+        final int columnZ0 = (clip.minZ - destination.z + layout.offsetZ) >> 4;
+        final int columnX1 = (clip.maxX - destination.x + layout.offsetX) >> 4;
+        final int columnZ1 = (clip.maxZ - destination.z + layout.offsetZ) >> 4;
+        final SchematicColumn[] grid = new SchematicColumn[4];
+        boolean anyColumn = false;
+        for (int cz = columnZ0; cz <= columnZ1; cz++) {
+            for (int cx = columnX0; cx <= columnX1; cx++) {
+                SchematicColumn column = source.column(cz * layout.columnsX + cx);
+                grid[(cz - columnZ0) * 2 + (cx - columnX0)] = column;
+                anyColumn |= column != null;
+            }
+        }
+        if (!anyColumn) return 0;
+
+        boolean modified = false;
+        final BlockEditSession session = chunk.editSession();
+        final Map<PalettizedCuboid<CompoundTag>, int[]> paletteMaps = new IdentityHashMap<>();
+        final boolean aligned = layout.isSectionAligned(destination);
+        for (int sectionY = clip.minY >> 4; sectionY <= clip.maxY >> 4; sectionY++) {
+            TerrainSection section = chunk.getSection(sectionY);
+            if (section == null || section.getBlockStates() == null) continue;
+            final int fromY = Math.max(clip.minY, sectionY << 4);
+            final int toY = Math.min(clip.maxY, sectionY << 4 | 0xF);
+
+            if (aligned && clip.coversChunkXZ() && fromY == sectionY << 4 && toY == (sectionY << 4 | 0xF)) {
+                // the tile lines up with the section exactly - take it as is unless some of it must be skipped
+                SchematicColumn column = grid[0];
+                PalettizedCuboid<CompoundTag> tile = column != null ? column.tiles[layout.tileIndexOf(fromY - destination.y)] : null;
+                if (tile != null && Arrays.stream(paletteMapFor(tile)).noneMatch(v -> v == SKIP)) {
+                    section.setBlockStates(tile);
+                    section.getBlockStates().setDataVersion(chunk.getDataVersion());
+                    modified = true;
+                    continue;
+                }
+            }
+
+            for (int y = fromY; y <= toY; y++) {
+                final int ly = y - destination.y;
+                final int tileIndex = layout.tileIndexOf(ly);
+                for (int z = clip.minZ; z <= clip.maxZ; z++) {
+                    final int lz = z - destination.z;
+                    final int gridZ = (((lz + layout.offsetZ) >> 4) - columnZ0) * 2;
+                    for (int x = clip.minX; x <= clip.maxX; x++) {
+                        final int lx = x - destination.x;
+                        SchematicColumn column = grid[gridZ + ((lx + layout.offsetX) >> 4) - columnX0];
+                        if (column == null) continue;
+                        PalettizedCuboid<CompoundTag> tile = column.tiles[tileIndex];
+                        if (tile == null) continue;
+                        int[] map = paletteMaps.computeIfAbsent(tile, this::paletteMapFor);
+                        final int paletteIndex = tile.packedData.get(layout.blockIndexOf(lx, ly, lz));
+                        int id = map[paletteIndex];
+                        if (id == SKIP) continue;
+                        if (id == UNMAPPED) {
+                            id = map[paletteIndex] = session.stateId(tile.palette.get(paletteIndex));
+                        }
+                        session.setStateId(x, y, z, id);
+                    }
+                }
+            }
+        }
+        if (session.getEditCount() > 0) {
+            modified |= session.commit() > 0;
+        }
+
+        modified |= pasteBlockEntities(chunk, clip, grid, columnX0, columnZ0);
+        int result = 0;
+        if (options.isPasteEntities()) {
+            if (chunk.getDataVersion() < JAVA_1_17_20W45A.id()) {
+                modified |= pasteEntities(chunk, grid);
+            } else if (entitiesChunk != null && pasteEntities(entitiesChunk, grid)) {
+                result = McaWorld.ENTITIES_MODIFIED;
+            }
+        }
+        return modified ? result | McaWorld.TERRAIN_MODIFIED : result;
+    }
+
+    /** @return the block state the schematic puts at the world position, null if the position is left untouched. */
+    private CompoundTag pastedStateAt(TerrainChunk chunk, SchematicColumn[] grid, int columnX0, int columnZ0, int x, int y, int z) {
+        TerrainSection section = chunk.getSection(y >> 4);
+        if (section == null || section.getBlockStates() == null) return null;
+        final int lx = x - destination.x;
+        final int ly = y - destination.y;
+        final int lz = z - destination.z;
+        if (!layout.contains(lx, ly, lz)) return null;
+        SchematicColumn column = grid[(((lz + layout.offsetZ) >> 4) - columnZ0) * 2 + ((lx + layout.offsetX) >> 4) - columnX0];
+        if (column == null) return null;
+        PalettizedCuboid<CompoundTag> tile = column.tiles[layout.tileIndexOf(ly)];
+        if (tile == null) return null;
+        CompoundTag state = tile.getByRef(layout.blockIndexOf(lx, ly, lz));
+        return isSkipped(state) ? null : state;
+    }
+
+    private boolean pasteBlockEntities(TerrainChunk chunk, McaWorld.Box clip, SchematicColumn[] grid, int columnX0, int columnZ0) {
+        boolean modified = false;
+        ListTag<CompoundTag> blockEntities = chunk.getTileEntities();
+        // block entities of overwritten blocks go, whether or not the schematic brings its own
+        if (blockEntities != null) {
+            modified = blockEntities.removeIf(tag -> {
+                int x = tag.getInt("x");
+                int y = tag.getInt("y");
+                int z = tag.getInt("z");
+                return clip.contains(x, y, z) && pastedStateAt(chunk, grid, columnX0, columnZ0, x, y, z) != null;
+            });
+        }
+        if (!options.isPasteBlockEntities()) return modified;
+        for (SchematicColumn column : grid) {
+            if (column == null) continue;
+            for (CompoundTag tag : column.blockEntities) {
+                int x = tag.getInt("x") + destination.x;
+                int y = tag.getInt("y") + destination.y;
+                int z = tag.getInt("z") + destination.z;
+                if (!clip.contains(x, y, z) || pastedStateAt(chunk, grid, columnX0, columnZ0, x, y, z) == null) continue;
+                CompoundTag copy = tag.clone();
+                SchematicColumn.translateBlockEntity(copy, destination.x, destination.y, destination.z);
+                if (blockEntities == null) {
+                    blockEntities = new ListTag<>(CompoundTag.class);
+                    chunk.setTileEntities(blockEntities);
+                }
+                blockEntities.add(copy);
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    private boolean pasteEntities(TerrainChunk chunk, SchematicColumn[] grid) {
+        boolean modified = false;
+        ListTag<CompoundTag> entities = chunk.getEntities();
+        for (CompoundTag copy : pastedEntities(chunk.getChunkX(), chunk.getChunkZ(), chunk.getDataVersion(), grid)) {
+            if (entities == null) {
+                entities = new ListTag<>(CompoundTag.class);
+                chunk.setEntities(entities);
+            }
+            entities.add(copy);
+            modified = true;
+        }
+        return modified;
+    }
+
+    private boolean pasteEntities(EntitiesChunk entitiesChunk, SchematicColumn[] grid) {
+        final int dataVersion = entitiesChunk.getDataVersion();
+        final boolean wrapped = entitiesChunk.areWrappedEntitiesGenerated();
+        final ListTag<CompoundTag> entitiesTag = wrapped ? null : entitiesChunk.getEntitiesTag();
+        if (!wrapped && entitiesTag == null) return false;
+        boolean modified = false;
+        for (CompoundTag copy : pastedEntities(entitiesChunk.getChunkX(), entitiesChunk.getChunkZ(), dataVersion, grid)) {
+            // keep the wrappers and the tag in step, whichever is the chunk's current state
+            if (wrapped) {
+                entitiesChunk.getEntities().add(EntityFactory.create(copy, dataVersion));
+            } else {
+                entitiesTag.add(copy);
+            }
+            modified = true;
+        }
+        return modified;
+    }
+
+    /** @return copies of the schematic entities which land in the destination chunk, moved into place. */
+    private List<CompoundTag> pastedEntities(int chunkX, int chunkZ, int dataVersion, SchematicColumn[] grid) {
+        List<CompoundTag> pasted = new ArrayList<>();
+        for (SchematicColumn column : grid) {
+            if (column == null) continue;
+            for (CompoundTag tag : column.entities) {
+                ListTag<DoubleTag> pos = tag.getListTagAutoCast("Pos");
+                if (pos == null || pos.size() != 3) continue;
+                int x = (int) Math.floor(pos.get(0).asDouble()) + destination.x;
+                int z = (int) Math.floor(pos.get(2).asDouble()) + destination.z;
+                if (x >> 4 != chunkX || z >> 4 != chunkZ) continue;
+                CompoundTag copy = tag.clone();
+                SchematicColumn.translateEntity(copy, destination.x, destination.y, destination.z);
+                if (options.isRandomizeEntityUuids()) randomizeUuids(dataVersion, copy);
+                pasted.add(copy);
+            }
+        }
+        return pasted;
+    }
+
+    private static void randomizeUuids(int dataVersion, CompoundTag entity) {
+        EntityUtil.setUuid(dataVersion, entity, UUID.randomUUID());
+        if (entity.containsKey("Passengers")) {
+            for (CompoundTag passenger : entity.getCompoundList("Passengers")) {
+                randomizeUuids(dataVersion, passenger);
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.TerrainChunkBase;
+import io.github.ensgijs.nbt.mca.TerrainSectionBase;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Visits every block of a terrain chunk, section by section in ascending y order and, within a section, in
+ * block index order (which is also y, then z, then x order). Sections without block states are skipped.
+ * <p>This cursor allocates nothing per block: block states are yielded by reference straight from the section
+ * palette, positions are computed from the current index and block names are cached once per palette (and
+ * refreshed only if the palette changes).</p>
+ * <p>Blocks set through {@link #setBlockStateAtCurrent(CompoundTag)} may leave unused entries in the section
+ * palette, call {@link #cleanupPaletteAndBlockStatesIfDirty()} once done to remove them. The chunk must not be
+ * modified other than through this cursor while iterating.</p>
+ * <pre>{@code
+ * BlockStateIterator cursor = chunk.blockStateIterator();
+ * while (cursor.hasNext()) {
+ *     cursor.next();
+ *     if (cursor.currentBlockName().equals("minecraft:diamond_ore")) {
+ *         found(cursor.currentBlockX(), cursor.currentBlockY(), cursor.currentBlockZ());
+ *     }
+ * }
+ * }</pre>
+ * @see TerrainChunkBase#blockStateIterator()
+ */
+public class TerrainChunkBlockStateCursor implements BlockStateIterator {
+    private final SectionIterator<? extends TerrainSectionBase> sections;
+    private final int chunkBlockX;
+    private final int chunkBlockZ;
+
+    private PalettizedCuboid<CompoundTag> blockStates;
+    private int sectionY;
+    private int sectionSize;
+    private int index = -1;
+    private int expectedModCount;
+    private boolean currentSectionDirty;
+
+    // look ahead, filled by hasNext when the current section is exhausted
+    private PalettizedCuboid<CompoundTag> pendingBlockStates;
+    private int pendingSectionY;
+
+    private String[] names = new String[16];
+    private int namesModCount;
+    private PalettizedCuboid<CompoundTag> namesSource;
+
+    private final List<PalettizedCuboid<CompoundTag>> dirtySections = new ArrayList<>();
+
+    /**
+     * Prefer {@link TerrainChunkBase#blockStateIterator()} which also validates the chunk supports block palettes.
+     */
+    public TerrainChunkBlockStateCursor(TerrainChunkBase<?> chunk) {
+        this.sections = chunk.iterator();
+        this.chunkBlockX = chunk.getChunkX() << 4;
+        this.chunkBlockZ = chunk.getChunkZ() << 4;
+    }
+
+    @Override
+    public Iterator<CompoundTag> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (blockStates != null && index < sectionSize - 1) return true;
+        if (pendingBlockStates != null) return true;
+        while (sections.hasNext()) {
+            TerrainSectionBase section = sections.next();
+            PalettizedCuboid<CompoundTag> bs = section.getBlockStates();
+            if (bs != null) {
+                pendingBlockStates = bs;
+                pendingSectionY = sections.sectionY();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public CompoundTag next() {
+        if (blockStates != null && index < sectionSize - 1) {
+            if (expectedModCount != blockStates.paletteModCount) throw new ConcurrentModificationException();
+            index++;
+        } else if (hasNext()) {
+            blockStates = pendingBlockStates;
+            sectionY = pendingSectionY;
+            sectionSize = blockStates.size();
+            expectedModCount = blockStates.paletteModCount;
+            currentSectionDirty = false;
+            pendingBlockStates = null;
+            index = 0;
+        } else {
+            throw new NoSuchElementException();
+        }
+        return blockStates.palette.get(blockStates.packedData.get(index));
+    }
+
+    private void checkCurrent() {
+        if (blockStates == null) throw new NoSuchElementException();
+    }
+
+    @Override
+    public void setBlockStateAtCurrent(CompoundTag state) {
+        checkCurrent();
+        if (expectedModCount != blockStates.paletteModCount) throw new ConcurrentModificationException();
+        blockStates.set(index, state);
+        expectedModCount = blockStates.paletteModCount;
+        if (!currentSectionDirty) {
+            currentSectionDirty = true;
+            dirtySections.add(blockStates);
+        }
+    }
+
+    @Override
+    public void cleanupPaletteAndBlockStatesIfDirty() {
+        for (PalettizedCuboid<CompoundTag> bs : dirtySections) {
+            bs.optimizePalette();
+        }
+        dirtySections.clear();
+        currentSectionDirty = false;
+        if (blockStates != null) expectedModCount = blockStates.paletteModCount;
+    }
+
+    @Override
+    public int currentIndex() {
+        checkCurrent();
+        return index;
+    }
+
+    @Override
+    public int currentX() {
+        checkCurrent();
+        return index & 0xF;
+    }
+
+    @Override
+    public int currentZ() {
+        checkCurrent();
+        return (index >> 4) & 0xF;
+    }
+
+    @Override
+    public int currentY() {
+        checkCurrent();
+        return (index >> 8) & 0xF;
+    }
+
+    @Override
+    public int currentBlockY() {
+        return (sectionY << 4) + currentY();
+    }
+
+    @Override
+    public int currentBlockX() {
+        return chunkBlockX + currentX();
+    }
+
+    @Override
+    public int currentBlockZ() {
+        return chunkBlockZ + currentZ();
+    }
+
+    @Override
+    public int currentSectionY() {
+        checkCurrent();
+        return sectionY;
+    }
+
+    @Override
+    public int currentPaletteIndex() {
+        checkCurrent();
+        return blockStates.packedData.get(index);
+    }
+
+    @Override
+    public String currentBlockName() {
+        int paletteIndex = currentPaletteIndex();
+        if (namesSource != blockStates || namesModCount != blockStates.paletteModCount) {
+            refreshNames();
+        }
+        return names[paletteIndex];
+    }
+
+    private void refreshNames() {
+        int n = blockStates.palette.size();
+        if (names.length < n) {
+            names = new String[Math.max(n, names.length * 2)];
+        }
+        for (int i = 0; i < n; i++) {
+            names[i] = blockStates.palette.get(i).getString("Name");
+        }
+        namesSource = blockStates;
+        namesModCount = blockStates.paletteModCount;
+    }
+
+    @Override
+    public CompoundTag current() {
+        checkCurrent();
+        return blockStates.palette.get(blockStates.packedData.get(index));
+    }
+}
@@ -1,12 +1,34 @@
 package io.github.ensgijs.nbt.mca.util;
-import java.util.Map;
-import java.util.TreeMap;
+
+import java.util.Arrays;
 
 /**
  * Simple utility class for managing data version support.
+ * <p>Values are kept in a primitive, sorted, {@code int[]} version table which is binary searched. Lookups are
+ * lock free, allocation free and safe to perform concurrently with {@link #register}.</p>
+ * @see VersionAwareGroup
  */
 public class VersionAware<T> {
-    private final TreeMap<Integer, T> versionedValues = new TreeMap<>();
+    private static final Table EMPTY_TABLE = new Table(new int[0], new Object[0]);
+
+    /** Immutable; replaced as a whole on register. Its identity doubles as a modification stamp. */
+    static final class Table {
+        final int[] minVersions;
+        final Object[] values;
+
+        Table(int[] minVersions, Object[] values) {
+            this.minVersions = minVersions;
+            this.values = values;
+        }
+
+        Object floor(int forVersion) {
+            int i = Arrays.binarySearch(minVersions, forVersion);
+            if (i < 0) i = -i - 2;  // insertion point - 1
+            return i >= 0 ? values[i] : null;
+        }
+    }
+
+    private volatile Table table = EMPTY_TABLE;
 
     /**
      * Registers a value.
@@ -14,8 +36,26 @@ public class VersionAware<T> {
      * @param value value to associate with the given version up to the next registered version (exclusive).
      * @return self for chaining
      */
-    public VersionAware<T> register(int minVersion, T value) {
-        versionedValues.put(minVersion, value);
+    public synchronized VersionAware<T> register(int minVersion, T value) {
+        Table old = table;
+        int i = Arrays.binarySearch(old.minVersions, minVersion);
+        if (i >= 0) {
+            Object[] values = old.values.clone();
+            values[i] = value;
+            table = new Table(old.minVersions, values);
+        } else {
+            i = -i - 1;
+            int n = old.minVersions.length;
+            int[] minVersions = new int[n + 1];
+            Object[] values = new Object[n + 1];
+            System.arraycopy(old.minVersions, 0, minVersions, 0, i);
+            System.arraycopy(old.values, 0, values, 0, i);
+            minVersions[i] = minVersion;
+            values[i] = value;
+            System.arraycopy(old.minVersions, i, minVersions, i + 1, n - i);
+            System.arraycopy(old.values, i, values, i + 1, n - i);
+            table = new Table(minVersions, values);
+        }
         return this;
     }
 
@@ -24,8 +64,23 @@ public class VersionAware<T> {
      * @param forVersion version of interest.
      * @return an entry with the greatest version less than or equal to forVersion, or null if there is no such version registered.
      */
+    @SuppressWarnings("unchecked")
     public T get(int forVersion) {
-        Map.Entry<Integer, T> entry = versionedValues.floorEntry(forVersion);
-        return entry != null ? entry.getValue() : null;
+        return (T) table.floor(forVersion);
+    }
+
+    /** @return Number of registered versions. */
+    public int size() {
+        return table.minVersions.length;
+    }
+
+    /** @return The registered minimum versions, ascending. */
+    public int[] getRegisteredVersions() {
+        return table.minVersions.clone();
+    }
+
+    /** Current table, changes identity whenever a value is registered. */
+    Table table() {
+        return table;
     }
 }
@@ -0,0 +1,94 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A fixed, ordered, set of {@link VersionAware}'s which are resolved together. The values for a data version
+ * are looked up once and memoized, so code which needs many version dependent values (such as every nbt path a
+ * chunk reads) pays for one map lookup per chunk instead of one version table search per value.
+ * <p>Registering new values with a member invalidates the memoized views. Instances are thread safe.</p>
+ * <pre>{@code
+ * static final VersionAwareGroup<NbtPath> PATHS = VersionAwareGroup.of(X_POS_PATH, Z_POS_PATH);
+ * List<NbtPath> paths = PATHS.resolve(dataVersion);
+ * NbtPath xPos = paths.get(0);
+ * }</pre>
+ */
+public class VersionAwareGroup<T> {
+    /** Distinct data versions are few in practice, this only guards against unbounded growth. */
+    private static final int MAX_RESOLVED_VERSIONS = 1024;
+
+    private final VersionAware<T>[] members;
+    private final Map<Integer, Resolved<T>> resolved = new ConcurrentHashMap<>();
+
+    private record Resolved<T>(VersionAware.Table[] stamps, List<T> values) {}
+
+    public VersionAwareGroup(List<VersionAware<T>> members) {
+        this.members = newMemberArray(members.size());
+        for (int i = 0; i < this.members.length; i++) {
+            this.members[i] = ArgValidator.requireValue(members.get(i), "member");
+        }
+    }
+
+    @SafeVarargs
+    public static <T> VersionAwareGroup<T> of(VersionAware<T>... members) {
+        // copied element by element so the varargs array itself never escapes
+        List<VersionAware<T>> list = new ArrayList<>(members.length);
+        for (VersionAware<T> member : members) {
+            list.add(member);
+        }
+        return new VersionAwareGroup<>(list);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> VersionAware<T>[] newMemberArray(int size) {
+        return (VersionAware<T>[]) new VersionAware<?>[size];
+    }
+
+    /** @return Number of members. */
+    public int size() {
+        return members.length;
+    }
+
+    public VersionAware<T> getMember(int index) {
+        return members[index];
+    }
+
+    /**
+     * @param dataVersion data version of interest.
+     * @return Unmodifiable list of each member's value for the given version, in member order. Entries are null
+     * for members with no value registered for the version. The same list instance is returned for repeated calls
+     * until a member is modified.
+     */
+    public List<T> resolve(int dataVersion) {
+        Resolved<T> r = resolved.get(dataVersion);
+        if (r != null && isCurrent(r)) {
+            return r.values;
+        }
+        VersionAware.Table[] stamps = new VersionAware.Table[members.length];
+        Object[] values = new Object[members.length];
+        for (int i = 0; i < members.length; i++) {
+            // take the stamp first, a concurrent register then makes this result stale rather than wrong
+            stamps[i] = members[i].table();
+            values[i] = stamps[i].floor(dataVersion);
+        }
+        @SuppressWarnings("unchecked")
+        List<T> list = Collections.unmodifiableList(Arrays.asList((T[]) values));
+        if (resolved.size() >= MAX_RESOLVED_VERSIONS) resolved.clear();
+        resolved.put(dataVersion, new Resolved<>(stamps, list));
+        return list;
+    }
+
+    private boolean isCurrent(Resolved<T> r) {
+        for (int i = 0; i < members.length; i++) {
+            if (r.stamps[i] != members[i].table()) return false;
+        }
+        return true;
+    }
+}
@@ -9,20 +9,40 @@ import io.github.ensgijs.nbt.util.ArgValidator;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Provides a simple mechanism to retrieve, and store, structured data without
  * having to handle the intermediate tags yourself.
  * <p>Use simple dot separated names and bracket indexes such as {@code "Level.Section[0].BlockLight"}</p>
  * <p>Colons are allowed in the path such as {@code Brain.memories.minecraft:home.value.pos}</p>
+ * <p>Instances are immutable and {@link #of(String)} interns them, so parsing cost is only paid once per distinct
+ * selector. Use {@link NbtPathBatch} to evaluate many paths which share common prefixes at once.</p>
  */
 public class NbtPath {
     private static final NbtPath IDENTITY_PATH = new NbtPath(Collections.emptyList());
+    /** Interned paths are not added past this many entries - protects against unbounded growth from generated selectors. */
+    private static final int MAX_INTERNED_PATHS = 4096;
+    private static final Map<String, NbtPath> INTERNED_PATHS = new ConcurrentHashMap<>();
 
-    protected List<Evaluator> evalChain;
+    private final List<Evaluator> evalChain;
+    /** Same content as evalChain - walked by index to avoid iterator allocation on every evaluation. */
+    private final Evaluator[] evaluators;
 
     protected NbtPath(List<Evaluator> evalChain) {
         this.evalChain = Collections.unmodifiableList(evalChain);
+        this.evaluators = evalChain.toArray(new Evaluator[0]);
+    }
+
+    /** @return number of steps in this path, 0 for the identity path. */
+    public int length() {
+        return evaluators.length;
+    }
+
+    /** @return evaluator chain backing array - callers must not modify it. */
+    Evaluator[] evaluators() {
+        return evaluators;
     }
 
     /**
@@ -48,10 +68,22 @@ public class NbtPath {
      * @param selector Use dots to separate names/keys and use array notation for indexing {@link ListTag}
      *                 and {@link ArrayTag}'s. Example: {@code "Level.Section[0].BlockLight"}
      *                 Colons are allowed in the path such as {@code Brain.memories.minecraft:home.value.pos}
-     * @return new {@link NbtPath}
+     * @return {@link NbtPath}, the same instance is returned for repeated calls with an equal selector.
      */
     public static NbtPath of(String selector) {
         if (selector == null || selector.isEmpty() || selector.equals(".")) return IDENTITY_PATH;
+        NbtPath path = INTERNED_PATHS.get(selector);
+        if (path == null) {
+            path = parse(selector);
+            if (INTERNED_PATHS.size() < MAX_INTERNED_PATHS) {
+                NbtPath existing = INTERNED_PATHS.putIfAbsent(selector, path);
+                if (existing != null) path = existing;
+            }
+        }
+        return path;
+    }
+
+    private static NbtPath parse(String selector) {
         List<Evaluator> evalChain = new ArrayList<>();
         int partPos = 0;
         String[] parts = selector.split("[.]", -1);
@@ -151,10 +183,11 @@ public class NbtPath {
     @SuppressWarnings("unchecked")
     public <R> R get(Tag<?> root) {
         Object node = root;
-        for (Evaluator evaluator : evalChain) {
+        final Evaluator[] chain = evaluators;
+        for (int i = 0; i < chain.length; i++) {
             if (node == null) return null;
-            if (!(node instanceof Tag)) throw new IllegalStateException("Expected TAG but was " + node.getClass().getTypeName() + "\n" + makeErrorHint(evaluator));
-            node = evaluator.eval((Tag<?>) node);
+            if (!(node instanceof Tag)) throw new IllegalStateException("Expected TAG but was " + node.getClass().getTypeName() + "\n" + makeErrorHint(i));
+            node = chain[i].eval((Tag<?>) node);
         }
         return (R) node;
     }
@@ -0,0 +1,136 @@
+package io.github.ensgijs.nbt.query;
+
+import io.github.ensgijs.nbt.query.evaluator.Evaluator;
+import io.github.ensgijs.nbt.tag.Tag;
+import io.github.ensgijs.nbt.util.ArgValidator;
+
+import java.util.*;
+
+/**
+ * Evaluates many {@link NbtPath}s against the same root in a single pass. The paths are compiled into a prefix
+ * tree so that shared prefixes, such as {@code Level} in {@code Level.xPos} and {@code Level.zPos}, are only
+ * evaluated once per call.
+ * <p>Instances are immutable and thread safe.</p>
+ * <pre>{@code
+ * NbtPathBatch batch = NbtPathBatch.of("Level.xPos", "Level.zPos", "Level.Status");
+ * Object[] values = batch.getAll(chunkData);
+ * }</pre>
+ */
+public class NbtPathBatch {
+    private final NbtPath[] paths;
+    private final Node root = new Node(null);
+
+    private static final class Node {
+        final Evaluator evaluator;
+        final List<Node> childList = new ArrayList<>();
+        Node[] children;
+        /** indexes into the results array which receive this node's value */
+        int[] resultSlots = new int[0];
+
+        Node(Evaluator evaluator) {
+            this.evaluator = evaluator;
+        }
+
+        Node child(Evaluator evaluator) {
+            // a path step is fully described by its string form - names can never contain brackets
+            String key = evaluator.toString();
+            for (Node child : childList) {
+                if (child.evaluator.toString().equals(key)) return child;
+            }
+            Node child = new Node(evaluator);
+            childList.add(child);
+            return child;
+        }
+
+        void freeze() {
+            children = childList.toArray(new Node[0]);
+            for (Node child : children) {
+                child.freeze();
+            }
+        }
+    }
+
+    /**
+     * @param paths paths to evaluate, null entries are allowed and always produce a null result - this is handy
+     *              when a path is not supported by some data version.
+     */
+    public NbtPathBatch(NbtPath... paths) {
+        this.paths = paths.clone();
+        for (int i = 0; i < this.paths.length; i++) {
+            NbtPath path = this.paths[i];
+            if (path == null) continue;
+            Node node = root;
+            for (Evaluator evaluator : path.evaluators()) {
+                node = node.child(evaluator);
+            }
+            node.resultSlots = Arrays.copyOf(node.resultSlots, node.resultSlots.length + 1);
+            node.resultSlots[node.resultSlots.length - 1] = i;
+        }
+        root.freeze();
+    }
+
+    /** @see #NbtPathBatch(NbtPath...) */
+    public NbtPathBatch(List<NbtPath> paths) {
+        this(paths.toArray(new NbtPath[0]));
+    }
+
+    /** Creates a batch from selector strings, see {@link NbtPath#of(String)}. */
+    public static NbtPathBatch of(String... selectors) {
+        NbtPath[] paths = new NbtPath[selectors.length];
+        for (int i = 0; i < selectors.length; i++) {
+            paths[i] = selectors[i] != null ? NbtPath.of(selectors[i]) : null;
+        }
+        return new NbtPathBatch(paths);
+    }
+
+    /** @return number of paths in this batch. */
+    public int size() {
+        return paths.length;
+    }
+
+    /** @return the path at the given position, may be null. */
+    public NbtPath getPath(int index) {
+        return paths[index];
+    }
+
+    /**
+     * Evaluates all paths against the given root.
+     * @return values in the same order the paths were given, see {@link NbtPath#get(Tag)} for the possible
+     * value types. Entries are null for paths which do not exist.
+     */
+    public Object[] getAll(Tag<?> root) {
+        Object[] results = new Object[paths.length];
+        getAll(root, results);
+        return results;
+    }
+
+    /**
+     * Evaluates all paths against the given root, writing values into the given array so that it may be reused.
+     * @param results array of at least {@link #size()} length. Every slot belonging to a path is overwritten.
+     */
+    public void getAll(Tag<?> root, Object[] results) {
+        ArgValidator.check(results.length >= paths.length, "results array is too small");
+        Arrays.fill(results, 0, paths.length, null);
+        if (root != null) eval(this.root, root, results);
+    }
+
+    private void eval(Node node, Object value, Object[] results) {
+        for (int slot : node.resultSlots) {
+            results[slot] = value;
+        }
+        if (node.children.length == 0) return;
+        if (!(value instanceof Tag)) {
+            throw new IllegalStateException("Expected TAG but was " + value.getClass().getTypeName()
+                    + "\n" + paths[firstSlot(node.children[0])]);
+        }
+        for (Node child : node.children) {
+            Object childValue = child.evaluator.eval((Tag<?>) value);
+            if (childValue != null) eval(child, childValue, results);
+        }
+    }
+
+    private static int firstSlot(Node node) {
+        while (node.resultSlots.length == 0) node = node.children[0];
+        return node.resultSlots[0];
+    }
+}
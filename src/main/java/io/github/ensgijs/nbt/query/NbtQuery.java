@@ -0,0 +1,377 @@
+package io.github.ensgijs.nbt.query;
+
+import io.github.ensgijs.nbt.tag.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Multi-match query over a tag tree. Where {@link NbtPath} selects exactly one value, a query may select any
+ * number of values and is evaluated lazily - matches are produced as the returned stream is consumed, so
+ * {@code findFirst()} and friends stop walking the tree as soon as they have an answer.
+ * <p>Syntax, a superset of {@link NbtPath} selectors:</p>
+ * <ul>
+ *     <li>{@code name} - child of a {@link CompoundTag}. Colons are allowed, {@code minecraft:home}.</li>
+ *     <li>{@code [3]} - element of a {@link ListTag} or {@link ArrayTag}.</li>
+ *     <li>{@code *} or {@code [*]} - every child of a {@link CompoundTag}, or every element of a {@link ListTag}
+ *     or {@link ArrayTag}.</li>
+ *     <li>{@code ..name} - recursive descent, every {@code name} child found at any depth below the current
+ *     tag. {@code ..*} selects every descendant.</li>
+ *     <li>{@code [?path=="text"]}, {@code [?path!=42]}, {@code [?path]} - every child whose value at the
+ *     relative {@link NbtPath} {@code path} equals, does not equal, or exists. Literals are double quoted strings
+ *     (use {@code \"} and {@code \\} to escape) or numbers.</li>
+ * </ul>
+ * <p>Examples: {@code sections[*].block_states}, {@code Entities[?id=="minecraft:zombie"].Pos},
+ * {@code block_entities..Items[?id=="minecraft:diamond"].count}.</p>
+ * <p>Instances are immutable, thread safe and interned by {@link #of(String)}.</p>
+ */
+public class NbtQuery {
+    /** Interned queries are not added past this many entries. */
+    private static final int MAX_INTERNED_QUERIES = 1024;
+    private static final Map<String, NbtQuery> INTERNED_QUERIES = new ConcurrentHashMap<>();
+
+    private final String query;
+    private final Step[] steps;
+
+    private NbtQuery(String query, Step[] steps) {
+        this.query = query;
+        this.steps = steps;
+    }
+
+    /**
+     * Parses the given query, see class documentation for syntax.
+     * @throws IllegalArgumentException if the query is malformed.
+     */
+    public static NbtQuery of(String query) {
+        if (query == null) query = "";
+        NbtQuery q = INTERNED_QUERIES.get(query);
+        if (q == null) {
+            q = new NbtQuery(query, new Parser(query).parse());
+            if (INTERNED_QUERIES.size() < MAX_INTERNED_QUERIES) {
+                NbtQuery existing = INTERNED_QUERIES.putIfAbsent(query, q);
+                if (existing != null) q = existing;
+            }
+        }
+        return q;
+    }
+
+    /**
+     * Lazily evaluates this query. Values are {@link Tag}s, or boxed primitives for elements of {@link ArrayTag}s.
+     * @param root tag to begin traversal from, may be null.
+     * @return sequential stream of matches in tree order, empty if nothing matched.
+     */
+    public Stream<Object> stream(Tag<?> root) {
+        if (root == null) return Stream.empty();
+        Stream<Object> stream = Stream.of(root);
+        for (Step step : steps) {
+            stream = stream.flatMap(step::apply);
+        }
+        return stream;
+    }
+
+    /** @return All matches, in tree order. */
+    public List<Object> getAll(Tag<?> root) {
+        List<Object> results = new ArrayList<>();
+        stream(root).forEach(results::add);
+        return results;
+    }
+
+    /** @return First match, in tree order, or null if there is none. */
+    @SuppressWarnings("unchecked")
+    public <R> R getFirst(Tag<?> root) {
+        return (R) stream(root).findFirst().orElse(null);
+    }
+
+    /** @return Number of matches. */
+    public long count(Tag<?> root) {
+        return stream(root).count();
+    }
+
+    /** @return True if the query matches anything. */
+    public boolean matches(Tag<?> root) {
+        return stream(root).findAny().isPresent();
+    }
+
+    @Override
+    public String toString() {
+        return query;
+    }
+
+    // <editor-fold desc="steps" defaultstate="collapsed">
+    @FunctionalInterface
+    private interface Step {
+        Stream<Object> apply(Object node);
+    }
+
+    private static Stream<Object> children(Object node) {
+        if (node instanceof CompoundTag compoundTag) {
+            return compoundTag.values().stream().map(t -> t);
+        }
+        if (node instanceof ListTag<?> listTag) {
+            return listTag.stream().map(t -> t);
+        }
+        if (node instanceof ByteArrayTag arrayTag) {
+            byte[] values = arrayTag.getValue();
+            return IntStream.range(0, values.length).mapToObj(i -> values[i]);
+        }
+        if (node instanceof IntArrayTag arrayTag) {
+            return IntStream.of(arrayTag.getValue()).boxed().map(v -> v);
+        }
+        if (node instanceof LongArrayTag arrayTag) {
+            return LongStream.of(arrayTag.getValue()).boxed().map(v -> v);
+        }
+        return Stream.empty();
+    }
+
+    /** The node itself followed by all of its descendant tags, depth first. */
+    private static Stream<Object> selfAndDescendants(Object node) {
+        if (node instanceof CompoundTag || node instanceof ListTag) {
+            return Stream.concat(Stream.of(node), children(node).flatMap(NbtQuery::selfAndDescendants));
+        }
+        return Stream.of(node);
+    }
+
+    private record NameStep(String key) implements Step {
+        public Stream<Object> apply(Object node) {
+            if (node instanceof CompoundTag compoundTag) {
+                Tag<?> child = compoundTag.get(key);
+                if (child != null) return Stream.of(child);
+            }
+            return Stream.empty();
+        }
+    }
+
+    private record IndexStep(int index) implements Step {
+        public Stream<Object> apply(Object node) {
+            if (node instanceof ListTag<?> listTag) {
+                return index < listTag.size() ? Stream.of(listTag.get(index)) : Stream.empty();
+            }
+            if (node instanceof ByteArrayTag arrayTag) {
+                return index < arrayTag.length() ? Stream.of(arrayTag.getValue()[index]) : Stream.empty();
+            }
+            if (node instanceof IntArrayTag arrayTag) {
+                return index < arrayTag.length() ? Stream.of(arrayTag.getValue()[index]) : Stream.empty();
+            }
+            if (node instanceof LongArrayTag arrayTag) {
+                return index < arrayTag.length() ? Stream.of(arrayTag.getValue()[index]) : Stream.empty();
+            }
+            return Stream.empty();
+        }
+    }
+
+    private record WildcardStep() implements Step {
+        public Stream<Object> apply(Object node) {
+            return children(node);
+        }
+    }
+
+    /** Every descendant of the node, but not the node itself - used for {@code ..*}. */
+    private record DescendStep() implements Step {
+        public Stream<Object> apply(Object node) {
+            return children(node).flatMap(NbtQuery::selfAndDescendants);
+        }
+    }
+
+    /** Recursive descent followed by a name is evaluated as "self and all descendants" then the name step. */
+    private record SelfAndDescendantsStep() implements Step {
+        public Stream<Object> apply(Object node) {
+            return selfAndDescendants(node);
+        }
+    }
+
+    private record FilterStep(NbtPath path, boolean negate, Object literal) implements Step {
+        public Stream<Object> apply(Object node) {
+            return children(node).filter(this::test);
+        }
+
+        private boolean test(Object child) {
+            if (!(child instanceof Tag<?> tag)) return false;
+            Object value;
+            try {
+                value = path.get(tag);
+            } catch (RuntimeException ex) {
+                // path walked through a primitive or a mistyped tag - treat as no value
+                value = null;
+            }
+            if (literal == null) return value != null;
+            return equalsLiteral(value) != negate;
+        }
+
+        private boolean equalsLiteral(Object value) {
+            if (literal instanceof String) {
+                return value instanceof StringTag stringTag && literal.equals(stringTag.getValue());
+            }
+            Number number = (Number) literal;
+            if (value instanceof NumberTag<?> numberTag) {
+                if (number instanceof Long && !(numberTag instanceof FloatTag) && !(numberTag instanceof DoubleTag)) {
+                    return numberTag.asLong() == number.longValue();
+                }
+                return numberTag.asDouble() == number.doubleValue();
+            }
+            if (value instanceof Number n) {
+                return n.longValue() == number.longValue() && number instanceof Long;
+            }
+            return false;
+        }
+    }
+    // </editor-fold>
+
+    /** Character level parser - bracketed predicates may contain dots and brackets within string literals. */
+    private static final class Parser {
+        private final String query;
+        private int pos;
+        private final List<Step> steps = new ArrayList<>();
+
+        Parser(String query) {
+            this.query = query;
+        }
+
+        private IllegalArgumentException error(String message, int at, int width) {
+            return new IllegalArgumentException(message + " at: " + NbtPath.markLocation(query, at, width));
+        }
+
+        private boolean peek(char c) {
+            return pos < query.length() && query.charAt(pos) == c;
+        }
+
+        private boolean peek(String s) {
+            return query.startsWith(s, pos);
+        }
+
+        Step[] parse() {
+            if (query.isEmpty() || query.equals(".")) return new Step[0];
+            boolean first = true;
+            while (pos < query.length()) {
+                if (peek("..")) {
+                    pos += 2;
+                    parseNameAfterDescent();
+                } else if (peek('.')) {
+                    if (first) throw error("unexpected dot", pos, 1);
+                    pos++;
+                    parseName(true);
+                } else if (peek('[')) {
+                    parseBracket();
+                } else if (first) {
+                    parseName(true);
+                } else {
+                    throw error("expected dot or bracket", pos, 0);
+                }
+                first = false;
+            }
+            return steps.toArray(new Step[0]);
+        }
+
+        private String readName() {
+            int start = pos;
+            while (pos < query.length()) {
+                char c = query.charAt(pos);
+                if (c == '.' || c == '[' || c == ']') break;
+                pos++;
+            }
+            return query.substring(start, pos);
+        }
+
+        private void parseName(boolean required) {
+            int start = pos;
+            String name = readName();
+            if (name.isEmpty()) {
+                if (required) throw error("expected name", start, 0);
+                return;
+            }
+            steps.add(name.equals("*") ? new WildcardStep() : new NameStep(name));
+        }
+
+        private void parseNameAfterDescent() {
+            int start = pos;
+            String name = readName();
+            if (name.isEmpty()) throw error("expected name or * after ..", start, 0);
+            if (name.equals("*")) {
+                steps.add(new DescendStep());
+            } else {
+                steps.add(new SelfAndDescendantsStep());
+                steps.add(new NameStep(name));
+            }
+        }
+
+        private void parseBracket() {
+            final int open = pos++;
+            if (peek("*]")) {
+                pos += 2;
+                steps.add(new WildcardStep());
+            } else if (peek('?')) {
+                pos++;
+                steps.add(parsePredicate(open));
+            } else {
+                int close = query.indexOf(']', pos);
+                if (close < 0) throw error("unclosed bracket", open, 1);
+                String valStr = query.substring(pos, close);
+                if (valStr.isEmpty() || !valStr.chars().allMatch(Character::isDigit))
+                    throw error("list index must be a positive number, * or ?predicate", pos, close - pos);
+                steps.add(new IndexStep(Integer.parseInt(valStr)));
+                pos = close + 1;
+            }
+        }
+
+        private Step parsePredicate(int open) {
+            int pathStart = pos;
+            int depth = 0;  // the path may contain its own index brackets
+            while (pos < query.length() && !peek("==") && !peek("!=") && !(depth == 0 && peek(']'))) {
+                if (peek('[')) depth++;
+                else if (peek(']')) depth--;
+                pos++;
+            }
+            if (pos >= query.length()) throw error("unclosed bracket", open, 1);
+            String pathStr = query.substring(pathStart, pos).trim();
+            if (pathStr.isEmpty()) throw error("expected predicate path", pathStart, 0);
+            NbtPath path = NbtPath.of(pathStr);
+            if (peek(']')) {
+                pos++;
+                return new FilterStep(path, false, null);
+            }
+            boolean negate = peek("!=");
+            pos += 2;
+            skipSpaces();
+            Object literal = peek('"') ? readString() : readNumber();
+            skipSpaces();
+            if (!peek(']')) throw error("expected ]", pos, 0);
+            pos++;
+            return new FilterStep(path, negate, literal);
+        }
+
+        private void skipSpaces() {
+            while (peek(' ')) pos++;
+        }
+
+        private String readString() {
+            int start = pos++;
+            StringBuilder sb = new StringBuilder();
+            while (pos < query.length()) {
+                char c = query.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c == '\\') {
+                    if (pos >= query.length()) break;
+                    c = query.charAt(pos++);
+                }
+                sb.append(c);
+            }
+            throw error("unclosed string", start, 1);
+        }
+
+        private Number readNumber() {
+            int start = pos;
+            while (pos < query.length() && " ]".indexOf(query.charAt(pos)) < 0) pos++;
+            String numStr = query.substring(start, pos);
+            try {
+                if (numStr.matches("[+-]?\\d+")) return Long.parseLong(numStr);
+                return Double.parseDouble(numStr);
+            } catch (NumberFormatException ex) {
+                throw error("expected a quoted string or number", start, pos - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.ensgijs.nbt.io;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+import io.github.ensgijs.nbt.tag.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+public class StreamingTextNbtWriterTest extends NbtTestCase {
+
+    private static CompoundTag makeSample() {
+        CompoundTag root = makeParsableSample();
+        root.putString("Alpha", "needs quotes: \"q\" \\ \n\t\r");
+        root.put("noList", new ListTag<>(IntTag.class));
+        return root;
+    }
+
+    /** the text nbt parser does not understand control character escapes or keep the type of empty lists */
+    private static CompoundTag makeParsableSample() {
+        CompoundTag root = new CompoundTag();
+        root.putString("zeta", "plain_value");
+        root.putString("Beta", "needs quotes: \"q\" \\ x");
+        root.putString("empty", "");
+        root.putString("7starts_with_digit", "7abc");
+        root.putByte("byte", (byte) -3);
+        root.putShort("short", (short) 300);
+        root.putInt("10", 10);
+        root.putInt("-2", -2);
+        root.putInt("+3", 3);
+        root.putLong("long", Long.MIN_VALUE);
+        root.putFloat("float", 1.5e10f);
+        root.putDouble("double", -0.25);
+        root.putString("name with space", "x");
+        root.putString("quote\"name", "y");
+        root.putByteArray("bytes", new byte[] {1, -2, 3});
+        root.putIntArray("ints", new int[] {4, 5});
+        root.putLongArray("longs", new long[] {6});
+        root.putIntArray("noInts", new int[0]);
+        root.put("noCompound", new CompoundTag());
+        ListTag<CompoundTag> list = new ListTag<>(CompoundTag.class);
+        CompoundTag a = new CompoundTag();
+        a.putString("b", "B");
+        a.putString("a", "A");
+        a.putString("A", "upper");
+        list.add(a);
+        list.add(new CompoundTag());
+        root.put("list", list);
+        ListTag<ListTag<?>> nested = new ListTag<>(ListTag.class);
+        ListTag<StringTag> inner = new ListTag<>(StringTag.class);
+        inner.addString("one");
+        inner.addString("two words");
+        nested.add(inner);
+        root.put("nested", nested);
+        return root;
+    }
+
+    private static String write(StreamingTextNbtWriter writer, NamedTag tag) throws IOException {
+        StringWriter sw = new StringWriter();
+        writer.write(tag, sw);
+        return sw.toString();
+    }
+
+    public void testMatchesToTextNbt() throws IOException {
+        CompoundTag tag = makeSample();
+        for (boolean pretty : new boolean[] {true, false}) {
+            for (boolean sorted : new boolean[] {true, false}) {
+                StreamingTextNbtWriter writer = new StreamingTextNbtWriter(pretty, sorted);
+                NamedTag unnamed = new NamedTag(null, tag);
+                NamedTag named = new NamedTag("root name", tag);
+                assertEquals(TextNbtHelpers.toTextNbt(unnamed, pretty, sorted), write(writer, unnamed));
+                assertEquals(TextNbtHelpers.toTextNbt(named, pretty, sorted), write(writer, named));
+                // reused instance must produce the same text
+                assertEquals(TextNbtHelpers.toTextNbt(unnamed, pretty, sorted), write(writer, unnamed));
+            }
+        }
+    }
+
+    public void testMatchesToTextNbt_realData() throws IOException {
+        String[] files = {
+                "mca_palettes/block_states-1.20.4-r.0.0_X6Y-3Z23_72entries.snbt",
+                "1_20_4/entities/double_passengers.snbt"
+        };
+        StreamingTextNbtWriter writer = new StreamingTextNbtWriter(true, true);
+        for (String file : files) {
+            NamedTag tag = deserializeFromFile(file);
+            assertEquals(file, TextNbtHelpers.toTextNbt(tag, true, true), write(writer, tag));
+        }
+    }
+
+    public void testScalarRoots() throws IOException {
+        StreamingTextNbtWriter writer = new StreamingTextNbtWriter(true, true);
+        Tag<?>[] tags = {new IntTag(5), new StringTag("hi there"), new IntArrayTag(), new ListTag<>(IntTag.class)};
+        for (Tag<?> tag : tags) {
+            StringWriter sw = new StringWriter();
+            writer.write(tag, sw);
+            assertEquals(TextNbtHelpers.toTextNbt(tag, true, true), sw.toString());
+        }
+    }
+
+    public void testWriteToOutputStream() throws IOException {
+        CompoundTag tag = makeSample();
+        tag.putString("unicode", "¿why?");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new StreamingTextNbtWriter(false, true).write(tag, out);
+        assertEquals(TextNbtHelpers.toTextNbt(tag, false, true), out.toString(StandardCharsets.UTF_8));
+    }
+
+    public void testRoundTrip() throws IOException {
+        CompoundTag tag = makeParsableSample();
+        StringWriter sw = new StringWriter();
+        new StreamingTextNbtWriter(true, false).write(tag, sw);
+        assertEquals(tag, TextNbtHelpers.fromTextNbt(sw.toString()).getTag());
+    }
+
+    public void testMaxDepth() {
+        CompoundTag root = new CompoundTag();
+        CompoundTag child = new CompoundTag();
+        CompoundTag grandchild = new CompoundTag();
+        grandchild.putInt("d", 1);
+        child.put("c", grandchild);
+        root.put("child", child);
+        StreamingTextNbtWriter writer = new StreamingTextNbtWriter(false, false, 2);
+        assertThrowsException(() -> writer.write(root, new StringWriter()), MaxDepthReachedException.class);
+        assertThrowsNoException(() -> new StreamingTextNbtWriter(false, false, 3).write(root, new StringWriter()));
+    }
+
+    public void testWriteTextNbtFile_reusedWriter() throws IOException {
+        StreamingTextNbtWriter writer = new StreamingTextNbtWriter(true, true);
+        CompoundTag tag = makeParsableSample();
+        File plain = getNewTmpFile("streaming_text_nbt_writer_test/sample.snbt");
+        File gz = getNewTmpFile("streaming_text_nbt_writer_test/sample.snbt.gz");
+        TextNbtHelpers.writeTextNbtFile(plain.toPath(), tag, writer);
+        TextNbtHelpers.writeTextNbtFile(gz.toPath(), tag, writer);
+        assertEquals(tag, TextNbtHelpers.readTextNbtFile(plain).getTag());
+        assertEquals(tag, TextNbtHelpers.readTextNbtFile(gz).getTag());
+    }
+}
@@ -4,6 +4,7 @@ import io.github.ensgijs.nbt.io.TextNbtHelpers;
 import io.github.ensgijs.nbt.mca.entities.Entity;
 import io.github.ensgijs.nbt.mca.entities.EntityBase;
 import io.github.ensgijs.nbt.mca.entities.EntityFactory;
+import io.github.ensgijs.nbt.mca.entities.EntityView;
 import io.github.ensgijs.nbt.mca.io.LoadFlags;
 import io.github.ensgijs.nbt.mca.io.MoveChunkFlags;
 import io.github.ensgijs.nbt.mca.util.ChunkBoundingRectangle;
@@ -177,6 +178,72 @@ public abstract class EntitiesChunkBaseTest<ET extends Entity, T extends Entitie
         chunk.clearEntities();
     }
 
+    public void testGetEntityViews() {
+        T chunk = createFilledChunk(1, 0, DataVersion.latest());
+        List<EntityView> views = chunk.getEntityViews();
+        assertFalse(chunk.areWrappedEntitiesGenerated());  // views don't trigger entity creation
+        assertEquals(2, views.size());
+        assertSame(views, chunk.getEntityViews());
+        assertEquals("minecraft:zombie", views.get(0).getId());
+        assertEquals(16 + 5, views.get(0).getX(), 1e-6);
+        assertEquals(68, views.get(0).getY(), 1e-6);
+        assertSame(chunk.getEntitiesTag().get(0), views.get(0).getHandle());
+        assertThrowsUnsupportedOperationException(() -> views.add(views.get(0)));
+
+        // upgrading a view is reused by getEntities
+        ET skeleton = views.get(1).toEntity();
+        assertFalse(chunk.areWrappedEntitiesGenerated());
+        assertSame(skeleton, chunk.getEntities().get(1));
+        assertTrue(views.get(0).isEntityCreated());
+    }
+
+    public void testGetEntityViews_afterGetEntities() {
+        T chunk = createFilledChunk(1, 0, DataVersion.latest());
+        List<ET> entities = chunk.getEntities();
+        List<EntityView> views = chunk.getEntityViews();
+        assertEquals(2, views.size());
+        assertSame(entities.get(0), views.get(0).toEntity());
+    }
+
+    public void testGetEntityViews_resetBySetAndClear() {
+        T chunk = createFilledChunk(1, 0, DataVersion.latest());
+        List<EntityView> views = chunk.getEntityViews();
+        chunk.clearEntities();
+        assertNotSame(views, chunk.getEntityViews());
+        assertTrue(chunk.getEntityViews().isEmpty());
+
+        List<ET> entities = new ArrayList<>();
+        entities.add(createEntity(DataVersion.latest().id(), "minecraft:pig", 20, 71, 3, 0, 0));
+        chunk.setEntities(entities);
+        assertEquals(1, chunk.getEntityViews().size());
+        assertEquals("minecraft:pig", chunk.getEntityViews().get(0).getId());
+    }
+
+    public void testGetEntityViews_followListChanges() {
+        T chunk = createFilledChunk(1, 0, DataVersion.latest());
+        List<EntityView> views = chunk.getEntityViews();
+        EntityView zombie = views.get(0);
+        chunk.getEntitiesTag().remove(1);
+        List<EntityView> afterRemove = chunk.getEntityViews();
+        assertEquals(2, views.size());  // snapshot
+        assertEquals(1, afterRemove.size());
+        assertSame(zombie, afterRemove.get(0));
+
+        // once wrapped, changes to the entities list are picked up too
+        List<ET> entities = chunk.getEntities();
+        entities.add(createEntity(DataVersion.latest().id(), "minecraft:pig", 20, 71, 3, 0, 0));
+        List<EntityView> afterAdd = chunk.getEntityViews();
+        assertEquals(2, afterAdd.size());
+        assertEquals("minecraft:pig", afterAdd.get(1).getId());
+        assertSame(entities.get(0), afterAdd.get(0).toEntity());
+        assertSame(afterAdd, chunk.getEntityViews());
+    }
+
+    public void testGetEntityViews_throwsWhenEntitiesNotLoaded() {
+        T chunk = createChunk(createTag(DataVersion.latest().id(), -4, 2), LoadFlags.BIOMES);
+        assertThrowsException(chunk::getEntityViews, IllegalStateException.class);
+    }
+
     public void testClearEntities() {
         T chunk = createFilledChunk(1, 0, DataVersion.latest());
         ListTag<CompoundTag> entitiesTag = chunk.getEntitiesTag();
@@ -1,6 +1,7 @@
 package io.github.ensgijs.nbt.mca;
 
 
+import io.github.ensgijs.nbt.mca.io.MoveChunkFlags;
 import io.github.ensgijs.nbt.tag.CompoundTag;
 import io.github.ensgijs.nbt.tag.ListTag;
 import io.github.ensgijs.nbt.util.Mutable;
@@ -434,6 +435,107 @@ public abstract class PoiChunkBaseTest<RT extends PoiRecord, T extends PoiChunkB
         assertFalse(chunk.iterator(null).hasNext());
     }
 
+    public void testIndexConsistency_addRemoveClear() {
+        T chunk = createChunk(DEFAULT_TEST_VERSION);
+        RT a = createPoiRecord(0, 64, 0, "A");
+        chunk.add(a);
+        assertSame(a, chunk.getFirst(0, 64, 0));  // builds the index
+        RT b = createPoiRecord(0, 64, 0, "B");
+        chunk.add(b);
+        assertEquals(2, chunk.getAll(0, 64, 0).size());
+        assertEquals(1, chunk.getAll("B").size());
+
+        assertTrue(chunk.remove(a));
+        assertSame(b, chunk.getFirst(0, 64, 0));
+        assertTrue(chunk.getAll("A").isEmpty());
+        assertFalse(chunk.contains(a));
+
+        Iterator<RT> iter = chunk.iterator();
+        iter.next();
+        iter.remove();
+        assertNull(chunk.getFirst(0, 64, 0));
+        assertTrue(chunk.getAll("B").isEmpty());
+
+        chunk.add(a);
+        chunk.clear();
+        assertNull(chunk.getFirst(0, 64, 0));
+        chunk.set(List.of(a, b));
+        assertSame(a, chunk.getFirst(0, 64, 0));
+        assertSame(b, chunk.getAll("B").get(0));
+    }
+
+    public void testIndexConsistency_negativeAndExtremeCoords() {
+        T chunk = createChunk(DEFAULT_TEST_VERSION);
+        RT a = createPoiRecord(-29_999_999, -2048, 29_999_999, "A");
+        RT b = createPoiRecord(29_999_999, 2047, -29_999_999, "A");
+        chunk.add(a);
+        chunk.add(b);
+        assertSame(a, chunk.getFirst(-29_999_999, -2048, 29_999_999));
+        assertSame(b, chunk.getFirst(29_999_999, 2047, -29_999_999));
+        assertNull(chunk.getFirst(-29_999_999, 2047, 29_999_999));
+    }
+
+    public void testIndexConsistency_recordMutation() {
+        T chunk = createChunk(DEFAULT_TEST_VERSION);
+        RT a = createPoiRecord(0, 64, 0, "A");
+        chunk.add(a);
+        assertSame(a, chunk.getFirst(0, 64, 0));
+        a.setX(5);
+        assertNull(chunk.getFirst(0, 64, 0));  // never returns a record which does not match
+        assertSame(a, chunk.getFirst(5, 64, 0));
+        a.setYXZ(6, 70, 7);
+        assertSame(a, chunk.getFirst(6, 70, 7));
+        assertTrue(chunk.contains(createPoiRecord(6, 70, 7, "A")));
+        a.setType("Z");
+        assertTrue(chunk.getAll("A").isEmpty());
+        assertEquals(List.of(a), chunk.getAll("Z"));
+        assertTrue(chunk.remove(a));
+        assertTrue(chunk.isEmpty());
+        assertTrue(chunk.getAll("Z").isEmpty());
+        // no longer held, changing it does not affect the chunk
+        a.setX(0);
+        assertNull(chunk.getFirst(0, 70, 7));
+    }
+
+    public void testIndexConsistency_mutateRecordsFromGetAll() {
+        T chunk = createFilledChunk(-65, -42, DEFAULT_TEST_VERSION);
+        assertNotNull(chunk.getFirst(-1031, 71, -667));
+        for (RT record : chunk.getAll()) {
+            if (record.matches("minecraft:nether_portal")) {
+                record.setY(record.getY() + 100);
+            }
+        }
+        assertNull(chunk.getFirst(-1031, 71, -667));
+        assertNotNull(chunk.getFirst(-1031, 171, -667));
+        assertEquals(2, chunk.getAll(-1031, 172, -668).size() + chunk.getAll(-1031, 173, -667).size());
+        assertTrue(chunk.removeAll(-1031, 173, -668));
+        assertEquals(5, chunk.getAll("minecraft:nether_portal").size());
+    }
+
+    public void testIndexConsistency_recordHeldByTwoChunks() {
+        T chunkA = createChunk(DEFAULT_TEST_VERSION);
+        T chunkB = createChunk(DEFAULT_TEST_VERSION);
+        RT a = createPoiRecord(0, 64, 0, "A");
+        chunkA.add(a);
+        chunkB.add(a);
+        assertSame(a, chunkA.getFirst(0, 64, 0));
+        assertSame(a, chunkB.getFirst(0, 64, 0));
+        a.setZ(9);
+        assertSame(a, chunkA.getFirst(0, 64, 9));
+        assertSame(a, chunkB.getFirst(0, 64, 9));
+        assertNull(chunkA.getFirst(0, 64, 0));
+        assertNull(chunkB.getFirst(0, 64, 0));
+    }
+
+    public void testIndexConsistency_moveChunk() {
+        T chunk = createFilledChunk(-65, -42, DEFAULT_TEST_VERSION);
+        assertNotNull(chunk.getFirst(-1032, 63, -667));
+        assertTrue(chunk.moveChunk(-65 + 32, -42, MoveChunkFlags.MOVE_CHUNK_DEFAULT_FLAGS));
+        assertNull(chunk.getFirst(-1032, 63, -667));
+        assertNotNull(chunk.getFirst(-1032 + 512, 63, -667));
+        assertEquals(6, chunk.getAll("minecraft:nether_portal").size());
+    }
+
     public void testUpdateHandle() {
         // identity
         CompoundTag expectedTag = createTag(DEFAULT_TEST_VERSION.id(), -65, -42);
@@ -7,6 +7,8 @@ import io.github.ensgijs.nbt.tag.ListTag;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class EntityFactoryTest extends McaTestCase {
 
@@ -183,6 +185,83 @@ public class EntityFactoryTest extends McaTestCase {
         assertTrue(EntityFactory.getRegisteredCreatorIdKeys().contains("ZOO"));
     }
 
+    public void testGetRegisteredCreatorIdKeys_isUnmodifiableSnapshot() {
+        EntityFactory.registerCreator(new EntityCreatorStub("A"), "FOO");
+        var keys = EntityFactory.getRegisteredCreatorIdKeys();
+        assertThrowsException(() -> keys.add("BAR"), UnsupportedOperationException.class);
+        EntityFactory.registerCreator(new EntityCreatorStub("B"), "BAR");
+        assertEquals(1, keys.size());
+        assertEquals(2, EntityFactory.getRegisteredCreatorIdKeys().size());
+    }
+
+    public void testNormalizeId_cachedResultsMatch() {
+        for (int i = 0; i < 2; i++) {
+            assertEquals("PIG", EntityFactory.normalizeId("minecraft:pig"));
+            assertEquals("PIG", EntityFactory.normalizeId("MineCraft:Pig"));
+            assertEquals("PIG", EntityFactory.normalizeId("pig"));
+            assertSame(EntityFactory.normalizeId("minecraft:pig"), EntityFactory.normalizeId("minecraft:pig"));
+            assertThrowsException(() -> EntityFactory.normalizeId("minecraft:"), IllegalArgumentException.class);
+        }
+    }
+
+    public void testCreate_seesRegistrationsMadeAfterIdWasCached() {
+        CompoundTag tag = new CompoundTag();
+        tag.putString("id", "minecraft:muggle");
+        EntityStub entityStub = EntityFactory.createAutoCast(tag, DataVersion.latest().id());
+        assertSame(defaultedCreator, entityStub.creator);
+        assertEquals("MUGGLE", entityStub.givenNormalizedId);
+
+        EntityFactory.registerIdRemap("muggle", "non_wizard");
+        entityStub = EntityFactory.createAutoCast(tag, DataVersion.latest().id());
+        assertSame(defaultedCreator, entityStub.creator);
+        assertEquals("NON_WIZARD", entityStub.givenNormalizedId);
+
+        EntityCreatorStub ec = new EntityCreatorStub(getName());
+        EntityFactory.registerCreator(ec, "non_wizard");
+        entityStub = EntityFactory.createAutoCast(tag, DataVersion.latest().id());
+        assertSame(ec, entityStub.creator);
+        assertEquals("NON_WIZARD", entityStub.givenNormalizedId);
+    }
+
+    public void testRegisterIdRemap_failedChangeLeavesRegistryUntouched() {
+        EntityFactory.registerIdRemap("Muggle", "non_wizard");
+        assertThrowsException(() -> EntityFactory.registerIdRemap("non_wizard", "wizard"), IllegalArgumentException.class);
+        assertEquals("NON_WIZARD", EntityFactory.normalizeAndRemapId("muggle"));
+        assertEquals("NON_WIZARD", EntityFactory.normalizeAndRemapId("non_wizard"));
+    }
+
+    public void testCreate_concurrentWithRegistration() throws Exception {
+        EntityCreatorStub ec = new EntityCreatorStub(getName());
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                CompoundTag tag = new CompoundTag();
+                tag.putString("id", "minecraft:foo");
+                try {
+                    while (!stop.get()) {
+                        EntityStub entityStub = EntityFactory.createAutoCast(tag, DataVersion.latest().id());
+                        assertTrue(entityStub.creator == ec || entityStub.creator == defaultedCreator);
+                        assertEquals("FOO", entityStub.givenNormalizedId);
+                    }
+                } catch (Throwable ex) {
+                    failure.compareAndSet(null, ex);
+                }
+            });
+            readers[t].start();
+        }
+        for (int i = 0; i < 200; i++) {
+            EntityFactory.registerCreator(ec, "foo", "bar" + i);
+        }
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+        assertEquals(201, EntityFactory.getRegisteredCreatorIdKeys().size());
+    }
+
     public void testCreate() {
         CompoundTag tag = new CompoundTag();
         tag.putString("id", "whatever");
@@ -0,0 +1,83 @@
+package io.github.ensgijs.nbt.mca.entities;
+
+import io.github.ensgijs.nbt.mca.DataVersion;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+
+import java.util.UUID;
+
+public class EntityViewTest extends McaTestCase {
+    private static final int DATA_VERSION = DataVersion.JAVA_1_20_4.id();
+
+    private static CompoundTag makeTag(String id, double x, double y, double z) {
+        return new EntityBase(DATA_VERSION, id, x, y, z, 0, 0).updateHandle();
+    }
+
+    public void testGetters() {
+        CompoundTag tag = makeTag("minecraft:zombie", 1.5, 64, -3.25);
+        EntityView view = new EntityView(tag, DATA_VERSION);
+        assertSame(tag, view.getHandle());
+        assertEquals(DATA_VERSION, view.getDataVersion());
+        assertEquals("minecraft:zombie", view.getId());
+        assertEquals(EntityUtil.getUuid(DATA_VERSION, tag), view.getUuid());
+        assertNotNull(view.getUuid());
+        assertTrue(view.hasPosition());
+        assertEquals(1.5, view.getX(), 1e-9);
+        assertEquals(64, view.getY(), 1e-9);
+        assertEquals(-3.25, view.getZ(), 1e-9);
+        assertFalse(view.hasPassengers());
+        assertFalse(view.isEntityCreated());
+    }
+
+    public void testIsId() {
+        EntityView view = new EntityView(makeTag("minecraft:zombie", 0, 0, 0), DATA_VERSION);
+        assertTrue(view.isId("minecraft:zombie"));
+        assertTrue(view.isId("ZOMBIE"));
+        assertFalse(view.isId("minecraft:skeleton"));
+        assertFalse(view.isId(null));
+    }
+
+    public void testReadsThrough() {
+        CompoundTag tag = makeTag("minecraft:zombie", 1, 2, 3);
+        EntityView view = new EntityView(tag, DATA_VERSION);
+        tag.putString("id", "minecraft:husk");
+        UUID uuid = UUID.randomUUID();
+        EntityUtil.setUuid(DATA_VERSION, tag, uuid);
+        assertEquals("minecraft:husk", view.getId());
+        assertEquals(uuid, view.getUuid());
+    }
+
+    public void testMissingData() {
+        EntityView view = new EntityView(new CompoundTag(), DATA_VERSION);
+        assertNull(view.getId());
+        assertNull(view.getUuid());
+        assertFalse(view.hasPosition());
+        assertTrue(Double.isNaN(view.getX()));
+        assertFalse(view.isId("minecraft:zombie"));
+    }
+
+    public void testPassengersAreNotParsedUntilUpgraded() {
+        CompoundTag tag = makeTag("minecraft:boat", 1, 2, 3);
+        ListTag<CompoundTag> passengers = new ListTag<>(CompoundTag.class);
+        passengers.add(makeTag("minecraft:pig", 1, 2, 3));
+        tag.put("Passengers", passengers);
+        EntityView view = new EntityView(tag, DATA_VERSION);
+        assertTrue(view.hasPassengers());
+
+        Entity entity = view.toEntity();
+        assertTrue(view.isEntityCreated());
+        assertSame(entity, view.toEntity());
+        assertSame(tag, entity.getHandle());
+        assertEquals(1, entity.getPassengers().size());
+    }
+
+    public void testFromEntity() {
+        EntityBase entity = new EntityBase(DATA_VERSION, "minecraft:pig", 4, 5, 6, 0, 0);
+        EntityView view = new EntityView(entity, DATA_VERSION);
+        assertTrue(view.isEntityCreated());
+        assertSame(entity, view.toEntity());
+        assertEquals("minecraft:pig", view.getId());
+        assertEquals(5, view.getY(), 1e-9);
+    }
+}
@@ -0,0 +1,161 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.SilentIOException;
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.PoiChunk;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+public class AsyncRandomAccessMcaFileTest extends McaTestCase {
+
+    public void testReadAsync_matchesSyncRead() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        ExecutorService io = Executors.newFixedThreadPool(2);
+        try (var syncMca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r");
+             var asyncMca = new AsyncRandomAccessMcaFile<>(
+                     new RandomAccessMcaFile<>(TerrainChunk.class, file, "r"), io, ForkJoinPool.commonPool())) {
+            List<CompletableFuture<TerrainChunk>> futures = new ArrayList<>();
+            for (int i = 0; i < 1024; i++) {
+                futures.add(asyncMca.readAsync(i));
+            }
+            for (int i = 0; i < 1024; i++) {
+                TerrainChunk expected = syncMca.read(i);
+                TerrainChunk actual = futures.get(i).join();
+                if (expected == null) {
+                    assertNull(actual);
+                } else {
+                    assertNotNull(actual);
+                    assertEquals(expected.getChunkXZ(), actual.getChunkXZ());
+                    assertEquals(expected.getLastMCAUpdate(), actual.getLastMCAUpdate());
+                    assertEquals(expected.getHandle(), actual.getHandle());
+                }
+            }
+        } finally {
+            io.shutdown();
+        }
+    }
+
+    public void testReadAllAsync() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/poi/r.-3.-3.mca");
+        try (var asyncMca = new AsyncRandomAccessMcaFile<>(new RandomAccessMcaFile<>(PoiChunk.class, file, "r"))) {
+            List<PoiChunk> chunks = asyncMca.readAllAsync().join();
+            assertEquals(6, chunks.size());
+            for (int i = 1; i < chunks.size(); i++) {
+                assertTrue(chunks.get(i - 1).getIndex() < chunks.get(i).getIndex());
+            }
+        }
+    }
+
+    public void testWriteAsync_roundTrip() throws IOException {
+        File srcFile = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        File dstFile = getNewTmpFile("region/r.-3.-3.mca");
+        List<TerrainChunk> expected;
+        try (var src = new AsyncRandomAccessMcaFile<>(new RandomAccessMcaFile<>(TerrainChunk.class, srcFile, "r"))) {
+            expected = src.readAllAsync().join();
+        }
+        assertFalse(expected.isEmpty());
+        try (var dst = new AsyncRandomAccessMcaFile<>(new RandomAccessMcaFile<>(TerrainChunk.class, dstFile, "rw"))) {
+            List<CompletableFuture<Void>> writes = new ArrayList<>();
+            for (TerrainChunk chunk : expected) {
+                writes.add(dst.writeAsync(chunk));
+            }
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+            dst.flushAsync().join();
+        }
+        try (var check = new RandomAccessMcaFile<>(TerrainChunk.class, dstFile, "r")) {
+            for (TerrainChunk chunk : expected) {
+                TerrainChunk actual = check.read(chunk.getIndex());
+                assertNotNull(actual);
+                assertEquals(chunk.getLastMCAUpdate(), actual.getLastMCAUpdate());
+                assertEquals(chunk.getHandle(), actual.getHandle());
+            }
+        }
+    }
+
+    public void testWriteAsync_laterWriteOfSameChunkWins() throws IOException {
+        File srcFile = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        File dstFile = getNewTmpFile("region/r.-3.-3.mca");
+        TerrainChunk older;
+        TerrainChunk newer;
+        try (var src = new RandomAccessMcaFile<>(TerrainChunk.class, srcFile, "r")) {
+            int index = 0;
+            while (!src.hasChunk(index)) index++;
+            older = src.read(index);
+            newer = src.read(index);
+        }
+        final int x = older.getChunkX() << 4;
+        final int z = older.getChunkZ() << 4;
+        newer.setBlockAt(x, 300, z, block("minecraft:gold_block"));
+        // serializes the second write first, then the first
+        final List<Runnable> held = new ArrayList<>();
+        Executor cpu = task -> {
+            if (held.isEmpty()) {
+                held.add(task);
+            } else {
+                new Thread(() -> {
+                    task.run();
+                    held.get(0).run();
+                }).start();
+            }
+        };
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        try (var dst = new AsyncRandomAccessMcaFile<>(new RandomAccessMcaFile<>(TerrainChunk.class, dstFile, "rw"), io, cpu)) {
+            CompletableFuture<Void> first = dst.writeAsync(older);
+            CompletableFuture<Void> second = dst.writeAsync(newer);
+            dst.flushAsync().join();
+            assertTrue(first.isDone());
+            assertTrue(second.isDone());
+        } finally {
+            io.shutdown();
+        }
+        try (var check = new RandomAccessMcaFile<>(TerrainChunk.class, dstFile, "r")) {
+            TerrainChunk actual = check.read(older.getIndex());
+            assertEquals("minecraft:gold_block", actual.getBlockNameAt(x, 300, z));
+        }
+    }
+
+    public void testWriteRawAsync_copiesChunk() throws IOException {
+        File srcFile = super.copyResourceToTmp("1_20_4/poi/r.-3.-3.mca");
+        File dstFile = getNewTmpFile("poi/r.-3.-3.mca");
+        try (var src = new AsyncRandomAccessMcaFile<>(new RandomAccessMcaFile<>(PoiChunk.class, srcFile, "r"));
+             var dst = new AsyncRandomAccessMcaFile<>(new RandomAccessMcaFile<>(PoiChunk.class, dstFile, "rw"))) {
+            final int index = McaFileBase.getChunkIndex(14, 29);
+            byte[] raw = src.readRawAsync(index).join();
+            dst.writeRawAsync(index, raw, 1234).join();
+            assertEquals(1234, dst.getFile().getChunkTimestamp(index));
+            assertEquals(src.readAsync(index).join().getHandle(), dst.readAsync(index).join().getHandle());
+        }
+    }
+
+    public void testWriteAsync_readOnlyThrows() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/poi/r.-3.-3.mca");
+        try (var asyncMca = new AsyncRandomAccessMcaFile<>(new RandomAccessMcaFile<>(PoiChunk.class, file, "r"))) {
+            PoiChunk chunk = asyncMca.readAllAsync().join().get(0);
+            assertThrowsException(() -> asyncMca.writeAsync(chunk), IOException.class);
+        }
+    }
+
+    public void testReadAsync_corruptDataCompletesExceptionally() throws IOException {
+        File dstFile = getNewTmpFile("poi/r.-3.-3.mca");
+        try (var dst = new AsyncRandomAccessMcaFile<>(new RandomAccessMcaFile<>(PoiChunk.class, dstFile, "rw"))) {
+            dst.writeRawAsync(0, new byte[] {2, 1, 2, 3}, 1).join();
+            try {
+                dst.readAsync(0).join();
+                fail();
+            } catch (CompletionException ex) {
+                assertTrue(ex.getCause() instanceof SilentIOException);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.util.IntPointXYZ;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.ensgijs.nbt.mca.util.IntPointXZ.XZ;
+
+public class BlockPaletteIndexTest extends McaTestCase {
+
+    private Path createTestWorld() throws IOException {
+        Path worldRoot = getNewTmpDirectory().toPath();
+        Path regionDir = Files.createDirectories(worldRoot.resolve("region"));
+        Files.copy(copyResourceToTmp("1_20_4/region/r.-3.-3.mca").toPath(), regionDir.resolve("r.-3.-3.mca"));
+        return worldRoot;
+    }
+
+    private static TerrainChunk firstChunk(Path worldRoot) throws IOException {
+        try (var ramf = new RandomAccessMcaFile<>(TerrainChunk.class, worldRoot.resolve("region/r.-3.-3.mca"), "r")) {
+            for (TerrainChunk chunk : ramf) {
+                if (chunk != null) return chunk;
+            }
+        }
+        fail("no chunks");
+        return null;
+    }
+
+    public void testCountsMatchChunkData() throws IOException {
+        Path worldRoot = createTestWorld();
+        BlockPaletteIndex index = BlockPaletteIndex.build(worldRoot, true);
+        assertTrue(index.isCountBlocks());
+        assertEquals(1, index.getRegionCount());
+        assertTrue(index.getKnownBlockNames().contains("minecraft:stone"));
+
+        TerrainChunk chunk = firstChunk(worldRoot);
+        IntPointXZ chunkXZ = XZ(chunk.getChunkX(), chunk.getChunkZ());
+        int sectionY = chunk.getChunkY();
+        Map<String, Integer> histogram = index.getSectionHistogram(chunkXZ, sectionY);
+        assertEquals(4096, histogram.values().stream().mapToInt(Integer::intValue).sum());
+        for (Map.Entry<String, Integer> e : histogram.entrySet()) {
+            assertEquals(e.getKey(), (long) e.getValue(), chunk.getSection(sectionY).getBlockStates()
+                    .countIf(t -> t.getString("Name").equals(e.getKey())));
+        }
+        assertEquals(histogram.keySet(), index.getBlockNames(chunkXZ, sectionY));
+
+        long stone = index.getTotals().get("minecraft:stone");
+        assertTrue(stone >= index.getChunkHistogram(chunkXZ).get("minecraft:stone"));
+        assertTrue(index.getSectionHistogram(chunkXZ, 1000).isEmpty());
+        assertTrue(index.getChunkHistogram(XZ(1000, 1000)).isEmpty());
+    }
+
+    public void testFind() throws IOException {
+        BlockPaletteIndex index = BlockPaletteIndex.build(createTestWorld(), true);
+        List<IntPointXZ> stoneChunks = index.findChunks("minecraft:stone");
+        assertFalse(stoneChunks.isEmpty());
+        assertTrue(index.mayContain(XZ(-3, -3), "minecraft:stone"));
+        assertFalse(index.mayContain(XZ(-3, -3), "minecraft:not_a_block"));
+        assertFalse(index.mayContain(XZ(0, 0), "minecraft:stone"));
+        assertTrue(index.findChunks("minecraft:not_a_block").isEmpty());
+
+        List<IntPointXYZ> sections = index.findSections("minecraft:stone");
+        assertTrue(sections.size() >= stoneChunks.size());
+        for (IntPointXYZ xyz : sections) {
+            IntPointXZ chunkXZ = XZ(xyz.getX(), xyz.getZ());
+            assertTrue(stoneChunks.contains(chunkXZ));
+            assertTrue(index.getSectionHistogram(chunkXZ, xyz.getY()).get("minecraft:stone") > 0);
+        }
+    }
+
+    public void testPaletteOnlyIndex() throws IOException {
+        Path worldRoot = createTestWorld();
+        BlockPaletteIndex counted = BlockPaletteIndex.build(worldRoot, true);
+        BlockPaletteIndex palettes = BlockPaletteIndex.build(worldRoot, false);
+        assertFalse(palettes.isCountBlocks());
+        // a palette lists every block present, and possibly more
+        assertTrue(palettes.findChunks("minecraft:stone").containsAll(counted.findChunks("minecraft:stone")));
+        assertThrowsException(palettes::getTotals, UnsupportedOperationException.class);
+        assertThrowsException(() -> palettes.getChunkHistogram(XZ(-96, -96)), UnsupportedOperationException.class);
+    }
+
+    public void testSaveLoad() throws IOException {
+        Path worldRoot = createTestWorld();
+        for (boolean countBlocks : new boolean[] {true, false}) {
+            BlockPaletteIndex index = BlockPaletteIndex.build(worldRoot, countBlocks);
+            Path indexFile = getNewTmpFile("block_palette_index.dat").toPath();
+            index.save(indexFile);
+            BlockPaletteIndex loaded = BlockPaletteIndex.load(indexFile, worldRoot);
+            assertEquals(countBlocks, loaded.isCountBlocks());
+            assertEquals(index.getKnownBlockNames(), loaded.getKnownBlockNames());
+            assertEquals(index.findSections("minecraft:stone", "minecraft:dirt"),
+                    loaded.findSections("minecraft:stone", "minecraft:dirt"));
+            if (countBlocks) assertEquals(index.getTotals(), loaded.getTotals());
+            assertEquals(0, loaded.update());  // nothing changed on disk
+        }
+    }
+
+    public void testUpdate_incremental() throws IOException {
+        Path worldRoot = createTestWorld();
+        BlockPaletteIndex index = new BlockPaletteIndex(worldRoot, true);
+        int chunkCount = index.update();
+        assertTrue(chunkCount > 0);
+        assertEquals(0, index.update());
+
+        File regionFile = worldRoot.resolve("region/r.-3.-3.mca").toFile();
+        TerrainChunk chunk = firstChunk(worldRoot);
+        final int x = chunk.getChunkX() * 16;
+        final int y = chunk.getChunkY() * 16;
+        final int z = chunk.getChunkZ() * 16;
+        try (var ramf = new RandomAccessMcaFile<>(TerrainChunk.class, regionFile, "rw")) {
+            TerrainChunk edited = ramf.read(McaFileBase.getChunkIndex(chunk.getChunkX(), chunk.getChunkZ()));
+            edited.setBlockAt(x, y, z, block("minecraft:spawner"));
+            edited.setLastMCAUpdate(edited.getLastMCAUpdate() + 1);
+            ramf.write(edited);
+        }
+        assertTrue(regionFile.setLastModified(regionFile.lastModified() + 5000));
+        assertTrue(index.findChunks("minecraft:spawner").isEmpty());
+        assertEquals(1, index.update());  // only the changed chunk is re-read
+        assertEquals(List.of(XZ(chunk.getChunkX(), chunk.getChunkZ())), index.findChunks("minecraft:spawner"));
+        assertEquals(1, (int) index.getSectionHistogram(XZ(chunk.getChunkX(), chunk.getChunkZ()), chunk.getChunkY())
+                .get("minecraft:spawner"));
+
+        Files.delete(regionFile.toPath());
+        assertEquals(0, index.update());
+        assertEquals(0, index.getRegionCount());
+    }
+}
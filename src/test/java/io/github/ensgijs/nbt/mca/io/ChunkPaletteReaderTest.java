@@ -0,0 +1,91 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.TerrainSection;
+import io.github.ensgijs.nbt.mca.util.PalettizedCuboid;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.io.IOException;
+import java.util.*;
+
+public class ChunkPaletteReaderTest extends McaTestCase {
+
+    /** Block counts by name of every section with block states, decoded the regular way. */
+    private static Map<Integer, Map<String, Integer>> fullDecode(TerrainChunk chunk) {
+        Map<Integer, Map<String, Integer>> result = new HashMap<>();
+        for (TerrainSection section : chunk) {
+            PalettizedCuboid<CompoundTag> blockStates = section.getBlockStates();
+            if (blockStates == null) continue;
+            Map<String, Integer> counts = new HashMap<>();
+            for (CompoundTag state : blockStates.stream().toList()) {
+                counts.merge(state.getString("Name"), 1, Integer::sum);
+            }
+            result.put(section.getSectionY(), counts);
+        }
+        return result;
+    }
+
+    private static Map<String, Integer> toMap(ChunkPaletteReader.Section section) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < section.blockNames().length; i++) {
+            counts.put(section.blockNames()[i], section.blockCounts()[i]);
+        }
+        return counts;
+    }
+
+    private void assertMatchesFullDecode(String mcaResource) throws IOException {
+        ChunkPaletteReader counting = new ChunkPaletteReader(true);
+        ChunkPaletteReader paletteOnly = new ChunkPaletteReader(false);
+        int sectionsCompared = 0;
+        try (RandomAccessMcaFile<TerrainChunk> ramf =
+                     new RandomAccessMcaFile<>(TerrainChunk.class, copyResourceToTmp(mcaResource), "r")) {
+            for (int i = 0; i < 1024; i++) {
+                byte[] raw = ramf.readRaw(i);
+                if (raw == null) continue;
+                Map<Integer, Map<String, Integer>> expected = fullDecode(ramf.read(i));
+                List<ChunkPaletteReader.Section> counted = counting.read(raw);
+                List<ChunkPaletteReader.Section> palettes = paletteOnly.read(raw);
+                assertEquals(expected.size(), counted.size());
+                assertEquals(counted.size(), palettes.size());
+                for (int s = 0; s < counted.size(); s++) {
+                    ChunkPaletteReader.Section section = counted.get(s);
+                    assertEquals(mcaResource + " chunk " + i + " section " + section.sectionY(),
+                            expected.get(section.sectionY()), toMap(section));
+                    assertEquals(section.sectionY(), palettes.get(s).sectionY());
+                    assertNull(palettes.get(s).blockCounts());
+                    assertTrue(Set.of(palettes.get(s).blockNames()).containsAll(Set.of(section.blockNames())));
+                    sectionsCompared++;
+                }
+            }
+        }
+        assertTrue(sectionsCompared > 0);
+    }
+
+    public void testMatchesFullDecode_1_15_2() throws IOException {
+        assertMatchesFullDecode("1_15_2/region/r.0.0.mca");
+    }
+
+    public void testMatchesFullDecode_1_17_1() throws IOException {
+        assertMatchesFullDecode("1_17_1/region/r.-3.-2.mca");
+    }
+
+    public void testMatchesFullDecode_1_20_4() throws IOException {
+        assertMatchesFullDecode("1_20_4/region/r.-3.-3.mca");
+    }
+
+    public void testPreFlatteningChunksHaveNoPalettes() throws IOException {
+        ChunkPaletteReader reader = new ChunkPaletteReader(true);
+        try (RandomAccessMcaFile<TerrainChunk> ramf =
+                     new RandomAccessMcaFile<>(TerrainChunk.class, copyResourceToTmp("1_12_2/region/r.0.0.mca"), "r")) {
+            for (int i = 0; i < 1024; i++) {
+                byte[] raw = ramf.readRaw(i);
+                if (raw != null) assertTrue(reader.read(raw).isEmpty());
+            }
+        }
+    }
+
+    public void testInvalidCompressionType() {
+        assertThrowsException(() -> new ChunkPaletteReader(false).read(new byte[] {42, 0, 0}), IOException.class);
+    }
+}
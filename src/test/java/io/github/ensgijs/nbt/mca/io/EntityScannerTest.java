@@ -0,0 +1,67 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.entities.EntityView;
+import io.github.ensgijs.nbt.mca.util.ChunkBoundingRectangle;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+import io.github.ensgijs.nbt.mca.util.RegionBoundingRectangle;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class EntityScannerTest extends McaTestCase {
+
+    private EntityScanner createScanner() throws IOException {
+        // 17 entities spread over 5 chunks
+        Path worldRoot = copyResourceToTmp("1_20_4/entities/r.-3.-3.mca").getParentFile().getParentFile().toPath();
+        return new EntityScanner(worldRoot);
+    }
+
+    public void testScan_wholeWorld() throws IOException {
+        EntityScanner scanner = createScanner();
+        assertEquals(17, scanner.scan(null).count());
+        assertEquals(7, scanner.scan(null, "minecraft:pillager").count());
+        assertEquals(4, scanner.scan(null, "Chicken").count());
+        assertEquals(11, scanner.scan(null, "minecraft:pillager", "minecraft:chicken").count());
+        assertEquals(0, scanner.scan(null, "minecraft:unknown").count());
+        assertTrue(scanner.scan(null).noneMatch(EntityView::isEntityCreated));
+    }
+
+    public void testScan_bounds() throws IOException {
+        EntityScanner scanner = createScanner();
+        assertEquals(17, scanner.scan(new RegionBoundingRectangle(-3, -3)).count());
+        assertEquals(0, scanner.scan(new RegionBoundingRectangle(0, 0)).count());
+        assertEquals(8, scanner.scan(new ChunkBoundingRectangle(-94, -85)).count());
+        assertEquals(3, scanner.scan(new ChunkBoundingRectangle(-94, -85), "minecraft:pillager", "minecraft:iron_golem").count());
+        assertEquals(2, scanner.scan(new ChunkBoundingRectangle(-94, -86), "minecraft:pillager").count());
+    }
+
+    public void testScan_missingEntitiesDirectory() throws IOException {
+        EntityScanner scanner = new EntityScanner(getNewTmpDirectory().toPath());
+        assertEquals(0, scanner.scan(null).count());
+    }
+
+    public void testCountByChunk() throws IOException {
+        EntityScanner scanner = createScanner();
+        Map<IntPointXZ, Integer> counts = scanner.countByChunk(null, "minecraft:pillager");
+        assertEquals(4, counts.size());
+        assertEquals(1, (int) counts.get(new IntPointXZ(-95, -86)));
+        assertEquals(2, (int) counts.get(new IntPointXZ(-94, -86)));
+        assertEquals(2, (int) counts.get(new IntPointXZ(-95, -85)));
+        assertEquals(2, (int) counts.get(new IntPointXZ(-94, -85)));
+
+        assertEquals(17, scanner.countByChunk(null).values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    public void testBuildIndex() throws IOException {
+        EntityScanner scanner = createScanner();
+        EntitySpatialIndex index = scanner.buildIndex(null);
+        assertEquals(17, index.size());
+        assertEquals(scanner.countByChunk(null), index.countByChunk());
+        assertEquals(
+                scanner.scan(new ChunkBoundingRectangle(-94, -85)).map(EntityView::getUuid).collect(Collectors.toSet()),
+                index.query(new ChunkBoundingRectangle(-94, -85)).map(EntityView::getUuid).collect(Collectors.toSet()));
+    }
+}
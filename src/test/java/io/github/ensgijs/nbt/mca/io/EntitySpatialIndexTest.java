@@ -0,0 +1,81 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.mca.DataVersion;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.entities.EntityBase;
+import io.github.ensgijs.nbt.mca.entities.EntityView;
+import io.github.ensgijs.nbt.mca.util.BlockAlignedBoundingRectangle;
+import io.github.ensgijs.nbt.mca.util.ChunkBoundingRectangle;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.util.List;
+import java.util.Map;
+
+public class EntitySpatialIndexTest extends McaTestCase {
+    private static final int DATA_VERSION = DataVersion.JAVA_1_20_4.id();
+
+    private static EntityView makeView(String id, double x, double y, double z) {
+        return new EntityView(new EntityBase(DATA_VERSION, id, x, y, z, 0, 0).updateHandle(), DATA_VERSION);
+    }
+
+    private static EntitySpatialIndex makeIndex(int cellShift) {
+        EntitySpatialIndex index = new EntitySpatialIndex(cellShift);
+        assertTrue(index.add(makeView("minecraft:a", 0.5, 64, 0.5)));
+        assertTrue(index.add(makeView("minecraft:b", -0.5, 64, -0.5)));
+        assertTrue(index.add(makeView("minecraft:c", 15.9, 70, 15.9)));
+        assertTrue(index.add(makeView("minecraft:d", 16, 64, 16)));
+        assertTrue(index.add(makeView("minecraft:e", -1000, 64, 2000)));
+        return index;
+    }
+
+    public void testAdd_withoutPosition() {
+        EntitySpatialIndex index = new EntitySpatialIndex();
+        CompoundTag tag = new CompoundTag();
+        tag.putString("id", "minecraft:zombie");
+        assertFalse(index.add(new EntityView(tag, DATA_VERSION)));
+        assertTrue(index.isEmpty());
+    }
+
+    public void testConstructor_validatesCellShift() {
+        assertThrowsException(() -> new EntitySpatialIndex(-1), IllegalArgumentException.class);
+        assertThrowsException(() -> new EntitySpatialIndex(17), IllegalArgumentException.class);
+        assertEquals(16, new EntitySpatialIndex().getCellWidth());
+    }
+
+    public void testQuery() {
+        for (int cellShift : new int[] {0, 4, 9}) {
+            EntitySpatialIndex index = makeIndex(cellShift);
+            assertEquals(5, index.size());
+            assertEquals(2, index.query(new ChunkBoundingRectangle(0, 0)).count());
+            assertEquals(1, index.query(new ChunkBoundingRectangle(-1, -1)).count());
+            assertEquals(1, index.query(new ChunkBoundingRectangle(1, 1)).count());
+            assertEquals(4, index.query(new BlockAlignedBoundingRectangle(-16, -16, 48)).count());
+            assertEquals(5, index.query(new BlockAlignedBoundingRectangle(-5000, -5000, 10000)).count());
+            assertEquals(1, index.query(new ChunkBoundingRectangle(0, 0), 65, 100).count());
+            assertEquals(0, index.query(new ChunkBoundingRectangle(5, 5)).count());
+        }
+    }
+
+    public void testFindNear() {
+        EntitySpatialIndex index = makeIndex(4);
+        List<EntityView> near = index.findNear(0, 64, 0, 2);
+        assertEquals(2, near.size());
+        near = index.findNear(0.4, 64, 0.4, 2);
+        assertEquals("minecraft:a", near.get(0).getId());
+        assertEquals("minecraft:b", near.get(1).getId());
+        near = index.findNear(16, 67, 16, 3.5);
+        assertEquals(2, near.size());
+        assertEquals("minecraft:d", near.get(0).getId());
+        assertEquals(0, index.findNear(8, 64, 8, 1).size());
+    }
+
+    public void testCountByChunk() {
+        Map<IntPointXZ, Integer> counts = makeIndex(0).countByChunk();
+        assertEquals(4, counts.size());
+        assertEquals(2, (int) counts.get(new IntPointXZ(0, 0)));
+        assertEquals(1, (int) counts.get(new IntPointXZ(-1, -1)));
+        assertEquals(1, (int) counts.get(new IntPointXZ(1, 1)));
+        assertEquals(1, (int) counts.get(new IntPointXZ(-63, 125)));
+    }
+}
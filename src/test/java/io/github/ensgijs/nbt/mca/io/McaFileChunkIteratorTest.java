@@ -1,9 +1,11 @@
 package io.github.ensgijs.nbt.mca.io;
 
+import io.github.ensgijs.nbt.io.CompressionType;
 import io.github.ensgijs.nbt.mca.*;
 import io.github.ensgijs.nbt.mca.util.IntPointXZ;
 
 import java.io.IOException;
+import java.util.Map;
 
 public class McaFileChunkIteratorTest extends McaTestCase {
 
@@ -57,6 +59,24 @@ public class McaFileChunkIteratorTest extends McaTestCase {
     }
 
 
+    public void testGetStats() throws IOException {
+        McaFileChunkIterator<PoiChunk> iter = McaFileChunkIterator.iterate(
+                getResourceFile("1_20_4/poi/r.-3.-3.mca"), LoadFlags.RAW, PoiChunk::new
+        );
+        McaFileStats stats = iter.getStats();
+        assertEquals(6, stats.getChunkCount());
+        assertEquals(getResourceFile("1_20_4/poi/r.-3.-3.mca").length(), stats.getFileLength());
+        assertTrue(stats.getCompressionTypeHistogram().isEmpty());
+        PoiChunk chunk = iter.next();
+        assertTrue(stats.getCompressedSize(chunk.getIndex()) > 0);
+        assertEquals(CompressionType.ZLIB, stats.getCompressionType(chunk.getIndex()));
+        while (iter.hasNext()) {
+            assertNotNull(iter.next());
+        }
+        assertEquals(Map.of(CompressionType.ZLIB, 6), stats.getCompressionTypeHistogram());
+        iter.close();
+    }
+
     public void validateIterateRegionFile(long loadFlags) throws IOException {
         McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(
                 getResourceFile("1_20_4/region/r.-3.-3.mca"), loadFlags, TerrainChunk::new
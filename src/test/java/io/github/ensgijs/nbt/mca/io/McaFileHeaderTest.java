@@ -0,0 +1,48 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.PoiChunk;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+public class McaFileHeaderTest extends McaTestCase {
+
+    public void testRead_matchesRandomAccessMcaFile() throws IOException {
+        File file = getResourceFile("1_20_4/poi/r.-3.-3.mca");
+        McaFileHeader header = McaFileHeader.read(file);
+        assertEquals("poi", header.getMcaType());
+        assertEquals(IntPointXZ.XZ(-3, -3), header.getRegionXZ());
+        assertEquals(Files.size(file.toPath()), header.getFileLength());
+        assertEquals(6, header.getChunkCount());
+        assertEquals(6, header.getChunkPresence().cardinality());
+        assertFalse(header.isEmpty());
+
+        try (var poiMca = new RandomAccessMcaFile<>(PoiChunk.class, file, "r")) {
+            for (int i = 0; i < 1024; i++) {
+                assertEquals(poiMca.hasChunk(i), header.hasChunk(i));
+                assertEquals(poiMca.getChunkTimestamp(i), header.getChunkTimestamp(i));
+            }
+        }
+        assertEquals(1713564485, header.getMaxTimestamp());
+        assertEquals(4, header.getChunksUpdatedSince(1713564485).cardinality());
+        assertTrue(header.getChunksUpdatedSince(1713564485).get(McaFileBase.getChunkIndex(14, 29)));
+        assertEquals(6, header.toStats().getChunkCount());
+    }
+
+    public void testRead_emptyFile() throws IOException {
+        File file = getNewTmpFile("region/r.4.-2.mca");
+        new RandomAccessFile(file, "rw").close();
+        McaFileHeader header = McaFileHeader.read(file);
+        assertEquals("region", header.getMcaType());
+        assertEquals(IntPointXZ.XZ(4, -2), header.getRegionXZ());
+        assertEquals(0, header.getFileLength());
+        assertTrue(header.isEmpty());
+        assertEquals(-1, header.getMaxTimestamp());
+        assertEquals(-1, header.getChunkTimestamp(0));
+    }
+}
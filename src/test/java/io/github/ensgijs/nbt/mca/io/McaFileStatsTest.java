@@ -0,0 +1,95 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile.SectorManager.SectorBlock;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedMap;
+
+public class McaFileStatsTest extends McaTestCase {
+
+    public void testSectorUsage() throws IOException {
+        int[] sectorTable = new int[1024];
+        int[] timestamps = new int[1024];
+        sectorTable[0] = new SectorBlock(2, 1).pack();
+        sectorTable[1] = new SectorBlock(5, 2).pack();
+        sectorTable[2] = new SectorBlock(6, 1).pack();  // overlaps chunk 1
+        sectorTable[3] = new SectorBlock(12, 3).pack();
+        timestamps[0] = 100;
+        timestamps[1] = 250;
+        timestamps[2] = 199;
+        timestamps[3] = 200;
+        timestamps[4] = 999;  // no chunk - ignored
+
+        McaFileStats stats = new McaFileStats(IntPointXZ.XZ(1, 2), sectorTable, timestamps, 16 * 4096 + 10);
+        assertEquals(IntPointXZ.XZ(1, 2), stats.getRegionXZ());
+        assertEquals(4, stats.getChunkCount());
+        assertEquals(15, stats.getEofSector());
+        assertEquals(6, stats.getUsedSectors());
+        assertEquals(7, stats.getFreeSectors());
+        assertEquals(1, stats.getOverlappingSectors());
+        assertEquals(5, stats.getLargestFreeRun());
+        assertEquals(0, stats.getChunksPastEof());
+        assertEquals(4096 + 10, stats.getTrailingBytes());
+        assertEquals(7 * 4096 + 4096 + 10, stats.getWastedBytes());
+        assertEquals((7 * 4096 + 4096 + 10) / (14.0 * 4096 + 10), stats.getFragmentationRatio(), 1e-9);
+
+        assertEquals(100, stats.getMinTimestamp());
+        assertEquals(250, stats.getMaxTimestamp());
+        assertEquals(-1, stats.getTimestamp(4));
+        assertEquals(2, stats.countChunksUpdatedSince(200));
+        SortedMap<Integer, Integer> histogram = stats.getTimestampHistogram(100);
+        assertEquals(Map.of(100, 2, 200, 2), histogram);
+        assertThrowsIllegalArgumentException(() -> stats.getTimestampHistogram(0));
+
+        assertEquals(-1, stats.getCompressedSize(0));
+        assertNull(stats.getCompressionType(0));
+        assertTrue(Double.isNaN(stats.getCompressionRatio(0)));
+        assertTrue(stats.getCompressionTypeHistogram().isEmpty());
+    }
+
+    public void testChunksPastEof() throws IOException {
+        int[] sectorTable = new int[1024];
+        sectorTable[7] = new SectorBlock(2, 2).pack();
+        sectorTable[8] = new SectorBlock(4, 2).pack();
+        McaFileStats stats = new McaFileStats(null, sectorTable, new int[1024], 5 * 4096);
+        assertEquals(1, stats.getChunksPastEof());
+        assertEquals(0, stats.getTrailingBytes());
+
+        stats = new McaFileStats(null, sectorTable, new int[1024], -1);
+        assertEquals(0, stats.getChunksPastEof());
+        assertEquals(-1, stats.getTrailingBytes());
+        assertEquals(0, stats.getWastedBytes());
+    }
+
+    public void testEmpty() {
+        McaFileStats stats = new McaFileStats(null, new int[1024], new int[1024], 2 * 4096);
+        assertEquals(0, stats.getChunkCount());
+        assertEquals(2, stats.getEofSector());
+        assertEquals(0, stats.getFreeSectors());
+        assertEquals(0.0, stats.getFragmentationRatio());
+        assertEquals(-1, stats.getMinTimestamp());
+        assertEquals(-1, stats.getMaxTimestamp());
+    }
+
+    public void testRecordChunkPrefix() throws IOException {
+        int[] sectorTable = new int[1024];
+        sectorTable[0] = new SectorBlock(2, 1).pack();
+        sectorTable[1] = new SectorBlock(3, 1).pack();
+        McaFileStats stats = new McaFileStats(null, sectorTable, new int[1024], 4 * 4096);
+        stats.recordChunkPrefix(0, 1001, CompressionType.ZLIB.getID());
+        stats.recordUncompressedSize(0, 4000);
+        stats.recordChunkPrefix(1, 4096, CompressionType.ZLIB.getID());  // too big for 1 sector
+        assertEquals(1000, stats.getCompressedSize(0));
+        assertEquals(CompressionType.ZLIB, stats.getCompressionType(0));
+        assertEquals(4.0, stats.getCompressionRatio(0));
+        assertEquals(4.0, stats.getCompressionRatio());
+        assertEquals(4096 - 1005, stats.getSectorSlackBytes());
+        assertEquals(-1, stats.getCompressedSize(1));
+        assertEquals(1, stats.getInvalidChunkPrefixes());
+        assertEquals(Map.of(CompressionType.ZLIB, 1), stats.getCompressionTypeHistogram());
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class McaHeaderScannerTest extends McaTestCase {
+
+    public void testListMcaFiles() throws IOException {
+        Path worldRoot = getResourceFile("1_20_4").toPath();
+        List<Path> files = McaHeaderScanner.listMcaFiles(worldRoot);
+        assertEquals(3, files.size());
+        assertEquals(1, McaHeaderScanner.listMcaFiles(worldRoot, "poi").size());
+        assertEquals(0, McaHeaderScanner.listMcaFiles(worldRoot, "does_not_exist").size());
+    }
+
+    public void testScan() throws IOException {
+        Path worldRoot = getResourceFile("1_20_4").toPath();
+        Map<String, Map<IntPointXZ, McaFileHeader>> index = McaHeaderScanner.scan(worldRoot);
+        assertEquals(Set.of("region", "poi", "entities"), index.keySet());
+        McaFileHeader poiHeader = index.get("poi").get(IntPointXZ.XZ(-3, -3));
+        assertNotNull(poiHeader);
+        assertEquals(6, poiHeader.getChunkCount());
+
+        index = McaHeaderScanner.scan(worldRoot, "region");
+        assertEquals(Set.of("region"), index.keySet());
+    }
+
+    public void testStream() throws IOException {
+        Path worldRoot = getResourceFile("1_20_4").toPath();
+        Set<String> types = McaHeaderScanner.stream(worldRoot)
+                .map(McaFileHeader::getMcaType)
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("region", "poi", "entities"), types);
+    }
+}
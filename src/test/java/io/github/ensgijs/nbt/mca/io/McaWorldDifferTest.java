@@ -0,0 +1,89 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.PoiChunk;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.McaWorldDiffer.ChangeType;
+import io.github.ensgijs.nbt.mca.io.McaWorldDiffer.ChunkChange;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class McaWorldDifferTest extends McaTestCase {
+
+    private Path copyWorld(String name) throws IOException {
+        Path root = getNewTmpFile(name).toPath();
+        for (String type : new String[]{"region", "poi"}) {
+            Files.createDirectories(root.resolve(type));
+            Files.copy(getResourceFile("1_20_4/" + type + "/r.-3.-3.mca").toPath(), root.resolve(type).resolve("r.-3.-3.mca"));
+        }
+        return root;
+    }
+
+    public void testDiff_identicalWorlds() throws IOException {
+        Path worldA = copyWorld("a");
+        Path worldB = copyWorld("b");
+        assertEquals(0, new McaWorldDiffer().diff(worldA, worldB).count());
+    }
+
+    public void testDiff() throws IOException {
+        Path worldA = copyWorld("a");
+        Path worldB = copyWorld("b");
+        final int removedIndex = McaFileBase.getChunkIndex(14, 29);
+        final int touchedIndex = McaFileBase.getChunkIndex(19, 12);
+        final int modifiedIndex = McaFileBase.getChunkIndex(5, 9);
+        try (var poiMca = new RandomAccessMcaFile<>(PoiChunk.class, worldB.resolve("poi/r.-3.-3.mca"), "rw")) {
+            assertTrue(poiMca.removeChunk(removedIndex));
+            PoiChunk chunk = poiMca.read(touchedIndex);
+            chunk.setLastMCAUpdate(chunk.getLastMCAUpdate() + 10);
+            poiMca.setAlwaysUpdateChunkLastUpdatedTimestamp(false);
+            poiMca.write(chunk);
+        }
+        try (var terrainMca = new RandomAccessMcaFile<>(TerrainChunk.class, worldB.resolve("region/r.-3.-3.mca"), "rw")) {
+            TerrainChunk chunk = terrainMca.read(modifiedIndex);
+            chunk.setBlockAt(chunk.getChunkX() * 16, 64, chunk.getChunkZ() * 16, block("minecraft:diamond_block"));
+            terrainMca.write(chunk);
+        }
+        Files.createDirectories(worldB.resolve("entities"));
+        Files.copy(getResourceFile("1_20_4/entities/r.-3.-3.mca").toPath(), worldB.resolve("entities/r.-3.-3.mca"));
+        final long entitiesChunkCount = McaFileHeader.read(worldB.resolve("entities/r.-3.-3.mca")).getChunkCount();
+
+        List<ChunkChange> changes = new McaWorldDiffer().diff(worldA, worldB).collect(Collectors.toList());
+        List<ChunkChange> poiChanges = changes.stream().filter(c -> c.mcaType().equals("poi")).collect(Collectors.toList());
+        assertEquals(2, poiChanges.size());
+        assertEquals(ChangeType.REMOVED, poiChanges.stream().filter(c -> c.chunkIndex() == removedIndex).findFirst().orElseThrow().type());
+        ChunkChange touched = poiChanges.stream().filter(c -> c.chunkIndex() == touchedIndex).findFirst().orElseThrow();
+        assertTrue(touched.type() == ChangeType.TOUCHED || touched.type() == ChangeType.REENCODED);
+        assertEquals(touched.timestampA() + 10, touched.timestampB());
+
+        List<ChunkChange> regionChanges = changes.stream().filter(c -> c.mcaType().equals("region")).collect(Collectors.toList());
+        assertEquals(1, regionChanges.size());
+        assertEquals(ChangeType.MODIFIED, regionChanges.get(0).type());
+        assertEquals(modifiedIndex, regionChanges.get(0).chunkIndex());
+        assertEquals(IntPointXZ.XZ(5 - 96, 9 - 96), regionChanges.get(0).chunkXZ());
+
+        assertEquals(entitiesChunkCount, changes.stream()
+                .filter(c -> c.mcaType().equals("entities") && c.type() == ChangeType.ADDED).count());
+
+        // touched chunks can be suppressed
+        changes = new McaWorldDiffer().setReportTouched(false).diff(worldA, worldB, "poi").collect(Collectors.toList());
+        assertEquals(1, changes.size());
+        assertEquals(ChangeType.REMOVED, changes.get(0).type());
+
+        // reversed direction
+        changes = new McaWorldDiffer().setCompareNbt(false).diff(worldB, worldA, "region").collect(Collectors.toList());
+        assertEquals(1, changes.size());
+        assertEquals(ChangeType.MODIFIED, changes.get(0).type());
+    }
+
+    public void testDiffRegion_neitherExists() throws IOException {
+        File dir = getNewTmpDirectory();
+        assertTrue(new McaWorldDiffer().diffRegion(dir.toPath().resolve("region/r.0.0.mca"), dir.toPath().resolve("region/r.0.0.mca")).isEmpty());
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.mca.EntitiesChunk;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.util.IntPointXZ;
+import io.github.ensgijs.nbt.query.NbtQuery;
+import io.github.ensgijs.nbt.tag.StringTag;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class NbtQueryScannerTest extends McaTestCase {
+
+    public void testStream_chunkIterator() throws IOException {
+        File file = copyResourceToTmp("1_20_4/entities/r.-3.-3.mca");
+        NbtQuery query = NbtQuery.of("Entities[?id==\"minecraft:pillager\"].id");
+        try (Stream<NbtQueryScanner.Match> matches = NbtQueryScanner.stream(query,
+                McaFileChunkIterator.<EntitiesChunk>iterate(file, LoadFlags.RAW))) {
+            Map<IntPointXZ, Long> counts = matches
+                    .peek(m -> assertEquals(new StringTag("minecraft:pillager"), m.value()))
+                    .collect(Collectors.groupingBy(NbtQueryScanner.Match::chunkXZ, Collectors.counting()));
+            assertEquals(4, counts.size());
+            assertEquals(2L, (long) counts.get(new IntPointXZ(-94, -85)));
+            assertEquals(1L, (long) counts.get(new IntPointXZ(-95, -86)));
+        }
+    }
+
+    public void testStream_world() throws IOException {
+        Path worldRoot = copyResourceToTmp("1_20_4/region/r.-3.-3.mca").getParentFile().getParentFile().toPath();
+        // the two copies land in separate tmp directories, so put the world back together
+        File entitiesFile = copyResourceToTmp("1_20_4/entities/r.-3.-3.mca");
+        Path worldEntities = worldRoot.resolve("entities");
+        worldEntities.toFile().mkdirs();
+        assertTrue(entitiesFile.renameTo(worldEntities.resolve("r.-3.-3.mca").toFile()));
+
+        NbtQueryScanner scanner = new NbtQueryScanner(worldRoot);
+        assertEquals(7, scanner.stream(NbtQuery.of("Entities[?id==\"minecraft:pillager\"]"), "entities").count());
+        assertEquals(17, scanner.stream(NbtQuery.of("Entities[*].id")).count());
+        assertTrue(scanner.stream(NbtQuery.of("sections[*].block_states"), "region").findAny().isPresent());
+        assertEquals(0, scanner.stream(NbtQuery.of("Entities[*]"), "poi").count());
+    }
+}
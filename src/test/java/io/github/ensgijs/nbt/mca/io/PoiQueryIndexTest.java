@@ -0,0 +1,85 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.BinaryNbtHelpers;
+import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.PoiChunk;
+import io.github.ensgijs.nbt.mca.PoiRecord;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static io.github.ensgijs.nbt.mca.util.IntPointXZ.XZ;
+
+public class PoiQueryIndexTest extends McaTestCase {
+
+    private Path createTestWorld() throws IOException {
+        return PoiQueryServiceTest.createTestWorld(copyResourceToTmp("1_20_4/poi/r.-3.-3.mca"));
+    }
+
+    public void testBuild() throws IOException {
+        PoiQueryIndex index = PoiQueryIndex.build(createTestWorld());
+        assertEquals(2, index.getRegionCount());
+        assertEquals(List.of("minecraft:bee_nest", "minecraft:home"),
+                index.getKnownPoiTypes().stream().sorted().toList());
+        assertTrue(index.mayContain(XZ(-3, -3), "minecraft:bee_nest"));
+        assertFalse(index.mayContain(XZ(-3, -3), "minecraft:home"));
+        assertTrue(index.mayContain(XZ(-3, -3)));
+        assertTrue(index.mayContain(XZ(0, 0), "minecraft:home"));
+        assertFalse(index.mayContain(XZ(0, 0), "minecraft:unknown"));
+        assertFalse(index.mayContain(XZ(5, 5)));
+    }
+
+    public void testUpdate_incremental() throws IOException {
+        Path worldRoot = createTestWorld();
+        PoiQueryIndex index = new PoiQueryIndex(worldRoot);
+        assertEquals(7, index.update());
+        assertEquals(0, index.update());  // nothing changed
+
+        File poiFile = worldRoot.resolve("poi/r.-3.-3.mca").toFile();
+        try (var ramf = new RandomAccessMcaFile<>(PoiChunk.class, poiFile, "rw")) {
+            PoiChunk chunk = ramf.read(McaFileBase.getChunkIndex(-77, -73));
+            chunk.add(new PoiRecord(-1223, 68, -1166, "minecraft:home"));
+            chunk.setLastMCAUpdate(chunk.getLastMCAUpdate() + 1);
+            ramf.write(chunk);
+        }
+        assertTrue(poiFile.setLastModified(poiFile.lastModified() + 5000));
+        assertFalse(index.mayContain(XZ(-3, -3), "minecraft:home"));
+        assertEquals(1, index.update());  // only the changed chunk is re-read
+        assertTrue(index.mayContain(XZ(-3, -3), "minecraft:home"));
+
+        Files.delete(worldRoot.resolve("poi/r.0.0.mca"));
+        assertEquals(0, index.update());
+        assertEquals(1, index.getRegionCount());
+    }
+
+    public void testSaveLoad() throws IOException {
+        Path worldRoot = createTestWorld();
+        PoiQueryIndex index = PoiQueryIndex.build(worldRoot);
+        Path indexFile = worldRoot.resolve("poi-index.dat");
+        index.save(indexFile);
+
+        PoiQueryIndex loaded = PoiQueryIndex.load(indexFile, worldRoot);
+        assertEquals(index.getRegionCount(), loaded.getRegionCount());
+        assertEquals(index.getKnownPoiTypes(), loaded.getKnownPoiTypes());
+        assertTrue(loaded.mayContain(XZ(0, 0), "minecraft:home"));
+        assertFalse(loaded.mayContain(XZ(-3, -3), "minecraft:home"));
+        assertEquals(0, loaded.update());  // loaded entries are current
+
+        PoiQueryService service = new PoiQueryService(worldRoot).setIndex(loaded);
+        assertEquals(1, service.query(null, "minecraft:home").count());
+        assertEquals(8, service.query(null).count());
+    }
+
+    public void testLoad_notAnIndex() throws IOException {
+        Path worldRoot = createTestWorld();
+        Path indexFile = worldRoot.resolve("poi-index.dat");
+        BinaryNbtHelpers.write(new CompoundTag(), indexFile, CompressionType.GZIP);
+        assertThrowsException(() -> PoiQueryIndex.load(indexFile, worldRoot), IOException.class);
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.ensgijs.nbt.mca.io;
+
+import io.github.ensgijs.nbt.io.SilentIOException;
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.PoiChunk;
+import io.github.ensgijs.nbt.mca.PoiRecord;
+import io.github.ensgijs.nbt.mca.util.BlockAlignedBoundingRectangle;
+import io.github.ensgijs.nbt.mca.util.ChunkBoundingRectangle;
+import io.github.ensgijs.nbt.mca.util.RegionBoundingRectangle;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class PoiQueryServiceTest extends McaTestCase {
+
+    /**
+     * Creates a world containing the 1_20_4 poi region r.-3.-3 (6 bee nests) plus region r.0.0 containing a
+     * single chunk, at chunk 5 6, with one bee nest and a home at block 90 70 100.
+     * @param poiFile tmp copy of the 1_20_4/poi/r.-3.-3.mca resource.
+     */
+    static Path createTestWorld(File poiFile) throws IOException {
+        Path worldRoot = poiFile.getParentFile().getParentFile().toPath();
+        PoiChunk chunk;
+        try (var ramf = new RandomAccessMcaFile<>(PoiChunk.class, poiFile, "r")) {
+            chunk = ramf.read(McaFileBase.getChunkIndex(-77, -73));
+        }
+        assertTrue(chunk.moveChunk(5, 6, MoveChunkFlags.MOVE_CHUNK_DEFAULT_FLAGS));
+        chunk.add(new PoiRecord(90, 70, 100, "minecraft:home"));
+        try (var ramf = new RandomAccessMcaFile<>(PoiChunk.class, worldRoot.resolve("poi/r.0.0.mca"), "rw")) {
+            ramf.write(chunk);
+        }
+        return worldRoot;
+    }
+
+    public void testQuery_wholeWorld() throws IOException {
+        PoiQueryService service = new PoiQueryService(createTestWorld(copyResourceToTmp("1_20_4/poi/r.-3.-3.mca")));
+        assertEquals(8, service.query(null).count());
+        assertEquals(7, service.query(null, "minecraft:bee_nest").count());
+        assertEquals(1, service.query(null, "minecraft:home").count());
+        assertEquals(8, service.query(null, "minecraft:home", "minecraft:bee_nest").count());
+        // repeated types do not repeat records
+        assertEquals(8, service.query(null, "minecraft:home", "minecraft:bee_nest", "minecraft:home").count());
+        assertEquals(0, service.query(null, "minecraft:unknown").count());
+    }
+
+    public void testQuery_bounds() throws IOException {
+        PoiQueryService service = new PoiQueryService(createTestWorld(copyResourceToTmp("1_20_4/poi/r.-3.-3.mca")));
+        assertEquals(6, service.query(new RegionBoundingRectangle(-3, -3)).count());
+        assertEquals(2, service.query(new RegionBoundingRectangle(0, 0)).count());
+        assertEquals(0, service.query(new RegionBoundingRectangle(1, 0)).count());
+
+        List<PoiRecord> records = service.query(new ChunkBoundingRectangle(-77, -73)).collect(Collectors.toList());
+        assertEquals(1, records.size());
+        assertEquals(new PoiRecord(-1223, 67, -1166, "minecraft:bee_nest"), records.get(0));
+
+        // bounds spanning two regions
+        assertEquals(8, service.query(new BlockAlignedBoundingRectangle(-1600, -1600, 1800)).count());
+        // exact single block
+        assertEquals(1, service.query(new BlockAlignedBoundingRectangle(90, 100, 1), "minecraft:home").count());
+        assertEquals(0, service.query(new BlockAlignedBoundingRectangle(91, 100, 1), "minecraft:home").count());
+    }
+
+    public void testQuery_yRange() throws IOException {
+        PoiQueryService service = new PoiQueryService(createTestWorld(copyResourceToTmp("1_20_4/poi/r.-3.-3.mca")));
+        assertEquals(4, service.query(new RegionBoundingRectangle(-3, -3), 60, 67).count());
+        assertEquals(1, service.query(null, 70, 70).count());
+    }
+
+    public void testQuery_withIndexMatchesWithout() throws IOException {
+        Path worldRoot = createTestWorld(copyResourceToTmp("1_20_4/poi/r.-3.-3.mca"));
+        PoiQueryService plain = new PoiQueryService(worldRoot);
+        PoiQueryService indexed = new PoiQueryService(worldRoot).setIndex(PoiQueryIndex.build(worldRoot));
+        for (String[] types : new String[][] {{}, {"minecraft:home"}, {"minecraft:bee_nest"}, {"minecraft:unknown"}}) {
+            assertEquals(
+                    plain.query(null, types).collect(Collectors.toSet()),
+                    indexed.query(null, types).collect(Collectors.toSet()));
+            assertEquals(
+                    plain.query(new RegionBoundingRectangle(0, 0), types).collect(Collectors.toSet()),
+                    indexed.query(new RegionBoundingRectangle(0, 0), types).collect(Collectors.toSet()));
+        }
+    }
+
+    public void testQuery_staleIndexIsIgnored() throws IOException {
+        Path worldRoot = createTestWorld(copyResourceToTmp("1_20_4/poi/r.-3.-3.mca"));
+        PoiQueryService service = new PoiQueryService(worldRoot).setIndex(PoiQueryIndex.build(worldRoot));
+        assertEquals(0, service.query(new RegionBoundingRectangle(-3, -3), "minecraft:home").count());
+
+        File poiFile = worldRoot.resolve("poi/r.-3.-3.mca").toFile();
+        try (var ramf = new RandomAccessMcaFile<>(PoiChunk.class, poiFile, "rw")) {
+            PoiChunk chunk = ramf.read(McaFileBase.getChunkIndex(-77, -73));
+            chunk.add(new PoiRecord(-1223, 68, -1166, "minecraft:home"));
+            ramf.write(chunk);
+        }
+        assertTrue(poiFile.setLastModified(poiFile.lastModified() + 5000));
+        assertEquals(1, service.query(new RegionBoundingRectangle(-3, -3), "minecraft:home").count());
+    }
+
+    public void testQuery_missingPoiDirectory() throws IOException {
+        PoiQueryService service = new PoiQueryService(getNewTmpDirectory().toPath());
+        assertEquals(0, service.query(null).count());
+    }
+
+    public void testQuery_corruptFileThrowsSilentIOException() throws IOException {
+        Path worldRoot = createTestWorld(copyResourceToTmp("1_20_4/poi/r.-3.-3.mca"));
+        // header claims chunk 0 is in sector 2 but the file ends at the end of the header
+        byte[] truncated = new byte[McaFileHeader.HEADER_SIZE_BYTES];
+        truncated[2] = 2;
+        truncated[3] = 1;
+        Files.write(worldRoot.resolve("poi/r.0.0.mca"), truncated);
+        PoiQueryService service = new PoiQueryService(worldRoot);
+        assertThrowsException(() -> service.query(new RegionBoundingRectangle(0, 0)).count(), SilentIOException.class, false);
+    }
+}
@@ -1,5 +1,6 @@
 package io.github.ensgijs.nbt.mca.io;
 
+import io.github.ensgijs.nbt.io.CompressionType;
 import io.github.ensgijs.nbt.io.TextNbtParser;
 import io.github.ensgijs.nbt.mca.*;
 
@@ -8,6 +9,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.file.Files;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile.SectorManager;
@@ -16,6 +18,8 @@ import io.github.ensgijs.nbt.mca.util.IntPointXZ;
 import io.github.ensgijs.nbt.mca.util.PalettizedCuboid;
 import io.github.ensgijs.nbt.tag.CompoundTag;
 
+import static org.junit.Assert.assertArrayEquals;
+
 public class RandomAccessMcaFileTest extends McaTestCase {
 
     public void testSectorManager_sanity() throws IOException {
@@ -231,6 +235,139 @@ public class RandomAccessMcaFileTest extends McaTestCase {
         assertEquals(2 * 4096, Files.size(file.toPath()));
     }
 
+    public void testSectorManager_optimizeFileIncrementally() throws IOException {
+        File file = getNewTmpFile("r.0.0.mca");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(4096 * 12);
+        for (int i = 2; i < 12; i++) {
+            raf.seek(i * 4096L);
+            raf.writeInt(i);
+        }
+        int[] sectorTable = new int[1024];
+        sectorTable[7] = new SectorBlock(4, 2).pack();
+        sectorTable[3] = new SectorBlock(7, 1).pack();
+        sectorTable[9] = new SectorBlock(10, 2).pack();
+        SectorManager sm = new SectorManager();
+        sm.sync(sectorTable);
+        assertEquals(5, sm.freeSectorCount());
+
+        assertEquals(2, sm.optimizeFileIncrementally(raf, sectorTable, 1));
+        assertEquals(new SectorBlock(2, 2), SectorBlock.unpack(sectorTable[7]));
+        assertEquals(2, sm.freeSectors.size());
+        assertEquals(new SectorBlock(4, 3), sm.freeSectors.get(0));
+        assertEquals(new SectorBlock(8, 2), sm.freeSectors.get(1));
+        assertEquals(12 * 4096, raf.length());
+
+        assertEquals(3, sm.optimizeFileIncrementally(raf, sectorTable, 3));
+        assertEquals(new SectorBlock(4, 1), SectorBlock.unpack(sectorTable[3]));
+        assertEquals(new SectorBlock(5, 2), SectorBlock.unpack(sectorTable[9]));
+        assertEquals(0, sm.freeSectorCount());
+        assertEquals(7, sm.appendAtSector);
+        assertEquals(7 * 4096, raf.length());
+
+        raf.seek(2 * 4096L);
+        assertEquals(4, raf.readInt());
+        raf.seek(4 * 4096L);
+        assertEquals(7, raf.readInt());
+        raf.seek(5 * 4096L);
+        assertEquals(10, raf.readInt());
+        raf.seek(6 * 4096L);
+        assertEquals(11, raf.readInt());
+
+        assertEquals(0, sm.optimizeFileIncrementally(raf, sectorTable, 3));
+        raf.close();
+    }
+
+    public void testOptimizeFileIncrementally_matchesOptimizeFile() throws IOException {
+        File fileA = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        File fileB = getNewTmpFile("b/r.-3.-3.mca");
+        Files.copy(fileA.toPath(), fileB.toPath());
+        var mcaA = new RandomAccessMcaFile<>(TerrainChunk.class, fileA, "rw");
+        var mcaB = new RandomAccessMcaFile<>(TerrainChunk.class, fileB, "rw");
+        mcaA.touch();
+        assertEquals(0, mcaA.getWastedBytes());
+        assertEquals(0.0, mcaA.getFragmentationRatio());
+        int removed = 0;
+        for (int i = 0; i < 1024 && removed < 6; i++) {
+            if (mcaA.hasChunk(i) && i % 3 == 0) {
+                assertTrue(mcaA.removeChunk(i));
+                assertTrue(mcaB.removeChunk(i));
+                removed++;
+            }
+        }
+        long wasted = mcaA.getWastedBytes();
+        assertTrue(wasted > 0);
+        assertTrue(mcaA.getFragmentationRatio() > 0);
+        assertEquals(wasted, mcaA.optimizeFile());
+
+        int calls = 0;
+        while (!mcaB.optimizeFileIncrementally(1)) {
+            calls++;
+        }
+        assertTrue(calls > 0);
+        assertEquals(0, mcaB.getWastedBytes());
+        assertArrayEquals(mcaA.chunkSectors, mcaB.chunkSectors);
+        mcaA.close();
+        mcaB.close();
+        assertEquals(Files.size(fileA.toPath()), Files.size(fileB.toPath()));
+
+        mcaA = new RandomAccessMcaFile<>(TerrainChunk.class, fileA, "r");
+        mcaB = new RandomAccessMcaFile<>(TerrainChunk.class, fileB, "r");
+        for (int i = 0; i < 1024; i++) {
+            TerrainChunk a = mcaA.read(i);
+            TerrainChunk b = mcaB.read(i);
+            if (a == null) {
+                assertNull(b);
+            } else {
+                assertEquals(a.getHandle(), b.getHandle());
+            }
+        }
+        mcaA.close();
+        mcaB.close();
+    }
+
+    public void testOptimizeFileIncrementally_readOnlyThrows() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/region/r.-3.-3.mca");
+        var terrainMca = new RandomAccessMcaFile<>(TerrainChunk.class, file, "r");
+        assertThrowsException(() -> terrainMca.optimizeFileIncrementally(1), IOException.class);
+        assertThrowsException(() -> terrainMca.optimizeFileIncrementally(0), IllegalArgumentException.class);
+        terrainMca.close();
+    }
+
+    public void testComputeStats() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/poi/r.-3.-3.mca");
+        var poiMca = new RandomAccessMcaFile<>(PoiChunk.class, file, "r");
+        McaFileStats stats = poiMca.computeStats(McaFileStats.Detail.HEADER_ONLY);
+        assertEquals(6, stats.getChunkCount());
+        assertEquals(0, stats.getOverlappingSectors());
+        assertEquals(Files.size(file.toPath()), stats.getFileLength());
+        assertEquals(1713564485, stats.getTimestamp(McaFileBase.getChunkIndex(14, 29)));
+        assertEquals(-1, stats.getCompressedSize(McaFileBase.getChunkIndex(14, 29)));
+
+        stats = poiMca.computeStats(McaFileStats.Detail.CHUNK_PREFIXES);
+        assertTrue(stats.getCompressedSize(McaFileBase.getChunkIndex(14, 29)) > 0);
+        assertEquals(-1, stats.getUncompressedSize(McaFileBase.getChunkIndex(14, 29)));
+        assertEquals(Map.of(CompressionType.ZLIB, 6), stats.getCompressionTypeHistogram());
+
+        stats = poiMca.computeStats(McaFileStats.Detail.UNCOMPRESSED_SIZES);
+        assertTrue(stats.getCompressionRatio(McaFileBase.getChunkIndex(14, 29)) > 1);
+        assertEquals(0, stats.getInvalidChunkPrefixes());
+        poiMca.close();
+    }
+
+    public void testReadRaw() throws IOException {
+        File file = super.copyResourceToTmp("1_20_4/poi/r.-3.-3.mca");
+        var poiMca = new RandomAccessMcaFile<>(PoiChunk.class, file, "r");
+        final int index = McaFileBase.getChunkIndex(14, 29);
+        byte[] raw = poiMca.readRaw(index);
+        assertNotNull(raw);
+        assertEquals(CompressionType.ZLIB.getID(), raw[0]);
+        assertEquals(poiMca.computeStats(McaFileStats.Detail.CHUNK_PREFIXES).getCompressedSize(index), raw.length - 1);
+        assertNull(poiMca.readRaw(0));
+        assertThrowsException(() -> poiMca.readRaw(1024), IndexOutOfBoundsException.class);
+        poiMca.close();
+    }
+
     public void testChunkSectorTableToString() throws IOException {
         File file = super.copyResourceToTmp("1_20_4/poi/r.-3.-3.mca");
         var poiMca = new RandomAccessMcaFile<>(PoiChunk.class, file, "r");
@@ -330,8 +467,12 @@ public class RandomAccessMcaFileTest extends McaTestCase {
         var poiMca = new RandomAccessMcaFile<>(PoiChunk.class, file, "rw");
         var chunk = new PoiChunk(TextNbtParser.parseInline("{DataVersion: 3700, Sections: {}}"));
         chunk.moveChunk(-90, -70, 0);
+        assertFalse(poiMca.isDirty());
         poiMca.write(chunk);
         assertTrue(poiMca.hasChunkAbsolute(-90, -70));
+        assertTrue(poiMca.isDirty());
+        poiMca.flush();
+        assertFalse(poiMca.isDirty());
         poiMca.close();
     }
 
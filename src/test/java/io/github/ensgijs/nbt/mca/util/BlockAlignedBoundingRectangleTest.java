@@ -115,6 +115,20 @@ public class BlockAlignedBoundingRectangleTest extends TestCase {
         assertThrows(IllegalArgumentException.class, () -> cbr.constrain(new int[] {8, 0, 8, -4, 0, -4}));
     }
 
+    public void testIntersects() {
+        BlockAlignedBoundingRectangle cbr = new BlockAlignedBoundingRectangle(16, -16, 16);
+        assertTrue(cbr.intersects(cbr));
+        assertTrue(cbr.intersects(new BlockAlignedBoundingRectangle(0, -32, 17)));
+        assertTrue(cbr.intersects(new BlockAlignedBoundingRectangle(31, -1, 1)));
+        assertTrue(cbr.intersects(new BlockAlignedBoundingRectangle(20, -12, 2)));  // contained
+        assertTrue(new BlockAlignedBoundingRectangle(20, -12, 2).intersects(cbr));
+        assertFalse(cbr.intersects(new BlockAlignedBoundingRectangle(0, -32, 16)));  // touches corner only
+        assertFalse(cbr.intersects(new BlockAlignedBoundingRectangle(32, -16, 16)));
+        assertFalse(cbr.intersects(new BlockAlignedBoundingRectangle(16, 0, 16)));
+        assertTrue(new ChunkBoundingRectangle(1, -1).intersects(cbr));
+        assertFalse(new ChunkBoundingRectangle(2, -1).intersects(cbr));
+    }
+
     public void testMAX_WORLD_BORDER_BOUNDS() {
         assertEquals(-1874999, ChunkBoundingRectangle.MAX_WORLD_BORDER_BOUNDS.getMinChunkX());
         assertEquals(-1874999, ChunkBoundingRectangle.MAX_WORLD_BORDER_BOUNDS.getMinChunkZ());
@@ -0,0 +1,159 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.TerrainSection;
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
+import io.github.ensgijs.nbt.mca.io.McaFileChunkIterator;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+public class BlockEditSessionTest extends McaTestCase {
+
+    private TerrainChunk loadChunk(int skip) throws IOException {
+        try (McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(
+                getResourceFile("1_20_4/region/r.-3.-3.mca"), LoadFlags.LOAD_ALL_DATA, TerrainChunk::new)) {
+            for (int i = 0; i < skip; i++) iter.next();
+            return iter.next();
+        }
+    }
+
+    private static void assertSameBlocks(TerrainChunk expected, TerrainChunk actual) {
+        Iterator<TerrainSection> expectedSections = expected.iterator();
+        for (TerrainSection section : actual) {
+            TerrainSection other = expectedSections.next();
+            if (other.getBlockStates() == null) {
+                assertNull(section.getBlockStates());
+                continue;
+            }
+            for (int i = 0; i < 4096; i++) {
+                assertEquals("section " + section.getSectionY() + " index " + i,
+                        other.getBlockStates().getByRef(i), section.getBlockStates().getByRef(i));
+            }
+        }
+        assertFalse(expectedSections.hasNext());
+    }
+
+    private static void assertPaletteFullyUsed(PalettizedCuboid<CompoundTag> blockStates) {
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < 4096; i++) used.add(blockStates.packedData.get(i));
+        assertEquals(blockStates.paletteSize(), used.size());
+        assertEquals(Math.max(4, LongArrayTagPackedIntegers.calculateBitsRequired(blockStates.paletteSize() - 1)),
+                blockStates.packedData.getBitsPerValue());
+    }
+
+    public void testMatchesSequentialSetBlockAt() throws IOException {
+        TerrainChunk expected = loadChunk(0);
+        TerrainChunk actual = loadChunk(0);
+        final int x0 = expected.getChunkX() * 16;
+        final int z0 = expected.getChunkZ() * 16;
+        CompoundTag[] states = new CompoundTag[40];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = block("minecraft:test_block_" + i);
+        }
+
+        Random random = new Random(42);
+        BlockEditSession session = actual.editSession();
+        for (int i = 0; i < 20000; i++) {
+            int x = x0 + random.nextInt(16);
+            int y = expected.getWorldMinBlockY() + random.nextInt(expected.getWorldMaxBlockY() - expected.getWorldMinBlockY() + 1);
+            int z = z0 + random.nextInt(16);
+            CompoundTag state = states[random.nextInt(states.length)];
+            assertEquals(expected.setBlockAt(x, y, z, state), session.set(x, y, z, state));
+        }
+        assertTrue(session.isDirty());
+        assertEquals(20000, session.getEditCount());
+        assertTrue(session.commit() > 0);
+        assertFalse(session.isDirty());
+        assertEquals(0, session.getEditCount());
+
+        assertSameBlocks(expected, actual);
+        for (TerrainSection section : actual) {
+            if (section.getBlockStates() != null) assertPaletteFullyUsed(section.getBlockStates());
+        }
+    }
+
+    public void testEditsAreDeferredUntilCommit() throws IOException {
+        TerrainChunk chunk = loadChunk(0);
+        final int x = chunk.getChunkX() * 16 + 1;
+        final int z = chunk.getChunkZ() * 16 + 2;
+        final int y = 70;
+        CompoundTag before = chunk.getBlockAt(x, y, z);
+        CompoundTag glass = block("minecraft:glass");
+
+        BlockEditSession session = chunk.editSession();
+        assertTrue(session.set(x, y, z, glass));
+        assertEquals(before, chunk.getBlockAt(x, y, z));
+        session.discard();
+        assertEquals(0, session.commit());
+        assertEquals(before, chunk.getBlockAt(x, y, z));
+
+        session.set(x, y, z, glass);
+        session.set(x, y, z, block("minecraft:stone"));
+        // the session keeps its own copy
+        glass.putString("Name", "minecraft:dirt");
+        session.set(x + 1, y, z, block("minecraft:glass"));
+        assertEquals(1, session.commit());
+        assertEquals("minecraft:stone", chunk.getBlockNameAt(x, y, z));
+        assertEquals("minecraft:glass", chunk.getBlockNameAt(x + 1, y, z));
+    }
+
+    public void testFillIsClampedToChunk() throws IOException {
+        TerrainChunk expected = loadChunk(1);
+        TerrainChunk actual = loadChunk(1);
+        final int x0 = expected.getChunkX() * 16;
+        final int z0 = expected.getChunkZ() * 16;
+        CompoundTag stone = block("minecraft:stone");
+        CompoundTag glass = block("minecraft:glass");
+
+        BlockEditSession session = actual.editSession();
+        // full plane fill of several layers across a section boundary
+        assertEquals(16 * 16 * 6, session.fill(x0 - 100, 60, z0 - 5, stone, x0 + 100, 65, z0 + 40));
+        // partial box, given with swapped corners
+        assertEquals(3 * 4 * 5, session.fill(x0 + 6, 14, z0 + 9, glass, x0 + 4, 10, z0 + 6));
+        assertEquals(0, session.fill(x0 + 16, 0, z0, glass, x0 + 20, 10, z0 + 15));
+        session.commit();
+
+        for (int y = 60; y <= 65; y++)
+            for (int z = 0; z < 16; z++)
+                for (int x = 0; x < 16; x++)
+                    expected.setBlockAt(x0 + x, y, z0 + z, stone);
+        for (int y = 10; y <= 14; y++)
+            for (int z = 6; z <= 9; z++)
+                for (int x = 4; x <= 6; x++)
+                    expected.setBlockAt(x0 + x, y, z0 + z, glass);
+        assertSameBlocks(expected, actual);
+    }
+
+    public void testFillWholeSectionCollapsesPalette() throws IOException {
+        TerrainChunk chunk = loadChunk(0);
+        BlockEditSession session = chunk.editSession();
+        session.fill(Integer.MIN_VALUE, 0, Integer.MIN_VALUE, block("minecraft:stone"), Integer.MAX_VALUE, 15, Integer.MAX_VALUE);
+        session.commit();
+        PalettizedCuboid<CompoundTag> blockStates = chunk.getSection(0).getBlockStates();
+        assertEquals(1, blockStates.paletteSize());
+        assertEquals("minecraft:stone", blockStates.getByRef(0).getString("Name"));
+        assertPaletteFullyUsed(blockStates);
+    }
+
+    public void testMissingSectionsAreIgnored() throws IOException {
+        TerrainChunk chunk = loadChunk(0);
+        BlockEditSession session = chunk.editSession();
+        assertFalse(session.set(0, chunk.getWorldMaxBlockY() + 100, 0, block("minecraft:stone")));
+        assertFalse(session.isDirty());
+        assertTrue(session.set(0, 0, 0, block("minecraft:stone")));
+        chunk.putSection(0, null);
+        assertEquals(0, session.commit());
+    }
+
+    public void testRejectsBlockWithoutName() throws IOException {
+        TerrainChunk chunk = loadChunk(0);
+        BlockEditSession session = chunk.editSession();
+        assertThrowsException(() -> session.set(0, 0, 0, new CompoundTag()), IllegalArgumentException.class);
+    }
+}
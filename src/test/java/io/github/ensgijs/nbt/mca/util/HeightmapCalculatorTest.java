@@ -0,0 +1,162 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
+import io.github.ensgijs.nbt.mca.io.McaFileChunkIterator;
+import io.github.ensgijs.nbt.mca.util.HeightmapCalculator.Type;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+public class HeightmapCalculatorTest extends McaTestCase {
+
+    private List<TerrainChunk> loadChunks() throws IOException {
+        List<TerrainChunk> chunks = new ArrayList<>();
+        try (McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(
+                getResourceFile("1_20_4/region/r.-3.-3.mca"), LoadFlags.LOAD_ALL_DATA, TerrainChunk::new)) {
+            while (iter.hasNext()) chunks.add(iter.next());
+        }
+        return chunks;
+    }
+
+    private static int[] stored(TerrainChunk chunk, Type type) {
+        LongArrayTagPackedIntegers hm = chunk.getHeightMap(type.name());
+        int[] values = new int[256];
+        for (int i = 0; i < 256; i++) values[i] = hm.get(i);
+        return values;
+    }
+
+    public void testWorldSurfaceMatchesStoredHeightmaps() throws IOException {
+        HeightmapCalculator calculator = new HeightmapCalculator();
+        int compared = 0;
+        for (TerrainChunk chunk : loadChunks()) {
+            if (chunk.getHeightMap("WORLD_SURFACE") == null) continue;
+            int[] expected = stored(chunk, Type.WORLD_SURFACE);
+            int[] actual = calculator.computeHeights(chunk, Type.WORLD_SURFACE);
+            for (int i = 0; i < 256; i++) {
+                assertEquals("chunk " + chunk.getChunkX() + "," + chunk.getChunkZ() + " column " + i,
+                        expected[i], actual[i]);
+            }
+            compared++;
+        }
+        assertTrue(compared > 0);
+    }
+
+    public void testMotionBlockingCloseToStoredHeightmaps() throws IOException {
+        HeightmapCalculator calculator = new HeightmapCalculator();
+        int columns = 0;
+        int mismatches = 0;
+        for (TerrainChunk chunk : loadChunks()) {
+            for (Type type : HeightmapCalculator.FULL_CHUNK_TYPES) {
+                if (chunk.getHeightMap(type.name()) == null) continue;
+                int[] expected = stored(chunk, type);
+                int[] actual = calculator.computeHeights(chunk, type);
+                for (int i = 0; i < 256; i++) {
+                    columns++;
+                    if (expected[i] != actual[i]) mismatches++;
+                }
+            }
+        }
+        assertTrue(columns > 0);
+        // the default classifier is a name based approximation
+        assertTrue(mismatches + " of " + columns, mismatches * 100 < columns);
+    }
+
+    public void testRecomputeRestoresHeightmaps() throws IOException {
+        TerrainChunk chunk = loadChunks().get(0);
+        int[] expected = stored(chunk, Type.WORLD_SURFACE);
+        chunk.getHeightMaps().remove("WORLD_SURFACE");
+        chunk.recomputeHeightMaps();
+        // recompute only touches heightmaps that were present
+        assertNull(chunk.getHeightMap("WORLD_SURFACE"));
+
+        new HeightmapCalculator().recompute(chunk, List.of(Type.WORLD_SURFACE), null);
+        assertNotNull(chunk.getHeightMap("WORLD_SURFACE"));
+        assertEquals(expected.length, stored(chunk, Type.WORLD_SURFACE).length);
+        for (int i = 0; i < 256; i++) {
+            assertEquals(expected[i], stored(chunk, Type.WORLD_SURFACE)[i]);
+        }
+    }
+
+    public void testRecomputeCreatesFullChunkSetWhenMissing() throws IOException {
+        TerrainChunk chunk = loadChunks().get(0);
+        chunk.setHeightMaps(null);
+        chunk.recomputeHeightMaps();
+        for (Type type : HeightmapCalculator.FULL_CHUNK_TYPES) {
+            assertNotNull(type.name(), chunk.getHeightMap(type.name()));
+        }
+        assertEquals(HeightmapCalculator.FULL_CHUNK_TYPES.size(), chunk.getHeightMaps().size());
+    }
+
+    public void testIncrementalColumnUpdate() throws IOException {
+        TerrainChunk chunk = loadChunks().get(0);
+        final int bx = chunk.getChunkX() * 16 + 3;
+        final int bz = chunk.getChunkZ() * 16 + 5;
+        final int column = 5 * 16 + 3;
+        final int before = stored(chunk, Type.WORLD_SURFACE)[column];
+        final int newTop = chunk.getWorldMaxBlockY() - 2;
+        assertTrue(newTop > before);
+        chunk.setBlockAt(bx, newTop, bz, block("minecraft:glass"));
+        int[] otherColumnsBefore = stored(chunk, Type.MOTION_BLOCKING);
+
+        BitSet mask = new BitSet(256);
+        mask.set(column);
+        new HeightmapCalculator().recompute(chunk, List.of(Type.WORLD_SURFACE, Type.MOTION_BLOCKING), mask);
+        assertEquals(newTop, stored(chunk, Type.WORLD_SURFACE)[column]);
+        int[] after = stored(chunk, Type.MOTION_BLOCKING);
+        assertEquals(newTop, after[column]);
+        for (int i = 0; i < 256; i++) {
+            if (i != column) assertEquals(otherColumnsBefore[i], after[i]);
+        }
+
+        chunk.setBlockAt(bx, newTop, bz, block("minecraft:air"));
+        new HeightmapCalculator().recompute(chunk, List.of(Type.WORLD_SURFACE), mask);
+        assertEquals(before, stored(chunk, Type.WORLD_SURFACE)[column]);
+    }
+
+    public void testCustomClassifierAndEmptyColumns() throws IOException {
+        TerrainChunk chunk = loadChunks().get(0);
+        // nothing matches: every column reports void
+        HeightmapCalculator nothing = new HeightmapCalculator(state -> 0);
+        int[] heights = nothing.computeHeights(chunk, Type.WORLD_SURFACE);
+        for (int h : heights) assertEquals(chunk.getWorldMinBlockY() - 1, h);
+
+        // everything matches: every column reports the top of the highest section with blocks
+        HeightmapCalculator everything = new HeightmapCalculator(state -> HeightmapCalculator.NON_AIR);
+        heights = everything.computeHeights(chunk, Type.WORLD_SURFACE);
+        int top = Integer.MIN_VALUE;
+        for (int sy = chunk.getMaxSectionY(); sy >= chunk.getMinSectionY(); sy--) {
+            if (chunk.getSection(sy) != null && chunk.getSection(sy).getBlockStates() != null) {
+                top = sy * 16 + 15;
+                break;
+            }
+        }
+        for (int h : heights) assertEquals(top, h);
+    }
+
+    public void testDefaultClassifier() {
+        HeightmapCalculator.BlockClassifier c = HeightmapCalculator.DEFAULT_CLASSIFIER;
+        assertEquals(0, c.classify(block("minecraft:air")));
+        assertEquals(0, c.classify(block("minecraft:cave_air")));
+        assertTrue(Type.OCEAN_FLOOR.matches(c.classify(block("minecraft:stone"))));
+        assertTrue(Type.WORLD_SURFACE.matches(c.classify(block("minecraft:poppy"))));
+        assertFalse(Type.MOTION_BLOCKING.matches(c.classify(block("minecraft:poppy"))));
+        assertFalse(Type.MOTION_BLOCKING.matches(c.classify(block("minecraft:oak_sapling"))));
+        assertFalse(Type.MOTION_BLOCKING.matches(c.classify(block("minecraft:torch"))));
+        assertTrue(Type.WORLD_SURFACE.matches(c.classify(block("minecraft:torch"))));
+        assertTrue(Type.MOTION_BLOCKING.matches(c.classify(block("minecraft:water"))));
+        assertFalse(Type.OCEAN_FLOOR.matches(c.classify(block("minecraft:water"))));
+        assertTrue(Type.MOTION_BLOCKING.matches(c.classify(block("minecraft:oak_leaves"))));
+        assertFalse(Type.MOTION_BLOCKING_NO_LEAVES.matches(c.classify(block("minecraft:oak_leaves"))));
+
+        CompoundTag waterloggedFence = block("minecraft:oak_fence");
+        CompoundTag props = new CompoundTag();
+        props.putString("waterlogged", "true");
+        waterloggedFence.put("Properties", props);
+        assertTrue((c.classify(waterloggedFence) & HeightmapCalculator.FLUID) != 0);
+    }
+}
@@ -0,0 +1,219 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.TerrainSection;
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
+import io.github.ensgijs.nbt.mca.io.McaFileChunkIterator;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.io.IOException;
+import java.util.*;
+
+public class LightCalculatorTest extends McaTestCase {
+
+    private List<TerrainChunk> loadChunks() throws IOException {
+        List<TerrainChunk> chunks = new ArrayList<>();
+        try (McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(
+                getResourceFile("1_20_4/region/r.-3.-3.mca"), LoadFlags.LOAD_ALL_DATA, TerrainChunk::new)) {
+            while (iter.hasNext()) chunks.add(iter.next());
+        }
+        return chunks;
+    }
+
+    /** Replaces every block in the chunk with air. */
+    private TerrainChunk hollow(TerrainChunk chunk) {
+        for (TerrainSection section : chunk) {
+            section.setBlockStates(new PalettizedCuboid<>(16, block("minecraft:air")));
+        }
+        return chunk;
+    }
+
+    private static int blockLight(TerrainChunk chunk, int x, int y, int z) {
+        return LightCalculator.getNibble(chunk.getSection(y >> 4).getBlockLight(), (y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF));
+    }
+
+    private static int skyLight(TerrainChunk chunk, int x, int y, int z) {
+        return LightCalculator.getNibble(chunk.getSection(y >> 4).getSkyLight(), (y & 0xF) << 8 | (z & 0xF) << 4 | (x & 0xF));
+    }
+
+    /** @return two chunks, the second directly east of the first. */
+    private TerrainChunk[] adjacentPair(List<TerrainChunk> chunks) {
+        Map<IntPointXZ, TerrainChunk> byXZ = new HashMap<>();
+        for (TerrainChunk chunk : chunks) byXZ.put(new IntPointXZ(chunk.getChunkX(), chunk.getChunkZ()), chunk);
+        for (TerrainChunk chunk : chunks) {
+            TerrainChunk east = byXZ.get(new IntPointXZ(chunk.getChunkX() + 1, chunk.getChunkZ()));
+            if (east != null) return new TerrainChunk[] {chunk, east};
+        }
+        fail("no adjacent chunks in test data");
+        return null;
+    }
+
+    public void testNibbleAccess() {
+        byte[] nibbles = new byte[2048];
+        LightCalculator.setNibble(nibbles, 0, 0xA);
+        LightCalculator.setNibble(nibbles, 1, 0x5);
+        LightCalculator.setNibble(nibbles, 4095, 0xF);
+        assertEquals((byte) 0x5A, nibbles[0]);
+        assertEquals((byte) 0xF0, nibbles[2047]);
+        assertEquals(0xA, LightCalculator.getNibble(nibbles, 0));
+        assertEquals(0x5, LightCalculator.getNibble(nibbles, 1));
+        assertEquals(0xF, LightCalculator.getNibble(nibbles, 4095));
+        assertEquals(0, LightCalculator.getNibble(nibbles, 4094));
+    }
+
+    public void testEmitterFalloffAndOpenSky() throws IOException {
+        TerrainChunk chunk = hollow(loadChunks().get(0));
+        final int bx = chunk.getChunkX() * 16 + 8;
+        final int bz = chunk.getChunkZ() * 16 + 8;
+        final int by = 64;
+        chunk.setBlockAt(bx, by, bz, block("minecraft:glowstone"));
+        chunk.setLightOn(false);
+        assertEquals(0, new LightCalculator().setThreads(1).relight(List.of(chunk)));
+        assertTrue(chunk.getLightOn());
+
+        assertEquals(15, blockLight(chunk, bx, by, bz));
+        for (int d = 1; d < 8; d++) {
+            assertEquals(15 - d, blockLight(chunk, bx + d, by, bz));
+            assertEquals(15 - d, blockLight(chunk, bx, by - d, bz));
+            assertEquals(15 - d, blockLight(chunk, bx, by, bz - d));
+        }
+        assertEquals(15 - 6, blockLight(chunk, bx + 2, by + 2, bz - 2));
+        assertEquals(0, blockLight(chunk, bx, by + 20, bz));
+        // glowstone is opaque, the sky light column below it is dimmed by distance instead of full
+        assertEquals(15, skyLight(chunk, bx + 1, by - 1, bz));
+        assertEquals(14, skyLight(chunk, bx, by - 1, bz));
+        assertEquals(15, skyLight(chunk, bx, chunk.getWorldMinBlockY(), bz + 1));
+    }
+
+    public void testOpaqueBlocksStopLight() throws IOException {
+        TerrainChunk chunk = hollow(loadChunks().get(0));
+        final int x0 = chunk.getChunkX() * 16;
+        final int z0 = chunk.getChunkZ() * 16;
+        CompoundTag stone = block("minecraft:stone");
+        // stone roof at y=100, glowstone below it walled in on the east by stone
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                chunk.setBlockAt(x0 + x, 100, z0 + z, stone);
+            }
+        }
+        for (int y = 92; y < 100; y++) {
+            for (int z = 0; z < 16; z++) {
+                chunk.setBlockAt(x0 + 9, y, z0 + z, stone);
+            }
+        }
+        chunk.setBlockAt(x0 + 8, 95, z0 + 8, block("minecraft:torch"));
+        new LightCalculator().setThreads(1).relight(List.of(chunk));
+
+        assertEquals(14, blockLight(chunk, x0 + 8, 95, z0 + 8));
+        assertEquals(0, blockLight(chunk, x0 + 9, 95, z0 + 8));
+        // the roof blocks the way over the wall, light goes 4 down, 2 east under the wall and 4 back up
+        assertEquals(14 - 10, blockLight(chunk, x0 + 10, 95, z0 + 8));
+        assertEquals(0, blockLight(chunk, x0 + 8, 101, z0 + 8));
+        assertEquals(15, skyLight(chunk, x0 + 8, 101, z0 + 8));
+        assertEquals(0, skyLight(chunk, x0 + 8, 100, z0 + 8));
+        // no neighbors were given, so no sky light comes in from the sides either
+        assertEquals(0, skyLight(chunk, x0 + 8, 95, z0 + 8));
+    }
+
+    public void testLightCrossesChunkBorders() throws IOException {
+        TerrainChunk[] pair = adjacentPair(loadChunks());
+        TerrainChunk west = hollow(pair[0]);
+        TerrainChunk east = hollow(pair[1]);
+        final int bx = west.getChunkX() * 16 + 15;
+        final int bz = west.getChunkZ() * 16 + 8;
+        west.setBlockAt(bx, 64, bz, block("minecraft:glowstone"));
+
+        int rounds = new LightCalculator().setThreads(2).relight(List.of(west, east));
+        assertTrue(rounds > 0);
+        assertEquals(14, blockLight(east, bx + 1, 64, bz));
+        assertEquals(11, blockLight(east, bx + 4, 64, bz));
+        assertEquals(10, blockLight(east, bx + 4, 65, bz));
+        assertEquals(13, blockLight(west, bx - 2, 64, bz));
+    }
+
+    public void testBorderChunksShineInButAreNotModified() throws IOException {
+        TerrainChunk[] pair = adjacentPair(loadChunks());
+        TerrainChunk west = hollow(pair[0]);
+        TerrainChunk east = hollow(pair[1]);
+        final int bx = west.getChunkX() * 16 + 15;
+        final int bz = west.getChunkZ() * 16 + 8;
+        west.setBlockAt(bx, 64, bz, block("minecraft:glowstone"));
+        new LightCalculator().setThreads(1).relight(List.of(west));
+
+        byte[] westLight = west.getSection(64 >> 4).getBlockLight().clone();
+        new LightCalculator().relight(List.of(east), List.of(west));
+        assertEquals(14, blockLight(east, bx + 1, 64, bz));
+        assertTrue(Arrays.equals(westLight, west.getSection(64 >> 4).getBlockLight()));
+    }
+
+    public void testParallelMatchesSequential() throws IOException {
+        List<TerrainChunk> sequential = loadChunks();
+        List<TerrainChunk> parallel = loadChunks();
+        new LightCalculator().setThreads(1).relight(sequential);
+        new LightCalculator().setThreads(4).relight(parallel);
+        for (int i = 0; i < sequential.size(); i++) {
+            Iterator<TerrainSection> expected = sequential.get(i).iterator();
+            for (TerrainSection section : parallel.get(i)) {
+                TerrainSection other = expected.next();
+                assertTrue(Arrays.equals(other.getBlockLight(), section.getBlockLight()));
+                assertTrue(Arrays.equals(other.getSkyLight(), section.getSkyLight()));
+            }
+        }
+    }
+
+    public void testCloseToVanillaLight() throws IOException {
+        List<TerrainChunk> chunks = loadChunks();
+        Map<TerrainSection, byte[][]> vanilla = new IdentityHashMap<>();
+        for (TerrainChunk chunk : chunks) {
+            for (TerrainSection section : chunk) {
+                if (section.getBlockStates() != null && section.getSkyLight() != null && section.getBlockLight() != null) {
+                    vanilla.put(section, new byte[][] {section.getBlockLight(), section.getSkyLight()});
+                }
+            }
+        }
+        new LightCalculator().relight(chunks);
+        long cells = 0;
+        long blockMismatches = 0;
+        long skyMismatches = 0;
+        for (Map.Entry<TerrainSection, byte[][]> e : vanilla.entrySet()) {
+            for (int i = 0; i < 4096; i++) {
+                cells++;
+                if (LightCalculator.getNibble(e.getValue()[0], i) != LightCalculator.getNibble(e.getKey().getBlockLight(), i))
+                    blockMismatches++;
+                if (LightCalculator.getNibble(e.getValue()[1], i) != LightCalculator.getNibble(e.getKey().getSkyLight(), i))
+                    skyMismatches++;
+            }
+        }
+        assertTrue(cells > 0);
+        // the default classifier is a name based approximation
+        assertTrue(blockMismatches + " of " + cells, blockMismatches * 50 < cells);
+        assertTrue(skyMismatches + " of " + cells, skyMismatches * 50 < cells);
+    }
+
+    public void testDefaultClassifier() {
+        LightCalculator.LightClassifier c = LightCalculator.DEFAULT_CLASSIFIER;
+        assertEquals(LightCalculator.lightProperties(0, 0), c.classify(block("minecraft:air")));
+        assertEquals(LightCalculator.lightProperties(0, 15), c.classify(block("minecraft:stone")));
+        assertEquals(LightCalculator.lightProperties(15, 15), c.classify(block("minecraft:glowstone")));
+        assertEquals(LightCalculator.lightProperties(14, 0), c.classify(block("minecraft:torch")));
+        assertEquals(0, LightCalculator.opacity(c.classify(block("minecraft:glass"))));
+        assertEquals(15, LightCalculator.opacity(c.classify(block("minecraft:tinted_glass"))));
+        assertEquals(1, LightCalculator.opacity(c.classify(block("minecraft:water"))));
+        assertEquals(1, LightCalculator.opacity(c.classify(block("minecraft:oak_leaves"))));
+
+        CompoundTag unlitFurnace = block("minecraft:furnace");
+        CompoundTag props = new CompoundTag();
+        props.putString("lit", "false");
+        unlitFurnace.put("Properties", props);
+        assertEquals(0, LightCalculator.emission(c.classify(unlitFurnace)));
+        props.putString("lit", "true");
+        assertEquals(13, LightCalculator.emission(c.classify(unlitFurnace)));
+
+        CompoundTag light = block("minecraft:light");
+        props = new CompoundTag();
+        props.putString("level", "9");
+        light.put("Properties", props);
+        assertEquals(9, LightCalculator.emission(c.classify(light)));
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.McaFileHeader;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class McaWorldDumperTest extends McaTestCase {
+
+    private Path createWorld() throws IOException {
+        Path worldRoot = getNewTmpDirectory().toPath();
+        for (String mcaType : new String[] {"region", "poi", "entities"}) {
+            Path dir = worldRoot.resolve(mcaType);
+            Files.createDirectories(dir);
+            Files.copy(copyResourceToTmp("1_20_4/" + mcaType + "/r.-3.-3.mca").toPath(), dir.resolve("r.-3.-3.mca"));
+        }
+        return worldRoot;
+    }
+
+    private static int chunkCount(Path worldRoot, String mcaType) throws IOException {
+        return McaFileHeader.read(worldRoot.resolve(mcaType).resolve("r.-3.-3.mca")).getChunkCount();
+    }
+
+    public void testDump_wholeWorld() throws IOException {
+        Path worldRoot = createWorld();
+        Path outputRoot = getNewTmpDirectory().toPath();
+        int expectedChunks = chunkCount(worldRoot, "region") + chunkCount(worldRoot, "poi") + chunkCount(worldRoot, "entities");
+
+        List<McaWorldDumper.FileResult> reported = new ArrayList<>();
+        List<Integer> filesDone = new ArrayList<>();
+        McaWorldDumper.Summary summary = new McaWorldDumper(worldRoot, outputRoot)
+                .setThreads(3)
+                .setProgressListener((result, done, total) -> {
+                    assertEquals(3, total);
+                    reported.add(result);
+                    filesDone.add(done);
+                })
+                .dump();
+
+        assertEquals(new McaWorldDumper.Summary(3, expectedChunks, 0, 0), summary);
+        assertEquals(List.of(1, 2, 3), filesDone);
+        // listed and reported in path order
+        assertEquals(worldRoot.resolve("entities/r.-3.-3.mca"), reported.get(0).mcaFile());
+        assertEquals(worldRoot.resolve("poi/r.-3.-3.mca"), reported.get(1).mcaFile());
+        assertEquals(worldRoot.resolve("region/r.-3.-3.mca"), reported.get(2).mcaFile());
+        assertEquals(outputRoot.resolve("region/r.-3.-3"), reported.get(2).outputDir());
+
+        // same output as the single file dumper
+        Path singleRoot = getNewTmpDirectory().toPath();
+        Path singleDir = McaDumper.dumpChunksAsTextNbt(worldRoot.resolve("region/r.-3.-3.mca").toFile(), singleRoot);
+        File[] expectedFiles = singleDir.toFile().listFiles();
+        assertNotNull(expectedFiles);
+        assertEquals(chunkCount(worldRoot, "region"), expectedFiles.length);
+        for (File expected : expectedFiles) {
+            Path actual = outputRoot.resolve("region/r.-3.-3").resolve(expected.getName());
+            assertEquals(expected.getName(), Files.readString(expected.toPath()), Files.readString(actual));
+        }
+    }
+
+    public void testDump_resume() throws IOException {
+        Path worldRoot = createWorld();
+        Path outputRoot = getNewTmpDirectory().toPath();
+        McaWorldDumper dumper = new McaWorldDumper(worldRoot, outputRoot).setThreads(2).setMcaTypes("region");
+        int chunks = chunkCount(worldRoot, "region");
+        assertEquals(new McaWorldDumper.Summary(1, chunks, 0, 0), dumper.dump());
+
+        // nothing changed
+        assertEquals(new McaWorldDumper.Summary(1, 0, chunks, 0), dumper.dump());
+
+        // one output file is older than its chunk, one belongs to a chunk which does not exist
+        File regionOut = outputRoot.resolve("region/r.-3.-3").toFile();
+        File[] outputs = regionOut.listFiles((dir, name) -> name.endsWith(".snbt"));
+        assertNotNull(outputs);
+        assertTrue(outputs[0].setLastModified(0));
+        McaFileHeader header = McaFileHeader.read(worldRoot.resolve("region/r.-3.-3.mca"));
+        int missingIndex = 0;
+        while (header.hasChunk(missingIndex)) missingIndex++;
+        File stale = new File(regionOut, String.format("%04d.0.0.snbt", missingIndex));
+        Files.writeString(stale.toPath(), "{}");
+        File unrelated = new File(regionOut, "notes.txt");
+        Files.writeString(unrelated.toPath(), "keep me");
+        // partial write of an interrupted run
+        File leftover = new File(regionOut, outputs[1].getName() + ".tmp");
+        Files.writeString(leftover.toPath(), "{");
+
+        assertEquals(new McaWorldDumper.Summary(1, 1, chunks - 1, 1), dumper.dump());
+        assertFalse(stale.exists());
+        assertFalse(leftover.exists());
+        assertTrue(unrelated.exists());
+
+        // resume disabled rewrites everything
+        assertEquals(new McaWorldDumper.Summary(1, chunks, 0, 0), dumper.setResume(false).dump());
+    }
+
+    public void testDump_resumeAfterRegionRestoredFromBackup() throws IOException {
+        Path worldRoot = createWorld();
+        Path outputRoot = getNewTmpDirectory().toPath();
+        McaWorldDumper dumper = new McaWorldDumper(worldRoot, outputRoot).setThreads(2).setMcaTypes("region");
+        int chunks = chunkCount(worldRoot, "region");
+        assertEquals(new McaWorldDumper.Summary(1, chunks, 0, 0), dumper.dump());
+        assertTrue(Files.isRegularFile(outputRoot.resolve("region/r.-3.-3").resolve(McaWorldDumper.TIMESTAMPS_FILE_NAME)));
+
+        // an older copy of a chunk - its timestamp moves backwards, the snbt file is still newer than it
+        File mcaFile = worldRoot.resolve("region/r.-3.-3.mca").toFile();
+        try (RandomAccessMcaFile<TerrainChunk> ramf = new RandomAccessMcaFile<>(TerrainChunk.class, mcaFile, "rw")) {
+            int chunkIndex = 0;
+            while (!ramf.hasChunk(chunkIndex)) chunkIndex++;
+            ramf.writeRaw(chunkIndex, ramf.readRaw(chunkIndex), ramf.getChunkTimestamp(chunkIndex) - 3600);
+        }
+        assertEquals(new McaWorldDumper.Summary(1, 1, chunks - 1, 0), dumper.dump());
+        assertEquals(new McaWorldDumper.Summary(1, 0, chunks, 0), dumper.dump());
+    }
+
+    public void testDump_deletesOutputOfRemovedMcaFiles() throws IOException {
+        Path worldRoot = createWorld();
+        Path outputRoot = getNewTmpDirectory().toPath();
+        McaWorldDumper dumper = new McaWorldDumper(worldRoot, outputRoot).setThreads(2);
+        dumper.dump();
+        Path poiOut = outputRoot.resolve("poi/r.-3.-3");
+        int poiChunks = chunkCount(worldRoot, "poi");
+        Path entitiesOut = outputRoot.resolve("entities/r.-3.-3");
+        Files.writeString(entitiesOut.resolve("notes.txt"), "keep me");
+        int entitiesChunks = chunkCount(worldRoot, "entities");
+
+        Files.delete(worldRoot.resolve("poi/r.-3.-3.mca"));
+        Files.delete(worldRoot.resolve("entities/r.-3.-3.mca"));
+        assertEquals(new McaWorldDumper.Summary(1, 0, chunkCount(worldRoot, "region"), poiChunks + entitiesChunks),
+                dumper.dump());
+        assertFalse(Files.exists(poiOut));
+        // directories holding files the dumper does not own are kept
+        assertEquals(List.of("notes.txt"), List.of(entitiesOut.toFile().list()));
+        assertTrue(Files.isDirectory(outputRoot.resolve("region/r.-3.-3")));
+    }
+
+    public void testDump_emptyWorld() throws IOException {
+        McaWorldDumper.Summary summary = new McaWorldDumper(getNewTmpDirectory().toPath(), getNewTmpDirectory().toPath()).dump();
+        assertEquals(new McaWorldDumper.Summary(0, 0, 0, 0), summary);
+    }
+
+    public void testSetters_validate() {
+        McaWorldDumper dumper = new McaWorldDumper(Path.of("a"), Path.of("b"));
+        assertThrowsIllegalArgumentException(() -> dumper.setThreads(0));
+        assertThrowsIllegalArgumentException(() -> dumper.setMcaTypes("region", "unknown_type"));
+    }
+}
@@ -0,0 +1,314 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.EntitiesChunk;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.PoiChunk;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static io.github.ensgijs.nbt.mca.util.IntPointXYZ.XYZ;
+
+public class McaWorldTest extends McaTestCase {
+
+    private Path createTestWorld() throws IOException {
+        Path worldRoot = getNewTmpDirectory().toPath();
+        Path regionDir = Files.createDirectories(worldRoot.resolve("region"));
+        Files.copy(copyResourceToTmp("1_20_4/region/r.-3.-3.mca").toPath(), regionDir.resolve("r.-3.-3.mca"));
+        return worldRoot;
+    }
+
+    /** @return block xz of the north west corner of a chunk which has an existing chunk directly east of it. */
+    private static IntPointXZ westOfPair(Path worldRoot) throws IOException {
+        Set<IntPointXZ> present = new HashSet<>();
+        try (var ramf = new RandomAccessMcaFile<>(TerrainChunk.class, worldRoot.resolve("region/r.-3.-3.mca"), "r")) {
+            for (TerrainChunk chunk : ramf) {
+                if (chunk != null) present.add(new IntPointXZ(chunk.getChunkX(), chunk.getChunkZ()));
+            }
+        }
+        for (IntPointXZ xz : present) {
+            if (present.contains(new IntPointXZ(xz.getX() + 1, xz.getZ()))) {
+                return new IntPointXZ(xz.getX() << 4, xz.getZ() << 4);
+            }
+        }
+        fail("no adjacent chunks in test data");
+        return null;
+    }
+
+    public void testFill() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = westOfPair(worldRoot);
+        final int x0 = origin.getX();
+        final int z0 = origin.getZ();
+        CompoundTag glass = block("minecraft:glass");
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            // whole sections 4 and 5 of the west chunk plus a partial slab of the east chunk
+            assertEquals(2, world.fill(XYZ(x0, 64, z0), XYZ(x0 + 20, 95, z0 + 15), glass));
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertEquals(1, world.getChunk(x0 >> 4, z0 >> 4).getSection(4).getBlockStates().paletteSize());
+            assertEquals(1, world.getChunk(x0 >> 4, z0 >> 4).getSection(5).getBlockStates().paletteSize());
+            for (int y = 60; y < 100; y++) {
+                boolean inY = y >= 64 && y <= 95;
+                assertEquals(inY, "minecraft:glass".equals(world.getBlockNameAt(x0, y, z0)));
+                assertEquals(inY, "minecraft:glass".equals(world.getBlockNameAt(x0 + 20, y, z0 + 15)));
+                assertFalse("minecraft:glass".equals(world.getBlockNameAt(x0 + 21, y, z0 + 15)));
+            }
+        }
+    }
+
+    public void testReplace() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = westOfPair(worldRoot);
+        final int x0 = origin.getX();
+        final int z0 = origin.getZ();
+        final IntPointXYZ min = XYZ(x0 + 3, -64, z0 + 2);
+        final IntPointXYZ max = XYZ(x0 + 18, 40, z0 + 15);
+        String[][][] before = new String[32][105][16];
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            for (int x = 0; x < 32; x++)
+                for (int y = -64; y <= 40; y++)
+                    for (int z = 0; z < 16; z++)
+                        before[x][y + 64][z] = world.getBlockNameAt(x0 + x, y, z0 + z);
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            world.setThreads(1);
+            assertEquals(2, world.replace(min, max, t -> t.getString("Name").equals("minecraft:stone"), block("minecraft:glass")));
+            // nothing left to replace
+            assertEquals(0, world.replace(min, max, block("minecraft:stone"), block("minecraft:glass")));
+        }
+        int replaced = 0;
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            for (int x = 0; x < 32; x++) {
+                for (int y = -64; y <= 40; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        String was = before[x][y + 64][z];
+                        boolean inBox = x0 + x >= min.x && x0 + x <= max.x && z0 + z >= min.z;
+                        String expected = inBox && "minecraft:stone".equals(was) ? "minecraft:glass" : was;
+                        if (!expected.equals(was)) replaced++;
+                        assertEquals(expected, world.getBlockNameAt(x0 + x, y, z0 + z));
+                    }
+                }
+            }
+        }
+        assertTrue(replaced > 0);
+    }
+
+    public void testOverlappingCopy() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = westOfPair(worldRoot);
+        final int x0 = origin.getX();
+        final int z0 = origin.getZ();
+        final IntPointXYZ min = XYZ(x0 + 2, 30, z0 + 1);
+        final IntPointXYZ max = XYZ(x0 + 12, 70, z0 + 9);
+        final IntPointXYZ destination = XYZ(x0 + 9, 33, z0 + 4);
+        CompoundTag[][][] source = new CompoundTag[11][41][9];
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            for (int x = 0; x < 11; x++)
+                for (int y = 0; y < 41; y++)
+                    for (int z = 0; z < 9; z++)
+                        source[x][y][z] = world.getBlockAt(min.x + x, min.y + y, min.z + z);
+            assertEquals(2, world.copy(max, min, destination));
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            for (int x = 0; x < 11; x++)
+                for (int y = 0; y < 41; y++)
+                    for (int z = 0; z < 9; z++)
+                        assertEquals(source[x][y][z], world.getBlockAt(destination.x + x, destination.y + y, destination.z + z));
+        }
+    }
+
+    public void testSectionAlignedCopy() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = westOfPair(worldRoot);
+        final int x0 = origin.getX();
+        final int z0 = origin.getZ();
+        // three whole sections of the west chunk plus a partial slab, one chunk east and one section up
+        final IntPointXYZ min = XYZ(x0, 0, z0);
+        final IntPointXYZ max = XYZ(x0 + 15, 50, z0 + 15);
+        final IntPointXYZ destination = XYZ(x0 + 16, 16, z0);
+        CompoundTag[][][] source = new CompoundTag[16][51][16];
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            for (int x = 0; x < 16; x++)
+                for (int y = 0; y < 51; y++)
+                    for (int z = 0; z < 16; z++)
+                        source[x][y][z] = world.getBlockAt(min.x + x, min.y + y, min.z + z);
+            assertEquals(1, world.copy(min, max, destination));
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            for (int x = 0; x < 16; x++)
+                for (int y = 0; y < 51; y++)
+                    for (int z = 0; z < 16; z++)
+                        assertEquals(source[x][y][z], world.getBlockAt(destination.x + x, destination.y + y, destination.z + z));
+            assertEquals(world.getChunk(x0 >> 4, z0 >> 4).getSection(1).getBlockStates().paletteSize(),
+                    world.getChunk((x0 >> 4) + 1, z0 >> 4).getSection(2).getBlockStates().paletteSize());
+        }
+    }
+
+    public void testSetBiome() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = westOfPair(worldRoot);
+        final int x0 = origin.getX();
+        final int z0 = origin.getZ();
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            assertEquals(1, world.setBiome(XYZ(x0, -64, z0), XYZ(x0 + 5, 100, z0 + 15), "minecraft:mushroom_fields"));
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertEquals("minecraft:mushroom_fields", world.getBiomeAt(x0, -64, z0));
+            assertEquals("minecraft:mushroom_fields", world.getBiomeAt(x0 + 7, 103, z0 + 15));
+            assertFalse("minecraft:mushroom_fields".equals(world.getBiomeAt(x0 + 8, 50, z0)));
+            assertFalse("minecraft:mushroom_fields".equals(world.getBiomeAt(x0, 104, z0)));
+        }
+    }
+
+    public void testBulkOperationsUseCachedChunks() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = westOfPair(worldRoot);
+        final int x0 = origin.getX();
+        final int z0 = origin.getZ();
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            world.setBlockAt(x0, 200, z0, block("minecraft:gold_block"));
+            world.fill(XYZ(x0 + 1, 200, z0), XYZ(x0 + 1, 200, z0), block("minecraft:iron_block"));
+            // the cached chunk is edited in place and its pending single block edit is written with it
+            assertEquals("minecraft:iron_block", world.getBlockNameAt(x0 + 1, 200, z0));
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertEquals("minecraft:gold_block", world.getBlockNameAt(x0, 200, z0));
+            assertEquals("minecraft:iron_block", world.getBlockNameAt(x0 + 1, 200, z0));
+        }
+    }
+
+    public void testRegionCacheEviction() throws IOException {
+        // two adjacent regions each holding a single chunk: -3 11 and 1 3
+        Path worldRoot = getNewTmpDirectory().toPath();
+        Path regionDir = Files.createDirectories(worldRoot.resolve("region"));
+        Files.copy(copyResourceToTmp("1_15_2/region/r.-1.0.mca").toPath(), regionDir.resolve("r.-1.0.mca"));
+        Files.copy(copyResourceToTmp("1_15_2/region/r.0.0.mca").toPath(), regionDir.resolve("r.0.0.mca"));
+        try (McaWorld world = new McaWorld(worldRoot, "rw", 0)) {
+            assertThrowsException(() -> world.setRegionCacheCapacity(0), IllegalArgumentException.class);
+            world.setRegionCacheCapacity(1);
+            assertNotNull(world.getChunk(-3, 11));
+            assertNotNull(world.getChunk(-3, 11));
+            assertNotNull(world.getChunk(1, 3));
+            assertEquals(Set.of(new IntPointXZ(0, 0)), world.touchedRegions());
+            assertEquals(new McaWorld.RegionCacheStats(1, 2, 1, 0), world.regionCacheStats());
+
+            // a bulk edit spanning more regions than the cache holds is run in batches
+            assertEquals(2, world.fill(XYZ(-48, 100, 48), XYZ(31, 100, 191), block("minecraft:glass")));
+            assertEquals(1, world.touchedRegions().size());
+            McaWorld.RegionCacheStats stats = world.regionCacheStats();
+            assertEquals(3, stats.evictions());
+            assertEquals(1, stats.flushes());
+
+            // flushed handles are not counted as flushed again when evicted
+            assertEquals(1, world.fill(XYZ(-48, 101, 176), XYZ(-33, 101, 191), block("minecraft:glass")));
+            world.flushRegions();
+            final long evictions = world.regionCacheStats().evictions();
+            final long flushes = world.regionCacheStats().flushes();
+            assertNotNull(world.getChunk(1, 3));
+            stats = world.regionCacheStats();
+            assertEquals(evictions + 1, stats.evictions());
+            assertEquals(flushes, stats.flushes());
+
+            world.setRegionCacheCapacity(8);
+            assertNull(world.getRegion(5, 5));
+            assertEquals(2, world.touchedRegions().size());
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertEquals("minecraft:glass", world.getBlockNameAt(-48, 100, 176));
+            assertEquals("minecraft:glass", world.getBlockNameAt(31, 100, 63));
+        }
+    }
+
+    public void testPoiAndEntitiesShareCaches() throws IOException {
+        Path worldRoot = getNewTmpDirectory().toPath();
+        for (String mcaType : new String[] {"region", "poi", "entities"}) {
+            Path dir = Files.createDirectories(worldRoot.resolve(mcaType));
+            Files.copy(copyResourceToTmp("1_20_4/" + mcaType + "/r.-3.-3.mca").toPath(), dir.resolve("r.-3.-3.mca"));
+        }
+        List<IntPointXZ> withEntities = new ArrayList<>();
+        try (var ramf = new RandomAccessMcaFile<>(EntitiesChunk.class, worldRoot.resolve("entities/r.-3.-3.mca"), "r")) {
+            for (EntitiesChunk chunk : ramf) {
+                if (chunk != null) withEntities.add(chunk.getChunkXZ());
+            }
+        }
+        assertFalse(withEntities.isEmpty());
+        final IntPointXZ chunkXZ = withEntities.get(0);
+        final IntPointXZ missingXZ = new IntPointXZ(0, 0);
+
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            world.setThreads(3);
+            Map<IntPointXZ, McaWorld.WorldChunk> chunks = world.getWorldChunks(List.of(chunkXZ, missingXZ));
+            assertEquals(List.of(chunkXZ, missingXZ), new ArrayList<>(chunks.keySet()));
+            McaWorld.WorldChunk worldChunk = chunks.get(chunkXZ);
+            assertEquals(chunkXZ, worldChunk.chunkXZ());
+            assertNotNull(worldChunk.terrain());
+            assertNotNull(worldChunk.entities());
+            assertEquals(chunkXZ, worldChunk.entities().getChunkXZ());
+            McaWorld.WorldChunk missing = chunks.get(missingXZ);
+            assertNull(missing.terrain());
+            assertNull(missing.poi());
+            assertNull(missing.entities());
+            // each of the three files was opened once, one more miss for each file type of the missing region
+            assertEquals(new McaWorld.RegionCacheStats(0, 6, 0, 0), world.regionCacheStats());
+            assertEquals(Set.of(new IntPointXZ(-3, -3), new IntPointXZ(0, 0)), world.touchedRegions());
+
+            // served from the shared chunk cache
+            assertSame(worldChunk.terrain(), world.getChunk(chunkXZ));
+            assertSame(worldChunk.entities(), world.getEntitiesChunk(chunkXZ));
+            PoiChunk poi = world.getPoiChunk(chunkXZ);
+            assertSame(worldChunk.poi(), poi);
+            assertSame(worldChunk.terrain(), world.getWorldChunk(chunkXZ).terrain());
+            assertEquals(new McaWorld.RegionCacheStats(0, 6, 0, 0), world.regionCacheStats());
+
+            // pinned regions of a batch are never evicted while it runs
+            world.setRegionCacheCapacity(1);
+            assertEquals(1, world.touchedRegions().size());
+            IntPointXZ otherXZ = withEntities.get(withEntities.size() - 1);
+            assertNotNull(world.getWorldChunks(List.of(otherXZ)).get(otherXZ).entities());
+            assertTrue(world.regionCacheStats().evictions() >= 5);
+        }
+    }
+
+    public void testEditChunksWithEntities() throws IOException {
+        Path worldRoot = getNewTmpDirectory().toPath();
+        for (String mcaType : new String[] {"region", "entities"}) {
+            Path dir = Files.createDirectories(worldRoot.resolve(mcaType));
+            Files.copy(copyResourceToTmp("1_20_4/" + mcaType + "/r.-3.-3.mca").toPath(), dir.resolve("r.-3.-3.mca"));
+        }
+        final McaWorld.Box box = new McaWorld.Box(-96 << 4, 0, -96 << 4, (-64 << 4) - 1, 0, (-64 << 4) - 1);
+        final Set<IntPointXZ> seen = new HashSet<>();
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            world.editChunks(box, false, true, (chunk, entities) -> {
+                if (entities != null) {
+                    assertEquals(chunk.getChunkXZ(), entities.getChunkXZ());
+                    synchronized (seen) {
+                        seen.add(entities.getChunkXZ());
+                    }
+                }
+                return 0;
+            });
+            assertFalse(seen.isEmpty());
+            for (IntPointXZ chunkXZ : seen) {
+                assertNotNull(world.getEntitiesChunk(chunkXZ));
+            }
+        }
+    }
+
+    public void testReadonly() throws IOException {
+        Path worldRoot = createTestWorld();
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertThrowsException(() -> world.fill(XYZ(0, 0, 0), XYZ(1, 1, 1), block("minecraft:stone")), IOException.class);
+            assertThrowsException(() -> world.copy(XYZ(0, 0, 0), XYZ(1, 1, 1), XYZ(5, 5, 5)), IOException.class);
+        }
+    }
+}
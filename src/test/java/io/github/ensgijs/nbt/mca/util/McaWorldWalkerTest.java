@@ -0,0 +1,176 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.McaFileBase;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.McaFileHeader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class McaWorldWalkerTest extends McaTestCase {
+
+    private Path createTestWorld(String... regionResources) throws IOException {
+        Path worldRoot = getNewTmpDirectory().toPath();
+        Path regionDir = Files.createDirectories(worldRoot.resolve("region"));
+        for (String resource : regionResources) {
+            Path file = copyResourceToTmp(resource).toPath();
+            Files.copy(file, regionDir.resolve(file.getFileName()));
+        }
+        return worldRoot;
+    }
+
+    private static int chunkCount(Path worldRoot, String regionFileName) throws IOException {
+        return McaFileHeader.read(worldRoot.resolve("region").resolve(regionFileName)).getChunkCount();
+    }
+
+    public void testVisitsRegionByRegionInChunkIndexOrder() throws IOException {
+        Path worldRoot = createTestWorld("1_18_1/region/r.8.1.mca", "1_18_1/region/r.0.-2.mca");
+        final int expectedChunks = chunkCount(worldRoot, "r.8.1.mca") + chunkCount(worldRoot, "r.0.-2.mca");
+        for (boolean prefetch : new boolean[] {true, false}) {
+            List<IntPointXZ> visited = new ArrayList<>();
+            McaWorldWalker.Summary summary;
+            try (McaWorld world = new McaWorld(worldRoot, "r")) {
+                summary = world.walker().setPrefetch(prefetch).walk(chunk -> {
+                    visited.add(chunk.getChunkXZ());
+                    return false;
+                });
+                assertTrue(world.touchedRegions().isEmpty());
+            }
+            assertEquals(new McaWorldWalker.Summary(2, expectedChunks, 0), summary);
+            assertEquals(expectedChunks, visited.size());
+            for (int i = 1; i < visited.size(); i++) {
+                IntPointXZ a = visited.get(i - 1);
+                IntPointXZ b = visited.get(i);
+                IntPointXZ regionA = a.transformChunkToRegion();
+                IntPointXZ regionB = b.transformChunkToRegion();
+                if (regionA.equals(regionB)) {
+                    assertTrue(a + " before " + b,
+                            McaFileBase.getChunkIndex(a.getX(), a.getZ()) < McaFileBase.getChunkIndex(b.getX(), b.getZ()));
+                } else {
+                    // north to south
+                    assertEquals(new IntPointXZ(0, -2), regionA);
+                    assertEquals(new IntPointXZ(8, 1), regionB);
+                }
+            }
+        }
+    }
+
+    public void testChunkLookupsAcrossRegions() throws IOException {
+        // each region holds a single chunk: -3 11 and 1 3
+        Path worldRoot = createTestWorld("1_15_2/region/r.-1.0.mca", "1_15_2/region/r.0.0.mca");
+        final List<TerrainChunk> visited = new ArrayList<>();
+        final TerrainChunk[] lookedUp = new TerrainChunk[1];
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            McaWorldWalker walker = world.walker().setMaxOpenFiles(1).setMaxCachedChunks(8);
+            walker.walk(chunk -> {
+                if (visited.isEmpty()) {
+                    // not yet visited, read from a file opened for the lookup
+                    lookedUp[0] = walker.getChunk(1, 3);
+                    assertNull(walker.getChunk(2, 3));
+                    assertNull(walker.getChunk(-40, 3));
+                }
+                assertSame(chunk, walker.getChunk(chunk.getChunkXZ()));
+                visited.add(chunk);
+                return false;
+            });
+            assertTrue(world.touchedRegions().isEmpty());
+        }
+        assertEquals(2, visited.size());
+        assertEquals(new IntPointXZ(-3, 11), visited.get(0).getChunkXZ());
+        assertEquals(new IntPointXZ(1, 3), visited.get(1).getChunkXZ());
+        assertSame(lookedUp[0], visited.get(1));
+    }
+
+    public void testVisitedChunksAreNotCached() throws IOException {
+        Path worldRoot = createTestWorld("1_20_4/region/r.-3.-3.mca");
+        final List<TerrainChunk> visited = new ArrayList<>();
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            McaWorldWalker walker = world.walker();
+            walker.walk(chunk -> {
+                if (visited.size() == 1) {
+                    TerrainChunk previous = visited.get(0);
+                    TerrainChunk lookedUp = walker.getChunk(previous.getChunkXZ());
+                    assertNotSame(previous, lookedUp);
+                    assertEquals(previous.getChunkXZ(), lookedUp.getChunkXZ());
+                    // neighbour lookups are cached
+                    assertSame(lookedUp, walker.getChunk(previous.getChunkXZ()));
+                }
+                visited.add(chunk);
+                return false;
+            });
+        }
+        assertTrue(visited.size() > 1);
+    }
+
+    public void testGetChunkOutsideOfWalkThrows() throws IOException {
+        Path worldRoot = createTestWorld("1_20_4/region/r.-3.-3.mca");
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertThrowsException(() -> world.walker().getChunk(0, 0), IllegalStateException.class);
+        }
+    }
+
+    public void testWriteBack() throws IOException {
+        Path worldRoot = createTestWorld("1_20_4/region/r.-3.-3.mca");
+        final int expectedChunks = chunkCount(worldRoot, "r.-3.-3.mca");
+        final int y = 300;
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertThrowsException(() -> world.walker().walk(chunk -> true), IOException.class);
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            McaWorldWalker walker = world.walker().setMaxCachedChunks(1);
+            McaWorldWalker.Summary summary = walker.walk(chunk -> {
+                if (((chunk.getChunkX() ^ chunk.getChunkZ()) & 1) != 0) return false;
+                // chunk sections only go up to y 319, mark the chunk with a block near the top
+                return chunk.setBlockAt(chunk.getChunkX() << 4, y, chunk.getChunkZ() << 4, block("minecraft:gold_block"));
+            });
+            assertEquals(expectedChunks, summary.chunksVisited());
+            assertTrue(summary.chunksWritten() > 0);
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            int gold = 0;
+            for (int chunkZ = -96; chunkZ < -64; chunkZ++) {
+                for (int chunkX = -96; chunkX < -64; chunkX++) {
+                    String name = world.getBlockNameAt(chunkX << 4, y, chunkZ << 4);
+                    if (name == null) continue;
+                    assertEquals(((chunkX ^ chunkZ) & 1) == 0, "minecraft:gold_block".equals(name));
+                    if (((chunkX ^ chunkZ) & 1) == 0) gold++;
+                }
+            }
+            assertTrue(gold > 0);
+        }
+    }
+
+    public void testVisitsPendingWorldEdits() throws IOException {
+        Path worldRoot = createTestWorld("1_20_4/region/r.-3.-3.mca");
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            TerrainChunk first = null;
+            for (int chunkIndex = 0; first == null; chunkIndex++) {
+                first = world.getChunk(-96 + (chunkIndex & 0x1F), -96 + (chunkIndex >> 5));
+            }
+            final TerrainChunk edited = first;
+            edited.setBlockAt(edited.getChunkX() << 4, 310, edited.getChunkZ() << 4, block("minecraft:iron_block"));
+            final boolean[] seen = {false};
+            world.walker().walk(chunk -> {
+                if (chunk.getChunkXZ().equals(edited.getChunkXZ())) {
+                    assertSame(edited, chunk);
+                    seen[0] = true;
+                    return true;
+                }
+                return false;
+            });
+            assertTrue(seen[0]);
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            boolean found = false;
+            for (int chunkIndex = 0; !found && chunkIndex < 1024; chunkIndex++) {
+                found = "minecraft:iron_block".equals(world.getBlockNameAt(
+                        (-96 + (chunkIndex & 0x1F)) << 4, 310, (-96 + (chunkIndex >> 5)) << 4));
+            }
+            assertTrue(found);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.EntitiesChunk;
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.DoubleTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static io.github.ensgijs.nbt.mca.util.IntPointXYZ.XYZ;
+
+public class SchematicTest extends McaTestCase {
+
+    private Path createTestWorld() throws IOException {
+        Path worldRoot = getNewTmpDirectory().toPath();
+        Path regionDir = Files.createDirectories(worldRoot.resolve("region"));
+        Files.copy(copyResourceToTmp("1_20_4/region/r.-3.-3.mca").toPath(), regionDir.resolve("r.-3.-3.mca"));
+        return worldRoot;
+    }
+
+    /** @return block xz of the north west corner of a chunk which has existing chunks east, south and south east of it. */
+    private static IntPointXZ northWestOfSquare(Path worldRoot) throws IOException {
+        Set<IntPointXZ> present = new HashSet<>();
+        try (var ramf = new RandomAccessMcaFile<>(TerrainChunk.class, worldRoot.resolve("region/r.-3.-3.mca"), "r")) {
+            for (TerrainChunk chunk : ramf) {
+                if (chunk != null) present.add(new IntPointXZ(chunk.getChunkX(), chunk.getChunkZ()));
+            }
+        }
+        for (IntPointXZ xz : present) {
+            if (present.contains(new IntPointXZ(xz.getX() + 1, xz.getZ()))
+                    && present.contains(new IntPointXZ(xz.getX(), xz.getZ() + 1))
+                    && present.contains(new IntPointXZ(xz.getX() + 1, xz.getZ() + 1))) {
+                return new IntPointXZ(xz.getX() << 4, xz.getZ() << 4);
+            }
+        }
+        fail("no 2x2 chunks in test data");
+        return null;
+    }
+
+    private static String[][][] snapshot(McaWorld world, IntPointXYZ min, int sizeX, int sizeY, int sizeZ) throws IOException {
+        String[][][] names = new String[sizeX][sizeY][sizeZ];
+        for (int x = 0; x < sizeX; x++)
+            for (int y = 0; y < sizeY; y++)
+                for (int z = 0; z < sizeZ; z++)
+                    names[x][y][z] = world.getBlockNameAt(min.x + x, min.y + y, min.z + z);
+        return names;
+    }
+
+    private static void assertPasted(String[][][] expected, McaWorld world, IntPointXYZ destination) throws IOException {
+        for (int x = 0; x < expected.length; x++)
+            for (int y = 0; y < expected[x].length; y++)
+                for (int z = 0; z < expected[x][y].length; z++)
+                    assertEquals(expected[x][y][z], world.getBlockNameAt(destination.x + x, destination.y + y, destination.z + z));
+    }
+
+    public void testExtractAndPasteUnaligned() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = northWestOfSquare(worldRoot);
+        final IntPointXYZ min = XYZ(origin.getX() + 3, -10, origin.getZ() + 5);
+        final IntPointXYZ max = XYZ(origin.getX() + 12, 30, origin.getZ() + 9);
+        final IntPointXYZ destination = XYZ(origin.getX() + 13, 20, origin.getZ() + 14);
+        String[][][] source;
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            source = snapshot(world, min, 10, 41, 5);
+            Schematic schematic = Schematic.extract(world, max, min);
+            assertEquals(10, schematic.getSizeX());
+            assertEquals(41, schematic.getSizeY());
+            assertEquals(5, schematic.getSizeZ());
+            assertFalse(schematic.isSectionAligned(destination));
+            assertEquals(source[4][7][2], schematic.getBlockNameAt(4, 7, 2));
+            assertNull(schematic.getBlockAtByRef(10, 0, 0));
+            assertEquals(4, schematic.paste(world, destination));
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertPasted(source, world, destination);
+        }
+    }
+
+    public void testPasteSectionAligned() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = northWestOfSquare(worldRoot);
+        final IntPointXYZ min = XYZ(origin.getX(), 0, origin.getZ());
+        final IntPointXYZ destination = XYZ(origin.getX() + 16, -32, origin.getZ() + 16);
+        String[][][] source;
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            source = snapshot(world, min, 16, 32, 16);
+            Schematic schematic = Schematic.extract(world, min, XYZ(min.x + 15, min.y + 31, min.z + 15));
+            assertTrue(schematic.isSectionAligned(destination));
+            assertEquals(1, schematic.paste(world, destination));
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertPasted(source, world, destination);
+        }
+    }
+
+    public void testSaveLoadAndSchematicFile() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = northWestOfSquare(worldRoot);
+        final IntPointXYZ min = XYZ(origin.getX() + 7, 50, origin.getZ() + 1);
+        final IntPointXYZ max = XYZ(origin.getX() + 22, 80, origin.getZ() + 20);
+        final IntPointXYZ destination = XYZ(origin.getX() + 2, 120, origin.getZ() + 3);
+        final Path saved = getNewTmpDirectory().toPath().resolve("saved.schem");
+        final Path streamed = getNewTmpDirectory().toPath().resolve("streamed.schem");
+        String[][][] source;
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            source = snapshot(world, min, 16, 31, 20);
+            Schematic.extract(world, min, max).save(saved);
+            SchematicFile.extract(world, min, max, streamed).close();
+        }
+        Schematic loaded = Schematic.load(saved);
+        for (int x = 0; x < 16; x++)
+            for (int y = 0; y < 31; y++)
+                for (int z = 0; z < 20; z++)
+                    assertEquals(source[x][y][z], loaded.getBlockNameAt(x, y, z));
+
+        try (SchematicFile schematicFile = SchematicFile.open(streamed);
+             McaWorld world = new McaWorld(worldRoot, "rw")) {
+            schematicFile.setColumnCacheCapacity(1);
+            assertEquals(16, schematicFile.getSizeX());
+            assertEquals(31, schematicFile.getSizeY());
+            assertEquals(20, schematicFile.getSizeZ());
+            assertTrue(schematicFile.paste(world, destination) > 0);
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertPasted(source, world, destination);
+        }
+    }
+
+    public void testOpenRejectsOtherFiles() throws IOException {
+        Path file = getNewTmpDirectory().toPath().resolve("not.schem");
+        Files.write(file, new byte[64]);
+        assertThrowsException(() -> SchematicFile.open(file), IOException.class);
+    }
+
+    public void testPasteAirOption() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = northWestOfSquare(worldRoot);
+        final int x0 = origin.getX();
+        final int z0 = origin.getZ();
+        final IntPointXYZ destination = XYZ(x0 + 4, 150, z0 + 4);
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            world.fill(XYZ(x0, 200, z0), XYZ(x0 + 3, 203, z0 + 3), block("minecraft:air"));
+            world.fill(XYZ(x0 + 1, 201, z0 + 1), XYZ(x0 + 2, 202, z0 + 2), block("minecraft:gold_block"));
+            world.fill(XYZ(x0 + 4, 150, z0 + 4), XYZ(x0 + 7, 153, z0 + 7), block("minecraft:stone"));
+            Schematic schematic = Schematic.extract(world, XYZ(x0, 200, z0), XYZ(x0 + 3, 203, z0 + 3));
+            schematic.paste(world, destination, new Schematic.PasteOptions().setPasteAir(false));
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertEquals("minecraft:stone", world.getBlockNameAt(x0 + 4, 150, z0 + 4));
+            assertEquals("minecraft:gold_block", world.getBlockNameAt(x0 + 5, 151, z0 + 5));
+            assertEquals("minecraft:gold_block", world.getBlockNameAt(x0 + 6, 152, z0 + 6));
+            assertEquals("minecraft:stone", world.getBlockNameAt(x0 + 7, 153, z0 + 7));
+        }
+    }
+
+    public void testBlockEntitiesFollowBlocks() throws IOException {
+        Path worldRoot = createTestWorld();
+        IntPointXZ origin = northWestOfSquare(worldRoot);
+        final int x0 = origin.getX();
+        final int z0 = origin.getZ();
+        final IntPointXYZ destination = XYZ(x0 + 20, 180, z0 + 20);
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            world.fill(XYZ(x0 + 2, 180, z0 + 2), XYZ(x0 + 2, 180, z0 + 2), block("minecraft:chest"));
+            world.editChunks(new McaWorld.Box(x0, 0, z0, x0, 0, z0), true, chunk -> {
+                CompoundTag chest = new CompoundTag();
+                chest.putString("id", "minecraft:chest");
+                chest.putInt("x", x0 + 2);
+                chest.putInt("y", 180);
+                chest.putInt("z", z0 + 2);
+                if (chunk.getTileEntities() == null) chunk.setTileEntities(new ListTag<>(CompoundTag.class));
+                chunk.getTileEntities().add(chest);
+                return true;
+            });
+            Schematic schematic = Schematic.extract(world, XYZ(x0, 180, z0), XYZ(x0 + 4, 182, z0 + 4));
+            assertEquals(1, schematic.getBlockEntities().size());
+            assertEquals(2, schematic.getBlockEntities().get(0).getInt("x"));
+            assertEquals(0, schematic.getBlockEntities().get(0).getInt("y"));
+            schematic.paste(world, destination);
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            assertEquals("minecraft:chest", world.getBlockNameAt(x0 + 22, 180, z0 + 22));
+            TerrainChunk chunk = world.getChunk((x0 + 22) >> 4, (z0 + 22) >> 4);
+            int found = 0;
+            for (CompoundTag tag : chunk.getTileEntities()) {
+                if (tag.getInt("x") == x0 + 22 && tag.getInt("y") == 180 && tag.getInt("z") == z0 + 22) {
+                    assertEquals("minecraft:chest", tag.getString("id"));
+                    found++;
+                }
+            }
+            assertEquals(1, found);
+        }
+    }
+
+    public void testEntitiesChunksOfModernWorlds() throws IOException {
+        Path worldRoot = createTestWorld();
+        Path entitiesDir = Files.createDirectories(worldRoot.resolve("entities"));
+        Files.copy(copyResourceToTmp("1_20_4/entities/r.-3.-3.mca").toPath(), entitiesDir.resolve("r.-3.-3.mca"));
+        EntitiesChunk source = null;
+        EntitiesChunk target = null;
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            try (var ramf = new RandomAccessMcaFile<>(EntitiesChunk.class, entitiesDir.resolve("r.-3.-3.mca"), "r")) {
+                for (EntitiesChunk chunk : ramf) {
+                    if (chunk == null || world.getChunk(chunk.getChunkXZ()) == null) continue;
+                    if (source == null && !chunk.getEntitiesTag().isEmpty()) source = chunk;
+                    else if (target == null) target = chunk;
+                }
+            }
+        }
+        assertNotNull(source);
+        assertNotNull(target);
+        final IntPointXYZ min = XYZ(source.getChunkX() << 4, -64, source.getChunkZ() << 4);
+        final IntPointXYZ max = XYZ(min.x + 15, 319, min.z + 15);
+        final IntPointXYZ destination = XYZ(target.getChunkX() << 4, -64, target.getChunkZ() << 4);
+        int expected = 0;
+        for (CompoundTag entity : source.getEntitiesTag()) {
+            ListTag<DoubleTag> pos = entity.getListTagAutoCast("Pos");
+            if (pos.get(1).asDouble() >= -64 && pos.get(1).asDouble() < 320 && (int) Math.floor(pos.get(0).asDouble()) >> 4 == source.getChunkX()
+                    && (int) Math.floor(pos.get(2).asDouble()) >> 4 == source.getChunkZ()) expected++;
+        }
+        assertTrue(expected > 0);
+
+        try (McaWorld world = new McaWorld(worldRoot, "rw")) {
+            Schematic schematic = Schematic.extract(world, min, max);
+            assertEquals(expected, schematic.getEntities().size());
+            assertEquals(1, schematic.paste(world, destination));
+        }
+        try (McaWorld world = new McaWorld(worldRoot, "r")) {
+            EntitiesChunk pasted = world.getEntitiesChunk(target.getChunkXZ());
+            assertEquals(target.getEntitiesTag().size() + expected, pasted.getEntitiesTag().size());
+            List<CompoundTag> added = new ArrayList<>(pasted.getEntitiesTag().subList(target.getEntitiesTag().size(), pasted.getEntitiesTag().size()));
+            for (CompoundTag entity : added) {
+                ListTag<DoubleTag> pos = entity.getListTagAutoCast("Pos");
+                assertEquals(target.getChunkX(), (int) Math.floor(pos.get(0).asDouble()) >> 4);
+                assertEquals(target.getChunkZ(), (int) Math.floor(pos.get(2).asDouble()) >> 4);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import io.github.ensgijs.nbt.mca.McaTestCase;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.TerrainSection;
+import io.github.ensgijs.nbt.mca.io.LoadFlags;
+import io.github.ensgijs.nbt.mca.io.McaFileChunkIterator;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+
+import java.io.IOException;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+public class TerrainChunkBlockStateCursorTest extends McaTestCase {
+
+    private TerrainChunk loadChunk() throws IOException {
+        try (McaFileChunkIterator<TerrainChunk> iter = McaFileChunkIterator.iterate(
+                getResourceFile("1_20_4/region/r.-3.-3.mca"), LoadFlags.LOAD_ALL_DATA, TerrainChunk::new)) {
+            return iter.next();
+        }
+    }
+
+    private static int sectionsWithBlocks(TerrainChunk chunk) {
+        int n = 0;
+        for (TerrainSection section : chunk) {
+            if (section.getBlockStates() != null) n++;
+        }
+        return n;
+    }
+
+    public void testVisitsEveryBlockInYOrder() throws IOException {
+        TerrainChunk chunk = loadChunk();
+        BlockStateIterator cursor = chunk.blockStateIterator();
+        int count = 0;
+        int lastY = Integer.MIN_VALUE;
+        while (cursor.hasNext()) {
+            CompoundTag state = cursor.next();
+            int x = cursor.currentBlockX();
+            int y = cursor.currentBlockY();
+            int z = cursor.currentBlockZ();
+            assertTrue(y >= lastY);
+            lastY = y;
+            assertEquals(chunk.getChunkX(), x >> 4);
+            assertEquals(chunk.getChunkZ(), z >> 4);
+            assertEquals(y >> 4, cursor.currentSectionY());
+            assertEquals(cursor.currentIndex(), cursor.currentY() << 8 | cursor.currentZ() << 4 | cursor.currentX());
+            assertSame(chunk.getBlockAtByRef(x, y, z), state);
+            assertSame(state, cursor.current());
+            assertEquals(state.getString("Name"), cursor.currentBlockName());
+            assertSame(chunk.getSection(y >> 4).getBlockStates().palette.get(cursor.currentPaletteIndex()), state);
+            count++;
+        }
+        assertEquals(sectionsWithBlocks(chunk) * 4096, count);
+        assertThrowsException(cursor::next, NoSuchElementException.class);
+    }
+
+    public void testSetBlockStateAtCurrent() throws IOException {
+        TerrainChunk chunk = loadChunk();
+        final String replacedName = chunk.getBlockNameAt(0, chunk.getWorldMinBlockY() + 16, 0);
+        int expectedReplacements = 0;
+        for (BlockStateIterator it = chunk.blockStateIterator(); it.hasNext(); ) {
+            it.next();
+            if (it.currentBlockName().equals(replacedName)) expectedReplacements++;
+        }
+        assertTrue(expectedReplacements > 0);
+
+        CompoundTag glass = block("minecraft:glass");
+        BlockStateIterator cursor = chunk.blockStateIterator();
+        int replaced = 0;
+        for (CompoundTag state : cursor) {
+            if (cursor.currentBlockName().equals(replacedName)) {
+                cursor.setBlockStateAtCurrent(glass);
+                assertEquals("minecraft:glass", cursor.currentBlockName());
+                replaced++;
+            }
+        }
+        assertEquals(expectedReplacements, replaced);
+        cursor.cleanupPaletteAndBlockStatesIfDirty();
+
+        int glassCount = 0;
+        for (TerrainSection section : chunk) {
+            if (section.getBlockStates() == null) continue;
+            assertFalse(section.getBlockStates().contains(block(replacedName)));
+            glassCount += section.getBlockStates().countIf(t -> t.getString("Name").equals("minecraft:glass"));
+        }
+        assertEquals(replaced, glassCount);
+    }
+
+    public void testExternalModificationDetected() throws IOException {
+        TerrainChunk chunk = loadChunk();
+        BlockStateIterator cursor = chunk.blockStateIterator();
+        cursor.next();
+        chunk.setBlockAt(cursor.currentBlockX(), cursor.currentBlockY(), cursor.currentBlockZ(), block("minecraft:glass"));
+        assertThrowsException(cursor::next, ConcurrentModificationException.class);
+    }
+
+    public void testAccessorsBeforeNextThrow() throws IOException {
+        BlockStateIterator cursor = loadChunk().blockStateIterator();
+        assertThrowsException(cursor::currentIndex, NoSuchElementException.class);
+        assertThrowsException(cursor::currentBlockName, NoSuchElementException.class);
+    }
+}
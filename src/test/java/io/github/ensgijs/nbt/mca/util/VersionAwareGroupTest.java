@@ -0,0 +1,51 @@
+package io.github.ensgijs.nbt.mca.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class VersionAwareGroupTest extends TestCase {
+
+    public void testResolve() {
+        VersionAware<String> a = new VersionAware<String>().register(0, "a0").register(10, "a10");
+        VersionAware<String> b = new VersionAware<String>().register(5, "b5");
+        VersionAwareGroup<String> group = VersionAwareGroup.of(a, b);
+        assertEquals(2, group.size());
+        assertSame(b, group.getMember(1));
+
+        assertEquals(Arrays.asList("a0", null), group.resolve(0));
+        assertEquals(Arrays.asList("a0", "b5"), group.resolve(5));
+        assertEquals(Arrays.asList("a10", "b5"), group.resolve(10));
+        assertEquals(Arrays.asList(null, null), group.resolve(-1));
+    }
+
+    public void testResolve_memoized() {
+        VersionAware<String> a = new VersionAware<String>().register(0, "a0");
+        VersionAwareGroup<String> group = VersionAwareGroup.of(a);
+        List<String> resolved = group.resolve(7);
+        assertSame(resolved, group.resolve(7));
+        assertThrowsUnsupported(() -> resolved.set(0, "x"));
+    }
+
+    public void testResolve_invalidatedByRegister() {
+        VersionAware<String> a = new VersionAware<String>().register(0, "a0");
+        VersionAware<String> b = new VersionAware<String>().register(0, "b0");
+        VersionAwareGroup<String> group = VersionAwareGroup.of(a, b);
+        List<String> before = group.resolve(7);
+        b.register(5, "b5");
+        List<String> after = group.resolve(7);
+        assertNotSame(before, after);
+        assertEquals(Arrays.asList("a0", "b5"), after);
+        assertEquals(Arrays.asList("a0", "b0"), before);
+    }
+
+    private static void assertThrowsUnsupported(Runnable r) {
+        try {
+            r.run();
+            fail("expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException expected) {
+            // ok
+        }
+    }
+}
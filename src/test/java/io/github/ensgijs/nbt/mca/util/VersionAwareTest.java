@@ -24,4 +24,30 @@ public class VersionAwareTest extends TestCase {
         assertEquals("Hundred", va.get(100));
         assertEquals("Hundred", va.get(Integer.MAX_VALUE));
     }
+
+    public void testRegister_outOfOrderAndReplace() {
+        VersionAware<String> va = new VersionAware<String>()
+                .register(100, "Hundred")
+                .register(0, "Zero")
+                .register(10, "Ten");
+        assertArrayEquals(new int[] {0, 10, 100}, va.getRegisteredVersions());
+        assertEquals("Ten", va.get(50));
+        va.register(10, "TEN");
+        assertEquals(3, va.size());
+        assertEquals("TEN", va.get(50));
+    }
+
+    public void testGet_repeatedLookupSeesLaterRegistrations() {
+        VersionAware<String> va = new VersionAware<String>().register(0, "Zero");
+        assertEquals("Zero", va.get(50));
+        assertEquals("Zero", va.get(50));
+        va.register(20, "Twenty");
+        assertEquals("Twenty", va.get(50));
+        assertEquals("Zero", va.get(19));
+        assertEquals("Twenty", va.get(50));
+    }
+
+    private static void assertArrayEquals(int[] expected, int[] actual) {
+        assertEquals(java.util.Arrays.toString(expected), java.util.Arrays.toString(actual));
+    }
 }
@@ -0,0 +1,67 @@
+package io.github.ensgijs.nbt.query;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+import io.github.ensgijs.nbt.tag.*;
+
+public class NbtPathBatchTest extends NbtTestCase {
+
+    private static CompoundTag makeRoot() {
+        CompoundTag level = new CompoundTag();
+        level.putInt("xPos", 3);
+        level.putInt("zPos", -7);
+        level.putString("Status", "full");
+        level.putLongArray("longs", new long[] {5L, 6L});
+        ListTag<CompoundTag> sections = new ListTag<>(CompoundTag.class);
+        CompoundTag section = new CompoundTag();
+        section.putByte("Y", (byte) 2);
+        sections.add(section);
+        level.put("Sections", sections);
+        CompoundTag root = new CompoundTag();
+        root.put("Level", level);
+        root.putInt("DataVersion", 1343);
+        return root;
+    }
+
+    public void testGetAll_matchesIndividualPaths() {
+        String[] selectors = {"Level.xPos", "Level.zPos", "Level.Status", "DataVersion", "Level.Sections[0].Y",
+                "Level.longs[1]", "Level.missing", "Level.missing.deeper", "Level.xPos", "Level", ""};
+        NbtPathBatch batch = NbtPathBatch.of(selectors);
+        assertEquals(selectors.length, batch.size());
+        CompoundTag root = makeRoot();
+        Object[] values = batch.getAll(root);
+        for (int i = 0; i < selectors.length; i++) {
+            assertEquals(selectors[i], NbtPath.of(selectors[i]).get(root), values[i]);
+        }
+        assertSame(root, values[values.length - 1]);
+        assertEquals(6L, values[5]);
+    }
+
+    public void testGetAll_nullPathsAndRoot() {
+        NbtPathBatch batch = new NbtPathBatch(NbtPath.of("Level.xPos"), null);
+        assertNull(batch.getPath(1));
+        Object[] values = batch.getAll(makeRoot());
+        assertEquals(new IntTag(3), values[0]);
+        assertNull(values[1]);
+        values = batch.getAll(null);
+        assertNull(values[0]);
+        assertNull(values[1]);
+    }
+
+    public void testGetAll_reusesArray() {
+        NbtPathBatch batch = NbtPathBatch.of("Level.xPos", "Level.zPos");
+        Object[] values = new Object[] {"junk", "junk", "untouched"};
+        batch.getAll(makeRoot(), values);
+        assertEquals(new IntTag(3), values[0]);
+        assertEquals(new IntTag(-7), values[1]);
+        assertEquals("untouched", values[2]);
+        batch.getAll(new CompoundTag(), values);
+        assertNull(values[0]);
+        assertNull(values[1]);
+        assertThrowsIllegalArgumentException(() -> batch.getAll(makeRoot(), new Object[1]));
+    }
+
+    public void testGetAll_throwsWhenTraversingPrimitive() {
+        NbtPathBatch batch = NbtPathBatch.of("Level.longs[0].x");
+        assertThrowsException(() -> batch.getAll(makeRoot()), IllegalStateException.class);
+    }
+}
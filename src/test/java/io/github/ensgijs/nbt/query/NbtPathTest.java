@@ -220,4 +220,14 @@ public class NbtPathTest extends NbtTestCase {
         Assert.assertArrayEquals(new byte[] {(byte) -100, (byte) 50}, NbtPath.of("stuff.bytes").getByteArray(root));
         Assert.assertArrayEquals(new long[] {2490852214246277761L, 17616930435L}, NbtPath.of("stuff.longs").getLongArray(root));
     }
+
+    public void testOf_interned() {
+        assertSame(NbtPath.of("a.b[1].c"), NbtPath.of("a.b[1].c"));
+        assertSame(NbtPath.of(""), NbtPath.of("."));
+        assertEquals(4, NbtPath.of("a.b[1].c").length());
+        assertEquals(0, NbtPath.of("").length());
+        // failures are not cached
+        assertParseThrows("a..b");
+        assertParseThrows("a..b");
+    }
 }
@@ -0,0 +1,116 @@
+package io.github.ensgijs.nbt.query;
+
+import io.github.ensgijs.nbt.NbtTestCase;
+import io.github.ensgijs.nbt.tag.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NbtQueryTest extends NbtTestCase {
+
+    private static CompoundTag makeEntity(String id, int health) {
+        CompoundTag entity = new CompoundTag();
+        entity.putString("id", id);
+        entity.putInt("Health", health);
+        return entity;
+    }
+
+    private static CompoundTag makeRoot() {
+        ListTag<CompoundTag> entities = new ListTag<>(CompoundTag.class);
+        entities.add(makeEntity("minecraft:zombie", 20));
+        entities.add(makeEntity("minecraft:pig", 10));
+        CompoundTag rider = makeEntity("minecraft:zombie", 5);
+        ListTag<CompoundTag> passengers = new ListTag<>(CompoundTag.class);
+        passengers.add(makeEntity("minecraft:chicken", 4));
+        rider.put("Passengers", passengers);
+        entities.add(rider);
+
+        ListTag<CompoundTag> sections = new ListTag<>(CompoundTag.class);
+        for (int y = 0; y < 3; y++) {
+            CompoundTag section = new CompoundTag();
+            section.putByte("Y", (byte) y);
+            section.putLongArray("data", new long[] {y, y + 1});
+            sections.add(section);
+        }
+
+        CompoundTag root = new CompoundTag();
+        root.put("Entities", entities);
+        root.put("sections", sections);
+        root.putString("Status", "minecraft:full");
+        return root;
+    }
+
+    public void testExactPathsMatchNbtPath() {
+        CompoundTag root = makeRoot();
+        for (String selector : new String[] {"Status", "Entities[1].id", "sections[2].data[1]", "missing", "Entities[9]"}) {
+            Object expected = NbtPath.of(selector).get(root);
+            List<Object> actual = NbtQuery.of(selector).getAll(root);
+            if (expected == null) {
+                assertTrue(selector, actual.isEmpty());
+            } else {
+                assertEquals(selector, List.of(expected), actual);
+            }
+        }
+        assertSame(root, NbtQuery.of("").getFirst(root));
+    }
+
+    public void testWildcards() {
+        CompoundTag root = makeRoot();
+        assertEquals(3, NbtQuery.of("sections[*].Y").count(root));
+        assertEquals(6, NbtQuery.of("sections[*].data[*]").count(root));
+        assertEquals(List.of(0L, 1L, 1L, 2L, 2L, 3L), NbtQuery.of("sections[*].data[*]").getAll(root));
+        assertEquals(3, NbtQuery.of("*").count(root));
+        assertEquals(2, NbtQuery.of("Entities[0].*").count(root));
+    }
+
+    public void testRecursiveDescent() {
+        CompoundTag root = makeRoot();
+        assertEquals(4, NbtQuery.of("..id").count(root));
+        assertEquals(4, NbtQuery.of("Entities..id").count(root));
+        assertEquals(List.of(new StringTag("minecraft:chicken")), NbtQuery.of("Entities..Passengers[*].id").getAll(root));
+        assertEquals(1, NbtQuery.of("..Status").count(root));
+        assertEquals(0, NbtQuery.of("Status..id").count(root));
+        // every descendant tag, not including the root nor array elements
+        // root children + entities + entity children + passengers + sections + section children
+        assertEquals(3 + 3 + (2 + 2 + 3) + (1 + 2) + 3 + 3 * 2, NbtQuery.of("..*").count(root));
+    }
+
+    public void testPredicates() {
+        CompoundTag root = makeRoot();
+        assertEquals(2, NbtQuery.of("Entities[?id==\"minecraft:zombie\"]").count(root));
+        assertEquals(List.of(new IntTag(20), new IntTag(5)),
+                NbtQuery.of("Entities[?id==\"minecraft:zombie\"].Health").getAll(root));
+        assertEquals(1, NbtQuery.of("Entities[?id!=\"minecraft:zombie\"]").count(root));
+        assertEquals(1, NbtQuery.of("Entities[?Passengers]").count(root));
+        assertEquals(1, NbtQuery.of("Entities[?Health==10]").count(root));
+        assertEquals(1, NbtQuery.of("Entities[?Health == 10.0]").count(root));
+        assertEquals(1, NbtQuery.of("..Passengers[?Health==4].id").count(root));
+        assertEquals(1, NbtQuery.of("sections[?Y==2]").count(root));
+        assertEquals(1, NbtQuery.of("sections[?data[1]==3]").count(root));
+        assertEquals(0, NbtQuery.of("Entities[?id==\"minecraft:\\\"quoted]\"]").count(root));
+    }
+
+    public void testLazy() {
+        CompoundTag root = makeRoot();
+        AtomicInteger seen = new AtomicInteger();
+        Object first = NbtQuery.of("..id").stream(root).peek(v -> seen.incrementAndGet()).findFirst().orElse(null);
+        assertEquals(new StringTag("minecraft:zombie"), first);
+        assertEquals(1, seen.get());
+        assertTrue(NbtQuery.of("..Passengers").matches(root));
+        assertFalse(NbtQuery.of("..nope").matches(root));
+        assertEquals(0, NbtQuery.of("anything").count(null));
+    }
+
+    public void testInterned() {
+        assertSame(NbtQuery.of("Entities[*].id"), NbtQuery.of("Entities[*].id"));
+        assertEquals("Entities[*].id", NbtQuery.of("Entities[*].id").toString());
+    }
+
+    public void testParseErrors() {
+        for (String bad : Arrays.asList(".a", "a..", "a.", "a[", "a[x]", "a[-1]", "a]b", "a[?]", "a[?b==]", "a[?b==\"x]",
+                "a[?b==x]", "a[0]b")) {
+            assertThrowsIllegalArgumentException(() -> NbtQuery.of(bad));
+        }
+    }
+}